@@ -0,0 +1,87 @@
+package xyz.navyd.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * 解析一个完整的request，包括读取header与cookie
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RequestParserBenchmark {
+    private static final String SMALL_GET = "GET /users/42?fields=name HTTP/1.1\r\n"
+        + "Host: localhost:8080\r\n"
+        + "Accept: */*\r\n"
+        + "\r\n";
+    private static final String JSON = "{\"uid\":42,\"name\":\"user_name_42\",\"tags\":[\"a\",\"b\",\"c\"]}";
+    private static final String JSON_POST = "POST /users HTTP/1.1\r\n"
+        + "Host: localhost:8080\r\n"
+        + "Content-Type: application/json\r\n"
+        + "Content-Length: " + JSON.length() + "\r\n"
+        + "\r\n"
+        + JSON;
+
+    @Param({ "small_get", "cookie_get", "json_post" })
+    String fixture;
+
+    private ByteBuffer bytes;
+    private RequestParser parser;
+
+    @Setup
+    public void setup() throws IOException {
+        byte[] data;
+        switch (fixture) {
+            case "small_get":
+                data = SMALL_GET.getBytes(StandardCharsets.ISO_8859_1);
+                break;
+            case "cookie_get":
+                try (var in = getClass().getResourceAsStream("/get_request.txt")) {
+                    data = in.readAllBytes();
+                }
+                break;
+            case "json_post":
+                data = JSON_POST.getBytes(StandardCharsets.ISO_8859_1);
+                break;
+            default:
+                throw new IllegalArgumentException("unknown fixture: " + fixture);
+        }
+        bytes = ByteBuffer.allocateDirect(data.length).put(data).flip();
+        parser = new RequestParser();
+    }
+
+    @Benchmark
+    public Request parse() {
+        var buf = bytes.duplicate();
+        parser.reset();
+        if (!parser.parse(buf)) {
+            throw new IllegalStateException("incomplete fixture: " + fixture);
+        }
+        var request = parser.getRequest();
+        request.release();
+        return request;
+    }
+
+    /**
+     * 解析后访问常用header与一个cookie，包括lazy解码的开销
+     * @return
+     */
+    @Benchmark
+    public Object parseAndRead() {
+        var request = parse();
+        request.getHeader("Host");
+        request.getHeader("User-Agent");
+        return request.getCookie("_octo");
+    }
+}
@@ -0,0 +1,68 @@
+package xyz.navyd.metrics;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Threads;
+
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.metrics.enums.PhaseEnum;
+
+/**
+ * 一个request在server中的全部记录开销：计数、in-flight与5个阶段的耗时，
+ * 所有线程记录到同一个route
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class MetricsBenchmark {
+    private static final PhaseEnum[] PHASES = PhaseEnum.values();
+
+    private final RouteMetrics metrics = new RouteMetrics("/bench", MethodEnum.GET);
+
+    /**
+     * 基准：只调用同样次数的System.nanoTime
+     * @return
+     */
+    @Benchmark
+    @Threads(1)
+    public long nanoTimeOnly() {
+        var t = 0L;
+        for (var i = 0; i <= PHASES.length; i++) {
+            t += System.nanoTime();
+        }
+        return t;
+    }
+
+    @Benchmark
+    @Threads(1)
+    public void recordRequest() {
+        record();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void recordRequestContended() {
+        record();
+    }
+
+    /**
+     * 与server中一样，每个阶段调用一次System.nanoTime
+     */
+    private void record() {
+        metrics.begin();
+        var t = System.nanoTime();
+        for (var phase : PHASES) {
+            var now = System.nanoTime();
+            metrics.record(phase, now - t);
+            t = now;
+        }
+        metrics.end(StatusEnum.OK_200);
+    }
+}
@@ -0,0 +1,69 @@
+package xyz.navyd.mvc;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.VersionEnum;
+import xyz.navyd.mvc.bench_pkg.BenchController;
+
+/**
+ * 路由、参数绑定与调用controller方法，每种参数类型一个route
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class HandleBenchmark {
+    private static final byte[] JSON = "{\"id\":42,\"name\":\"item_42\"}".getBytes(StandardCharsets.UTF_8);
+
+    @Param({ "none", "request", "path", "query", "body" })
+    String param;
+
+    private ControllerContext context;
+    private Request request;
+
+    @Setup
+    public void setup() {
+        context = ControllerContext.newInstance();
+        context.scanPackage(BenchController.class.getPackageName());
+        switch (param) {
+            case "none":
+                request = new Request(MethodEnum.GET, "/bench/none", null, VersionEnum.HTTP1_1);
+                break;
+            case "request":
+                request = new Request(MethodEnum.GET, "/bench/request", null, VersionEnum.HTTP1_1);
+                break;
+            case "path":
+                request = new Request(MethodEnum.GET, "/bench/path/42", null, VersionEnum.HTTP1_1);
+                break;
+            case "query":
+                request = new Request(MethodEnum.GET, "/bench/query", "id=42&other=x", VersionEnum.HTTP1_1);
+                break;
+            case "body":
+                request = new Request(MethodEnum.POST, "/bench/body", null, VersionEnum.HTTP1_1);
+                request.setBody(ByteBuffer.wrap(JSON));
+                break;
+            default:
+                throw new IllegalArgumentException("unknown param: " + param);
+        }
+        if (context.route(request).isEmpty()) {
+            throw new IllegalStateException("route not found: " + request.getPath());
+        }
+    }
+
+    @Benchmark
+    public Object handle() {
+        return context.handle(request);
+    }
+}
@@ -0,0 +1,103 @@
+package xyz.navyd.mvc;
+
+import java.lang.annotation.Annotation;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.VersionEnum;
+import xyz.navyd.mvc.ControllerContext.ControllerComponent;
+import xyz.navyd.mvc.annotations.Router;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 在不同数量的字面量与正则route中查找controller
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class RouteBenchmark {
+    @Param({ "10", "100", "1000" })
+    int routes;
+
+    @Param({ "literal", "regex" })
+    String kind;
+
+    private ControllerContext context;
+    private Request hit;
+    private Request miss;
+
+    @Setup
+    public void setup() throws NoSuchMethodException {
+        context = ControllerContext.newInstance();
+        var method = RouteBenchmark.class.getMethod("route");
+        var regex = kind.equals("regex");
+        for (var i = 0; i < routes; i++) {
+            var path = "/api/v1/resource" + i + (regex ? "/(\\d+)/items" : "/items");
+            var router = new BenchRouter(path);
+            context.addComponent(new ControllerComponent(this, method, router, path, new ArgumentResolver[0],
+                args -> null));
+        }
+        var target = routes / 2;
+        hit = new Request(MethodEnum.GET, "/api/v1/resource" + target + (regex ? "/42/items" : "/items"), null,
+            VersionEnum.HTTP1_1);
+        miss = new Request(MethodEnum.GET, "/api/v1/resource" + target + "/missing", null, VersionEnum.HTTP1_1);
+    }
+
+    @Benchmark
+    public Object route() {
+        return context.getControllerComponent(hit);
+    }
+
+    @Benchmark
+    public Object routeMiss() {
+        return context.getControllerComponent(miss);
+    }
+
+    private static class BenchRouter implements Router {
+        private final String path;
+
+        BenchRouter(String path) {
+            this.path = path;
+        }
+
+        @Override
+        public Class<? extends Annotation> annotationType() {
+            return Router.class;
+        }
+
+        @Override
+        public String[] value() {
+            return new String[] { path };
+        }
+
+        @Override
+        public MethodEnum[] methods() {
+            return new MethodEnum[] { MethodEnum.GET };
+        }
+
+        @Override
+        public ExecutionEnum execution() {
+            return ExecutionEnum.DEFAULT;
+        }
+
+        @Override
+        public boolean compress() {
+            return true;
+        }
+
+        @Override
+        public long timeout() {
+            return 0;
+        }
+    }
+}
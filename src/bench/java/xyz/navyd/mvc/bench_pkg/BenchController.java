@@ -0,0 +1,48 @@
+package xyz.navyd.mvc.bench_pkg;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.annotations.Body;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.PathParam;
+import xyz.navyd.mvc.annotations.QueryParam;
+import xyz.navyd.mvc.annotations.Router;
+
+/**
+ * 每个方法只使用一种参数
+ */
+@Controller
+@Router("/bench")
+public class BenchController {
+
+    @Router(value = "/none", methods = MethodEnum.GET)
+    Response<String> none() {
+        return Response.withOk("ok");
+    }
+
+    @Router(value = "/request", methods = MethodEnum.GET)
+    Response<String> request(Request request) {
+        return Response.withOk(request.getPath());
+    }
+
+    @Router(value = "/path/(\\d+)", methods = MethodEnum.GET)
+    Response<Integer> path(@PathParam Integer id) {
+        return Response.withOk(id);
+    }
+
+    @Router(value = "/query", methods = MethodEnum.GET)
+    Response<Long> query(@QueryParam("id") Long id) {
+        return Response.withOk(id);
+    }
+
+    @Router(value = "/body", methods = MethodEnum.POST)
+    Response<Item> body(@Body Item item) {
+        return Response.withOk(item);
+    }
+
+    public static class Item {
+        public int id;
+        public String name;
+    }
+}
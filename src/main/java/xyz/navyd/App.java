@@ -1,11 +1,41 @@
 package xyz.navyd;
 
+import java.io.IOException;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.server.HttpServer;
+import xyz.navyd.server.ServerConfig;
+
 /**
- * Hello world!
+ * 启动http server
  *
+ * <p>usage: App &lt;controller package&gt; [port]
  */
 public class App {
-    public static void main(String[] args) {
-        System.out.println("Hello World!");
+    private static final Logger log = LoggerFactory.getLogger(App.class);
+
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("usage: App <controller package> [port]");
+            System.exit(1);
+        }
+        var context = ControllerContext.newInstance();
+        context.scanPackage(args[0]);
+        var config = new ServerConfig();
+        if (args.length > 1) {
+            config.port(Integer.parseInt(args[1]));
+        }
+        var server = new HttpServer(context, config);
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                server.close();
+            } catch (IOException e) {
+                log.error("closing server error: {}", e.getMessage());
+            }
+        }));
+        server.start();
     }
 }
@@ -0,0 +1,85 @@
+package xyz.navyd.buffer;
+
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * 写入一组pooled buffer的OutputStream，当前buffer满时从pool获取下一个。
+ *
+ * <p>{@link #finish()}后buffer转为读模式，由调用者负责release
+ */
+public class BufferOutputStream extends OutputStream {
+    private final BufferPool pool;
+    private final int chunkSize;
+    private final List<PooledBuffer> chunks = new ArrayList<>(4);
+    private PooledBuffer current;
+    private long size;
+
+    public BufferOutputStream(BufferPool pool, int chunkSize) {
+        if (chunkSize <= 0)
+            throw new IllegalArgumentException("illegal chunkSize: " + chunkSize);
+        this.pool = pool;
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public void write(int b) {
+        ensureWritable().put((byte) b);
+        size++;
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) {
+        while (len > 0) {
+            var buf = ensureWritable();
+            var n = Math.min(len, buf.remaining());
+            buf.put(b, off, n);
+            off += n;
+            len -= n;
+            size += n;
+        }
+    }
+
+    /**
+     * 已写入的字节数
+     * @return
+     */
+    public long size() {
+        return size;
+    }
+
+    /**
+     * 将所有buffer flip为读模式并返回，之后不能再写入
+     * @return
+     */
+    public List<PooledBuffer> finish() {
+        for (var chunk : chunks) {
+            chunk.buffer().flip();
+        }
+        current = null;
+        return chunks;
+    }
+
+    /**
+     * 出错时归还所有buffer
+     */
+    public void release() {
+        for (var chunk : chunks) {
+            if (!chunk.isReleased()) {
+                chunk.release();
+            }
+        }
+        chunks.clear();
+        current = null;
+    }
+
+    private ByteBuffer ensureWritable() {
+        if (current == null || !current.buffer().hasRemaining()) {
+            current = pool.acquire(chunkSize);
+            chunks.add(current);
+        }
+        return current.buffer();
+    }
+}
@@ -0,0 +1,235 @@
+package xyz.navyd.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按大小分级的direct ByteBuffer池。
+ *
+ * <p>每个级别的buffer从共享的direct内存slab中切分，线程本地缓存优先，
+ * 其次是共享的空闲队列，都没有时才分配新的slab。超过最大级别的请求不池化。
+ * virtual thread生命周期很短，不使用线程本地缓存，直接使用共享队列。
+ *
+ * <p>开启leak detection时，未release就被gc的buffer会打印其acquire时的调用栈
+ */
+public class BufferPool {
+    private static final Logger log = LoggerFactory.getLogger(BufferPool.class);
+
+    private static final int MIN_CLASS_SHIFT = 12;
+    /** 4K, 8K, 16K, 32K, 64K, 128K */
+    private static final int CLASS_COUNT = 6;
+    private static final int SLAB_SIZE = 1024 * 1024;
+    private static final int LOCAL_CACHE_SIZE = 32;
+    private static final Cleaner CLEANER = Cleaner.create();
+
+    private static final BufferPool DEFAULT = new BufferPool(Boolean.getBoolean("xyz.navyd.buffer.leakDetection"));
+
+    private final SizeClass[] classes = new SizeClass[CLASS_COUNT];
+    private final ThreadLocal<ArrayDeque<ByteBuffer>[]> localCaches;
+    private final boolean leakDetection;
+    private final Stats stats = new Stats();
+
+    public BufferPool(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        for (var i = 0; i < CLASS_COUNT; i++) {
+            classes[i] = new SizeClass(1 << (MIN_CLASS_SHIFT + i));
+        }
+        this.localCaches = ThreadLocal.withInitial(() -> {
+            @SuppressWarnings("unchecked")
+            var caches = (ArrayDeque<ByteBuffer>[]) new ArrayDeque<?>[CLASS_COUNT];
+            for (var i = 0; i < CLASS_COUNT; i++) {
+                caches[i] = new ArrayDeque<>(LOCAL_CACHE_SIZE);
+            }
+            return caches;
+        });
+        log.debug("buffer pool created, leak detection: {}", leakDetection);
+    }
+
+    /**
+     * 全局默认的pool，通过-Dxyz.navyd.buffer.leakDetection=true开启leak detection
+     * @return
+     */
+    public static BufferPool getDefault() {
+        return DEFAULT;
+    }
+
+    public static int maxPooledSize() {
+        return 1 << (MIN_CLASS_SHIFT + CLASS_COUNT - 1);
+    }
+
+    /**
+     * 获取一个position=0, limit=size的buffer，使用后必须{@link PooledBuffer#release()}
+     * @param size
+     * @return
+     */
+    public PooledBuffer acquire(int size) {
+        if (size < 0)
+            throw new IllegalArgumentException("illegal size: " + size);
+        stats.acquires.increment();
+        var index = classIndex(size);
+        ByteBuffer buf;
+        if (index < 0) {
+            log.debug("acquiring unpooled buffer with size: {}", size);
+            stats.unpooled.increment();
+            buf = ByteBuffer.allocateDirect(size);
+        } else {
+            buf = isVirtual() ? null : localCaches.get()[index].pollLast();
+            if (buf != null) {
+                stats.localHits.increment();
+            } else if ((buf = classes[index].free.poll()) != null) {
+                stats.sharedHits.increment();
+            } else {
+                stats.misses.increment();
+                buf = classes[index].allocate();
+            }
+        }
+        buf.clear().limit(size);
+        return new PooledBuffer(this, buf, index, leakDetection ? new Leak() : null);
+    }
+
+    public Stats getStats() {
+        return stats;
+    }
+
+    void release(ByteBuffer buf, int index) {
+        stats.releases.increment();
+        if (index < 0) {
+            return;
+        }
+        buf.clear();
+        // 线程结束后其本地缓存中的buffer不会再回到pool
+        if (isVirtual()) {
+            classes[index].free.add(buf);
+            return;
+        }
+        var cache = localCaches.get()[index];
+        if (cache.size() < LOCAL_CACHE_SIZE) {
+            cache.addLast(buf);
+        } else {
+            classes[index].free.add(buf);
+        }
+    }
+
+    Cleaner.Cleanable track(PooledBuffer buffer, Leak leak) {
+        return CLEANER.register(buffer, leak);
+    }
+
+    private static boolean isVirtual() {
+        return Thread.currentThread().isVirtual();
+    }
+
+    private static int classIndex(int size) {
+        if (size <= 1 << MIN_CLASS_SHIFT) {
+            return 0;
+        }
+        // ceil(log2(size)) - MIN_CLASS_SHIFT
+        var index = 32 - Integer.numberOfLeadingZeros(size - 1) - MIN_CLASS_SHIFT;
+        return index < CLASS_COUNT ? index : -1;
+    }
+
+    private static class SizeClass {
+        final int size;
+        final ConcurrentLinkedQueue<ByteBuffer> free = new ConcurrentLinkedQueue<>();
+
+        SizeClass(int size) {
+            this.size = size;
+        }
+
+        /**
+         * 分配一个新的slab，切分后返回其中一个，其余放入free
+         * @return
+         */
+        synchronized ByteBuffer allocate() {
+            var buf = free.poll();
+            if (buf != null) {
+                return buf;
+            }
+            var slab = ByteBuffer.allocateDirect(Math.max(SLAB_SIZE, size));
+            var count = slab.capacity() / size;
+            log.debug("allocated slab for size class: {}, chunks: {}", size, count);
+            for (var i = 1; i < count; i++) {
+                free.add(slab.limit((i + 1) * size).position(i * size).slice());
+            }
+            return slab.limit(size).position(0).slice();
+        }
+    }
+
+    /**
+     * 由cleaner在PooledBuffer不可达时执行，未release则视为泄漏
+     */
+    class Leak implements Runnable {
+        final Throwable trace = new Throwable("buffer acquired here");
+        volatile boolean released;
+
+        @Override
+        public void run() {
+            if (!released) {
+                stats.leaks.increment();
+                log.error("LEAK: pooled buffer was garbage collected without release", trace);
+            }
+        }
+    }
+
+    /**
+     * pool的命中统计
+     */
+    public static class Stats {
+        private final LongAdder acquires = new LongAdder();
+        private final LongAdder localHits = new LongAdder();
+        private final LongAdder sharedHits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder unpooled = new LongAdder();
+        private final LongAdder releases = new LongAdder();
+        private final LongAdder leaks = new LongAdder();
+
+        public long getAcquires() {
+            return acquires.sum();
+        }
+
+        public long getLocalHits() {
+            return localHits.sum();
+        }
+
+        public long getSharedHits() {
+            return sharedHits.sum();
+        }
+
+        public long getMisses() {
+            return misses.sum();
+        }
+
+        public long getUnpooled() {
+            return unpooled.sum();
+        }
+
+        public long getReleases() {
+            return releases.sum();
+        }
+
+        public long getLeaks() {
+            return leaks.sum();
+        }
+
+        /**
+         * 线程本地与共享队列命中占所有acquire的比例
+         * @return
+         */
+        public double getHitRate() {
+            var total = getAcquires();
+            return total == 0 ? 0 : (double) (getLocalHits() + getSharedHits()) / total;
+        }
+
+        @Override
+        public String toString() {
+            return "Stats [acquires=" + getAcquires() + ", localHits=" + getLocalHits() + ", sharedHits="
+                    + getSharedHits() + ", misses=" + getMisses() + ", unpooled=" + getUnpooled() + ", releases="
+                    + getReleases() + ", leaks=" + getLeaks() + ", hitRate=" + getHitRate() + "]";
+        }
+    }
+}
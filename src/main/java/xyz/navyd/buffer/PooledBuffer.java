@@ -0,0 +1,54 @@
+package xyz.navyd.buffer;
+
+import java.lang.ref.Cleaner;
+import java.nio.ByteBuffer;
+
+/**
+ * 从{@link BufferPool}获取的buffer，只能release一次，release后不能再使用
+ */
+public class PooledBuffer {
+    private final BufferPool pool;
+    private final int classIndex;
+    private final BufferPool.Leak leak;
+    private final Cleaner.Cleanable cleanable;
+    private ByteBuffer buf;
+
+    PooledBuffer(BufferPool pool, ByteBuffer buf, int classIndex, BufferPool.Leak leak) {
+        this.pool = pool;
+        this.buf = buf;
+        this.classIndex = classIndex;
+        this.leak = leak;
+        this.cleanable = leak != null ? pool.track(this, leak) : null;
+    }
+
+    /**
+     * 返回底层buffer
+     * @return
+     */
+    public ByteBuffer buffer() {
+        if (buf == null) {
+            throw new IllegalStateException("buffer already released");
+        }
+        return buf;
+    }
+
+    public boolean isReleased() {
+        return buf == null;
+    }
+
+    /**
+     * 归还到pool中
+     */
+    public void release() {
+        if (buf == null) {
+            throw new IllegalStateException("buffer already released");
+        }
+        var b = buf;
+        buf = null;
+        if (leak != null) {
+            leak.released = true;
+            cleanable.clean();
+        }
+        pool.release(b, classIndex);
+    }
+}
@@ -0,0 +1,269 @@
+package xyz.navyd.http;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.enums.EncodingEnum;
+
+/**
+ * 按Accept-Encoding压缩response body。
+ *
+ * <p>{@link Deflater}在使用后reset并放回pool，不为每个response创建。
+ * 带ETag的body(静态文件与缓存的response)压缩后的结果按path、ETag与encoding缓存，
+ * 同一个body只压缩一次，缓存按总字节数LRU淘汰
+ */
+public class Compression {
+    private static final Logger log = LoggerFactory.getLogger(Compression.class);
+
+    private static final int MAX_POOLED = 64;
+    private static final int SCRATCH_SIZE = 1024 * 8;
+    private static final byte[] GZIP_HEADER = { 0x1f, (byte) 0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, (byte) 0xff };
+
+    private final int minSize;
+    private final int level;
+    private final String[] types;
+    private final long cacheCapacity;
+    // 按EncodingEnum.ordinal
+    private final ArrayBlockingQueue<Codec>[] codecs;
+    // access order
+    private final LinkedHashMap<String, ByteBuffer> variants = new LinkedHashMap<>(16, 0.75f, true);
+    private long cachedBytes;
+
+    /**
+     * @param minSize 小于该字节数的body不压缩
+     * @param level deflate压缩级别0-9
+     * @param types 可压缩的Content-Type前缀，如text/、application/json
+     * @param cacheCapacity 缓存压缩结果的最大总字节数
+     */
+    public Compression(int minSize, int level, String[] types, long cacheCapacity) {
+        if (minSize < 0)
+            throw new IllegalArgumentException("illegal minSize: " + minSize);
+        if (level < 0 || level > 9)
+            throw new IllegalArgumentException("illegal level: " + level);
+        this.minSize = minSize;
+        this.level = level;
+        this.types = new String[types.length];
+        for (var i = 0; i < types.length; i++) {
+            this.types[i] = types[i].toLowerCase(Locale.ROOT);
+        }
+        this.cacheCapacity = cacheCapacity;
+        @SuppressWarnings("unchecked")
+        var codecs = (ArrayBlockingQueue<Codec>[]) new ArrayBlockingQueue<?>[EncodingEnum.values().length];
+        for (var i = 0; i < codecs.length; i++) {
+            codecs[i] = new ArrayBlockingQueue<>(MAX_POOLED);
+        }
+        this.codecs = codecs;
+    }
+
+    /**
+     * 按q值选择gzip或deflate，q相同时优先gzip，都不接受时为IDENTITY
+     * @param acceptEncoding 可以为null
+     * @return
+     */
+    public static EncodingEnum negotiate(String acceptEncoding) {
+        if (acceptEncoding == null || acceptEncoding.isEmpty()) {
+            return EncodingEnum.IDENTITY;
+        }
+        var gzip = -1.0;
+        var deflate = -1.0;
+        var any = -1.0;
+        for (var part : acceptEncoding.split(",")) {
+            var semicolon = part.indexOf(';');
+            var name = (semicolon < 0 ? part : part.substring(0, semicolon)).trim().toLowerCase(Locale.ROOT);
+            var q = semicolon < 0 ? 1.0 : parseQ(part.substring(semicolon + 1));
+            if (name.equals("gzip") || name.equals("x-gzip")) {
+                gzip = Math.max(gzip, q);
+            } else if (name.equals("deflate")) {
+                deflate = Math.max(deflate, q);
+            } else if (name.equals("*")) {
+                any = q;
+            }
+        }
+        if (gzip < 0) {
+            gzip = any;
+        }
+        if (deflate < 0) {
+            deflate = any;
+        }
+        if (gzip > 0 && gzip >= deflate) {
+            return EncodingEnum.GZIP;
+        } else if (deflate > 0) {
+            return EncodingEnum.DEFLATE;
+        }
+        return EncodingEnum.IDENTITY;
+    }
+
+    private static double parseQ(String params) {
+        for (var param : params.split(";")) {
+            param = param.trim();
+            if (param.startsWith("q=")) {
+                try {
+                    return Double.parseDouble(param.substring(2).trim());
+                } catch (NumberFormatException e) {
+                    log.debug("illegal qvalue in Accept-Encoding: {}", param);
+                    return 0;
+                }
+            }
+        }
+        return 1.0;
+    }
+
+    /**
+     * body的Content-Type与长度是否适合压缩
+     * @param contentType
+     * @param length
+     * @return
+     */
+    public boolean isCompressible(String contentType, long length) {
+        if (length < minSize || contentType == null) {
+            return false;
+        }
+        var type = contentType.toLowerCase(Locale.ROOT);
+        for (var prefix : types) {
+            if (type.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 将inputs中剩余的字节依次压缩后写入out，不改变inputs的position
+     * @param inputs
+     * @param encoding 不能为IDENTITY
+     * @param out
+     */
+    public void compress(ByteBuffer[] inputs, EncodingEnum encoding, OutputStream out) {
+        var codec = acquire(encoding);
+        try {
+            codec.compress(inputs, out);
+        } catch (IOException e) {
+            throw new UncheckedIOException("compressing response body error", e);
+        } finally {
+            release(codec);
+        }
+    }
+
+    /**
+     * 返回body压缩后的只读buffer，同一个key只压缩一次
+     * @param key 能唯一确定body内容的key，如path与ETag
+     * @param body
+     * @param encoding
+     * @return
+     */
+    public ByteBuffer variant(String key, ByteBuffer body, EncodingEnum encoding) {
+        var cacheKey = encoding.getValue() + ' ' + key;
+        synchronized (this) {
+            var cached = variants.get(cacheKey);
+            if (cached != null) {
+                return cached.duplicate();
+            }
+        }
+        var out = new ByteArrayOutputStream(Math.max(body.remaining() / 4, 64));
+        compress(new ByteBuffer[] { body }, encoding, out);
+        var compressed = ByteBuffer.allocateDirect(out.size()).put(out.toByteArray()).flip().asReadOnlyBuffer();
+        log.trace("compressed {} bytes to {} with {}, key: {}", body.remaining(), compressed.remaining(),
+            encoding.getValue(), key);
+        synchronized (this) {
+            var size = compressed.capacity();
+            if (size <= cacheCapacity && !variants.containsKey(cacheKey)) {
+                variants.put(cacheKey, compressed);
+                cachedBytes += size;
+                var it = variants.values().iterator();
+                while (cachedBytes > cacheCapacity && it.hasNext()) {
+                    cachedBytes -= it.next().capacity();
+                    it.remove();
+                }
+            }
+        }
+        return compressed.duplicate();
+    }
+
+    synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    private Codec acquire(EncodingEnum encoding) {
+        if (encoding == EncodingEnum.IDENTITY) {
+            throw new IllegalArgumentException("illegal encoding: " + encoding);
+        }
+        var codec = codecs[encoding.ordinal()].poll();
+        return codec != null ? codec : new Codec(encoding, level);
+    }
+
+    private void release(Codec codec) {
+        codec.deflater.reset();
+        codec.crc.reset();
+        if (!codecs[codec.encoding.ordinal()].offer(codec)) {
+            codec.deflater.end();
+        }
+    }
+
+    /**
+     * 一个Deflater与压缩时使用的buffer
+     */
+    private static class Codec {
+        final EncodingEnum encoding;
+        final Deflater deflater;
+        final CRC32 crc = new CRC32();
+        final byte[] scratch = new byte[SCRATCH_SIZE];
+
+        Codec(EncodingEnum encoding, int level) {
+            this.encoding = encoding;
+            // gzip使用raw deflate，自己写header与trailer
+            this.deflater = new Deflater(level, encoding == EncodingEnum.GZIP);
+        }
+
+        void compress(ByteBuffer[] inputs, OutputStream out) throws IOException {
+            var gzip = encoding == EncodingEnum.GZIP;
+            var total = 0L;
+            if (gzip) {
+                out.write(GZIP_HEADER);
+            }
+            for (var input : inputs) {
+                var src = input.duplicate();
+                total += src.remaining();
+                if (gzip) {
+                    crc.update(src.duplicate());
+                }
+                deflater.setInput(src);
+                while (!deflater.needsInput()) {
+                    drain(out);
+                }
+            }
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(out);
+            }
+            if (gzip) {
+                writeIntLE(out, (int) crc.getValue());
+                writeIntLE(out, (int) total);
+            }
+        }
+
+        private void drain(OutputStream out) throws IOException {
+            var n = deflater.deflate(scratch);
+            if (n > 0) {
+                out.write(scratch, 0, n);
+            }
+        }
+
+        private static void writeIntLE(OutputStream out, int v) throws IOException {
+            out.write(v);
+            out.write(v >>> 8);
+            out.write(v >>> 16);
+            out.write(v >>> 24);
+        }
+    }
+}
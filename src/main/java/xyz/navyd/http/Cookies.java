@@ -0,0 +1,139 @@
+package xyz.navyd.http;
+
+import java.net.HttpCookie;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Cookie header的索引，第一次访问时才扫描header，只记录name与value的偏移，
+ * value在访问时才截取。
+ *
+ * <p>pair以';'分隔，name与value以第一个'='分隔，value中可以包含'='。
+ * 没有'='的pair被忽略
+ */
+class Cookies {
+    private static final Logger log = LoggerFactory.getLogger(Cookies.class);
+
+    // 每个cookie占4个int：name start, name end, value start, value end
+    private static final int FIELDS = 4;
+
+    private final String header;
+    private int[] offsets;
+    private int count;
+
+    Cookies(String header) {
+        this.header = header;
+    }
+
+    int size() {
+        index();
+        return count;
+    }
+
+    /**
+     * 返回第一个同名cookie的value，去掉两侧的双引号
+     * @param name
+     * @return 不存在时为null
+     */
+    String get(String name) {
+        index();
+        for (var i = 0; i < count; i++) {
+            var start = offsets[FIELDS * i];
+            var len = offsets[FIELDS * i + 1] - start;
+            if (len == name.length() && header.regionMatches(start, name, 0, len)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 为每个cookie创建HttpCookie，name不合法的cookie被忽略
+     * @return
+     */
+    List<HttpCookie> toList() {
+        index();
+        var list = new ArrayList<HttpCookie>(count);
+        for (var i = 0; i < count; i++) {
+            var start = offsets[FIELDS * i];
+            var name = header.substring(start, offsets[FIELDS * i + 1]);
+            try {
+                list.add(new HttpCookie(name, value(i)));
+            } catch (IllegalArgumentException e) {
+                log.debug("ignored illegal cookie name: {}", name);
+            }
+        }
+        return list;
+    }
+
+    private String value(int i) {
+        var start = offsets[FIELDS * i + 2];
+        var end = offsets[FIELDS * i + 3];
+        if (end - start >= 2 && header.charAt(start) == '"' && header.charAt(end - 1) == '"') {
+            start++;
+            end--;
+        }
+        return header.substring(start, end);
+    }
+
+    private void index() {
+        if (offsets != null) {
+            return;
+        }
+        offsets = new int[FIELDS * 8];
+        var len = header.length();
+        var pos = 0;
+        while (pos < len) {
+            var end = header.indexOf(';', pos);
+            if (end < 0) {
+                end = len;
+            }
+            var eq = header.indexOf('=', pos);
+            if (eq < 0 || eq >= end) {
+                log.debug("ignored cookie without '=': {}", header.substring(pos, end));
+            } else {
+                var nameStart = skipWhitespace(pos, eq);
+                var nameEnd = trimWhitespace(nameStart, eq);
+                var valueStart = skipWhitespace(eq + 1, end);
+                var valueEnd = trimWhitespace(valueStart, end);
+                if (nameStart < nameEnd) {
+                    add(nameStart, nameEnd, valueStart, valueEnd);
+                }
+            }
+            pos = end + 1;
+        }
+    }
+
+    private void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (FIELDS * (count + 1) > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        var base = FIELDS * count++;
+        offsets[base] = nameStart;
+        offsets[base + 1] = nameEnd;
+        offsets[base + 2] = valueStart;
+        offsets[base + 3] = valueEnd;
+    }
+
+    private int skipWhitespace(int start, int end) {
+        while (start < end && isWhitespace(header.charAt(start))) {
+            start++;
+        }
+        return start;
+    }
+
+    private int trimWhitespace(int start, int end) {
+        while (end > start && isWhitespace(header.charAt(end - 1))) {
+            end--;
+        }
+        return end;
+    }
+
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t';
+    }
+}
@@ -0,0 +1,118 @@
+package xyz.navyd.http;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import xyz.navyd.buffer.PooledBuffer;
+
+/**
+ * 序列化后的response，head与body位于多个buffer中，
+ * 可以一次gathering write写出。body为文件时在buffers之后使用{@link FileRegion}写出，
+ * 为{@link StreamingBody}时在buffers之后写出生成的数据。写出后需要release
+ */
+public class EncodedResponse {
+    private final List<PooledBuffer> pooled;
+    private final ByteBuffer[] buffers;
+    private final FileRegion file;
+    private final StreamingBody stream;
+
+    EncodedResponse(List<PooledBuffer> pooled) {
+        this(pooled, null, null);
+    }
+
+    /**
+     * @param pooled head，http/2时为空
+     * @param stream 在buffers之后写出的流式body
+     */
+    EncodedResponse(List<PooledBuffer> pooled, StreamingBody stream) {
+        this(pooled, null, null, stream);
+    }
+
+    /**
+     * @param pooled 写出后归还的buffer
+     * @param body 不属于pool的body，如mapped buffer，可以为null
+     * @param file 在buffers之后写出的文件，可以为null
+     */
+    EncodedResponse(List<PooledBuffer> pooled, ByteBuffer body, FileRegion file) {
+        this(pooled, body, file, null);
+    }
+
+    private EncodedResponse(List<PooledBuffer> pooled, ByteBuffer body, FileRegion file, StreamingBody stream) {
+        this.pooled = pooled;
+        this.file = file;
+        this.stream = stream;
+        this.buffers = new ByteBuffer[pooled.size() + (body != null ? 1 : 0)];
+        for (var i = 0; i < pooled.size(); i++) {
+            buffers[i] = pooled.get(i).buffer();
+        }
+        if (body != null) {
+            buffers[buffers.length - 1] = body;
+        }
+    }
+
+    /**
+     * 读模式的buffer，按顺序写出
+     * @return
+     */
+    public ByteBuffer[] buffers() {
+        return buffers;
+    }
+
+    /**
+     * buffers之后需要写出的文件
+     * @return 没有时为null
+     */
+    public FileRegion file() {
+        return file;
+    }
+
+    /**
+     * buffers之后需要写出的流式body
+     * @return 没有时为null
+     */
+    public StreamingBody stream() {
+        return stream;
+    }
+
+    public boolean isWritten() {
+        return isHeadWritten() && (file == null || file.isWritten()) && (stream == null || stream.isWritten());
+    }
+
+    /**
+     * buffers已写完，流式body暂时没有可写的数据，需要等待生成
+     * @return
+     */
+    public boolean isWaiting() {
+        return stream != null && isHeadWritten() && stream.available() == 0 && !stream.isWritten()
+            && !stream.isFailed();
+    }
+
+    private boolean isHeadWritten() {
+        return buffers.length == 0 || !buffers[buffers.length - 1].hasRemaining();
+    }
+
+    /**
+     * 剩余的字节数，不包括流式body
+     * @return
+     */
+    public long remaining() {
+        var n = file != null ? file.remaining() : 0L;
+        for (var buf : buffers) {
+            n += buf.remaining();
+        }
+        return n;
+    }
+
+    public void release() {
+        for (var buf : pooled) {
+            buf.release();
+        }
+        pooled.clear();
+        if (file != null) {
+            file.release();
+        }
+        if (stream != null) {
+            stream.release();
+        }
+    }
+}
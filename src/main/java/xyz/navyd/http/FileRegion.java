@@ -0,0 +1,96 @@
+package xyz.navyd.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 文件中的一段区域，作为response body时使用{@link FileChannel#transferTo}写出，
+ * 不经过java heap。写出后关闭文件
+ */
+public class FileRegion {
+    private static final Logger log = LoggerFactory.getLogger(FileRegion.class);
+
+    private final FileChannel file;
+    private final long count;
+    private long position;
+    private long transferred;
+
+    public FileRegion(FileChannel file, long position, long count) {
+        if (position < 0 || count < 0)
+            throw new IllegalArgumentException("illegal region, position: " + position + ", count: " + count);
+        this.file = file;
+        this.position = position;
+        this.count = count;
+    }
+
+    public long count() {
+        return count;
+    }
+
+    public long remaining() {
+        return count - transferred;
+    }
+
+    public boolean isWritten() {
+        return transferred >= count;
+    }
+
+    /**
+     * 尽可能多地写出剩余部分，返回本次写出的字节数
+     * @param target
+     * @return
+     * @throws IOException
+     */
+    public long transferTo(WritableByteChannel target) throws IOException {
+        if (isWritten()) {
+            return 0;
+        }
+        var n = file.transferTo(position, remaining(), target);
+        position += n;
+        transferred += n;
+        return n;
+    }
+
+    /**
+     * 将剩余部分读入dst，用于不能transferTo的场景如http/2 DATA frame
+     * @param dst
+     * @return 本次读取的字节数
+     * @throws IOException
+     */
+    public int read(ByteBuffer dst) throws IOException {
+        if (isWritten()) {
+            return 0;
+        }
+        var limit = dst.limit();
+        if (dst.remaining() > remaining()) {
+            dst.limit(dst.position() + (int) remaining());
+        }
+        try {
+            var n = file.read(dst, position);
+            if (n < 0) {
+                throw new IOException("file truncated, remaining: " + remaining());
+            }
+            position += n;
+            transferred += n;
+            return n;
+        } finally {
+            dst.limit(limit);
+        }
+    }
+
+    /**
+     * 关闭文件
+     */
+    public void release() {
+        try {
+            file.close();
+        } catch (IOException e) {
+            log.warn("closing file error: {}", e.getMessage());
+        }
+    }
+}
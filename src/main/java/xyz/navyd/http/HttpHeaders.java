@@ -0,0 +1,282 @@
+package xyz.navyd.http;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * request headers的扁平索引。
+ *
+ * <p>header行的字节复制到一个byte[]中，只记录name与value的偏移，
+ * 在访问时才解码为String。name不区分大小写，常用header在解析时记录到固定的slot中，
+ * 查找时不需要扫描。同名header只返回第一个，{@link #getAll(int)}返回所有
+ */
+public class HttpHeaders {
+    private static final Logger log = LoggerFactory.getLogger(HttpHeaders.class);
+
+    public static final int HOST = 0;
+    public static final int CONTENT_LENGTH = 1;
+    public static final int CONNECTION = 2;
+    public static final int COOKIE = 3;
+    public static final int TRANSFER_ENCODING = 4;
+    public static final int CONTENT_TYPE = 5;
+
+    private static final String[] WELL_KNOWN = { "Host", "Content-Length", "Connection", "Cookie",
+        "Transfer-Encoding", "Content-Type" };
+    private static final byte[][] WELL_KNOWN_LOWER = new byte[WELL_KNOWN.length][];
+    // 每个header占4个int：name start, name end, value start, value end
+    private static final int FIELDS = 4;
+
+    static {
+        for (var i = 0; i < WELL_KNOWN.length; i++) {
+            WELL_KNOWN_LOWER[i] = WELL_KNOWN[i].toLowerCase().getBytes(StandardCharsets.ISO_8859_1);
+        }
+    }
+
+    private byte[] data = new byte[512];
+    private int size;
+    private int[] offsets = new int[FIELDS * 16];
+    private int count;
+    // well-known header的下标，不存在时为-1
+    private final int[] slots = { -1, -1, -1, -1, -1, -1 };
+    // 每个well-known header出现的次数
+    private final int[] slotCounts = new int[WELL_KNOWN.length];
+    // 已解码的value
+    private String[] values;
+
+    /**
+     * 复制buf中从position开始len个字节的header行(不含\r\n)，不改变buf的position
+     * @param buf
+     * @param len
+     */
+    void add(ByteBuffer buf, int len) {
+        ensureCapacity(len);
+        buf.get(buf.position(), data, size, len);
+        var start = size;
+        var end = size + len;
+        size = end;
+        var colon = -1;
+        for (var i = start; i < end; i++) {
+            if (data[i] == ':') {
+                colon = i;
+                break;
+            }
+        }
+        // name中不允许空白
+        if (colon <= start || isWhitespace(data[colon - 1])) {
+            var line = new String(data, start, len, StandardCharsets.ISO_8859_1);
+            log.error("parsing header error with ':', header line: {}", line);
+            throw new IllegalArgumentException("illegal header");
+        }
+        var valueStart = colon + 1;
+        while (valueStart < end && isWhitespace(data[valueStart])) {
+            valueStart++;
+        }
+        var valueEnd = end;
+        while (valueEnd > valueStart && isWhitespace(data[valueEnd - 1])) {
+            valueEnd--;
+        }
+        addOffsets(start, colon, valueStart, valueEnd);
+    }
+
+    /**
+     * 添加一个header，用于非解析得到的request
+     * @param name
+     * @param value
+     */
+    public void add(String name, String value) {
+        var nameBytes = name.getBytes(StandardCharsets.ISO_8859_1);
+        var valueBytes = value.trim().getBytes(StandardCharsets.ISO_8859_1);
+        ensureCapacity(nameBytes.length + valueBytes.length);
+        var start = size;
+        System.arraycopy(nameBytes, 0, data, size, nameBytes.length);
+        size += nameBytes.length;
+        System.arraycopy(valueBytes, 0, data, size, valueBytes.length);
+        size += valueBytes.length;
+        addOffsets(start, start + nameBytes.length, start + nameBytes.length, size);
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 不区分大小写查找第一个同名header的value
+     * @param name
+     * @return 不存在时为null
+     */
+    public String get(String name) {
+        var slot = wellKnownIndex(name);
+        if (slot >= 0) {
+            return get(slot);
+        }
+        for (var i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return value(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 通过well-known slot查找，如{@link #CONTENT_LENGTH}
+     * @param slot
+     * @return 不存在时为null
+     */
+    public String get(int slot) {
+        var i = slots[slot];
+        return i < 0 ? null : value(i);
+    }
+
+    /**
+     * well-known header出现的次数
+     * @param slot
+     * @return
+     */
+    public int count(int slot) {
+        return slotCounts[slot];
+    }
+
+    /**
+     * 按出现顺序返回well-known header的所有value
+     * @param slot
+     * @return
+     */
+    public List<String> getAll(int slot) {
+        var all = new ArrayList<String>(slotCounts[slot]);
+        if (slotCounts[slot] == 0) {
+            return all;
+        }
+        for (var i = slots[slot]; i < count; i++) {
+            var start = offsets[FIELDS * i];
+            if (wellKnownIndex(start, offsets[FIELDS * i + 1]) == slot) {
+                all.add(value(i));
+            }
+        }
+        return all;
+    }
+
+    public boolean contains(String name) {
+        return get(name) != null;
+    }
+
+    /**
+     * 解码所有header为不区分大小写的unmodifiable map
+     * @return
+     */
+    public Map<String, String> toMap() {
+        var map = new TreeMap<String, String>(String.CASE_INSENSITIVE_ORDER);
+        for (var i = 0; i < count; i++) {
+            map.putIfAbsent(name(i), value(i));
+        }
+        return Collections.unmodifiableMap(map);
+    }
+
+    @Override
+    public String toString() {
+        return toMap().toString();
+    }
+
+    private String name(int i) {
+        var start = offsets[FIELDS * i];
+        return new String(data, start, offsets[FIELDS * i + 1] - start, StandardCharsets.ISO_8859_1);
+    }
+
+    private String value(int i) {
+        if (values == null) {
+            values = new String[offsets.length / FIELDS];
+        }
+        var v = values[i];
+        if (v == null) {
+            var start = offsets[FIELDS * i + 2];
+            v = new String(data, start, offsets[FIELDS * i + 3] - start, StandardCharsets.ISO_8859_1);
+            values[i] = v;
+        }
+        return v;
+    }
+
+    private void addOffsets(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (FIELDS * (count + 1) > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+            if (values != null) {
+                values = Arrays.copyOf(values, offsets.length / FIELDS);
+            }
+        }
+        var base = FIELDS * count;
+        offsets[base] = nameStart;
+        offsets[base + 1] = nameEnd;
+        offsets[base + 2] = valueStart;
+        offsets[base + 3] = valueEnd;
+        var slot = wellKnownIndex(nameStart, nameEnd);
+        if (slot >= 0) {
+            if (slots[slot] < 0) {
+                slots[slot] = count;
+            }
+            slotCounts[slot]++;
+        }
+        count++;
+    }
+
+    private void ensureCapacity(int n) {
+        if (size + n > data.length) {
+            data = Arrays.copyOf(data, Math.max(data.length * 2, size + n));
+        }
+    }
+
+    private boolean nameEquals(int i, String name) {
+        var start = offsets[FIELDS * i];
+        var len = offsets[FIELDS * i + 1] - start;
+        if (len != name.length()) {
+            return false;
+        }
+        for (var j = 0; j < len; j++) {
+            if (toLower(data[start + j]) != toLower((byte) name.charAt(j))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private int wellKnownIndex(int start, int end) {
+        var len = end - start;
+        outer:
+        for (var slot = 0; slot < WELL_KNOWN_LOWER.length; slot++) {
+            var lower = WELL_KNOWN_LOWER[slot];
+            if (lower.length != len) {
+                continue;
+            }
+            for (var j = 0; j < len; j++) {
+                if (toLower(data[start + j]) != lower[j]) {
+                    continue outer;
+                }
+            }
+            return slot;
+        }
+        return -1;
+    }
+
+    private static int wellKnownIndex(String name) {
+        for (var slot = 0; slot < WELL_KNOWN.length; slot++) {
+            if (WELL_KNOWN[slot].equalsIgnoreCase(name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private static byte toLower(byte b) {
+        return b >= 'A' && b <= 'Z' ? (byte) (b + 32) : b;
+    }
+
+    private static boolean isWhitespace(byte b) {
+        return b == ' ' || b == '\t';
+    }
+}
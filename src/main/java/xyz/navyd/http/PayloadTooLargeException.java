@@ -0,0 +1,12 @@
+package xyz.navyd.http;
+
+/**
+ * request body超过大小限制，对应413
+ */
+public class PayloadTooLargeException extends IllegalArgumentException {
+    private static final long serialVersionUID = 1L;
+
+    public PayloadTooLargeException(String message) {
+        super(message);
+    }
+}
@@ -0,0 +1,193 @@
+package xyz.navyd.http;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * query string的索引，只扫描一次query string，记录每个参数name与value的偏移。
+ *
+ * <p>同一个name可以有多个value，没有'='的参数value为空字符串。
+ * name与value在访问时才按application/x-www-form-urlencoded解码，
+ * 不含'%'与'+'时直接截取不解码
+ */
+public class QueryParams {
+    private static final Logger log = LoggerFactory.getLogger(QueryParams.class);
+
+    // 每个参数占4个int：name start, name end, value start, value end
+    private static final int FIELDS = 4;
+
+    private final String query;
+    private int[] offsets = new int[FIELDS * 8];
+    private int count;
+
+    public QueryParams(String query) {
+        this.query = query;
+        index();
+    }
+
+    public int size() {
+        return count;
+    }
+
+    /**
+     * 返回第一个value
+     * @param name 解码后的name
+     * @return
+     */
+    public Optional<String> get(String name) {
+        for (var i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return Optional.of(value(i));
+            }
+        }
+        return Optional.empty();
+    }
+
+    /**
+     * 按出现顺序返回所有value
+     * @param name 解码后的name
+     * @return 不存在时为空list
+     */
+    public List<String> getAll(String name) {
+        List<String> values = null;
+        for (var i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                if (values == null) {
+                    values = new ArrayList<>(2);
+                }
+                values.add(value(i));
+            }
+        }
+        return values != null ? values : List.of();
+    }
+
+    public boolean contains(String name) {
+        for (var i = 0; i < count; i++) {
+            if (nameEquals(i, name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 按出现顺序返回解码后的name
+     * @return
+     */
+    public Set<String> names() {
+        var names = new LinkedHashSet<String>();
+        for (var i = 0; i < count; i++) {
+            names.add(decode(offsets[FIELDS * i], offsets[FIELDS * i + 1]));
+        }
+        return names;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryParams [" + query + "]";
+    }
+
+    private void index() {
+        var len = query.length();
+        var pos = 0;
+        while (pos <= len) {
+            var end = query.indexOf('&', pos);
+            if (end < 0) {
+                end = len;
+            }
+            if (end > pos) {
+                var eq = query.indexOf('=', pos);
+                if (eq < 0 || eq > end) {
+                    add(pos, end, end, end);
+                } else if (eq > pos) {
+                    add(pos, eq, eq + 1, end);
+                } else {
+                    log.debug("ignored query param without name: {}", query.substring(pos, end));
+                }
+            }
+            pos = end + 1;
+        }
+    }
+
+    private void add(int nameStart, int nameEnd, int valueStart, int valueEnd) {
+        if (FIELDS * (count + 1) > offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        var base = FIELDS * count++;
+        offsets[base] = nameStart;
+        offsets[base + 1] = nameEnd;
+        offsets[base + 2] = valueStart;
+        offsets[base + 3] = valueEnd;
+    }
+
+    private boolean nameEquals(int i, String name) {
+        var start = offsets[FIELDS * i];
+        var end = offsets[FIELDS * i + 1];
+        if (!needsDecode(start, end)) {
+            return end - start == name.length() && query.regionMatches(start, name, 0, name.length());
+        }
+        return decode(start, end).equals(name);
+    }
+
+    private String value(int i) {
+        return decode(offsets[FIELDS * i + 2], offsets[FIELDS * i + 3]);
+    }
+
+    private boolean needsDecode(int start, int end) {
+        for (var i = start; i < end; i++) {
+            var c = query.charAt(i);
+            if (c == '%' || c == '+') {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 解码query[start, end)，'+'为空格，%XX为UTF-8字节。
+     *
+     * <p>request line按ISO-8859-1解码，每个char即一个原始字节，
+     * 解码后的字节不会多于原字节，直接写入一个等长的byte[]
+     */
+    private String decode(int start, int end) {
+        if (!needsDecode(start, end)) {
+            return query.substring(start, end);
+        }
+        var bytes = new byte[end - start];
+        var n = 0;
+        for (var i = start; i < end; i++) {
+            var c = query.charAt(i);
+            if (c == '+') {
+                bytes[n++] = ' ';
+            } else if (c == '%') {
+                if (i + 2 >= end) {
+                    throw illegalEncoding(start, end);
+                }
+                var hi = Character.digit(query.charAt(i + 1), 16);
+                var lo = Character.digit(query.charAt(i + 2), 16);
+                if (hi < 0 || lo < 0) {
+                    throw illegalEncoding(start, end);
+                }
+                bytes[n++] = (byte) (hi << 4 | lo);
+                i += 2;
+            } else {
+                bytes[n++] = (byte) c;
+            }
+        }
+        return new String(bytes, 0, n, StandardCharsets.UTF_8);
+    }
+
+    private IllegalArgumentException illegalEncoding(int start, int end) {
+        var s = query.substring(start, end);
+        log.error("illegal percent encoding in query: {}", s);
+        return new IllegalArgumentException("illegal percent encoding: " + s);
+    }
+}
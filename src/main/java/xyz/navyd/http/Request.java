@@ -1,10 +1,11 @@
 package xyz.navyd.http;
 
+import java.io.InputStream;
 import java.net.HttpCookie;
 import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
 import java.util.ArrayList;
 import java.util.Collections;
-import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
@@ -16,40 +17,105 @@ public class Request {
     private MethodEnum method;
     private String path;
     private String query;
+    private QueryParams queryParams;
     private VersionEnum version;
-    private Map<String, String> headers;
-    private ByteBuffer body;
-    private List<HttpCookie> cookies;
+    private final HttpHeaders headers = new HttpHeaders();
+    private RequestBody body = RequestBody.EMPTY;
+    // 第一次访问时才从Cookie header创建
+    private Cookies cookies;
+    private List<HttpCookie> addedCookies;
+    private List<HttpCookie> cookieList;
 
     /**
-     * 不支持file上传，存在buffer size限制
-     * 
-     * @param <T>
+     * 内存中的body
      * @return
+     * @throws IllegalStateException body过大已写入临时文件时，使用{@link #getBodyStream()}
      */
     public ByteBuffer getBody() {
-        return body;
+        return body.buffer();
+    }
+
+    /**
+     * body的字节数，chunked body为解码后的长度
+     * @return
+     */
+    public long getBodyLength() {
+        return body.length();
+    }
+
+    /**
+     * 从头读取body，不要求body在内存中
+     * @return
+     */
+    public ReadableByteChannel getBodyChannel() {
+        return body.channel();
+    }
+
+    /**
+     * 从头读取body，不要求body在内存中
+     * @return
+     */
+    public InputStream getBodyStream() {
+        return body.stream();
     }
 
     public Request(MethodEnum method, String path, String query, VersionEnum version) {
         this.method = method;
         this.version = version;
-        this.headers = new HashMap<>();
         this.path = path;
         this.query = query;
-        this.cookies = new ArrayList<>(16);
     }
 
     /**
-     * 返回一个unmodifiableList
+     * 返回一个unmodifiableList，第一次调用时解析Cookie header
      * @return
      */
     public List<HttpCookie> getCookies() {
-        return Collections.unmodifiableList(cookies);
+        if (cookieList == null) {
+            var list = cookies() != null ? cookies().toList() : new ArrayList<HttpCookie>();
+            if (addedCookies != null) {
+                list.addAll(addedCookies);
+            }
+            cookieList = Collections.unmodifiableList(list);
+        }
+        return cookieList;
+    }
+
+    /**
+     * 返回名为name的cookie value，只建立索引，不创建HttpCookie
+     * @param name
+     * @return
+     */
+    public Optional<String> getCookie(String name) {
+        var c = cookies();
+        var value = c != null ? c.get(name) : null;
+        if (value == null && addedCookies != null) {
+            for (var cookie : addedCookies) {
+                if (cookie.getName().equals(name)) {
+                    return Optional.of(cookie.getValue());
+                }
+            }
+        }
+        return Optional.ofNullable(value);
     }
 
     public void addCookie(HttpCookie cookie) {
-        this.cookies.add(cookie);
+        if (addedCookies == null) {
+            addedCookies = new ArrayList<>(4);
+        }
+        addedCookies.add(cookie);
+        cookieList = null;
+    }
+
+    private Cookies cookies() {
+        if (cookies == null) {
+            var header = headers.get(HttpHeaders.COOKIE);
+            if (header == null) {
+                return null;
+            }
+            cookies = new Cookies(header);
+        }
+        return cookies;
     }
 
     public MethodEnum getMethod() {
@@ -61,23 +127,74 @@ public class Request {
     }
 
     public void setBody(ByteBuffer body) {
+        this.body = RequestBody.of(body);
+    }
+
+    /**
+     * body可能来自pool或临时文件，在{@link #release()}时释放
+     * @param body
+     */
+    public void setBody(RequestBody body) {
         this.body = body;
     }
 
+    /**
+     * 释放request持有的body，之后body不可再使用。
+     *
+     * <p>由server在controller返回后调用
+     */
+    public void release() {
+        if (body != null) {
+            body.release();
+        }
+    }
+
     public void setHeader(String key, String val) {
-        this.headers.put(key, val);
+        this.headers.add(key, val);
     }
 
+    /**
+     * 不区分大小写
+     * @param key
+     * @return
+     */
     public Optional<String> getHeader(String key) {
         return Optional.ofNullable(this.headers.get(key));
     }
 
     /**
-     * 返回一个unmodifiable map
+     * 返回一个不区分大小写的unmodifiable map，每次调用都会解码所有header，
+     * 只读取少数header时使用{@link #getHeader(String)}
      * @return
      */
     public Map<String, String> getHeaders() {
-        return Collections.unmodifiableMap(headers);
+        return headers.toMap();
+    }
+
+    public HttpHeaders getHttpHeaders() {
+        return headers;
+    }
+
+    /**
+     * HTTP/1.1默认持久连接，除非Connection: close；
+     * HTTP/1.0需要Connection: keep-alive
+     * @return
+     */
+    public boolean isKeepAlive() {
+        var connection = Optional.ofNullable(headers.get(HttpHeaders.CONNECTION));
+        if (version == VersionEnum.HTTP1_0) {
+            return connection.map(v -> containsToken(v, "keep-alive")).orElse(false);
+        }
+        return connection.map(v -> !containsToken(v, "close")).orElse(true);
+    }
+
+    private static boolean containsToken(String value, String token) {
+        for (var s : value.split(",")) {
+            if (s.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
     }
 
     public String getPath() {
@@ -88,6 +205,17 @@ public class Request {
         return Optional.ofNullable(query);
     }
 
+    /**
+     * 第一次调用时为query string建立索引，没有query时为空
+     * @return
+     */
+    public QueryParams getQueryParams() {
+        if (queryParams == null) {
+            queryParams = new QueryParams(query != null ? query : "");
+        }
+        return queryParams;
+    }
+
     @Override
     public String toString() {
         return "Request [body=" + body + ", headers=" + headers + ", method=" + method + ", path=" + path + ", query="
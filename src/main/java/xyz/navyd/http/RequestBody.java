@@ -0,0 +1,291 @@
+package xyz.navyd.http;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.buffer.PooledBuffer;
+
+/**
+ * request body的内容，由parser随socket读取逐段追加。
+ *
+ * <p>不超过spillThreshold时保存在一个pooled buffer中，超过后写入临时文件，
+ * 大body不需要放入一个buffer或heap中。{@link #release()}时归还buffer并删除临时文件
+ */
+public class RequestBody {
+    private static final Logger log = LoggerFactory.getLogger(RequestBody.class);
+
+    private static final int INITIAL_SIZE = 1024 * 4;
+    static final RequestBody EMPTY = of(ByteBuffer.allocate(0));
+
+    private final BufferPool pool;
+    private final int spillThreshold;
+    private PooledBuffer pooled;
+    // 内存中的body，来自pooled或of(ByteBuffer)
+    private ByteBuffer buf;
+    private FileChannel file;
+    private long length;
+    private boolean finished;
+
+    /**
+     * 用于逐段接收body，如http/2的DATA frame，接收完成后调用{@link #finish()}
+     * @param pool
+     * @param spillThreshold 超过该字节数时写入临时文件
+     * @param expectedLength 已知的body长度，未知时为-1
+     */
+    public RequestBody(BufferPool pool, int spillThreshold, long expectedLength) {
+        this.pool = pool;
+        this.spillThreshold = spillThreshold;
+        if (expectedLength > spillThreshold) {
+            spill();
+        } else {
+            var size = expectedLength >= 0 ? (int) expectedLength : Math.min(INITIAL_SIZE, spillThreshold);
+            pooled = pool.acquire(Math.max(size, 1));
+            buf = pooled.buffer();
+        }
+    }
+
+    private RequestBody(ByteBuffer buf) {
+        this.pool = null;
+        this.spillThreshold = buf.remaining();
+        this.buf = buf;
+        this.length = buf.remaining();
+        this.finished = true;
+    }
+
+    /**
+     * 包装一个读模式的buffer作为body
+     * @param buf
+     * @return
+     */
+    public static RequestBody of(ByteBuffer buf) {
+        return new RequestBody(buf);
+    }
+
+    /**
+     * 追加src中所有剩余字节
+     * @param src
+     * @throws UncheckedIOException 写入临时文件出错时
+     */
+    public void append(ByteBuffer src) {
+        var n = src.remaining();
+        if (file == null && length + n > spillThreshold) {
+            spill();
+        }
+        if (file != null) {
+            try {
+                while (src.hasRemaining()) {
+                    file.write(src);
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException("writing request body to temp file error", e);
+            }
+        } else {
+            if (buf.remaining() < n) {
+                grow(length + n);
+            }
+            buf.put(src);
+        }
+        length += n;
+    }
+
+    /**
+     * body已接收完成，之后只能读取
+     */
+    public void finish() {
+        if (file == null) {
+            buf.flip();
+        }
+        finished = true;
+        log.trace("request body finished, length: {}, in memory: {}", length, file == null);
+    }
+
+    public long length() {
+        return length;
+    }
+
+    public boolean isInMemory() {
+        return file == null;
+    }
+
+    /**
+     * 内存中body的只读视图
+     * @return
+     * @throws IllegalStateException body已写入临时文件时
+     */
+    public ByteBuffer buffer() {
+        checkReadable();
+        if (file != null) {
+            throw new IllegalStateException("request body spilled to file, length: " + length);
+        }
+        return buf.asReadOnlyBuffer();
+    }
+
+    /**
+     * 从头读取body的channel，每次调用返回独立的读取位置
+     * @return
+     */
+    public ReadableByteChannel channel() {
+        checkReadable();
+        if (file == null) {
+            return Channels.newChannel(new ByteBufferInputStream(buf.duplicate()));
+        }
+        return new FileReadChannel(file, length);
+    }
+
+    /**
+     * 从头读取body的InputStream
+     * @return
+     */
+    public InputStream stream() {
+        checkReadable();
+        if (file == null) {
+            return new ByteBufferInputStream(buf.duplicate());
+        }
+        return Channels.newInputStream(channel());
+    }
+
+    /**
+     * 通过{@link #of(ByteBuffer)}包装的body不需要释放
+     */
+    public void release() {
+        if (pool == null) {
+            return;
+        }
+        if (pooled != null) {
+            pooled.release();
+            pooled = null;
+        }
+        buf = null;
+        if (file != null) {
+            try {
+                file.close();
+            } catch (IOException e) {
+                log.warn("closing request body temp file error: {}", e.getMessage());
+            }
+        }
+    }
+
+    private void checkReadable() {
+        if (!finished) {
+            throw new IllegalStateException("request body not finished");
+        }
+        if (buf == null && file == null || file != null && !file.isOpen()) {
+            throw new IllegalStateException("request body already released");
+        }
+    }
+
+    private void grow(long minCapacity) {
+        var size = (int) Math.min(Math.max(minCapacity, (long) buf.capacity() * 2), spillThreshold);
+        var bigger = pool.acquire(size);
+        buf.flip();
+        bigger.buffer().put(buf);
+        pooled.release();
+        pooled = bigger;
+        buf = bigger.buffer();
+    }
+
+    /**
+     * 将已接收的内容移到临时文件，之后的内容直接写入文件
+     */
+    private void spill() {
+        try {
+            var path = Files.createTempFile("http-body-", ".tmp");
+            file = FileChannel.open(path, StandardOpenOption.READ, StandardOpenOption.WRITE,
+                StandardOpenOption.DELETE_ON_CLOSE);
+            log.debug("spilling request body to temp file: {}", path);
+            if (buf != null) {
+                buf.flip();
+                while (buf.hasRemaining()) {
+                    file.write(buf);
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException("creating request body temp file error", e);
+        }
+        if (pooled != null) {
+            pooled.release();
+            pooled = null;
+        }
+        buf = null;
+    }
+
+    private static class FileReadChannel implements ReadableByteChannel {
+        private final FileChannel file;
+        private final long length;
+        private long position;
+        private boolean open = true;
+
+        FileReadChannel(FileChannel file, long length) {
+            this.file = file;
+            this.length = length;
+        }
+
+        @Override
+        public int read(ByteBuffer dst) throws IOException {
+            if (!open) {
+                throw new ClosedChannelException();
+            }
+            if (position >= length) {
+                return -1;
+            }
+            var n = file.read(dst, position);
+            if (n > 0) {
+                position += n;
+            }
+            return n;
+        }
+
+        @Override
+        public boolean isOpen() {
+            return open;
+        }
+
+        @Override
+        public void close() {
+            open = false;
+        }
+    }
+
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buf;
+
+        ByteBufferInputStream(ByteBuffer buf) {
+            this.buf = buf;
+        }
+
+        @Override
+        public int read() {
+            return buf.hasRemaining() ? buf.get() & 0xff : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            if (!buf.hasRemaining()) {
+                return -1;
+            }
+            var n = Math.min(len, buf.remaining());
+            buf.get(b, off, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buf.remaining();
+        }
+    }
+}
@@ -1,140 +1,513 @@
 package xyz.navyd.http;
 
 import java.io.IOException;
-import java.net.HttpCookie;
 import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Optional;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import xyz.navyd.buffer.BufferPool;
 import xyz.navyd.http.enums.MethodEnum;
 import xyz.navyd.http.enums.VersionEnum;
 
+/**
+ * 可恢复的request解析器，在多次read之间保存解析状态。
+ *
+ * <p>每次有新数据时调用{@link #parse(ByteBuffer)}，已解析的字节会被消费，
+ * 未完成的行会保留在buf中，但已扫描过的字节不会被重复扫描。
+ * body按Content-Length或Transfer-Encoding: chunked逐段追加到{@link RequestBody}，
+ * 超过spillThreshold时写入临时文件，超过maxBodySize时抛出{@link PayloadTooLargeException}。
+ * 非线程安全，每个连接使用一个实例
+ */
 public class RequestParser {
     private static final Logger log = LoggerFactory.getLogger(RequestParser.class);
 
     private static final int BUF_SIZE_LIMIT = 1024 * 100;
+    private static final long DEFAULT_MAX_BODY_SIZE = 1024 * 1024 * 16;
+    private static final int DEFAULT_SPILL_THRESHOLD = 1024 * 64;
+    // chunk size行的长度限制，包括chunk extension
+    private static final int CHUNK_LINE_LIMIT = 1024;
+
+    private enum State {
+        REQUEST_LINE, HEADERS, BODY, CHUNK_SIZE, CHUNK_DATA, CHUNK_END, TRAILERS, DONE
+    }
+
     private final int bufSize;
+    private final BufferPool pool;
+    private final long maxBodySize;
+    private final int spillThreshold;
+    private State state = State.REQUEST_LINE;
+    private Request request;
+    private RequestBody body;
+    // Content-Length body或当前chunk剩余的字节数
+    private long remaining;
+    // 从buf.position开始已扫描过但未找到'\n'的字节数
+    private int scanned;
+    // 已消费的request line与headers字节数，不包括chunk size行
+    private int headSize;
+    // 已消费的trailer字节数，与headers使用相同的限制
+    private int trailerSize;
 
     public RequestParser() {
         this(1024*10);
     }
-    
+
+    /**
+     * @param bufSize request line与headers的大小限制
+     */
     public RequestParser(int bufSize) {
+        this(bufSize, BufferPool.getDefault());
+    }
+
+    /**
+     * @param bufSize request line与headers的大小限制
+     * @param pool body buffer的来源
+     */
+    public RequestParser(int bufSize, BufferPool pool) {
+        this(bufSize, pool, DEFAULT_MAX_BODY_SIZE, DEFAULT_SPILL_THRESHOLD);
+    }
+
+    /**
+     * @param bufSize request line与headers的大小限制
+     * @param pool body buffer的来源
+     * @param maxBodySize body的大小限制
+     * @param spillThreshold body超过该大小时写入临时文件
+     */
+    public RequestParser(int bufSize, BufferPool pool, long maxBodySize, int spillThreshold) {
         if (bufSize <= 0 || bufSize > BUF_SIZE_LIMIT)
             throw new IllegalArgumentException("illegal bufSize: " + bufSize);
+        if (maxBodySize < 0)
+            throw new IllegalArgumentException("illegal maxBodySize: " + maxBodySize);
+        if (spillThreshold <= 0)
+            throw new IllegalArgumentException("illegal spillThreshold: " + spillThreshold);
         this.bufSize = bufSize;
+        this.pool = pool;
+        this.maxBodySize = maxBodySize;
+        this.spillThreshold = spillThreshold;
+    }
+
+    public int getBufSize() {
+        return bufSize;
     }
 
+    /**
+     * 从阻塞的channel中读取直到一个完整的request
+     * @param channel
+     * @return
+     * @throws IOException
+     */
     public Request parse(ReadableByteChannel channel) throws IOException {
-        var buf = ByteBuffer.allocate(bufSize);
+        reset();
+        var pooled = pool.acquire(bufSize);
+        var buf = pooled.buffer();
         log.trace("parsing channel with buf size: {}", bufSize);
-        channel.read(buf);
-        log.debug("readed buf from channel, buf current position: {}", buf.position());
-        if (!buf.hasRemaining()) {
-            log.error("parsing overflow! buf size: {}", bufSize);
+        try {
+            while (true) {
+                if (channel.read(buf) < 0) {
+                    log.error("channel reached end before request completed, state: {}", state);
+                    throw new IllegalArgumentException("incomplete request");
+                }
+                buf.flip();
+                var done = parse(buf);
+                buf.compact();
+                if (done) {
+                    return request;
+                }
+            }
+        } finally {
+            pooled.release();
+        }
+    }
+
+    /**
+     * 从读模式的buf中继续解析，消费已解析的字节。
+     *
+     * <p>返回false表示需要更多字节，调用者应在compact后继续读入并再次调用；
+     * 返回true表示request已完成，通过{@link #getRequest()}获取，
+     * buf中剩余的字节属于下一个request
+     * @param buf
+     * @return
+     */
+    public boolean parse(ByteBuffer buf) {
+        while (state != State.DONE) {
+            if (state == State.BODY || state == State.CHUNK_DATA) {
+                if (!parseBody(buf)) {
+                    return false;
+                }
+                continue;
+            }
+            var len = nextLine(buf, lineLimit());
+            if (len < 0) {
+                return false;
+            }
+            if (state == State.HEADERS) {
+                parseHeader(buf, len);
+                continue;
+            }
+            var line = decodeLine(buf, len);
+            switch (state) {
+                case REQUEST_LINE:
+                    headSize += len;
+                    request = parseRequestLine(line);
+                    state = State.HEADERS;
+                    break;
+                case CHUNK_SIZE:
+                    startChunk(parseChunkSize(line));
+                    break;
+                case CHUNK_END:
+                    if (!line.isEmpty()) {
+                        log.error("chunk data not terminated by CRLF: {}", line);
+                        throw new IllegalArgumentException("illegal chunk");
+                    }
+                    state = State.CHUNK_SIZE;
+                    break;
+                case TRAILERS:
+                    // 忽略trailer
+                    trailerSize += len;
+                    if (line.isEmpty()) {
+                        finishBody();
+                    }
+                    break;
+                default:
+                    throw new IllegalStateException("unexpected state: " + state);
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 是否已解析了当前request的一部分
+     * @return
+     */
+    public boolean isStarted() {
+        return state != State.REQUEST_LINE && state != State.DONE;
+    }
+
+    /**
+     * 是否已解析完headers，正在读取body
+     * @return
+     */
+    public boolean isReadingBody() {
+        return state == State.BODY || state == State.CHUNK_SIZE || state == State.CHUNK_DATA
+            || state == State.CHUNK_END || state == State.TRAILERS;
+    }
+
+    /**
+     * 返回已完成的request，未完成时为null
+     * @return
+     */
+    public Request getRequest() {
+        return state == State.DONE ? request : null;
+    }
+
+    /**
+     * 重置状态以解析下一个request，未完成request的body会被归还。
+     *
+     * <p>已完成request的body由request持有，需调用{@link Request#release()}
+     */
+    public void reset() {
+        if (state != State.DONE && body != null) {
+            body.release();
+        }
+        state = State.REQUEST_LINE;
+        request = null;
+        body = null;
+        remaining = 0;
+        scanned = 0;
+        headSize = 0;
+        trailerSize = 0;
+    }
+
+    /**
+     * 当前行的长度限制，chunk size行不计入head的大小
+     */
+    private int lineLimit() {
+        switch (state) {
+            case CHUNK_SIZE:
+            case CHUNK_END:
+                return CHUNK_LINE_LIMIT;
+            case TRAILERS:
+                return bufSize - trailerSize;
+            default:
+                return bufSize - headSize;
+        }
+    }
+
+    /**
+     * 从上次扫描的位置查找'\n'，返回行的长度(含\r\n)，未找到时返回-1
+     * @param buf
+     * @param limit 行长度的限制
+     * @return
+     */
+    private int nextLine(ByteBuffer buf, int limit) {
+        var start = buf.position();
+        var end = buf.limit();
+        for (var i = start + scanned; i < end; i++) {
+            if (buf.get(i) == '\n') {
+                scanned = 0;
+                var len = i - start + 1;
+                checkLineSize(len, limit);
+                return len;
+            }
+        }
+        scanned = end - start;
+        // 至少还需要一个'\n'
+        checkLineSize(scanned + 1, limit);
+        log.trace("line not completed, scanned: {}", scanned);
+        return -1;
+    }
+
+    private void checkLineSize(int pending, int limit) {
+        if (pending > limit) {
+            log.error("parsing overflow! buf size: {}, state: {}", bufSize, state);
             throw new IllegalArgumentException("request too large!");
         }
-        buf.flip();
-        log.trace("start parsing request");
-        // parse first line \r\n
-        var request = parseRequestLine(buf);
-        // parse header from second to double \r\n
-        parseHeaders(buf, request);
-        // parse body
-        log.debug("set request body as buf, position: {}, remaining: {}", buf.position(), buf.remaining());
-        request.setBody(buf);
-        return request;
-    }
-
-    private static void parseHeaders(ByteBuffer buf, Request request) {
-        var sb = new StringBuilder();
-        log.trace("parsing request headers, buf started position: {}", buf.position());
-        while (true) {
-            readLine(buf, sb);
-            // sb.length==0 on header ended
-            if (sb.length() <= 2) {
-                log.debug("found single '\\r\\n' in a line: {}, header ended", sb);
-                break;
+    }
+
+    /**
+     * 消费len个字节的header行，header字节直接复制到request的header索引中，不创建String
+     * @param buf
+     * @param len
+     */
+    private void parseHeader(ByteBuffer buf, int len) {
+        headSize += len;
+        var contentLen = contentLength(buf, len);
+        if (contentLen == 0) {
+            buf.position(buf.position() + len);
+            log.debug("found single '\\r\\n' in a line, header ended");
+            startBody();
+            return;
+        }
+        request.getHttpHeaders().add(buf, contentLen);
+        buf.position(buf.position() + len);
+    }
+
+    /**
+     * 去掉行尾\r\n或\n后的长度
+     */
+    private static int contentLength(ByteBuffer buf, int len) {
+        var end = len - 1;
+        if (end > 0 && buf.get(buf.position() + end - 1) == '\r') {
+            end--;
+        }
+        return end;
+    }
+
+    /**
+     * 消费len个字节的行，返回去掉\r\n的字符串
+     * @param buf
+     * @param len
+     * @return
+     */
+    private String decodeLine(ByteBuffer buf, int len) {
+        var end = contentLength(buf, len);
+        var bytes = new byte[end];
+        buf.get(bytes);
+        buf.position(buf.position() + len - end);
+        var line = new String(bytes, StandardCharsets.ISO_8859_1);
+        log.trace("read line: {}, buf remaining: {}", line, buf.remaining());
+        return line;
+    }
+
+    private void startBody() {
+        var headers = request.getHttpHeaders();
+        if (headers.count(HttpHeaders.TRANSFER_ENCODING) > 1) {
+            log.error("repeated Transfer-Encoding: {}", headers.getAll(HttpHeaders.TRANSFER_ENCODING));
+            throw new IllegalArgumentException("repeated Transfer-Encoding");
+        }
+        var transferEncoding = Optional.ofNullable(headers.get(HttpHeaders.TRANSFER_ENCODING));
+        var contentLength = Optional.ofNullable(contentLength(headers));
+        if (transferEncoding.isPresent()) {
+            // 只支持chunked，不支持其它transfer coding
+            if (!transferEncoding.get().trim().equalsIgnoreCase("chunked")) {
+                log.error("unsupported Transfer-Encoding: {}", transferEncoding.get());
+                throw new IllegalArgumentException("unsupported Transfer-Encoding");
+            }
+            // 同时存在时可能是request smuggling
+            if (contentLength.isPresent()) {
+                log.error("both Transfer-Encoding and Content-Length present");
+                throw new IllegalArgumentException("illegal Content-Length");
+            }
+            log.debug("parsing chunked body");
+            body = new RequestBody(pool, spillThreshold, -1);
+            state = State.CHUNK_SIZE;
+            return;
+        }
+        var len = 0L;
+        if (contentLength.isPresent()) {
+            var value = contentLength.get().trim();
+            if (!isDigits(value, false)) {
+                log.error("illegal Content-Length: {}", contentLength.get());
+                throw new IllegalArgumentException("illegal Content-Length");
+            }
+            try {
+                len = Long.parseLong(value);
+            } catch (NumberFormatException e) {
+                log.error("illegal Content-Length: {}", contentLength.get());
+                throw new IllegalArgumentException("illegal Content-Length");
             }
-            var header = sb.toString().split(": ");
-            if (header.length != 2) {
-                log.error("parsing header error with ': ', header line: {}");
-                throw new IllegalArgumentException("illegal header");
+            if (len < 0) {
+                log.error("illegal Content-Length: {}", len);
+                throw new IllegalArgumentException("illegal Content-Length");
+            }
+            checkBodySize(len);
+        }
+        if (len == 0) {
+            state = State.DONE;
+            return;
+        }
+        log.debug("parsing body with Content-Length: {}", len);
+        body = new RequestBody(pool, spillThreshold, len);
+        remaining = len;
+        state = State.BODY;
+    }
+
+    /**
+     * 多个Content-Length或"12, 12"形式的列表只在值都相同时接受，
+     * 否则与选择另一个值的代理之间可能出现request smuggling
+     * @param headers
+     * @return 不存在时为null
+     */
+    private static String contentLength(HttpHeaders headers) {
+        var first = headers.get(HttpHeaders.CONTENT_LENGTH);
+        if (first == null || headers.count(HttpHeaders.CONTENT_LENGTH) == 1 && first.indexOf(',') < 0) {
+            return first;
+        }
+        String value = null;
+        for (var v : headers.getAll(HttpHeaders.CONTENT_LENGTH)) {
+            for (var part : v.split(",", -1)) {
+                part = part.trim();
+                if (value == null) {
+                    value = part;
+                } else if (!value.equals(part)) {
+                    log.error("conflicting Content-Length: {}", headers.getAll(HttpHeaders.CONTENT_LENGTH));
+                    throw new IllegalArgumentException("illegal Content-Length");
+                }
             }
-            request.setHeader(header[0], header[1]);
-            sb.setLength(0);
         }
-        parseCookies(request);
+        return value;
     }
 
     /**
-     * 从request.headers中找出Cookie header解析到request.cookies
-     * @param request
+     * 追加Content-Length body或当前chunk的数据
+     * @param buf
+     * @return 需要更多字节时为false
      */
-    private static void parseCookies(Request request) {
-        var header = request.getHeader("Cookie");
-        log.debug("parsing cookies");
-        if (header.isEmpty()) {
-            log.info("not found cookies in request: {}", request);
+    private boolean parseBody(ByteBuffer buf) {
+        var n = (int) Math.min(buf.remaining(), remaining);
+        if (n > 0) {
+            var src = buf.duplicate();
+            src.limit(src.position() + n);
+            body.append(src);
+            buf.position(buf.position() + n);
+            remaining -= n;
+        }
+        if (remaining > 0) {
+            log.trace("body not completed, remaining: {}", remaining);
+            return false;
+        }
+        if (state == State.CHUNK_DATA) {
+            state = State.CHUNK_END;
+        } else {
+            finishBody();
+        }
+        return true;
+    }
+
+    private void startChunk(long size) {
+        if (size == 0) {
+            log.trace("last chunk, body length: {}", body.length());
+            state = State.TRAILERS;
             return;
         }
-        log.trace("cookie header: {}", header.get());
-        for (var s : header.get().split("; ")) {
-            var cookie = s.split("=");
-            if (cookie.length != 2) {
-                log.error("parsing cookie error with '=', cookie str: {}", s);
-                throw new IllegalArgumentException("illegal cookie format");
+        checkBodySize(body.length() + size);
+        log.trace("parsing chunk with size: {}", size);
+        remaining = size;
+        state = State.CHUNK_DATA;
+    }
+
+    private void finishBody() {
+        body.finish();
+        request.setBody(body);
+        log.debug("set request body, length: {}", body.length());
+        state = State.DONE;
+    }
+
+    private void checkBodySize(long size) {
+        if (size > maxBodySize) {
+            log.error("request body too large: {}, limit: {}", size, maxBodySize);
+            throw new PayloadTooLargeException("request body too large: " + size);
+        }
+    }
+
+    /**
+     * 解析chunk size行，忽略chunk extension
+     * @param line
+     * @return
+     */
+    private static long parseChunkSize(String line) {
+        var semi = line.indexOf(';');
+        var hex = (semi >= 0 ? line.substring(0, semi) : line).trim();
+        // 16位hex已超过任何合理的body大小
+        if (hex.length() > 15 || !isDigits(hex, true)) {
+            log.error("illegal chunk size line: {}", line);
+            throw new IllegalArgumentException("illegal chunk size");
+        }
+        try {
+            return Long.parseLong(hex, 16);
+        } catch (NumberFormatException e) {
+            log.error("illegal chunk size line: {}", line);
+            throw new IllegalArgumentException("illegal chunk size");
+        }
+    }
+
+    /**
+     * 是否为1*DIGIT或1*HEXDIG。Long.parseLong接受的+、-符号会使前后端对body的解析不一致
+     * @param s
+     * @param hex
+     * @return
+     */
+    private static boolean isDigits(String s, boolean hex) {
+        if (s.isEmpty()) {
+            return false;
+        }
+        for (var i = 0; i < s.length(); i++) {
+            var c = s.charAt(i);
+            var lower = (char) (c | 0x20);
+            if ((c < '0' || c > '9') && (!hex || lower < 'a' || lower > 'f')) {
+                return false;
             }
-            var hc = new HttpCookie(cookie[0], cookie[1]);
-            request.addCookie(hc);
-            log.trace("added cookie: {}", hc);
         }
+        return true;
     }
 
     /**
      * 解析http first line并创建request
-     * @param buf
+     * @param line
      * @return
-     * @throws IOException
      */
-    private static Request parseRequestLine(ByteBuffer buf) throws IOException {
-        var sb = new StringBuilder();
-        readLine(buf, sb);
-        // parse
-        log.debug("parsing reqeust line: {}", sb);
-        var line = sb.toString().split(" ");
-        if (line.length != 3) {
-            log.error("parsing request line error with space, line: {}", sb);
+    private static Request parseRequestLine(String line) {
+        log.debug("parsing reqeust line: {}", line);
+        var parts = line.split(" ");
+        if (parts.length != 3) {
+            log.error("parsing request line error with space, line: {}", line);
             throw new IllegalArgumentException("illegal request line");
         }
-        var method = MethodEnum.parse(line[0]).orElseThrow();
-        var url = line[1].split("\\?");
+        var method = MethodEnum.parse(parts[0])
+            .orElseThrow(() -> new IllegalArgumentException("unsupported method: " + parts[0]));
+        var url = parts[1].split("\\?");
         if (url.length > 2) {
-            log.error("parsing path and qeury error with ?, line: {}", sb);
+            log.error("parsing path and qeury error with ?, line: {}", line);
             throw new IllegalArgumentException("illegal path and query");
         }
         var path = url[0];
         var query = url.length == 2 ? url[1] : null;
-        var version = VersionEnum.parse(line[2]).orElseThrow();
+        var version = VersionEnum.parse(parts[2])
+            .orElseThrow(() -> new IllegalArgumentException("unsupported version: " + parts[2]));
         log.debug("request line parsed, method: {}, path: {}, query: {}, version: {}", method, path, query, version);
         return new Request(method, path, query, version);
     }
-
-    /**
-     * 读取一行到sb中，\r\n不会到sb中
-     * @param buf
-     * @param sb
-     */
-    private static void readLine(ByteBuffer buf, StringBuilder sb) {
-        while (buf.hasRemaining()) {
-            var ch = (char) buf.get();
-            if (ch == '\r' && buf.get() == '\n') {
-                break;
-            }
-            sb.append(ch);
-        }
-        log.trace("read line: {}, buf remaining: {}", sb, buf.remaining());
-    }
-}
\ No newline at end of file
+}
@@ -0,0 +1,396 @@
+package xyz.navyd.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.BufferOutputStream;
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.buffer.PooledBuffer;
+import xyz.navyd.http.enums.EncodingEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+
+/**
+ * 将response序列化为http响应报文。
+ *
+ * <p>status line按version与status预先编码，headers直接编码到pooled buffer中，
+ * body由jackson直接写入pooled buffer，不经过中间的String或byte[]。
+ * 先写body以得到Content-Length，再写head。
+ * {@link ByteBuffer}与{@link FileRegion}类型的body不复制，直接在head之后写出。
+ * {@link StreamingBody}只写head，body由连接在生成后写出
+ */
+public class ResponseWriter {
+    private static final Logger log = LoggerFactory.getLogger(ResponseWriter.class);
+
+    private static final int BODY_CHUNK_SIZE = 1024 * 16;
+    private static final byte[] CRLF = { '\r', '\n' };
+    private static final byte[] HEADER_SEPARATOR = { ':', ' ' };
+    private static final byte[] CONTENT_LENGTH = "Content-Length: ".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CONTENT_TYPE = "Content-Type: ".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CHUNKED = "Transfer-Encoding: chunked".getBytes(StandardCharsets.ISO_8859_1);
+    // [version][status]
+    private static final byte[][][] STATUS_LINES = new byte[VersionEnum.values().length][][];
+
+    static {
+        for (var version : VersionEnum.values()) {
+            var lines = new byte[StatusEnum.values().length][];
+            for (var status : StatusEnum.values()) {
+                var line = version.getValue() + " " + status.getCode() + " " + status.getMessage() + "\r\n";
+                lines[status.ordinal()] = line.getBytes(StandardCharsets.ISO_8859_1);
+            }
+            STATUS_LINES[version.ordinal()] = lines;
+        }
+    }
+
+    private final ObjectMapper mapper;
+    private final BufferPool pool;
+    private final Compression compression;
+
+    public ResponseWriter(ObjectMapper mapper, BufferPool pool) {
+        this(mapper, pool, null);
+    }
+
+    /**
+     * @param mapper
+     * @param pool
+     * @param compression 为null时不压缩
+     */
+    public ResponseWriter(ObjectMapper mapper, BufferPool pool, Compression compression) {
+        this.mapper = mapper;
+        this.pool = pool;
+        this.compression = compression;
+    }
+
+    /**
+     * 序列化response，写出后需要release。
+     *
+     * <p>String作为text/plain，byte[]作为application/octet-stream，其它类型
+     * 使用jackson序列化为application/json。Optional会被展开。
+     * ByteBuffer与FileRegion作为application/octet-stream，除非已设置Content-Type。
+     * Stream、Iterator与Flow.Publisher作为{@link StreamingBody}
+     * @param response
+     * @param version
+     * @return
+     */
+    public EncodedResponse write(Response<?> response, VersionEnum version) {
+        return write(response, version, null, null);
+    }
+
+    /**
+     * 序列化并按accepted压缩response，写出后需要release。
+     *
+     * <p>body可压缩时添加Vary: Accept-Encoding，即使accepted为IDENTITY。
+     * 带ETag的ByteBuffer body使用缓存的压缩结果。
+     * 304的body为未修改的表示，只用于得到与200相同的Vary与ETag，不写出
+     * @param response
+     * @param version
+     * @param accepted 协商得到的encoding，为null时不压缩也不添加Vary
+     * @param path 用于区分缓存的压缩结果，可以为null
+     * @return
+     */
+    public EncodedResponse write(Response<?> response, VersionEnum version, EncodingEnum accepted, String path) {
+        var body = unwrap(response.getBody());
+        if (response.getStatus() == StatusEnum.NOT_MODIFIED_304) {
+            return writeNotModified(response, version, body, accepted);
+        } else if (StreamingBody.isStreaming(body)) {
+            var stream = open(response, body, version == VersionEnum.HTTP1_1);
+            var head = writeHead(response, version, stream, -1);
+            return new EncodedResponse(new ArrayList<>(List.of(head)), stream);
+        } else if (body instanceof ByteBuffer) {
+            var buf = ((ByteBuffer) body).duplicate();
+            if (accepted != null && negotiate(response, body, buf.remaining()) && accepted != EncodingEnum.IDENTITY) {
+                var etag = response.getHeaders().get("ETag");
+                if (etag != null && path != null) {
+                    buf = compression.variant(path + ' ' + etag, buf, accepted);
+                } else {
+                    var out = new BufferOutputStream(pool, BODY_CHUNK_SIZE);
+                    compression.compress(new ByteBuffer[] { buf }, accepted, out);
+                    return finish(response, version, body, out, accepted);
+                }
+                setEncoding(response, accepted);
+            }
+            var head = writeHead(response, version, body, buf.remaining());
+            return new EncodedResponse(new ArrayList<>(List.of(head)), buf, null);
+        } else if (body instanceof FileRegion) {
+            var file = (FileRegion) body;
+            var head = writeHead(response, version, body, file.count());
+            return new EncodedResponse(new ArrayList<>(List.of(head)), null, file);
+        }
+        var out = new BufferOutputStream(pool, BODY_CHUNK_SIZE);
+        try {
+            writeBody(body, out);
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            log.error("serializing response body error: {}", e);
+            throw new IllegalArgumentException("serializing response body error", e);
+        }
+        if (accepted != null && negotiate(response, body, out.size()) && accepted != EncodingEnum.IDENTITY) {
+            var chunks = out.finish();
+            var inputs = new ByteBuffer[chunks.size()];
+            for (var i = 0; i < inputs.length; i++) {
+                inputs[i] = chunks.get(i).buffer();
+            }
+            var compressed = new BufferOutputStream(pool, BODY_CHUNK_SIZE);
+            try {
+                compression.compress(inputs, accepted, compressed);
+            } finally {
+                out.release();
+            }
+            return finish(response, version, body, compressed, accepted);
+        }
+        return finish(response, version, body, out, null);
+    }
+
+    /**
+     * 只序列化body，headers由调用者编码，如http/2。
+     * body不为空且未设置Content-Type时添加到response中，写出后需要release
+     * @param response
+     * @return 没有head的body
+     */
+    public EncodedResponse writeBody(Response<?> response) {
+        var body = unwrap(response.getBody());
+        var headers = response.getHeaders();
+        if (response.getStatus() == StatusEnum.NOT_MODIFIED_304) {
+            // 不压缩时304与200的ETag相同
+            headers.remove("Content-Type");
+            return new EncodedResponse(new ArrayList<>());
+        } else if (StreamingBody.isStreaming(body)) {
+            var stream = open(response, body, false);
+            headers.putIfAbsent("Content-Type", stream.getContentType());
+            return new EncodedResponse(new ArrayList<>(), stream);
+        } else if (body instanceof ByteBuffer) {
+            var buf = ((ByteBuffer) body).duplicate();
+            if (buf.hasRemaining()) {
+                headers.putIfAbsent("Content-Type", contentType(body));
+            }
+            return new EncodedResponse(new ArrayList<>(), buf, null);
+        } else if (body instanceof FileRegion) {
+            var file = (FileRegion) body;
+            if (file.count() > 0) {
+                headers.putIfAbsent("Content-Type", contentType(body));
+            }
+            return new EncodedResponse(new ArrayList<>(), null, file);
+        }
+        var out = new BufferOutputStream(pool, BODY_CHUNK_SIZE);
+        try {
+            writeBody(body, out);
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            log.error("serializing response body error: {}", e);
+            throw new IllegalArgumentException("serializing response body error", e);
+        }
+        if (out.size() > 0) {
+            headers.putIfAbsent("Content-Type", contentType(body));
+        }
+        return new EncodedResponse(new ArrayList<>(out.finish()));
+    }
+
+    private StreamingBody open(Response<?> response, Object body, boolean chunked) {
+        var stream = StreamingBody.from(body);
+        stream.open(mapper, pool, chunked);
+        if (stream.isEvents()) {
+            response.getHeaders().putIfAbsent("Cache-Control", "no-cache");
+        }
+        return stream;
+    }
+
+    private EncodedResponse finish(Response<?> response, VersionEnum version, Object body, BufferOutputStream out,
+            EncodingEnum encoding) {
+        if (encoding != null) {
+            setEncoding(response, encoding);
+        }
+        var chunks = out.finish();
+        var head = writeHead(response, version, body, out.size());
+        var buffers = new ArrayList<PooledBuffer>(chunks.size() + 1);
+        buffers.add(head);
+        buffers.addAll(chunks);
+        log.trace("response encoded, status: {}, body length: {}, buffers: {}", response.getStatus(), out.size(),
+                buffers.size());
+        return new EncodedResponse(buffers);
+    }
+
+    /**
+     * 304不写出body，Content-Type只用于协商
+     */
+    private EncodedResponse writeNotModified(Response<?> response, VersionEnum version, Object body,
+            EncodingEnum accepted) {
+        if (body instanceof ByteBuffer && accepted != null
+                && negotiate(response, body, ((ByteBuffer) body).remaining()) && accepted != EncodingEnum.IDENTITY) {
+            weaken(response.getHeaders());
+        }
+        response.getHeaders().remove("Content-Type");
+        var head = writeHead(response, version, null, 0);
+        return new EncodedResponse(new ArrayList<>(List.of(head)));
+    }
+
+    /**
+     * body是否可以压缩，可以时添加Vary
+     */
+    private boolean negotiate(Response<?> response, Object body, long length) {
+        var headers = response.getHeaders();
+        var status = response.getStatus();
+        if (compression == null || status != StatusEnum.OK_200 && status != StatusEnum.NOT_MODIFIED_304
+                || headers.containsKey("Content-Encoding") || headers.containsKey("Content-Range")) {
+            return false;
+        }
+        var contentType = headers.getOrDefault("Content-Type", contentType(body));
+        if (!compression.isCompressible(contentType, length)) {
+            return false;
+        }
+        var vary = headers.get("Vary");
+        if (vary == null) {
+            headers.put("Vary", "Accept-Encoding");
+        } else if (!vary.toLowerCase(Locale.ROOT).contains("accept-encoding")) {
+            headers.put("Vary", vary + ", Accept-Encoding");
+        }
+        return true;
+    }
+
+    /**
+     * 压缩后的body与原body不是同一个表示，ETag改为weak，不再支持Range
+     */
+    private static void setEncoding(Response<?> response, EncodingEnum encoding) {
+        var headers = response.getHeaders();
+        headers.put("Content-Encoding", encoding.getValue());
+        headers.remove("Accept-Ranges");
+        weaken(headers);
+    }
+
+    private static void weaken(Map<String, String> headers) {
+        var etag = headers.get("ETag");
+        if (etag != null && !etag.startsWith("W/")) {
+            headers.put("ETag", "W/" + etag);
+        }
+    }
+
+    private void writeBody(Object body, BufferOutputStream out) throws IOException {
+        if (body == null) {
+            return;
+        } else if (body instanceof byte[]) {
+            out.write((byte[]) body);
+        } else if (body instanceof String) {
+            out.write(((String) body).getBytes(StandardCharsets.UTF_8));
+        } else {
+            mapper.writeValue(out, body);
+        }
+    }
+
+    /**
+     * @param contentLength 为-1时长度未知，http/1.1使用chunked编码，其它version不写长度
+     */
+    private PooledBuffer writeHead(Response<?> response, VersionEnum version, Object body, long contentLength) {
+        var headers = response.getHeaders();
+        var statusLine = STATUS_LINES[version.ordinal()][response.getStatus().ordinal()];
+        String contentType = null;
+        if (contentLength != 0 && !headers.containsKey("Content-Type")) {
+            contentType = contentType(body);
+        }
+        // 估计head大小
+        var size = statusLine.length + CHUNKED.length + 20 + CRLF.length * 2;
+        for (var header : headers.entrySet()) {
+            size += header.getKey().length() + header.getValue().length() + 4;
+        }
+        if (contentType != null) {
+            size += CONTENT_TYPE.length + contentType.length() + 2;
+        }
+        var pooled = pool.acquire(size);
+        var buf = pooled.buffer();
+        buf.put(statusLine);
+        for (var header : headers.entrySet()) {
+            putAscii(buf, header.getKey());
+            buf.put(HEADER_SEPARATOR);
+            putAscii(buf, header.getValue());
+            buf.put(CRLF);
+        }
+        if (contentType != null) {
+            buf.put(CONTENT_TYPE);
+            putAscii(buf, contentType);
+            buf.put(CRLF);
+        }
+        // 没有body的response的Content-Length只能是200时的长度，不写出
+        var framed = hasBody(response.getStatus());
+        if (framed && contentLength >= 0) {
+            buf.put(CONTENT_LENGTH);
+            putLong(buf, contentLength);
+            buf.put(CRLF);
+        } else if (framed && contentLength < 0 && version == VersionEnum.HTTP1_1) {
+            buf.put(CHUNKED).put(CRLF);
+        }
+        buf.put(CRLF).flip();
+        return pooled;
+    }
+
+    private static void putAscii(ByteBuffer buf, String s) {
+        for (var i = 0; i < s.length(); i++) {
+            buf.put((byte) s.charAt(i));
+        }
+    }
+
+    private static void putLong(ByteBuffer buf, long n) {
+        if (n == 0) {
+            buf.put((byte) '0');
+            return;
+        }
+        var start = buf.position();
+        while (n > 0) {
+            buf.put((byte) ('0' + n % 10));
+            n /= 10;
+        }
+        // 反转数字
+        for (int i = start, j = buf.position() - 1; i < j; i++, j--) {
+            var tmp = buf.get(i);
+            buf.put(i, buf.get(j));
+            buf.put(j, tmp);
+        }
+    }
+
+    /**
+     * 1xx、204与304的response没有body，不写Content-Length与chunked
+     * @param status
+     * @return
+     */
+    public static boolean hasBody(StatusEnum status) {
+        var code = status.getCode();
+        return code >= 200 && code != 204 && code != 304;
+    }
+
+    /**
+     * 未设置Content-Type时body对应的默认值
+     * @param body
+     * @return
+     */
+    public static String contentType(Object body) {
+        if (body instanceof StreamingBody) {
+            return ((StreamingBody) body).getContentType();
+        } else if (body instanceof byte[] || body instanceof ByteBuffer || body instanceof FileRegion) {
+            return "application/octet-stream";
+        } else if (body instanceof String) {
+            return "text/plain; charset=utf-8";
+        }
+        return "application/json; charset=utf-8";
+    }
+
+    /**
+     * 展开嵌套的Optional
+     * @param body
+     * @return
+     */
+    public static Object unwrap(Optional<?> body) {
+        var o = body.orElse(null);
+        while (o instanceof Optional) {
+            o = ((Optional<?>) o).orElse(null);
+        }
+        return o;
+    }
+}
@@ -0,0 +1,519 @@
+package xyz.navyd.http;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Flow;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.stream.Stream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.BufferOutputStream;
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.buffer.PooledBuffer;
+
+/**
+ * 增量序列化的response body，用于不能一次放入内存的结果或server-sent events。
+ *
+ * <p>元素来自{@link Iterator}、{@link Stream}或{@link Flow.Publisher}，序列化为一个JSON数组，
+ * 或以text/event-stream每个元素作为一个event的data。http/1.1使用Transfer-Encoding: chunked，
+ * http/1.0写完后关闭连接。
+ *
+ * <p>连接写出已生成的数据后才继续生成：排队的字节达到上限时不再拉取Iterator，
+ * 也不再向Publisher request，内存占用与结果的大小无关。Iterator在route的执行线程中拉取，
+ * INLINE的route在event loop中拉取，不能阻塞。每个StreamingBody只能写出一次
+ */
+public class StreamingBody {
+    private static final Logger log = LoggerFactory.getLogger(StreamingBody.class);
+
+    // Iterator一批生成的字节数
+    private static final int BATCH_SIZE = 1024 * 16;
+    // Publisher的一个元素使用的buffer大小，不够时继续从pool获取
+    private static final int ITEM_CHUNK_SIZE = 1024 * 2;
+    // 排队的字节低于该值时继续生成
+    private static final int LOW_WATER = 1024 * 32;
+    // 每次向Publisher request的元素数
+    private static final int REQUEST_BATCH = 16;
+    private static final byte[] LAST_CHUNK = "0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CHUNK_END = "\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] CHUNK_END_LAST = "\r\n0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] DATA = "data: ".getBytes(StandardCharsets.ISO_8859_1);
+
+    private final Iterator<?> iterator;
+    private final Flow.Publisher<?> publisher;
+    // 写完或取消时关闭，如Stream
+    private final AutoCloseable resource;
+    private final boolean events;
+
+    // 由ResponseWriter在写出head时设置
+    private ObjectMapper mapper;
+    private BufferPool pool;
+    private boolean chunked;
+
+    // 以下由this保护
+    private final ArrayDeque<PooledBuffer> queue = new ArrayDeque<>();
+    private long queued;
+    private Executor executor;
+    private Runnable listener;
+    private boolean started;
+    // Iterator正在生成一批数据
+    private boolean producing;
+    // 结尾已排队
+    private boolean finished;
+    private boolean failed;
+    private boolean released;
+    private Flow.Subscription subscription;
+    // 已request但未收到的元素数
+    private int requested;
+
+    // 只在生成数据的线程中访问，Iterator的批次与Publisher的signal都是串行的
+    private boolean opened;
+    private long items;
+
+    private StreamingBody(Iterator<?> iterator, Flow.Publisher<?> publisher, AutoCloseable resource,
+            boolean events) {
+        this.iterator = iterator;
+        this.publisher = publisher;
+        this.resource = resource;
+        this.events = events;
+    }
+
+    /**
+     * 序列化为JSON数组
+     * @param iterator
+     * @return
+     */
+    public static StreamingBody of(Iterator<?> iterator) {
+        if (iterator == null)
+            throw new IllegalArgumentException("iterator is null");
+        return new StreamingBody(iterator, null, null, false);
+    }
+
+    /**
+     * 序列化为JSON数组，写完或取消时关闭stream
+     * @param stream
+     * @return
+     */
+    public static StreamingBody of(Stream<?> stream) {
+        if (stream == null)
+            throw new IllegalArgumentException("stream is null");
+        return new StreamingBody(stream.iterator(), null, stream, false);
+    }
+
+    /**
+     * 序列化为JSON数组，publisher完成时结束
+     * @param publisher
+     * @return
+     */
+    public static StreamingBody of(Flow.Publisher<?> publisher) {
+        if (publisher == null)
+            throw new IllegalArgumentException("publisher is null");
+        return new StreamingBody(null, publisher, null, false);
+    }
+
+    /**
+     * server-sent events，每个元素作为一个event的data：String按行写出，其它类型序列化为JSON。
+     * 客户端断开时取消subscription
+     * @param publisher
+     * @return
+     */
+    public static StreamingBody events(Flow.Publisher<?> publisher) {
+        if (publisher == null)
+            throw new IllegalArgumentException("publisher is null");
+        return new StreamingBody(null, publisher, null, true);
+    }
+
+    /**
+     * body是否需要流式写出：StreamingBody、Stream、Iterator或Flow.Publisher
+     * @param body
+     * @return
+     */
+    public static boolean isStreaming(Object body) {
+        return body instanceof StreamingBody || body instanceof Stream || body instanceof Iterator
+            || body instanceof Flow.Publisher;
+    }
+
+    /**
+     * 将Stream、Iterator与Flow.Publisher包装为JSON数组
+     * @param body
+     * @return 不是流式body时为null
+     */
+    public static StreamingBody from(Object body) {
+        if (body instanceof StreamingBody) {
+            return (StreamingBody) body;
+        } else if (body instanceof Stream) {
+            return of((Stream<?>) body);
+        } else if (body instanceof Iterator) {
+            return of((Iterator<?>) body);
+        } else if (body instanceof Flow.Publisher) {
+            return of((Flow.Publisher<?>) body);
+        }
+        return null;
+    }
+
+    public boolean isEvents() {
+        return events;
+    }
+
+    public String getContentType() {
+        return events ? "text/event-stream; charset=utf-8" : "application/json; charset=utf-8";
+    }
+
+    /**
+     * 由ResponseWriter在写出head时调用
+     * @param chunked 是否使用chunked编码，http/2与http/1.0不使用
+     */
+    synchronized void open(ObjectMapper mapper, BufferPool pool, boolean chunked) {
+        if (this.pool != null)
+            throw new IllegalArgumentException("streaming body can only be written once");
+        this.mapper = mapper;
+        this.pool = pool;
+        this.chunked = chunked;
+    }
+
+    public synchronized boolean isChunked() {
+        return chunked;
+    }
+
+    /**
+     * 开始生成数据，之后队列由空变为非空、结束或失败时在任意线程调用listener
+     * @param executor 拉取Iterator的线程，Publisher不使用
+     * @param listener
+     */
+    public void start(Executor executor, Runnable listener) {
+        synchronized (this) {
+            if (started || released) {
+                return;
+            }
+            if (pool == null)
+                throw new IllegalArgumentException("streaming body is not opened");
+            started = true;
+            this.executor = executor;
+            this.listener = listener;
+        }
+        if (publisher != null) {
+            publisher.subscribe(new Subscriber());
+        } else {
+            demand();
+        }
+    }
+
+    public synchronized boolean isStarted() {
+        return started;
+    }
+
+    /**
+     * 队列中第一个读模式的buffer，只能由写出的线程修改position
+     * @return 没有已生成的数据时为null
+     */
+    public synchronized ByteBuffer peek() {
+        var head = queue.peekFirst();
+        return head == null ? null : head.buffer();
+    }
+
+    /**
+     * {@link #peek()}返回的buffer已写完，低于上限时继续生成
+     */
+    public void remove() {
+        synchronized (this) {
+            var head = queue.pollFirst();
+            if (head == null) {
+                return;
+            }
+            queued -= head.buffer().limit();
+            head.release();
+        }
+        demand();
+    }
+
+    /**
+     * 已生成未写出的字节数
+     * @return
+     */
+    public synchronized long available() {
+        var n = 0L;
+        for (var buf : queue) {
+            n += buf.buffer().remaining();
+        }
+        return n;
+    }
+
+    /**
+     * 所有数据已生成，可能还未写出
+     * @return
+     */
+    public synchronized boolean isFinished() {
+        return finished;
+    }
+
+    /**
+     * 所有数据已生成并写出
+     * @return
+     */
+    public synchronized boolean isWritten() {
+        return finished && queue.isEmpty();
+    }
+
+    /**
+     * 生成失败且已生成的数据都已写出，连接需要中断response
+     * @return
+     */
+    public synchronized boolean isFailed() {
+        return failed && queue.isEmpty();
+    }
+
+    /**
+     * 写完或连接关闭时调用，取消subscription并关闭resource
+     */
+    public void release() {
+        Flow.Subscription s;
+        synchronized (this) {
+            if (released) {
+                return;
+            }
+            released = true;
+            for (var buf : queue) {
+                buf.release();
+            }
+            queue.clear();
+            queued = 0;
+            s = finished || failed ? null : subscription;
+        }
+        if (s != null) {
+            s.cancel();
+        }
+        if (resource != null) {
+            try {
+                resource.close();
+            } catch (Exception e) {
+                log.warn("closing streaming body error: {}", e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 排队的字节低于上限时生成下一批数据
+     */
+    private void demand() {
+        Flow.Subscription s = null;
+        var produce = false;
+        synchronized (this) {
+            if (!started || released || finished || failed || queued >= LOW_WATER) {
+                return;
+            }
+            if (publisher != null) {
+                if (subscription != null && requested == 0) {
+                    requested = REQUEST_BATCH;
+                    s = subscription;
+                }
+            } else if (!producing) {
+                producing = true;
+                produce = true;
+            }
+        }
+        if (s != null) {
+            s.request(REQUEST_BATCH);
+        } else if (produce) {
+            try {
+                executor.execute(this::produce);
+            } catch (RejectedExecutionException e) {
+                fail(e);
+            }
+        }
+    }
+
+    /**
+     * 从Iterator生成一批数据，在executor中执行
+     */
+    private void produce() {
+        var out = new BufferOutputStream(pool, BATCH_SIZE);
+        boolean last;
+        try {
+            while (out.size() < BATCH_SIZE && iterator.hasNext() && !isReleased()) {
+                writeItem(out, iterator.next());
+            }
+            last = !iterator.hasNext();
+            if (last) {
+                writeEnd(out);
+            }
+        } catch (IOException | RuntimeException e) {
+            out.release();
+            fail(e);
+            return;
+        }
+        enqueue(out, last);
+        demand();
+    }
+
+    private synchronized boolean isReleased() {
+        return released;
+    }
+
+    private void writeItem(BufferOutputStream out, Object item) throws IOException {
+        if (events) {
+            var data = item instanceof String ? (String) item : mapper.writeValueAsString(item);
+            // 多行data每行一个字段
+            var start = 0;
+            do {
+                var end = data.indexOf('\n', start);
+                var line = end < 0 ? data.substring(start) : data.substring(start, end);
+                out.write(DATA);
+                out.write(line.getBytes(StandardCharsets.UTF_8));
+                out.write('\n');
+                start = end < 0 ? -1 : end + 1;
+            } while (start >= 0);
+            out.write('\n');
+            return;
+        }
+        if (!opened) {
+            opened = true;
+            out.write('[');
+        }
+        if (items++ > 0) {
+            out.write(',');
+        }
+        mapper.writeValue(out, item);
+    }
+
+    private void writeEnd(BufferOutputStream out) {
+        if (events) {
+            return;
+        }
+        if (!opened) {
+            opened = true;
+            out.write('[');
+        }
+        out.write(']');
+    }
+
+    /**
+     * 加入队列，chunked时加上chunk的size与结尾
+     */
+    private void enqueue(BufferOutputStream out, boolean last) {
+        var size = out.size();
+        var chunks = out.finish();
+        Runnable notify = null;
+        synchronized (this) {
+            producing = false;
+            if (released) {
+                for (var chunk : chunks) {
+                    chunk.release();
+                }
+                return;
+            }
+            var empty = queue.isEmpty();
+            if (size > 0) {
+                if (chunked) {
+                    add(Long.toHexString(size).toUpperCase() + "\r\n");
+                }
+                for (var chunk : chunks) {
+                    queue.add(chunk);
+                    queued += chunk.buffer().limit();
+                }
+                if (chunked) {
+                    add(last ? CHUNK_END_LAST : CHUNK_END);
+                }
+            } else {
+                for (var chunk : chunks) {
+                    chunk.release();
+                }
+                if (last && chunked) {
+                    add(LAST_CHUNK);
+                }
+            }
+            finished = last;
+            if (empty && !queue.isEmpty() || last) {
+                notify = listener;
+            }
+        }
+        if (notify != null) {
+            notify.run();
+        }
+    }
+
+    private void add(String ascii) {
+        add(ascii.getBytes(StandardCharsets.ISO_8859_1));
+    }
+
+    private void add(byte[] bytes) {
+        var pooled = pool.acquire(bytes.length);
+        pooled.buffer().put(bytes).flip();
+        queue.add(pooled);
+        queued += bytes.length;
+    }
+
+    private void fail(Throwable e) {
+        Runnable notify;
+        Flow.Subscription s;
+        synchronized (this) {
+            producing = false;
+            if (released || failed) {
+                return;
+            }
+            failed = true;
+            notify = listener;
+            s = subscription;
+        }
+        log.warn("generating streaming body error: {}", e.toString());
+        if (s != null) {
+            s.cancel();
+        }
+        if (notify != null) {
+            notify.run();
+        }
+    }
+
+    private class Subscriber implements Flow.Subscriber<Object> {
+        @Override
+        public void onSubscribe(Flow.Subscription s) {
+            boolean cancel;
+            synchronized (StreamingBody.this) {
+                cancel = released || subscription != null;
+                if (!cancel) {
+                    subscription = s;
+                }
+            }
+            if (cancel) {
+                s.cancel();
+                return;
+            }
+            demand();
+        }
+
+        @Override
+        public void onNext(Object item) {
+            var out = new BufferOutputStream(pool, ITEM_CHUNK_SIZE);
+            try {
+                writeItem(out, item);
+            } catch (IOException | RuntimeException e) {
+                out.release();
+                fail(e);
+                return;
+            }
+            synchronized (StreamingBody.this) {
+                requested--;
+            }
+            enqueue(out, false);
+            demand();
+        }
+
+        @Override
+        public void onError(Throwable e) {
+            fail(e);
+        }
+
+        @Override
+        public void onComplete() {
+            var out = new BufferOutputStream(pool, ITEM_CHUNK_SIZE);
+            writeEnd(out);
+            enqueue(out, true);
+        }
+    }
+}
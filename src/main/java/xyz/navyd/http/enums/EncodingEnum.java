@@ -0,0 +1,21 @@
+package xyz.navyd.http.enums;
+
+/**
+ * response body的Content-Encoding
+ */
+public enum EncodingEnum {
+    IDENTITY("identity"),
+    GZIP("gzip"),
+    DEFLATE("deflate"),
+    ;
+
+    private final String value;
+
+    EncodingEnum(String value) {
+        this.value = value;
+    }
+
+    public String getValue() {
+        return value;
+    }
+}
@@ -2,11 +2,17 @@ package xyz.navyd.http.enums;
 
 public enum StatusEnum {
     OK_200(200, "OK"),
+    PARTIAL_CONTENT_206(206, "PARTIAL CONTENT"),
     NOT_MODIFIED_304(304, "NOT MODIFIED"),
     BAD_REQUEST_400(400, "BAD REQUEST"),
     NOT_FOUND_404(404, "NOT FOUND"),
     METHOD_NOT_ALLOWED_405(405, "METHOD NOT ALLOWED"),
-    INTERNAL_SERVER_ERROR_500(500, "INTERNAL SERVER ERROR");
+    REQUEST_TIMEOUT_408(408, "REQUEST TIMEOUT"),
+    PAYLOAD_TOO_LARGE_413(413, "PAYLOAD TOO LARGE"),
+    RANGE_NOT_SATISFIABLE_416(416, "RANGE NOT SATISFIABLE"),
+    INTERNAL_SERVER_ERROR_500(500, "INTERNAL SERVER ERROR"),
+    SERVICE_UNAVAILABLE_503(503, "SERVICE UNAVAILABLE"),
+    GATEWAY_TIMEOUT_504(504, "GATEWAY TIMEOUT");
 
     private int code;
     private String message;
@@ -5,6 +5,7 @@ import java.util.Optional;
 public enum VersionEnum {
     HTTP1_0("HTTP/1.0"),
     HTTP1_1("HTTP/1.1"),
+    HTTP2_0("HTTP/2.0"),
     
     ;
     
@@ -0,0 +1,113 @@
+package xyz.navyd.http2;
+
+import java.nio.ByteBuffer;
+
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+import xyz.navyd.http2.enums.FrameTypeEnum;
+
+/**
+ * 一个http/2 frame：9字节的header与payload。
+ *
+ * <p>读取时payload是读buffer的slice，只在buffer被compact之前有效
+ */
+public class Frame {
+    public static final int HEADER_SIZE = 9;
+    public static final int DEFAULT_MAX_FRAME_SIZE = 16384;
+
+    public static final int FLAG_END_STREAM = 0x1;
+    public static final int FLAG_ACK = 0x1;
+    public static final int FLAG_END_HEADERS = 0x4;
+    public static final int FLAG_PADDED = 0x8;
+    public static final int FLAG_PRIORITY = 0x20;
+
+    private final int type;
+    private final int flags;
+    private final int streamId;
+    private final ByteBuffer payload;
+
+    private Frame(int type, int flags, int streamId, ByteBuffer payload) {
+        this.type = type;
+        this.flags = flags;
+        this.streamId = streamId;
+        this.payload = payload;
+    }
+
+    /**
+     * 从读模式的buf中读取一个完整的frame，不完整时不消费任何字节
+     * @param buf
+     * @param maxFrameSize 允许的最大payload长度
+     * @return 不完整时为null
+     * @throws Http2Exception payload超过maxFrameSize时
+     */
+    public static Frame read(ByteBuffer buf, int maxFrameSize) {
+        if (buf.remaining() < HEADER_SIZE) {
+            return null;
+        }
+        var start = buf.position();
+        var length = (buf.get(start) & 0xff) << 16 | (buf.get(start + 1) & 0xff) << 8 | buf.get(start + 2) & 0xff;
+        if (length > maxFrameSize) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "frame too large: " + length);
+        }
+        if (buf.remaining() < HEADER_SIZE + length) {
+            return null;
+        }
+        var type = buf.get(start + 3) & 0xff;
+        var flags = buf.get(start + 4) & 0xff;
+        var streamId = buf.getInt(start + 5) & 0x7fffffff;
+        var payload = buf.slice(start + HEADER_SIZE, length);
+        buf.position(start + HEADER_SIZE + length);
+        return new Frame(type, flags, streamId, payload);
+    }
+
+    /**
+     * 写入frame header
+     * @param dst
+     * @param length payload长度
+     * @param type
+     * @param flags
+     * @param streamId
+     */
+    public static void writeHeader(ByteBuffer dst, int length, FrameTypeEnum type, int flags, int streamId) {
+        dst.put((byte) (length >>> 16)).put((byte) (length >>> 8)).put((byte) length)
+            .put((byte) type.getCode())
+            .put((byte) flags)
+            .putInt(streamId & 0x7fffffff);
+    }
+
+    /**
+     * @return 未知类型为null
+     */
+    public FrameTypeEnum getType() {
+        return FrameTypeEnum.of(type);
+    }
+
+    public int getFlags() {
+        return flags;
+    }
+
+    public boolean hasFlag(int flag) {
+        return (flags & flag) != 0;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public int getLength() {
+        return payload.remaining();
+    }
+
+    /**
+     * 只读取不修改position时使用绝对位置
+     * @return
+     */
+    public ByteBuffer getPayload() {
+        return payload;
+    }
+
+    @Override
+    public String toString() {
+        return "Frame [type=" + getType() + ", flags=" + flags + ", streamId=" + streamId + ", length="
+                + payload.remaining() + "]";
+    }
+}
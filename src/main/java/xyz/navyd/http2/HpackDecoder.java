@@ -0,0 +1,133 @@
+package xyz.navyd.http2;
+
+import java.nio.charset.StandardCharsets;
+import java.util.function.BiConsumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+
+/**
+ * 解码HPACK header block，一个连接使用一个decoder，按收到的顺序解码所有block。
+ *
+ * <p>name与value按ISO-8859-1解码为String，与http/1.x的headers一致
+ */
+public class HpackDecoder {
+    private static final Logger log = LoggerFactory.getLogger(HpackDecoder.class);
+
+    private final HpackTable table;
+    // SETTINGS_HEADER_TABLE_SIZE，对端的table size update不能超过该值
+    private final int maxTableSize;
+    private final int maxHeaderListSize;
+    private int pos;
+
+    /**
+     * @param maxTableSize 发送给对端的SETTINGS_HEADER_TABLE_SIZE
+     * @param maxHeaderListSize 解码后所有header的最大大小
+     */
+    public HpackDecoder(int maxTableSize, int maxHeaderListSize) {
+        this.table = new HpackTable(maxTableSize);
+        this.maxTableSize = maxTableSize;
+        this.maxHeaderListSize = maxHeaderListSize;
+    }
+
+    /**
+     * 解码完整的header block
+     * @param block
+     * @param offset
+     * @param length
+     * @param sink 按顺序接收每个header
+     * @throws Http2Exception block格式错误时为COMPRESSION_ERROR，超过maxHeaderListSize时为PROTOCOL_ERROR
+     */
+    public void decode(byte[] block, int offset, int length, BiConsumer<String, String> sink) {
+        pos = offset;
+        var end = offset + length;
+        var listSize = 0;
+        var headers = false;
+        try {
+            while (pos < end) {
+                var b = block[pos] & 0xff;
+                String name;
+                String value;
+                if ((b & 0x80) != 0) {
+                    // indexed header field
+                    var index = readInt(block, end, 7);
+                    name = table.name(index);
+                    value = table.value(index);
+                } else if ((b & 0xc0) == 0x40) {
+                    // literal with incremental indexing
+                    var index = readInt(block, end, 6);
+                    name = index == 0 ? readString(block, end) : table.name(index);
+                    value = readString(block, end);
+                    table.add(name, value);
+                } else if ((b & 0xe0) == 0x20) {
+                    // dynamic table size update只能在block开始
+                    if (headers) {
+                        throw new IllegalArgumentException("table size update after header field");
+                    }
+                    var size = readInt(block, end, 5);
+                    if (size > maxTableSize) {
+                        throw new IllegalArgumentException("table size exceeds setting: " + size);
+                    }
+                    table.setMaxSize(size);
+                    continue;
+                } else {
+                    // literal without indexing或never indexed
+                    var index = readInt(block, end, 4);
+                    name = index == 0 ? readString(block, end) : table.name(index);
+                    value = readString(block, end);
+                }
+                headers = true;
+                listSize += name.length() + value.length() + HpackTable.ENTRY_OVERHEAD;
+                if (listSize > maxHeaderListSize) {
+                    throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "header list too large: " + listSize);
+                }
+                sink.accept(name, value);
+            }
+        } catch (IllegalArgumentException | IndexOutOfBoundsException e) {
+            log.debug("decoding header block error: {}", e.getMessage());
+            throw new Http2Exception(ErrorCodeEnum.COMPRESSION_ERROR, "illegal header block: " + e.getMessage());
+        }
+    }
+
+    int getTableSize() {
+        return table.getSize();
+    }
+
+    private int readInt(byte[] block, int end, int prefixBits) {
+        var max = (1 << prefixBits) - 1;
+        var value = block[pos++] & max;
+        if (value < max) {
+            return value;
+        }
+        var shift = 0;
+        int b;
+        do {
+            if (pos >= end) {
+                throw new IllegalArgumentException("truncated integer");
+            }
+            b = block[pos++] & 0xff;
+            value += (b & 0x7f) << shift;
+            shift += 7;
+            if (shift > 28 || value < 0) {
+                throw new IllegalArgumentException("integer overflow");
+            }
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private String readString(byte[] block, int end) {
+        if (pos >= end) {
+            throw new IllegalArgumentException("truncated string");
+        }
+        var huffman = (block[pos] & 0x80) != 0;
+        var len = readInt(block, end, 7);
+        if (len > end - pos) {
+            throw new IllegalArgumentException("string length exceeds block: " + len);
+        }
+        var s = huffman ? Huffman.decode(block, pos, len) : new String(block, pos, len, StandardCharsets.ISO_8859_1);
+        pos += len;
+        return s;
+    }
+}
@@ -0,0 +1,120 @@
+package xyz.navyd.http2;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Set;
+
+/**
+ * 编码HPACK header block，一个连接使用一个encoder，block必须按编码的顺序发送。
+ *
+ * <p>完全相同的header使用index；常见的重复header如content-type以incremental indexing加入
+ * dynamic table；每个response都不同或敏感的header不加入table。
+ * huffman编码更短时使用huffman
+ */
+public class HpackEncoder {
+    // 不加入dynamic table的header
+    private static final Set<String> NOT_INDEXED = Set.of("content-length", "date", "etag", "last-modified",
+        "content-range", "age", "expires", "location", "retry-after");
+    private static final Set<String> SENSITIVE = Set.of("authorization", "proxy-authorization", "cookie",
+        "set-cookie");
+
+    private final HpackTable table;
+    // 对端修改SETTINGS_HEADER_TABLE_SIZE后在下一个block开始时发送table size update，
+    // 期间减小过时需要先发送最小值
+    private int pendingMinSize = -1;
+    private int pendingMaxSize = -1;
+
+    /**
+     * @param maxTableSize dynamic table的大小，不超过对端的SETTINGS_HEADER_TABLE_SIZE
+     */
+    public HpackEncoder(int maxTableSize) {
+        this.table = new HpackTable(maxTableSize);
+    }
+
+    /**
+     * 对端的SETTINGS_HEADER_TABLE_SIZE改变时调用
+     * @param maxTableSize
+     */
+    public void setMaxTableSize(int maxTableSize) {
+        if (maxTableSize == table.getMaxSize()) {
+            return;
+        }
+        table.setMaxSize(maxTableSize);
+        pendingMinSize = pendingMinSize < 0 ? maxTableSize : Math.min(pendingMinSize, maxTableSize);
+        pendingMaxSize = maxTableSize;
+    }
+
+    /**
+     * 开始一个新的header block
+     * @param out
+     */
+    public void startBlock(ByteArrayOutputStream out) {
+        if (pendingMaxSize >= 0) {
+            if (pendingMinSize < pendingMaxSize) {
+                writeInt(out, 0x20, 5, pendingMinSize);
+            }
+            writeInt(out, 0x20, 5, pendingMaxSize);
+            pendingMinSize = -1;
+            pendingMaxSize = -1;
+        }
+    }
+
+    /**
+     * 编码一个header
+     * @param out
+     * @param name 小写的name
+     * @param value
+     */
+    public void encode(ByteArrayOutputStream out, String name, String value) {
+        var index = table.indexOf(name, value);
+        if (index > 0) {
+            writeInt(out, 0x80, 7, index);
+            return;
+        }
+        var nameIndex = table.indexOfName(name);
+        if (SENSITIVE.contains(name)) {
+            // never indexed
+            writeInt(out, 0x10, 4, nameIndex);
+        } else if (NOT_INDEXED.contains(name) || name.startsWith(":")) {
+            writeInt(out, 0x00, 4, nameIndex);
+        } else {
+            writeInt(out, 0x40, 6, nameIndex);
+            table.add(name, value);
+        }
+        if (nameIndex == 0) {
+            writeString(out, name);
+        }
+        writeString(out, value);
+    }
+
+    int getTableSize() {
+        return table.getSize();
+    }
+
+    private static void writeString(ByteArrayOutputStream out, String s) {
+        var huffmanLength = Huffman.encodedLength(s);
+        if (huffmanLength < s.length()) {
+            writeInt(out, 0x80, 7, huffmanLength);
+            Huffman.encode(s, out);
+        } else {
+            writeInt(out, 0x00, 7, s.length());
+            for (var i = 0; i < s.length(); i++) {
+                out.write(s.charAt(i));
+            }
+        }
+    }
+
+    static void writeInt(ByteArrayOutputStream out, int pattern, int prefixBits, int value) {
+        var max = (1 << prefixBits) - 1;
+        if (value < max) {
+            out.write(pattern | value);
+            return;
+        }
+        out.write(pattern | max);
+        value -= max;
+        while (value >= 0x80) {
+            out.write(value & 0x7f | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+}
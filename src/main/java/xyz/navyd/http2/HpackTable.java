@@ -0,0 +1,236 @@
+package xyz.navyd.http2;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * HPACK的static table与有大小限制的dynamic table。
+ *
+ * <p>index从1开始，1-61为static table，之后为dynamic table，最新的entry在前
+ */
+class HpackTable {
+    // 每个entry在name与value之外的开销
+    static final int ENTRY_OVERHEAD = 32;
+
+    static final String[][] STATIC_TABLE = {
+        { ":authority", "" },
+        { ":method", "GET" },
+        { ":method", "POST" },
+        { ":path", "/" },
+        { ":path", "/index.html" },
+        { ":scheme", "http" },
+        { ":scheme", "https" },
+        { ":status", "200" },
+        { ":status", "204" },
+        { ":status", "206" },
+        { ":status", "304" },
+        { ":status", "400" },
+        { ":status", "404" },
+        { ":status", "500" },
+        { "accept-charset", "" },
+        { "accept-encoding", "gzip, deflate" },
+        { "accept-language", "" },
+        { "accept-ranges", "" },
+        { "accept", "" },
+        { "access-control-allow-origin", "" },
+        { "age", "" },
+        { "allow", "" },
+        { "authorization", "" },
+        { "cache-control", "" },
+        { "content-disposition", "" },
+        { "content-encoding", "" },
+        { "content-language", "" },
+        { "content-length", "" },
+        { "content-location", "" },
+        { "content-range", "" },
+        { "content-type", "" },
+        { "cookie", "" },
+        { "date", "" },
+        { "etag", "" },
+        { "expect", "" },
+        { "expires", "" },
+        { "from", "" },
+        { "host", "" },
+        { "if-match", "" },
+        { "if-modified-since", "" },
+        { "if-none-match", "" },
+        { "if-range", "" },
+        { "if-unmodified-since", "" },
+        { "last-modified", "" },
+        { "link", "" },
+        { "location", "" },
+        { "max-forwards", "" },
+        { "proxy-authenticate", "" },
+        { "proxy-authorization", "" },
+        { "range", "" },
+        { "referer", "" },
+        { "refresh", "" },
+        { "retry-after", "" },
+        { "server", "" },
+        { "set-cookie", "" },
+        { "strict-transport-security", "" },
+        { "transfer-encoding", "" },
+        { "user-agent", "" },
+        { "vary", "" },
+        { "via", "" },
+        { "www-authenticate", "" },
+    };
+    static final int STATIC_SIZE = STATIC_TABLE.length;
+    // 第一个同名entry的index
+    private static final Map<String, Integer> STATIC_NAMES = new HashMap<>();
+    // name与非空value都相同的entry
+    private static final Map<String, Integer> STATIC_ENTRIES = new HashMap<>();
+
+    static {
+        for (var i = STATIC_SIZE - 1; i >= 0; i--) {
+            var entry = STATIC_TABLE[i];
+            STATIC_NAMES.put(entry[0], i + 1);
+            if (!entry[1].isEmpty()) {
+                STATIC_ENTRIES.put(entry[0] + '\0' + entry[1], i + 1);
+            }
+        }
+    }
+
+    // 环形数组，head为最新entry的位置
+    private String[] names = new String[16];
+    private String[] values = new String[16];
+    private int head;
+    private int count;
+    private int size;
+    private int maxSize;
+
+    HpackTable(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    String name(int index) {
+        if (index <= STATIC_SIZE) {
+            return STATIC_TABLE[checkIndex(index) - 1][0];
+        }
+        return names[slot(checkIndex(index))];
+    }
+
+    String value(int index) {
+        if (index <= STATIC_SIZE) {
+            return STATIC_TABLE[checkIndex(index) - 1][1];
+        }
+        return values[slot(checkIndex(index))];
+    }
+
+    /**
+     * 添加到dynamic table，超过maxSize时淘汰最旧的entry
+     * @param name
+     * @param value
+     */
+    void add(String name, String value) {
+        var entrySize = name.length() + value.length() + ENTRY_OVERHEAD;
+        if (entrySize > maxSize) {
+            // 大于整个table的entry使table被清空
+            clear();
+            return;
+        }
+        while (size + entrySize > maxSize) {
+            evict();
+        }
+        if (count == names.length) {
+            grow();
+        }
+        head = (head - 1) & (names.length - 1);
+        names[head] = name;
+        values[head] = value;
+        count++;
+        size += entrySize;
+    }
+
+    void setMaxSize(int maxSize) {
+        this.maxSize = maxSize;
+        while (size > maxSize) {
+            evict();
+        }
+    }
+
+    int getMaxSize() {
+        return maxSize;
+    }
+
+    int getSize() {
+        return size;
+    }
+
+    int length() {
+        return STATIC_SIZE + count;
+    }
+
+    /**
+     * name与value都相同的entry
+     * @return 不存在时为0
+     */
+    int indexOf(String name, String value) {
+        var index = STATIC_ENTRIES.get(name + '\0' + value);
+        if (index != null) {
+            return index;
+        }
+        for (var i = 0; i < count; i++) {
+            var slot = (head + i) & (names.length - 1);
+            if (names[slot].equals(name) && values[slot].equals(value)) {
+                return STATIC_SIZE + 1 + i;
+            }
+        }
+        return 0;
+    }
+
+    /**
+     * 同名的entry，优先使用static table
+     * @return 不存在时为0
+     */
+    int indexOfName(String name) {
+        var index = STATIC_NAMES.get(name);
+        if (index != null) {
+            return index;
+        }
+        for (var i = 0; i < count; i++) {
+            if (names[(head + i) & (names.length - 1)].equals(name)) {
+                return STATIC_SIZE + 1 + i;
+            }
+        }
+        return 0;
+    }
+
+    private int checkIndex(int index) {
+        if (index <= 0 || index > length()) {
+            throw new IllegalArgumentException("illegal hpack index: " + index);
+        }
+        return index;
+    }
+
+    private int slot(int index) {
+        return (head + index - STATIC_SIZE - 1) & (names.length - 1);
+    }
+
+    private void evict() {
+        var tail = (head + count - 1) & (names.length - 1);
+        size -= names[tail].length() + values[tail].length() + ENTRY_OVERHEAD;
+        names[tail] = null;
+        values[tail] = null;
+        count--;
+    }
+
+    private void clear() {
+        while (count > 0) {
+            evict();
+        }
+    }
+
+    private void grow() {
+        var newNames = new String[names.length * 2];
+        var newValues = new String[names.length * 2];
+        for (var i = 0; i < count; i++) {
+            var slot = (head + i) & (names.length - 1);
+            newNames[i] = names[slot];
+            newValues[i] = values[slot];
+        }
+        names = newNames;
+        values = newValues;
+        head = 0;
+    }
+}
@@ -0,0 +1,36 @@
+package xyz.navyd.http2;
+
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+
+/**
+ * http/2协议错误。streamId为0时是connection error，需要发送GOAWAY并关闭连接，
+ * 否则只需要以RST_STREAM关闭该stream
+ */
+public class Http2Exception extends RuntimeException {
+    private static final long serialVersionUID = 1L;
+
+    private final ErrorCodeEnum error;
+    private final int streamId;
+
+    public Http2Exception(ErrorCodeEnum error, String message) {
+        this(error, 0, message);
+    }
+
+    public Http2Exception(ErrorCodeEnum error, int streamId, String message) {
+        super(message);
+        this.error = error;
+        this.streamId = streamId;
+    }
+
+    public ErrorCodeEnum getError() {
+        return error;
+    }
+
+    public int getStreamId() {
+        return streamId;
+    }
+
+    public boolean isConnectionError() {
+        return streamId == 0;
+    }
+}
@@ -0,0 +1,152 @@
+package xyz.navyd.http2;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * HPACK(RFC 7541 Appendix B)使用的canonical huffman code。
+ *
+ * <p>code按长度与符号顺序连续分配，只需要记录每个长度包含的符号即可还原整个表。
+ * 解码逐bit比较每个长度的code范围，header value通常很短，不使用查找表
+ */
+public class Huffman {
+    private static final int EOS = 256;
+    private static final int MAX_LENGTH = 30;
+    // 每个长度的符号，按符号值排序
+    private static final int[][] SYMBOLS_BY_LENGTH = new int[MAX_LENGTH + 1][];
+
+    static {
+        SYMBOLS_BY_LENGTH[5] = chars("012aceiost");
+        SYMBOLS_BY_LENGTH[6] = chars(" %-./3456789=A_bdfghlmnpru");
+        SYMBOLS_BY_LENGTH[7] = chars(":BCDEFGHIJKLMNOPQRSTUVWYjkqvwxyz");
+        SYMBOLS_BY_LENGTH[8] = chars("&*,;XZ");
+        SYMBOLS_BY_LENGTH[10] = chars("!\"()?");
+        SYMBOLS_BY_LENGTH[11] = chars("'+|");
+        SYMBOLS_BY_LENGTH[12] = chars("#>");
+        SYMBOLS_BY_LENGTH[13] = new int[] { 0, '$', '@', '[', ']', '~' };
+        SYMBOLS_BY_LENGTH[14] = chars("^}");
+        SYMBOLS_BY_LENGTH[15] = chars("<`{");
+        SYMBOLS_BY_LENGTH[19] = new int[] { '\\', 195, 208 };
+        SYMBOLS_BY_LENGTH[20] = new int[] { 128, 130, 131, 162, 184, 194, 224, 226 };
+        SYMBOLS_BY_LENGTH[21] = new int[] { 153, 161, 167, 172, 176, 177, 179, 209, 216, 217, 227, 229, 230 };
+        SYMBOLS_BY_LENGTH[22] = new int[] { 129, 132, 133, 134, 136, 146, 154, 156, 160, 163, 164, 169, 170, 173,
+            178, 181, 185, 186, 187, 189, 190, 196, 198, 228, 232, 233 };
+        SYMBOLS_BY_LENGTH[23] = new int[] { 1, 135, 137, 138, 139, 140, 141, 143, 147, 149, 150, 151, 152, 155, 157,
+            158, 165, 166, 168, 174, 175, 180, 182, 183, 188, 191, 197, 231, 239 };
+        SYMBOLS_BY_LENGTH[24] = new int[] { 9, 142, 144, 145, 148, 159, 171, 206, 215, 225, 236, 237 };
+        SYMBOLS_BY_LENGTH[25] = new int[] { 199, 207, 234, 235 };
+        SYMBOLS_BY_LENGTH[26] = new int[] { 192, 193, 200, 201, 202, 205, 210, 213, 218, 219, 238, 240, 242, 243,
+            255 };
+        SYMBOLS_BY_LENGTH[27] = new int[] { 203, 204, 211, 212, 214, 221, 222, 223, 241, 244, 245, 246, 247, 248,
+            250, 251, 252, 253, 254 };
+        SYMBOLS_BY_LENGTH[28] = new int[] { 2, 3, 4, 5, 6, 7, 8, 11, 12, 14, 15, 16, 17, 18, 19, 20, 21, 23, 24, 25,
+            26, 27, 28, 29, 30, 31, 127, 220, 249 };
+        SYMBOLS_BY_LENGTH[30] = new int[] { 10, 13, 22, EOS };
+    }
+
+    // 按符号索引
+    static final int[] CODES = new int[EOS + 1];
+    static final byte[] LENGTHS = new byte[EOS + 1];
+    // 按长度索引：该长度的第一个code与其在SYMBOLS_BY_LENGTH中的符号
+    private static final int[] FIRST_CODE = new int[MAX_LENGTH + 1];
+
+    static {
+        var code = 0;
+        for (var len = 1; len <= MAX_LENGTH; len++) {
+            code <<= 1;
+            var symbols = SYMBOLS_BY_LENGTH[len];
+            if (symbols == null) {
+                SYMBOLS_BY_LENGTH[len] = new int[0];
+                symbols = SYMBOLS_BY_LENGTH[len];
+            }
+            FIRST_CODE[len] = code;
+            for (var symbol : symbols) {
+                CODES[symbol] = code++;
+                LENGTHS[symbol] = (byte) len;
+            }
+        }
+    }
+
+    private Huffman() {
+    }
+
+    /**
+     * 编码后的字节数
+     * @param s 每个char作为一个字节
+     * @return
+     */
+    public static int encodedLength(CharSequence s) {
+        long bits = 0;
+        for (var i = 0; i < s.length(); i++) {
+            bits += LENGTHS[s.charAt(i) & 0xff];
+        }
+        return (int) ((bits + 7) >> 3);
+    }
+
+    /**
+     * 编码s并以EOS的前缀填充最后一个字节
+     * @param s 每个char作为一个字节
+     * @param out
+     */
+    public static void encode(CharSequence s, ByteArrayOutputStream out) {
+        long current = 0;
+        var bits = 0;
+        for (var i = 0; i < s.length(); i++) {
+            var symbol = s.charAt(i) & 0xff;
+            current = current << LENGTHS[symbol] | CODES[symbol];
+            bits += LENGTHS[symbol];
+            while (bits >= 8) {
+                bits -= 8;
+                out.write((int) (current >> bits));
+            }
+        }
+        if (bits > 0) {
+            out.write((int) (current << (8 - bits) | 0xff >> bits));
+        }
+    }
+
+    /**
+     * 解码src[offset, offset + length)
+     * @param src
+     * @param offset
+     * @param length
+     * @return 每个字节作为一个char
+     * @throws IllegalArgumentException 包含EOS、无效的code或填充不正确时
+     */
+    public static String decode(byte[] src, int offset, int length) {
+        var sb = new StringBuilder(length * 8 / 5);
+        var code = 0;
+        var len = 0;
+        for (var i = offset; i < offset + length; i++) {
+            var b = src[i];
+            for (var bit = 7; bit >= 0; bit--) {
+                code = code << 1 | (b >> bit & 1);
+                len++;
+                var index = code - FIRST_CODE[len];
+                if (index < SYMBOLS_BY_LENGTH[len].length) {
+                    var symbol = SYMBOLS_BY_LENGTH[len][index];
+                    if (symbol == EOS) {
+                        throw new IllegalArgumentException("huffman string contains EOS");
+                    }
+                    sb.append((char) symbol);
+                    code = 0;
+                    len = 0;
+                } else if (len >= MAX_LENGTH) {
+                    throw new IllegalArgumentException("illegal huffman code");
+                }
+            }
+        }
+        // 填充必须是少于8 bit的EOS前缀，即全为1
+        if (len > 7 || code != (1 << len) - 1) {
+            throw new IllegalArgumentException("illegal huffman padding");
+        }
+        return sb.toString();
+    }
+
+    private static int[] chars(String s) {
+        var symbols = new int[s.length()];
+        for (var i = 0; i < s.length(); i++) {
+            symbols[i] = s.charAt(i);
+        }
+        return symbols;
+    }
+}
@@ -0,0 +1,38 @@
+package xyz.navyd.http2.enums;
+
+/**
+ * http/2 frame类型
+ */
+public enum FrameTypeEnum {
+    DATA(0x0),
+    HEADERS(0x1),
+    PRIORITY(0x2),
+    RST_STREAM(0x3),
+    SETTINGS(0x4),
+    PUSH_PROMISE(0x5),
+    PING(0x6),
+    GOAWAY(0x7),
+    WINDOW_UPDATE(0x8),
+    CONTINUATION(0x9),
+    ;
+
+    private static final FrameTypeEnum[] BY_CODE = values();
+
+    private final int code;
+
+    FrameTypeEnum(int code) {
+        this.code = code;
+    }
+
+    public int getCode() {
+        return code;
+    }
+
+    /**
+     * @param code
+     * @return 未知的类型为null，应被忽略
+     */
+    public static FrameTypeEnum of(int code) {
+        return code >= 0 && code < BY_CODE.length ? BY_CODE[code] : null;
+    }
+}
@@ -0,0 +1,113 @@
+package xyz.navyd.limit;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 根据request耗时自动调整的并发限制。
+ *
+ * <p>使用gradient算法：长期耗时为所有样本的移动平均，每个样本的耗时与其比较，
+ * gradient = clamp(1.5 * longRtt / rtt, 0.5, 1)，新limit = limit * gradient + sqrt(limit)。
+ * 耗时稳定时limit逐渐增加，耗时上升说明下游开始排队，limit随之减少。
+ * request因超时被丢弃时按AIMD乘性减少limit。
+ * 并发未达到limit的一半时不调整，避免空闲时limit无限增长
+ */
+public class AdaptiveLimiter {
+    private static final Logger log = LoggerFactory.getLogger(AdaptiveLimiter.class);
+
+    private static final double TOLERANCE = 1.5;
+    private static final double SMOOTHING = 0.2;
+    private static final double BACKOFF = 0.9;
+    private static final int LONG_WINDOW = 100;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private volatile int limit;
+    // 以下只在update中访问
+    private double estimatedLimit;
+    private double longRtt;
+    private int samples;
+
+    /**
+     * @param initialLimit
+     * @param minLimit
+     * @param maxLimit
+     */
+    public AdaptiveLimiter(int initialLimit, int minLimit, int maxLimit) {
+        if (minLimit <= 0 || maxLimit < minLimit)
+            throw new IllegalArgumentException("illegal limit range: [" + minLimit + ", " + maxLimit + "]");
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.estimatedLimit = Math.max(minLimit, Math.min(maxLimit, initialLimit));
+        this.limit = (int) estimatedLimit;
+    }
+
+    /**
+     * 并发未达到limit时占用一个位置
+     * @return 达到limit时为false，不需要release
+     */
+    public boolean tryAcquire() {
+        while (true) {
+            var n = inFlight.get();
+            if (n >= limit) {
+                return false;
+            }
+            if (inFlight.compareAndSet(n, n + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 释放位置但不作为样本，如request在执行前被取消
+     */
+    public void cancel() {
+        inFlight.decrementAndGet();
+    }
+
+    /**
+     * 释放{@link #tryAcquire()}占用的位置并根据耗时调整limit
+     * @param rttNanos request的耗时
+     * @param dropped request是否因超时被丢弃
+     */
+    public void release(long rttNanos, boolean dropped) {
+        var n = inFlight.getAndDecrement();
+        update(rttNanos, n, dropped);
+    }
+
+    private synchronized void update(long rttNanos, int inFlight, boolean dropped) {
+        var old = limit;
+        if (dropped) {
+            estimatedLimit = Math.max(minLimit, estimatedLimit * BACKOFF);
+        } else if (rttNanos > 0) {
+            samples = Math.min(samples + 1, LONG_WINDOW);
+            longRtt += (rttNanos - longRtt) / samples;
+            // 耗时下降后让长期平均尽快跟上
+            if (longRtt > 2.0 * rttNanos) {
+                longRtt *= 0.95;
+            }
+            if (inFlight < estimatedLimit / 2) {
+                return;
+            }
+            var gradient = Math.max(0.5, Math.min(1.0, TOLERANCE * longRtt / rttNanos));
+            var newLimit = estimatedLimit * gradient + Math.sqrt(estimatedLimit);
+            estimatedLimit = estimatedLimit * (1 - SMOOTHING) + newLimit * SMOOTHING;
+            estimatedLimit = Math.max(minLimit, Math.min(maxLimit, estimatedLimit));
+        }
+        limit = (int) estimatedLimit;
+        if (limit != old) {
+            log.trace("concurrency limit changed: {} -> {}", old, limit);
+        }
+    }
+
+    public int getLimit() {
+        return limit;
+    }
+
+    public int getInFlight() {
+        return inFlight.get();
+    }
+}
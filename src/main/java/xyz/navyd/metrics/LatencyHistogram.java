@@ -0,0 +1,72 @@
+package xyz.navyd.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 按2的幂分桶的无锁耗时直方图，单位为纳秒。
+ *
+ * <p>第i个桶的上界为2^(10+i)ns，即从约1us到约68s，超过的记录到最后的+Inf桶。
+ * 记录时只计算leading zeros并对一个桶做一次原子自增，不分配对象
+ */
+public class LatencyHistogram {
+    private static final int MIN_SHIFT = 10;
+    static final int BUCKETS = 27;
+
+    // 最后一个为+Inf
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS + 1);
+    private final LongAdder sum = new LongAdder();
+
+    public void record(long nanos) {
+        if (nanos < 0) {
+            nanos = 0;
+        }
+        counts.getAndIncrement(bucket(nanos));
+        sum.add(nanos);
+    }
+
+    static int bucket(long nanos) {
+        if (nanos <= 1L << MIN_SHIFT) {
+            return 0;
+        }
+        var i = 64 - Long.numberOfLeadingZeros(nanos - 1) - MIN_SHIFT;
+        return Math.min(i, BUCKETS);
+    }
+
+    /**
+     * 第i个桶的上界
+     * @param i
+     * @return
+     */
+    static long upperBound(int i) {
+        return 1L << (MIN_SHIFT + i);
+    }
+
+    /**
+     * 每个桶的计数(非累计)，最后一个为+Inf
+     * @return
+     */
+    public long[] snapshot() {
+        var snapshot = new long[BUCKETS + 1];
+        for (var i = 0; i < snapshot.length; i++) {
+            snapshot[i] = counts.get(i);
+        }
+        return snapshot;
+    }
+
+    public long count() {
+        var count = 0L;
+        for (var i = 0; i <= BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * 所有记录的总纳秒数
+     * @return
+     */
+    public long sum() {
+        return sum.sum();
+    }
+}
@@ -0,0 +1,143 @@
+package xyz.navyd.metrics;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.metrics.enums.PhaseEnum;
+
+/**
+ * 所有route的metrics，输出为Prometheus text format(0.0.4)。
+ *
+ * <p>没有匹配到route的request，如404与解析错误，记录在{@link #getUnmatched()}中。
+ * 默认不记录，{@link #enable()}需要在server启动前调用
+ */
+public class MetricsRegistry {
+    public static final String CONTENT_TYPE = "text/plain; version=0.0.4; charset=utf-8";
+    public static final String UNMATCHED = "unmatched";
+
+    private static final String[] LE = new String[LatencyHistogram.BUCKETS];
+
+    static {
+        for (var i = 0; i < LE.length; i++) {
+            LE[i] = Double.toString(LatencyHistogram.upperBound(i) / 1e9);
+        }
+    }
+
+    private final List<RouteMetrics> routes = new CopyOnWriteArrayList<>();
+    private final RouteMetrics unmatched = new RouteMetrics(UNMATCHED);
+    private boolean enabled;
+
+    public void enable() {
+        this.enabled = true;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    public void register(RouteMetrics metrics) {
+        routes.add(metrics);
+    }
+
+    public RouteMetrics getUnmatched() {
+        return unmatched;
+    }
+
+    public List<RouteMetrics> getRoutes() {
+        return routes;
+    }
+
+    /**
+     * 输出所有metrics
+     * @return
+     */
+    public String prometheus() {
+        var sb = new StringBuilder(4096);
+        sb.append("# HELP http_requests_total Requests received by route.\n");
+        sb.append("# TYPE http_requests_total counter\n");
+        forEach(m -> sample(sb, "http_requests_total", m, null, null).append(m.getRequests()).append('\n'));
+
+        sb.append("# HELP http_requests_in_flight Requests being processed by route.\n");
+        sb.append("# TYPE http_requests_in_flight gauge\n");
+        forEach(m -> sample(sb, "http_requests_in_flight", m, null, null).append(m.getInFlight()).append('\n'));
+
+        sb.append("# HELP http_errors_total Error responses by route and status.\n");
+        sb.append("# TYPE http_errors_total counter\n");
+        forEach(m -> {
+            for (var status : StatusEnum.values()) {
+                var n = m.getErrors(status);
+                if (n > 0) {
+                    sample(sb, "http_errors_total", m, "status", Integer.toString(status.getCode()))
+                        .append(n).append('\n');
+                }
+            }
+        });
+
+        sb.append("# HELP http_phase_duration_seconds Request processing time by route and phase.\n");
+        sb.append("# TYPE http_phase_duration_seconds histogram\n");
+        forEach(m -> {
+            for (var phase : PhaseEnum.values()) {
+                var histogram = m.getHistogram(phase);
+                var counts = histogram.snapshot();
+                var total = 0L;
+                for (var n : counts) {
+                    total += n;
+                }
+                if (total == 0) {
+                    continue;
+                }
+                var cumulative = 0L;
+                for (var i = 0; i < LE.length; i++) {
+                    cumulative += counts[i];
+                    bucket(sb, m, phase, LE[i]).append(cumulative).append('\n');
+                }
+                bucket(sb, m, phase, "+Inf").append(total).append('\n');
+                sample(sb, "http_phase_duration_seconds_sum", m, "phase", phase.getLabel())
+                    .append(histogram.sum() / 1e9).append('\n');
+                sample(sb, "http_phase_duration_seconds_count", m, "phase", phase.getLabel())
+                    .append(total).append('\n');
+            }
+        });
+        return sb.toString();
+    }
+
+    private void forEach(Consumer<RouteMetrics> action) {
+        for (var m : routes) {
+            action.accept(m);
+        }
+        action.accept(unmatched);
+    }
+
+    private static StringBuilder bucket(StringBuilder sb, RouteMetrics m, PhaseEnum phase, String le) {
+        sb.append("http_phase_duration_seconds_bucket{route=\"");
+        escape(sb, m.getRoute());
+        sb.append("\",method=\"").append(m.getMethods()).append("\",phase=\"").append(phase.getLabel())
+            .append("\",le=\"").append(le).append("\"} ");
+        return sb;
+    }
+
+    private static StringBuilder sample(StringBuilder sb, String name, RouteMetrics m, String label, String value) {
+        sb.append(name).append("{route=\"");
+        escape(sb, m.getRoute());
+        sb.append("\",method=\"").append(m.getMethods()).append('"');
+        if (label != null) {
+            sb.append(',').append(label).append("=\"").append(value).append('"');
+        }
+        return sb.append("} ");
+    }
+
+    private static void escape(StringBuilder sb, String value) {
+        for (var i = 0; i < value.length(); i++) {
+            var c = value.charAt(i);
+            if (c == '\\' || c == '"') {
+                sb.append('\\').append(c);
+            } else if (c == '\n') {
+                sb.append("\\n");
+            } else {
+                sb.append(c);
+            }
+        }
+    }
+}
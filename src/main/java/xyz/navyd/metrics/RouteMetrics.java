@@ -0,0 +1,95 @@
+package xyz.navyd.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.metrics.enums.PhaseEnum;
+
+/**
+ * 一个route的计数与各阶段耗时。
+ *
+ * <p>计数使用{@link LongAdder}分散在多个cell上，多个线程同时记录时不争用同一个cache line
+ */
+public class RouteMetrics {
+    private final String route;
+    private final String methods;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder inFlight = new LongAdder();
+    // 按StatusEnum.ordinal，只记录>=400的status
+    private final LongAdder[] errors = new LongAdder[StatusEnum.values().length];
+    private final LatencyHistogram[] phases = new LatencyHistogram[PhaseEnum.values().length];
+
+    /**
+     * @param route router path
+     * @param methods 该route接受的http method
+     */
+    public RouteMetrics(String route, MethodEnum... methods) {
+        this.route = route;
+        var sb = new StringBuilder();
+        for (var method : methods) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(method.name());
+        }
+        this.methods = sb.toString();
+        for (var status : StatusEnum.values()) {
+            if (status.getCode() >= 400) {
+                errors[status.ordinal()] = new LongAdder();
+            }
+        }
+        for (var i = 0; i < phases.length; i++) {
+            phases[i] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * 开始处理一个request
+     */
+    public void begin() {
+        requests.increment();
+        inFlight.increment();
+    }
+
+    /**
+     * request处理完成，与{@link #begin()}成对调用
+     * @param status
+     */
+    public void end(StatusEnum status) {
+        inFlight.decrement();
+        var counter = errors[status.ordinal()];
+        if (counter != null) {
+            counter.increment();
+        }
+    }
+
+    public void record(PhaseEnum phase, long nanos) {
+        phases[phase.ordinal()].record(nanos);
+    }
+
+    public String getRoute() {
+        return route;
+    }
+
+    public String getMethods() {
+        return methods;
+    }
+
+    public long getRequests() {
+        return requests.sum();
+    }
+
+    public long getInFlight() {
+        return inFlight.sum();
+    }
+
+    public long getErrors(StatusEnum status) {
+        var counter = errors[status.ordinal()];
+        return counter == null ? 0 : counter.sum();
+    }
+
+    public LatencyHistogram getHistogram(PhaseEnum phase) {
+        return phases[phase.ordinal()];
+    }
+}
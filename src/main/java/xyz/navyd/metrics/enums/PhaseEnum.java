@@ -0,0 +1,38 @@
+package xyz.navyd.metrics.enums;
+
+/**
+ * 一个request处理的各个阶段，分别记录耗时
+ */
+public enum PhaseEnum {
+    /**
+     * 从读到request的第一个字节到解析完成，包括等待body的时间
+     */
+    PARSE("parse"),
+    /**
+     * 在路由树中查找controller
+     */
+    ROUTE("route"),
+    /**
+     * 解析controller方法的参数
+     */
+    BIND("bind"),
+    /**
+     * 调用controller方法
+     */
+    INVOKE("invoke"),
+    /**
+     * 序列化response
+     */
+    SERIALIZE("serialize"),
+    ;
+
+    private final String label;
+
+    PhaseEnum(String label) {
+        this.label = label;
+    }
+
+    public String getLabel() {
+        return label;
+    }
+}
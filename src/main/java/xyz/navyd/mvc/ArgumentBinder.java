@@ -0,0 +1,127 @@
+package xyz.navyd.mvc;
+
+import java.io.IOException;
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Parameter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.mvc.annotations.Body;
+import xyz.navyd.mvc.annotations.PathParam;
+import xyz.navyd.mvc.annotations.QueryParam;
+
+/**
+ * 在注册时为controller方法构建参数解析计划，
+ * 处理request时不再反射读取参数与注解
+ */
+class ArgumentBinder {
+    private static final Logger log = LoggerFactory.getLogger(ArgumentBinder.class);
+
+    private final ObjectMapper mapper;
+    private final ParamConverters converters;
+
+    ArgumentBinder(ObjectMapper mapper) {
+        this.mapper = mapper;
+        this.converters = new ParamConverters(mapper);
+    }
+
+    ParamConverters getConverters() {
+        return converters;
+    }
+
+    /**
+     * 为method的每个参数确定一个resolver
+     * @param method
+     * @return
+     */
+    ArgumentResolver[] bind(Method method) {
+        var parameters = method.getParameters();
+        var resolvers = new ArgumentResolver[parameters.length];
+        for (var i = 0; i < parameters.length; i++) {
+            resolvers[i] = bind(method, parameters[i]);
+        }
+        return resolvers;
+    }
+
+    private ArgumentResolver bind(Method method, Parameter param) {
+        var type = param.getType();
+        // 注入request
+        if (type.equals(Request.class)) {
+            return (request, match) -> request;
+        }
+        var pathAnno = param.getAnnotation(PathParam.class);
+        if (pathAnno != null) {
+            return pathParam(pathAnno, type);
+        }
+        var queryAnno = param.getAnnotation(QueryParam.class);
+        if (queryAnno != null) {
+            return queryParam(queryAnno, type, param.getName());
+        }
+        if (param.getAnnotation(Body.class) != null) {
+            return body(type);
+        }
+        // 除了request 不允许自动注入未注解类型
+        var methodName = method.getDeclaringClass().getName() + "." + method.getName();
+        log.debug("unannotated class parameter: {}({})", methodName, param.getName());
+        return (request, match) -> {
+            log.error("unannotated class parameter: {}({})", methodName, param.getName());
+            throw new IllegalArgumentException("unannotated class parameter!");
+        };
+    }
+
+    private ArgumentResolver body(Class<?> paramClazz) {
+        return (request, match) -> {
+            try (var in = request.getBodyStream()) {
+                return mapper.readValue(in, paramClazz);
+            } catch (IOException e) {
+                log.error("parsing body error: {}", e);
+            }
+            return null;
+        };
+    }
+
+    /**
+     * 从request的query索引读取，数组类型的参数接收同名的所有value
+     */
+    private ArgumentResolver queryParam(QueryParam queryAnno, Class<?> paramClazz, String inputParamName) {
+        final var queryName = queryAnno.value().isEmpty() ? inputParamName : queryAnno.value();
+        if (paramClazz.isArray()) {
+            final var componentClazz = paramClazz.getComponentType();
+            final var converter = converters.get(componentClazz);
+            return (request, match) -> {
+                var values = request.getQueryParams().getAll(queryName);
+                var array = Array.newInstance(componentClazz, values.size());
+                for (var i = 0; i < values.size(); i++) {
+                    var val = values.get(i);
+                    Array.set(array, i, converter.convert(val, 0, val.length()));
+                }
+                return array;
+            };
+        }
+        final var converter = converters.get(paramClazz);
+        return (request, match) -> request.getQueryParams().get(queryName)
+            .map(val -> converter.convert(val, 0, val.length()))
+            .orElse(null);
+    }
+
+    /**
+     * 直接在path中group的区间上转换，不截取String
+     */
+    private ArgumentResolver pathParam(PathParam pathAnno, Class<?> paramClazz) {
+        final var group = pathAnno.value();
+        final var converter = converters.get(paramClazz);
+        return (request, match) -> {
+            var start = match.groupStart(group);
+            if (start < 0) {
+                log.error("not found path group {} in path: {}", group, match.path);
+                return null;
+            }
+            return converter.convert(match.path, start, match.groupEnd(group));
+        };
+    }
+}
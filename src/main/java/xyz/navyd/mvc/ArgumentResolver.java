@@ -0,0 +1,17 @@
+package xyz.navyd.mvc;
+
+import xyz.navyd.http.Request;
+
+/**
+ * 从request中解析controller方法的一个参数，在scan时为每个参数确定
+ */
+@FunctionalInterface
+interface ArgumentResolver {
+    /**
+     * 返回null表示解析失败
+     * @param request
+     * @param match
+     * @return
+     */
+    Object resolve(Request request, RouteMatch match);
+}
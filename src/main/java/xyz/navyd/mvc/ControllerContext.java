@@ -1,139 +1,234 @@
 package xyz.navyd.mvc;
 
+import java.io.BufferedReader;
 import java.io.IOException;
-import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
 import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Optional;
-import java.util.regex.Pattern;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
 
-import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
 
-import org.reflections.Reflections;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import xyz.navyd.http.Request;
 import xyz.navyd.http.Response;
-import xyz.navyd.http.enums.MethodEnum;
-import xyz.navyd.mvc.annotations.Body;
+import xyz.navyd.limit.AdaptiveLimiter;
+import xyz.navyd.metrics.MetricsRegistry;
+import xyz.navyd.metrics.RouteMetrics;
+import xyz.navyd.metrics.enums.PhaseEnum;
+import xyz.navyd.mvc.annotations.Cacheable;
 import xyz.navyd.mvc.annotations.Controller;
-import xyz.navyd.mvc.annotations.PathParam;
-import xyz.navyd.mvc.annotations.QueryParam;
 import xyz.navyd.mvc.annotations.Router;
 
 public class ControllerContext {
     private static final Logger log = LoggerFactory.getLogger(Controller.class);
 
+    private static final long DEFAULT_RESPONSE_CACHE_CAPACITY = 1024 * 1024 * 32;
+    private static final int ROUTE_INITIAL_LIMIT = 50;
+    private static final int ROUTE_MAX_LIMIT = 1000;
+
     private final Map<String, List<ControllerComponent>> pathComponents = new HashMap<>();
-    private ObjectMapper mapper;
+    private final RouteTrie routes = new RouteTrie();
+    private final ObjectMapper mapper;
+    private final ArgumentBinder binder;
+    private final MetricsRegistry metrics = new MetricsRegistry();
+    private ResponseCache responseCache;
 
     ControllerContext() {
-
+        this.mapper = new ObjectMapper();
+        this.binder = new ArgumentBinder(mapper);
+        this.responseCache = new ResponseCache(mapper, DEFAULT_RESPONSE_CACHE_CAPACITY);
     }
 
     public static ControllerContext newInstance() {
         return new ControllerContext();
     }
 
+    /**
+     * {@link xyz.navyd.mvc.annotations.Cacheable}缓存body的最大总字节数，默认为32MB
+     * @param capacity
+     * @return
+     */
+    public ControllerContext responseCacheCapacity(long capacity) {
+        if (capacity < 0)
+            throw new IllegalArgumentException("illegal responseCacheCapacity: " + capacity);
+        this.responseCache = new ResponseCache(mapper, capacity);
+        return this;
+    }
+
+    /**
+     * 为path与query参数类型注册converter，需要在{@link #scanPackage(String)}之前调用
+     * @param <T>
+     * @param type
+     * @param converter
+     * @return
+     */
+    public <T> ControllerContext registerConverter(Class<T> type, ParamConverter<? extends T> converter) {
+        binder.getConverters().register(type, converter);
+        return this;
+    }
+
+    /**
+     * 加载编译时为pkg及其子包生成的{@link RouteRegistry}，不扫描classpath
+     * @param pkg
+     */
     public void scanPackage(String pkg) {
-        log.debug("start scanning package: {}", pkg);
-        var refs = new Reflections(pkg);
-        // true避免 org.reflections.ReflectionsException: Scanner SubTypesScanner was not
-        // configured
-        for (var controllerClazz : refs.getTypesAnnotatedWith(Controller.class, true)) {
-            log.trace("scanning controller: {}", controllerClazz.getName());
-            var routerOnClass = controllerClazz.getAnnotation(Router.class);
-            // router class not found
-            if (routerOnClass == null) {
-                log.info("ignore controller: {}, not found Router on class", controllerClazz.getName());
-                return;
+        log.debug("start loading route registries in package: {}", pkg);
+        var loader = Thread.currentThread().getContextClassLoader();
+        if (loader == null) {
+            loader = ControllerContext.class.getClassLoader();
+        }
+        var count = 0;
+        for (var name : registryNames(loader)) {
+            var registryPkg = name.lastIndexOf('.') < 0 ? "" : name.substring(0, name.lastIndexOf('.'));
+            if (!registryPkg.equals(pkg) && !registryPkg.startsWith(pkg + ".")) {
+                continue;
             }
-            // scan methods
-            log.trace("scanning controller methods with: {}", Router.class.getName());
-            for (var method : controllerClazz.getDeclaredMethods()) {
-                var routerOnMethod = method.getAnnotation(Router.class);
-                if (routerOnMethod == null) {
-                    continue;
-                } else if (!method.getReturnType().equals(Response.class)) {
-                    log.error("found return type {} is not {} on {}.{}()", method.getReturnType().getName(),
-                            Response.class.getName(), controllerClazz.getName(), method.getName());
-                    throw new IllegalArgumentException("return type is not " + Response.class.getName());
-                }
-                log.trace("found router method on {}.{}()", controllerClazz.getName(), method.getName());
-                Object controller = null;
-                try {
-                    controller = controllerClazz.getDeclaredConstructor().newInstance();
-                } catch (NoSuchMethodException e) {
-                    log.error("not found No arguments constructor on {}, skip error: {}", controllerClazz.getName(),
-                            e.getMessage());
-                } catch (SecurityException | InstantiationException | IllegalAccessException | IllegalArgumentException
-                        | InvocationTargetException e) {
-                    log.error("skip new constructor error: {}", e);
-                    e.printStackTrace();
-                }
-                if (controller != null) {
-                    buildComponents(routerOnClass, routerOnMethod, controller, method);
-                    log.debug("controller method added: {}.{}()", controllerClazz.getName(), method.getName());
+            RouteRegistry registry;
+            try {
+                registry = (RouteRegistry) Class.forName(name, true, loader).getDeclaredConstructor().newInstance();
+            } catch (ReflectiveOperationException | ClassCastException e) {
+                log.error("loading route registry {} error: {}", name, e);
+                throw new IllegalArgumentException("illegal route registry: " + name, e);
+            }
+            register(registry);
+            count++;
+        }
+        if (count == 0) {
+            log.warn("not found generated route registry in package: {}, is the annotation processor enabled?", pkg);
+        }
+    }
+
+    /**
+     * 注册一个路由表，通常由{@link #scanPackage(String)}调用
+     * @param registry
+     */
+    public void register(RouteRegistry registry) {
+        log.trace("registering routes: {}", registry.getClass().getName());
+        registry.register(new Registrar());
+    }
+
+    private static Set<String> registryNames(ClassLoader loader) {
+        var names = new LinkedHashSet<String>();
+        try {
+            var urls = loader.getResources(RouteRegistry.INDEX);
+            while (urls.hasMoreElements()) {
+                var url = urls.nextElement();
+                try (var reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    String line;
+                    while ((line = reader.readLine()) != null) {
+                        line = line.trim();
+                        if (!line.isEmpty() && !line.startsWith("#")) {
+                            names.add(line);
+                        }
+                    }
                 }
             }
+        } catch (IOException e) {
+            log.error("reading {} error: {}", RouteRegistry.INDEX, e);
+            throw new UncheckedIOException(e);
         }
+        return names;
     }
 
-    @SuppressWarnings("unchecked")
     public <T> Optional<Response<T>> handle(Request request) {
-        var component = getControllerComponent(request);
-        if (component.isEmpty()) {
+        var match = route(request);
+        if (match.isEmpty()) {
             return Optional.empty();
         }
-        var parameters = component.get().method.getParameters();
-        var paramObjects = new Object[parameters.length];
-        for (var i = 0; i < parameters.length; i++) {
-            var param = parameters[i];
-            var type = param.getType();
-            // 注入request
-            if (type.equals(Request.class)) {
-                paramObjects[i] = request;
-                continue;
-            }
-            var annotations = param.getAnnotations();
-            // 除了request 不允许自动注入未注解类型
-            Annotation annotation = getPredefinedAnnotation(annotations);
-            Optional<Object> o = Optional.empty();
-            if (annotation == null) {
-                log.error("unannotated class parameter: {}.{}({})", component.get().controller.getClass().getName(),
-                        component.get().method.getName(), param.getName());
-                throw new IllegalArgumentException("unannotated class parameter!");
-            } else if (annotation instanceof PathParam) {
-                o = getPathParamVal(component.get().path, (PathParam) annotation, request, type);
+        return Optional.of(handle(match.get(), request));
+    }
 
-            } else if (annotation instanceof QueryParam) {
-                o = getQueryParamVal((QueryParam) annotation, request, type, param.getName());
-            } else if (annotation instanceof Body) {
-                o = getBodyVal((Body) annotation, request, type);
-            } else {
-                log.error("unknown annotation: {}", annotation.getClass().getName());
-                throw new IllegalArgumentException("unknown annotation");
-            }
+    /**
+     * 按注册时构建的参数计划解析参数，并通过生成的invoker直接调用controller方法。
+     * Cacheable方法命中缓存时不调用
+     * @param <T>
+     * @param match
+     * @param request
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public <T> Response<T> handle(RouteMatch match, Request request) {
+        if (match.component.async) {
+            throw new IllegalArgumentException("router method returns CompletionStage: " + match.component.method);
+        }
+        var policy = match.component.cache;
+        if (policy == null) {
+            return (Response<T>) invoke(match, request);
+        }
+        var key = policy.key(match.component.path, request);
+        var cached = responseCache.get(key, request);
+        if (cached != null) {
+            log.trace("response cache hit: {}", key);
+            return (Response<T>) cached;
+        }
+        return (Response<T>) responseCache.put(key, policy, (Response<?>) invoke(match, request), request);
+    }
+
+    /**
+     * 调用controller方法，返回Response的方法被包装为已完成的future。
+     * 返回的是controller的future本身，取消或以异常完成会传递给controller
+     * @param match
+     * @param request
+     * @return
+     */
+    @SuppressWarnings("unchecked")
+    public CompletableFuture<Response<?>> handleAsync(RouteMatch match, Request request) {
+        if (!match.component.async) {
+            return CompletableFuture.completedFuture(handle(match, request));
+        }
+        var stage = (CompletionStage<Response<?>>) invoke(match, request);
+        if (stage == null) {
+            log.error("controller returned null CompletionStage: {}", match);
+            throw new IllegalStateException("controller returned null CompletionStage");
+        }
+        return stage.toCompletableFuture();
+    }
+
+    private Object invoke(RouteMatch match, Request request) {
+        var component = match.component;
+        var resolvers = component.resolvers;
+        var enabled = metrics.isEnabled();
+        var start = enabled ? System.nanoTime() : 0;
+        var args = new Object[resolvers.length];
+        for (var i = 0; i < resolvers.length; i++) {
+            var o = resolvers[i].resolve(request, match);
             // null
-            if (o.isEmpty()) {
+            if (o == null) {
                 throw new IllegalArgumentException("parsing annotation error!");
             }
-            paramObjects[i] = o.get();
+            args[i] = o;
         }
         try {
-            var response = component.get().method.invoke(component.get().controller, paramObjects);
-            return Optional.of((Response<T>) response);
-        } catch (IllegalAccessException | IllegalArgumentException | InvocationTargetException e) {
+            if (!enabled) {
+                return component.invoker.invoke(args);
+            }
+            var bound = System.nanoTime();
+            component.metrics.record(PhaseEnum.BIND, bound - start);
+            try {
+                return component.invoker.invoke(args);
+            } finally {
+                component.metrics.record(PhaseEnum.INVOKE, System.nanoTime() - bound);
+            }
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
             log.error("method invoke error: {}", e);
-            e.printStackTrace();
+            throw new IllegalStateException("controller method invoke error", e);
         }
-        return Optional.empty();
     }
 
     /**
@@ -144,96 +239,36 @@ public class ControllerContext {
      * @return
      */
     Optional<ControllerComponent> getControllerComponent(Request request) {
-        return getControllerComponent(request.getPath(), request.getMethod());
+        return route(request).map(match -> match.component);
     }
 
-    Map<String, List<ControllerComponent>> getPathComponents() {
-        return pathComponents;
-    }
-
-    private Optional<Object> getBodyVal(Body bodyAnno, Request request, Class<?> paramClazz) {
-        var buf = request.getBody();
-        var bytes = new byte[buf.remaining()];
-        buf.get(bytes, buf.position(), buf.limit());
-        try {
-            return Optional.of(mapper.readValue(bytes, paramClazz));
-        } catch (IOException e) {
-            log.error("parsing body error: {}", e);
-            e.printStackTrace();
-        }
-        return Optional.empty();
-    }
-
-    private Optional<Object> getQueryParamVal(QueryParam queryAnno, Request request, Class<?> paramClazz, String inputParamName) {
-        final var queryName = queryAnno.value() != null && queryAnno.value().isEmpty() ? queryAnno.value() : inputParamName;
-        return request.getQuery().map(queryStr -> {
-            for (var s : queryStr.split("&")) {
-                var query = s.split("=");
-                if (query.length != 2) {
-                    log.error("parsing query error! {}", s);
-                    throw new IllegalArgumentException("parsing query error: {}" + s);
-                }
-                if (query[0].equals(queryName)) {
-                    try {
-                        return mapper.readValue(query[1], paramClazz);
-                    } catch (JsonProcessingException e) {
-                        log.error("parsing query error: {}", e);
-                        e.printStackTrace();
-                    }
-                }
-            }
-            return null;
-        });
+    /**
+     * 在路由树中匹配request，结果包含path中捕获的group
+     * @param request
+     * @return
+     */
+    public Optional<RouteMatch> route(Request request) {
+        return routes.match(request.getPath(), request.getMethod());
     }
 
-    private Optional<Object> getPathParamVal(String regex, PathParam pathAnno, Request request, Class<?> paramClazz) {
-        var matcher = Pattern.compile(regex).matcher(request.getPath());
-        var pathVal = matcher.group(pathAnno.value());
-        try {
-            return Optional.ofNullable(mapper.readValue(pathVal, paramClazz));
-        } catch (JsonProcessingException e) {
-            log.error("parsing path param val error: {}", e);
-            e.printStackTrace();
-        }
-        return Optional.empty();
+    /**
+     * 每个route的metrics，默认不记录
+     * @return
+     */
+    public MetricsRegistry getMetrics() {
+        return metrics;
     }
 
-    private Annotation getPredefinedAnnotation(Annotation[] annotations) {
-        var myAnnos = new Class<?>[] { Router.class, PathParam.class, QueryParam.class, Body.class };
-        for (var clazz : myAnnos) {
-            var anno = getFirst(annotations, clazz);
-            if (anno != null) {
-                return (Annotation) anno;
-            }
-        }
-        return null;
+    public ObjectMapper getObjectMapper() {
+        return mapper;
     }
 
-    private Optional<ControllerComponent> getControllerComponent(String path, MethodEnum method) {
-        // 直接匹配
-        var components = pathComponents.get(path);
-        if (components != null) {
-            for (var component : components) {
-                if (contains(component.router.methods(), method)) {
-                    return Optional.of(component);
-                }
-            }
-        }
-        // 正则匹配
-        for (var entry : pathComponents.entrySet()) {
-            components = entry.getValue();
-            if (path.matches(entry.getKey())) {
-                for (var component : components) {
-                    if (contains(component.router.methods(), method)) {
-                        return Optional.of(component);
-                    }
-                }
-            }
-        }
-        return Optional.empty();
+    Map<String, List<ControllerComponent>> getPathComponents() {
+        return pathComponents;
     }
 
-    private void buildComponents(Router parent, Router child, Object controller, Method method) {
+    private void buildComponents(Router parent, Router child, Object controller, Method method,
+            ArgumentResolver[] resolvers, ControllerInvoker invoker) {
         log.trace("start build ControllerMethod");
         // paths
         StringBuilder sb = new StringBuilder();
@@ -245,6 +280,7 @@ public class ControllerContext {
             else if (!"/".equals(parentPath)) {
                 sb.append(parentPath);
             }
+            var parentLen = sb.length();
             for (var childPath : child.value()) {
                 if (childPath.isBlank() || childPath.isEmpty()) {
                     continue;
@@ -255,42 +291,87 @@ public class ControllerContext {
                     throw new IllegalArgumentException("router.methods is empty");
                 }
                 var path = sb.append(childPath).toString();
-                checkDuplicateRouter(path, child, controller, method);
-                var component = new ControllerComponent(controller, method, child, path);
-                var components = pathComponents.getOrDefault(path, new ArrayList<>(8));
-                components.add(component);
-                pathComponents.put(path, components);
-                log.trace("context added: {}", component);
-                sb.setLength(parentPath.length());
+                addComponent(new ControllerComponent(controller, method, child, path, resolvers, invoker));
+                sb.setLength(parentLen);
             }
             sb.setLength(0);
         }
     }
 
     /**
-     * 如果path与childRouter已存在则异常
-     * @param path
-     * @param childRouter
-     * @param controller
-     * @param method
+     * 将component加入路由树，path为完整的router path
+     * @param component
+     */
+    void addComponent(ControllerComponent component) {
+        routes.add(component.path, component);
+        metrics.register(component.metrics);
+        pathComponents.computeIfAbsent(component.path, k -> new ArrayList<>(8)).add(component);
+        log.trace("context added: {}", component);
+    }
+
+    /**
+     * 每个controller类只创建一个实例，router方法的注解在注册时读取一次
      */
-    private void checkDuplicateRouter(String path, Router childRouter, Object controller, Method method) {
-        for (var childHttpMethod : childRouter.methods()) {
-            // only one router for path, method
-            var oldComponent = getControllerComponent(path, childHttpMethod);
-            // 路径一样 method一样
-            if (oldComponent.isPresent()) {
-                log.error("found duplicate for path: {}, http method: {} in {}.{}() and {}.{}()", 
-                    path,
-                    childHttpMethod, 
-                    oldComponent.get().controller.getClass().getName(), 
-                    oldComponent.get().method.getName(),
-                    controller.getClass().getName(), 
-                    method.getName());
-                throw new IllegalArgumentException("found duplicate controller router!");
+    private class Registrar implements RouteRegistrar {
+        @Override
+        public <C> C controller(Class<C> type, Supplier<C> constructor) {
+            log.trace("creating controller: {}", type.getName());
+            return constructor.get();
+        }
+
+        @Override
+        public void route(Object controller, String methodName, Class<?>[] parameterTypes, ControllerInvoker invoker) {
+            var controllerClazz = controller.getClass();
+            Method method;
+            try {
+                method = controllerClazz.getDeclaredMethod(methodName, parameterTypes);
+            } catch (NoSuchMethodException e) {
+                log.error("not found router method {}.{}(), registry is out of date", controllerClazz.getName(), methodName);
+                throw new IllegalArgumentException("not found router method: " + methodName, e);
             }
+            var routerOnClass = controllerClazz.getAnnotation(Router.class);
+            var routerOnMethod = method.getAnnotation(Router.class);
+            if (routerOnClass == null || routerOnMethod == null) {
+                log.error("not found Router on {}.{}()", controllerClazz.getName(), methodName);
+                throw new IllegalArgumentException("not found Router on " + controllerClazz.getName());
+            } else if (!method.getReturnType().equals(Response.class) && !isAsync(method)) {
+                log.error("found return type {} is not {} on {}.{}()", method.getReturnType().getName(),
+                        Response.class.getName(), controllerClazz.getName(), method.getName());
+                throw new IllegalArgumentException("return type is not " + Response.class.getName() + " or "
+                        + CompletionStage.class.getName());
+            } else if (isAsync(method) && method.isAnnotationPresent(Cacheable.class)) {
+                log.error("Cacheable on CompletionStage router method {}.{}()", controllerClazz.getName(),
+                        method.getName());
+                throw new IllegalArgumentException("Cacheable is not allowed on CompletionStage router");
+            } else if (routerOnMethod.timeout() < 0) {
+                throw new IllegalArgumentException("illegal Router.timeout: " + routerOnMethod.timeout());
+            }
+            var resolvers = binder.bind(method);
+            buildComponents(routerOnClass, routerOnMethod, controller, method, resolvers, invoker);
+            log.debug("controller method added: {}.{}()", controllerClazz.getName(), method.getName());
         }
-        
+    }
+
+    /**
+     * 返回类型是否为CompletionStage&lt;Response&lt;?&gt;&gt;，类型参数不是Response时抛出异常
+     */
+    static boolean isAsync(Method method) {
+        if (!CompletionStage.class.isAssignableFrom(method.getReturnType())) {
+            return false;
+        }
+        var type = method.getGenericReturnType();
+        if (type instanceof ParameterizedType) {
+            var arg = ((ParameterizedType) type).getActualTypeArguments()[0];
+            if (arg instanceof ParameterizedType) {
+                arg = ((ParameterizedType) arg).getRawType();
+            }
+            if (arg instanceof Class && !arg.equals(Response.class)) {
+                log.error("found CompletionStage of {} on {}.{}()", arg.getTypeName(),
+                        method.getDeclaringClass().getName(), method.getName());
+                throw new IllegalArgumentException("return type is not CompletionStage of " + Response.class.getName());
+            }
+        }
+        return true;
     }
 
     static class ControllerComponent {
@@ -298,12 +379,26 @@ public class ControllerContext {
         final Method method;
         final Router router;
         final String path;
+        final ArgumentResolver[] resolvers;
+        final ControllerInvoker invoker;
+        final RouteMetrics metrics;
+        // 没有Cacheable时为null
+        final ResponseCache.Policy cache;
+        final AdaptiveLimiter limiter = new AdaptiveLimiter(ROUTE_INITIAL_LIMIT, 1, ROUTE_MAX_LIMIT);
+        // 返回CompletionStage
+        final boolean async;
 
-        public ControllerComponent(Object controller, Method method, Router router, String path) {
+        public ControllerComponent(Object controller, Method method, Router router, String path,
+                ArgumentResolver[] resolvers, ControllerInvoker invoker) {
             this.controller = controller;
             this.method = method;
             this.router = router;
             this.path = path;
+            this.resolvers = resolvers;
+            this.invoker = invoker;
+            this.metrics = new RouteMetrics(path, router.methods());
+            this.cache = ResponseCache.Policy.of(method, router);
+            this.async = isAsync(method);
         }
 
         @Override
@@ -313,21 +408,4 @@ public class ControllerContext {
         }
         
     }
-
-    private static <T> boolean contains(T[] arrays, T t) {
-        return getFirst(arrays, t) != null;
-    }
-
-    private static <T> T getFirst(T[] arrays, T t) {
-        if (t == null) {
-            throw new NullPointerException();
-        }
-        for (var e : arrays) {
-            if (e == null) 
-                continue;
-            else if (e.equals(t))
-                return e;
-        }
-        return null;
-    }
 }
\ No newline at end of file
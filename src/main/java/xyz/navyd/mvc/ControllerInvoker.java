@@ -0,0 +1,9 @@
+package xyz.navyd.mvc;
+
+/**
+ * 以解析后的参数调用一个controller方法，由生成的{@link RouteRegistry}直接调用而不经过反射
+ */
+@FunctionalInterface
+public interface ControllerInvoker {
+    Object invoke(Object[] args) throws Throwable;
+}
@@ -0,0 +1,70 @@
+package xyz.navyd.mvc;
+
+/**
+ * 估计key访问频率的count-min sketch，用于cache的准入判断。
+ *
+ * <p>每个计数4 bit，一个long保存16个。每个key对应4行中的一个计数，估计值取最小。
+ * 总增加次数达到10倍容量时所有计数减半，使旧的访问逐渐失效。非线程安全
+ */
+class FrequencySketch {
+    private static final long[] SEEDS = { 0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL,
+        0xcbf29ce484222325L };
+    private static final long RESET_MASK = 0x7777777777777777L;
+
+    private final long[] table;
+    private final int mask;
+    private final int sampleSize;
+    private int additions;
+
+    /**
+     * @param capacity 预计的最大key数量
+     */
+    FrequencySketch(int capacity) {
+        var size = Integer.highestOneBit(Math.max(capacity, 16) - 1) << 1;
+        this.table = new long[size];
+        this.mask = size - 1;
+        this.sampleSize = 10 * size;
+    }
+
+    int frequency(int hash) {
+        var min = 15;
+        for (var i = 0; i < 4; i++) {
+            var h = index(hash, i);
+            var offset = (h >>> 60) << 2;
+            var count = (int) ((table[(int) h & mask] >>> offset) & 0xf);
+            min = Math.min(min, count);
+        }
+        return min;
+    }
+
+    void increment(int hash) {
+        var added = false;
+        for (var i = 0; i < 4; i++) {
+            var h = index(hash, i);
+            var slot = (int) h & mask;
+            var offset = (h >>> 60) << 2;
+            if (((table[slot] >>> offset) & 0xf) < 15) {
+                table[slot] += 1L << offset;
+                added = true;
+            }
+        }
+        if (added && ++additions >= sampleSize) {
+            reset();
+        }
+    }
+
+    private void reset() {
+        for (var i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions /= 2;
+    }
+
+    /**
+     * 低位选择slot，最高4 bit选择long中的计数
+     */
+    private static long index(int hash, int i) {
+        var h = (hash + SEEDS[i]) * SEEDS[i];
+        return h ^ (h >>> 29);
+    }
+}
@@ -0,0 +1,19 @@
+package xyz.navyd.mvc;
+
+/**
+ * 将path或query参数中的一段字符转换为参数类型，不需要先截取为String。
+ *
+ * <p>无法转换时抛出{@link IllegalArgumentException}
+ * @param <T>
+ */
+@FunctionalInterface
+public interface ParamConverter<T> {
+    /**
+     * 转换s中[start, end)的字符
+     * @param s
+     * @param start
+     * @param end
+     * @return
+     */
+    T convert(CharSequence s, int start, int end);
+}
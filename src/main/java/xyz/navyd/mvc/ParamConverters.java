@@ -0,0 +1,226 @@
+package xyz.navyd.mvc;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 按参数类型注册的{@link ParamConverter}。
+ *
+ * <p>内置int/long/short/double/float/boolean及其包装类型、String、UUID与enum的转换，
+ * 直接在字符上解析而不创建Jackson parser。其它类型使用Jackson。
+ * 在scan时为每个参数确定converter，request时不再查找
+ */
+public class ParamConverters {
+    private static final Logger log = LoggerFactory.getLogger(ParamConverters.class);
+
+    private final Map<Class<?>, ParamConverter<?>> converters = new HashMap<>();
+    private final ObjectMapper mapper;
+
+    ParamConverters(ObjectMapper mapper) {
+        this.mapper = mapper;
+        register(int.class, ParamConverters::parseInt);
+        register(Integer.class, ParamConverters::parseInt);
+        register(long.class, ParamConverters::parseLong);
+        register(Long.class, ParamConverters::parseLong);
+        register(short.class, ParamConverters::parseShort);
+        register(Short.class, ParamConverters::parseShort);
+        register(double.class, ParamConverters::parseDouble);
+        register(Double.class, ParamConverters::parseDouble);
+        register(float.class, (s, start, end) -> (float) parseDouble(s, start, end));
+        register(Float.class, (s, start, end) -> (float) parseDouble(s, start, end));
+        register(boolean.class, ParamConverters::parseBoolean);
+        register(Boolean.class, ParamConverters::parseBoolean);
+        register(String.class, (s, start, end) -> s.subSequence(start, end).toString());
+        register(CharSequence.class, CharSequence::subSequence);
+        register(UUID.class, ParamConverters::parseUuid);
+    }
+
+    /**
+     * 注册或替换type的converter，需要在scanPackage之前调用
+     * @param <T>
+     * @param type
+     * @param converter
+     */
+    public <T> void register(Class<T> type, ParamConverter<? extends T> converter) {
+        if (type == null || converter == null)
+            throw new IllegalArgumentException("type and converter must not be null");
+        converters.put(type, converter);
+    }
+
+    /**
+     * 返回type的converter：已注册的converter，enum按常量名转换，否则使用Jackson
+     * @param type
+     * @return
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    public ParamConverter<?> get(Class<?> type) {
+        var converter = converters.get(type);
+        if (converter != null) {
+            return converter;
+        } else if (type.isEnum()) {
+            return enumConverter((Class) type);
+        }
+        log.debug("use jackson to convert param type: {}", type.getName());
+        return (s, start, end) -> {
+            var val = s.subSequence(start, end).toString();
+            try {
+                return mapper.readValue(val, type);
+            } catch (IOException e) {
+                log.debug("converting param error: {}", e.getMessage());
+                throw new IllegalArgumentException("illegal " + type.getSimpleName() + " param: " + val);
+            }
+        };
+    }
+
+    private static <E extends Enum<E>> ParamConverter<E> enumConverter(Class<E> type) {
+        final var constants = type.getEnumConstants();
+        return (s, start, end) -> {
+            var len = end - start;
+            for (var e : constants) {
+                var name = e.name();
+                if (name.length() == len && regionEquals(s, start, name)) {
+                    return e;
+                }
+            }
+            throw illegal(type, s, start, end);
+        };
+    }
+
+    static int parseInt(CharSequence s, int start, int end) {
+        var n = parseLong(s, start, end);
+        if (n < Integer.MIN_VALUE || n > Integer.MAX_VALUE) {
+            throw illegal(int.class, s, start, end);
+        }
+        return (int) n;
+    }
+
+    static short parseShort(CharSequence s, int start, int end) {
+        var n = parseLong(s, start, end);
+        if (n < Short.MIN_VALUE || n > Short.MAX_VALUE) {
+            throw illegal(short.class, s, start, end);
+        }
+        return (short) n;
+    }
+
+    /**
+     * 十进制整数，允许前导'+'或'-'
+     */
+    static long parseLong(CharSequence s, int start, int end) {
+        var i = start;
+        var negative = false;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            negative = s.charAt(i) == '-';
+            i++;
+        }
+        if (i >= end) {
+            throw illegal(long.class, s, start, end);
+        }
+        // 按负数累加以容纳Long.MIN_VALUE
+        var limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        var multmin = limit / 10;
+        var n = 0L;
+        for (; i < end; i++) {
+            var d = s.charAt(i) - '0';
+            if (d < 0 || d > 9 || n < multmin) {
+                throw illegal(long.class, s, start, end);
+            }
+            n *= 10;
+            if (n < limit + d) {
+                throw illegal(long.class, s, start, end);
+            }
+            n -= d;
+        }
+        return negative ? n : -n;
+    }
+
+    static double parseDouble(CharSequence s, int start, int end) {
+        // 整数形式不需要截取
+        var i = start;
+        if (i < end && (s.charAt(i) == '-' || s.charAt(i) == '+')) {
+            i++;
+        }
+        var digits = i < end && end - i <= 15;
+        for (var j = i; j < end && digits; j++) {
+            digits = s.charAt(j) >= '0' && s.charAt(j) <= '9';
+        }
+        if (digits) {
+            return parseLong(s, start, end);
+        }
+        try {
+            return Double.parseDouble(s.subSequence(start, end).toString());
+        } catch (NumberFormatException e) {
+            throw illegal(double.class, s, start, end);
+        }
+    }
+
+    static boolean parseBoolean(CharSequence s, int start, int end) {
+        var len = end - start;
+        if (len == 4 && regionEqualsIgnoreCase(s, start, "true")) {
+            return true;
+        } else if (len == 5 && regionEqualsIgnoreCase(s, start, "false")) {
+            return false;
+        }
+        throw illegal(boolean.class, s, start, end);
+    }
+
+    /**
+     * 8-4-4-4-12格式的UUID
+     */
+    static UUID parseUuid(CharSequence s, int start, int end) {
+        if (end - start != 36 || s.charAt(start + 8) != '-' || s.charAt(start + 13) != '-'
+                || s.charAt(start + 18) != '-' || s.charAt(start + 23) != '-') {
+            throw illegal(UUID.class, s, start, end);
+        }
+        var msb = 0L;
+        var lsb = 0L;
+        var n = 0;
+        for (var i = start; i < end; i++) {
+            var c = s.charAt(i);
+            if (c == '-') {
+                continue;
+            }
+            var d = Character.digit(c, 16);
+            if (d < 0) {
+                throw illegal(UUID.class, s, start, end);
+            }
+            if (n < 16) {
+                msb = msb << 4 | d;
+            } else {
+                lsb = lsb << 4 | d;
+            }
+            n++;
+        }
+        return new UUID(msb, lsb);
+    }
+
+    private static boolean regionEquals(CharSequence s, int start, String other) {
+        for (var i = 0; i < other.length(); i++) {
+            if (s.charAt(start + i) != other.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionEqualsIgnoreCase(CharSequence s, int start, String lower) {
+        for (var i = 0; i < lower.length(); i++) {
+            if (Character.toLowerCase(s.charAt(start + i)) != lower.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static IllegalArgumentException illegal(Class<?> type, CharSequence s, int start, int end) {
+        var val = s.subSequence(start, end);
+        log.debug("illegal {} param: {}", type.getSimpleName(), val);
+        return new IllegalArgumentException("illegal " + type.getSimpleName() + " param: " + val);
+    }
+}
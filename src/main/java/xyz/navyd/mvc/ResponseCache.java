@@ -0,0 +1,267 @@
+package xyz.navyd.mvc;
+
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32C;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.FileRegion;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.ResponseWriter;
+import xyz.navyd.http.StreamingBody;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.mvc.annotations.Cacheable;
+import xyz.navyd.mvc.annotations.Router;
+
+/**
+ * {@link Cacheable} router方法的response缓存，保存序列化后的body。
+ *
+ * <p>按body的总字节数限制大小，LRU顺序淘汰。缓存已满时通过{@link FrequencySketch}
+ * 比较新key与被淘汰key的访问频率，新key不比被淘汰的更频繁时不缓存，
+ * 避免一次性访问的response冲掉常用的response
+ */
+class ResponseCache {
+    private static final Logger log = LoggerFactory.getLogger(ResponseCache.class);
+
+    // 估计每个key的平均大小，用于确定sketch的大小
+    private static final int AVERAGE_ENTRY_SIZE = 1024 * 4;
+
+    private final ObjectMapper mapper;
+    private final long capacity;
+    // access order
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final FrequencySketch sketch;
+    private long size;
+
+    ResponseCache(ObjectMapper mapper, long capacity) {
+        this.mapper = mapper;
+        this.capacity = capacity;
+        this.sketch = new FrequencySketch((int) Math.min(capacity / AVERAGE_ENTRY_SIZE, 1 << 20));
+    }
+
+    /**
+     * 返回缓存的response，If-None-Match匹配时为304
+     * @param key
+     * @param request
+     * @return 未命中或已过期时为null
+     */
+    Response<?> get(String key, Request request) {
+        Entry entry;
+        synchronized (this) {
+            sketch.increment(key.hashCode());
+            entry = entries.get(key);
+            if (entry != null && entry.expiresAt - System.nanoTime() <= 0) {
+                log.trace("cached response expired: {}", key);
+                entries.remove(key);
+                size -= entry.size();
+                entry = null;
+            }
+        }
+        return entry == null ? null : entry.toResponse(request);
+    }
+
+    /**
+     * 序列化并缓存response，返回用于写出的response
+     * @param key
+     * @param policy
+     * @param response
+     * @param request
+     * @return 不可缓存时为原response
+     */
+    Response<?> put(String key, Policy policy, Response<?> response, Request request) {
+        if (response.getStatus() != StatusEnum.OK_200 || response.getHeaders().containsKey("Set-Cookie")) {
+            return response;
+        }
+        var body = ResponseWriter.unwrap(response.getBody());
+        if (body instanceof ByteBuffer || body instanceof FileRegion || StreamingBody.isStreaming(body)) {
+            return response;
+        }
+        byte[] bytes;
+        try {
+            if (body == null) {
+                bytes = new byte[0];
+            } else if (body instanceof byte[]) {
+                bytes = (byte[]) body;
+            } else if (body instanceof String) {
+                bytes = ((String) body).getBytes(StandardCharsets.UTF_8);
+            } else {
+                bytes = mapper.writeValueAsBytes(body);
+            }
+        } catch (JsonProcessingException e) {
+            log.error("serializing response body error: {}", e);
+            throw new IllegalArgumentException("serializing response body error", e);
+        }
+        var headers = new LinkedHashMap<>(response.getHeaders());
+        if (bytes.length > 0 && !headers.containsKey("Content-Type")) {
+            headers.put("Content-Type", ResponseWriter.contentType(body));
+        }
+        var crc = new CRC32C();
+        crc.update(bytes);
+        var etag = "\"" + Long.toHexString(crc.getValue()) + "-" + Integer.toHexString(bytes.length) + "\"";
+        headers.put("ETag", etag);
+        var buf = ByteBuffer.allocateDirect(bytes.length).put(bytes).flip();
+        var entry = new Entry(headers, buf.asReadOnlyBuffer(), etag, System.nanoTime() + policy.ttlNanos);
+        admit(key, entry);
+        return entry.toResponse(request);
+    }
+
+    private synchronized void admit(String key, Entry entry) {
+        var old = entries.remove(key);
+        if (old != null) {
+            size -= old.size();
+        }
+        if (entry.size() > capacity) {
+            return;
+        }
+        var frequency = sketch.frequency(key.hashCode());
+        var it = entries.entrySet().iterator();
+        var freed = 0L;
+        var victims = 0;
+        // 先确认被淘汰的key都不比新key更频繁
+        while (size - freed + entry.size() > capacity && it.hasNext()) {
+            var victim = it.next();
+            if (sketch.frequency(victim.getKey().hashCode()) > frequency) {
+                log.trace("rejected caching response: {}, frequency: {}", key, frequency);
+                return;
+            }
+            freed += victim.getValue().size();
+            victims++;
+        }
+        it = entries.entrySet().iterator();
+        for (var i = 0; i < victims; i++) {
+            var victim = it.next();
+            log.trace("evicted cached response: {}", victim.getKey());
+            it.remove();
+        }
+        size -= freed;
+        entries.put(key, entry);
+        size += entry.size();
+        log.trace("cached response: {}, cache size: {}", key, size);
+    }
+
+    synchronized long size() {
+        return size;
+    }
+
+    synchronized int count() {
+        return entries.size();
+    }
+
+    /**
+     * If-None-Match中是否有与etag匹配的值，使用弱比较
+     * @param ifNoneMatch
+     * @param etag
+     * @return
+     */
+    static boolean matches(String ifNoneMatch, String etag) {
+        for (var tag : ifNoneMatch.split(",")) {
+            tag = tag.trim();
+            if (tag.equals("*") || tag.equals(etag) || tag.equals("W/" + etag)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Entry {
+        final Map<String, String> headers;
+        final ByteBuffer body;
+        final String etag;
+        final long expiresAt;
+
+        Entry(Map<String, String> headers, ByteBuffer body, String etag, long expiresAt) {
+            this.headers = headers;
+            this.body = body;
+            this.etag = etag;
+            this.expiresAt = expiresAt;
+        }
+
+        long size() {
+            return body.capacity();
+        }
+
+        Response<?> toResponse(Request request) {
+            var ifNoneMatch = request.getHeader("If-None-Match");
+            // 304带上body与headers，由ResponseWriter得到与200相同的ETag与Vary
+            var status = ifNoneMatch.isPresent() && matches(ifNoneMatch.get(), etag) ? StatusEnum.NOT_MODIFIED_304
+                : StatusEnum.OK_200;
+            var response = Response.with(status, body.duplicate());
+            response.getHeaders().putAll(headers);
+            return response;
+        }
+    }
+
+    /**
+     * 从{@link Cacheable}得到的缓存配置
+     */
+    static class Policy {
+        final long ttlNanos;
+        final String[] queryParams;
+        final String[] headers;
+
+        Policy(long ttlNanos, String[] queryParams, String[] headers) {
+            this.ttlNanos = ttlNanos;
+            this.queryParams = queryParams;
+            this.headers = headers;
+        }
+
+        /**
+         * @param method
+         * @param router
+         * @return 方法上没有Cacheable时为null
+         */
+        static Policy of(Method method, Router router) {
+            var cacheable = method.getAnnotation(Cacheable.class);
+            if (cacheable == null) {
+                return null;
+            }
+            for (var m : router.methods()) {
+                if (m != MethodEnum.GET) {
+                    log.error("Cacheable on non GET router method {}.{}()", method.getDeclaringClass().getName(),
+                        method.getName());
+                    throw new IllegalArgumentException("Cacheable is only allowed on GET router");
+                }
+            }
+            if (cacheable.ttl() <= 0) {
+                throw new IllegalArgumentException("illegal Cacheable.ttl: " + cacheable.ttl());
+            }
+            return new Policy(cacheable.unit().toNanos(cacheable.ttl()), cacheable.queryParams(),
+                cacheable.headers());
+        }
+
+        /**
+         * @param routerPath 区分不同的router
+         * @param request
+         * @return
+         */
+        String key(String routerPath, Request request) {
+            var sb = new StringBuilder(routerPath.length() + request.getPath().length() + 32);
+            sb.append(routerPath).append(' ').append(request.getPath());
+            if (queryParams.length > 0) {
+                var params = request.getQueryParams();
+                for (var name : queryParams) {
+                    sb.append('\n').append(name);
+                    // 带长度避免value中的分隔符造成歧义
+                    for (var value : params.getAll(name)) {
+                        sb.append('=').append(value.length()).append(':').append(value);
+                    }
+                }
+            }
+            for (var name : headers) {
+                var value = request.getHeader(name).orElse("");
+                sb.append('\n').append(name).append('=').append(value.length()).append(':').append(value);
+            }
+            return sb.toString();
+        }
+    }
+}
@@ -0,0 +1,102 @@
+package xyz.navyd.mvc;
+
+import xyz.navyd.limit.AdaptiveLimiter;
+import xyz.navyd.metrics.RouteMetrics;
+import xyz.navyd.mvc.ControllerContext.ControllerComponent;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 一次路由匹配的结果，包含匹配时捕获的path正则group
+ */
+public class RouteMatch {
+    final ControllerComponent component;
+    final String path;
+    // group i的[start, end)位于groups[2i], groups[2i+1]，未捕获时为-1
+    private final int[] groups;
+
+    RouteMatch(ControllerComponent component, String path, int[] groups) {
+        this.component = component;
+        this.path = path;
+        this.groups = groups;
+    }
+
+    /**
+     * 返回path中第i个group，0表示整个path，未捕获时为null
+     * @param i
+     * @return
+     */
+    public String group(int i) {
+        if (i == 0) {
+            return path;
+        }
+        var start = groupStart(i);
+        return start < 0 ? null : path.substring(start, groups[2 * i + 1]);
+    }
+
+    int groupStart(int i) {
+        if (i < 0 || 2 * i + 1 >= groups.length) {
+            return -1;
+        }
+        return groups[2 * i];
+    }
+
+    int groupEnd(int i) {
+        if (i < 0 || 2 * i + 1 >= groups.length) {
+            return -1;
+        }
+        return groups[2 * i + 1];
+    }
+
+    /**
+     * 匹配到的controller方法在Router上声明的执行方式
+     * @return
+     */
+    public ExecutionEnum getExecution() {
+        return component.router.execution();
+    }
+
+    /**
+     * 匹配到的controller方法是否允许压缩response
+     * @return
+     */
+    public boolean isCompress() {
+        return component.router.compress();
+    }
+
+    /**
+     * 匹配到的controller方法是否返回{@link java.util.concurrent.CompletionStage}
+     * @return
+     */
+    public boolean isAsync() {
+        return component.async;
+    }
+
+    /**
+     * 匹配到的controller方法在Router上声明的timeout毫秒数，0表示不限制
+     * @return
+     */
+    public long getTimeout() {
+        return component.router.timeout();
+    }
+
+    /**
+     * 匹配到的route的并发限制，由server在调用controller前使用
+     * @return
+     */
+    public AdaptiveLimiter getLimiter() {
+        return component.limiter;
+    }
+
+    /**
+     * 匹配到的route的metrics
+     * @return
+     */
+    public RouteMetrics getMetrics() {
+        return component.metrics;
+    }
+
+    @Override
+    public String toString() {
+        return "RouteMatch [component=" + component + ", path=" + path + "]";
+    }
+}
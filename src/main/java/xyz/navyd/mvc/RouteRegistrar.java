@@ -0,0 +1,26 @@
+package xyz.navyd.mvc;
+
+import java.util.function.Supplier;
+
+/**
+ * {@link RouteRegistry}向{@link ControllerContext}注册controller与router方法
+ */
+public interface RouteRegistrar {
+    /**
+     * 创建controller，每个controller类只创建一个实例
+     * @param <C>
+     * @param type
+     * @param constructor
+     * @return
+     */
+    <C> C controller(Class<C> type, Supplier<C> constructor);
+
+    /**
+     * 注册controller上的一个router方法
+     * @param controller {@link #controller(Class, Supplier)}返回的实例
+     * @param methodName
+     * @param parameterTypes 用于读取方法与参数上的注解
+     * @param invoker 直接调用该方法
+     */
+    void route(Object controller, String methodName, Class<?>[] parameterTypes, ControllerInvoker invoker);
+}
@@ -0,0 +1,19 @@
+package xyz.navyd.mvc;
+
+/**
+ * 编译时由{@code xyz.navyd.mvc.processor.RouteProcessor}为每个controller类生成的路由表，
+ * 启动时通过{@link ControllerContext#scanPackage(String)}加载，不需要扫描classpath
+ */
+public interface RouteRegistry {
+    /**
+     * 生成的registry在编译输出中的索引文件，每行一个registry类名
+     */
+    String INDEX = "META-INF/xyz.navyd/routes";
+
+    /**
+     * 生成的registry类名的后缀，类名为controller的简单名加上该后缀
+     */
+    String CLASS_SUFFIX = "_GeneratedRoutes";
+
+    void register(RouteRegistrar registrar);
+}
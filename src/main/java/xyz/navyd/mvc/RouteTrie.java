@@ -0,0 +1,260 @@
+package xyz.navyd.mvc;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Pattern;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.ControllerContext.ControllerComponent;
+
+/**
+ * 在scan时构建的路由树。
+ *
+ * <p>router path按'/'分段，不含正则元字符的段合并为字面量，存放在按字符压缩的radix tree中；
+ * 含正则的段预编译为Pattern，只匹配一个段，若为最后一段则匹配path剩余的全部部分。
+ * 每个节点按http method保存controller，匹配时优先字面量，再按注册顺序尝试正则段，
+ * 同时记录每个正则group的位置
+ */
+class RouteTrie {
+    private static final Logger log = LoggerFactory.getLogger(RouteTrie.class);
+
+    private static final String REGEX_META = "\\.[]{}()*+?^$|";
+
+    private final Node root = new Node();
+    // 所有route中最大的group数
+    private int maxGroups;
+
+    /**
+     * 添加一个router path，同path同method已存在时抛出IllegalArgumentException
+     * @param path
+     * @param component
+     */
+    void add(String path, ControllerComponent component) {
+        var node = root;
+        var groupOffset = 1;
+        var literal = new StringBuilder();
+        var segments = split(path);
+        for (var i = 0; i < segments.size(); i++) {
+            var segment = segments.get(i);
+            if (!isRegex(segment)) {
+                literal.append(segment);
+                if (i < segments.size() - 1) {
+                    literal.append('/');
+                }
+                continue;
+            }
+            node = insertLiteral(node, literal.toString());
+            literal.setLength(0);
+            var tail = i == segments.size() - 1;
+            var dynamic = node.findDynamic(segment, tail);
+            if (dynamic == null) {
+                dynamic = new Dynamic(segment, tail, groupOffset);
+                node.dynamics.add(dynamic);
+                log.trace("added dynamic segment: {}, tail: {}", segment, tail);
+            }
+            groupOffset += dynamic.groupCount;
+            node = dynamic.child;
+            if (!tail) {
+                literal.append('/');
+            }
+        }
+        node = insertLiteral(node, literal.toString());
+        for (var method : component.router.methods()) {
+            var old = node.handlers[method.ordinal()];
+            if (old != null) {
+                log.error("found duplicate for path: {}, http method: {} in {}.{}() and {}.{}()",
+                    path,
+                    method,
+                    old.controller.getClass().getName(),
+                    old.method.getName(),
+                    component.controller.getClass().getName(),
+                    component.method.getName());
+                throw new IllegalArgumentException("found duplicate controller router!");
+            }
+            node.handlers[method.ordinal()] = component;
+        }
+        maxGroups = Math.max(maxGroups, groupOffset - 1);
+    }
+
+    /**
+     * 匹配request path与method
+     * @param path
+     * @param method
+     * @return
+     */
+    Optional<RouteMatch> match(String path, MethodEnum method) {
+        var groups = new int[2 * (maxGroups + 1)];
+        Arrays.fill(groups, -1);
+        var component = match(root, path, 0, method, groups);
+        if (component == null) {
+            return Optional.empty();
+        }
+        return Optional.of(new RouteMatch(component, path, groups));
+    }
+
+    private static ControllerComponent match(Node node, String path, int pos, MethodEnum method, int[] groups) {
+        if (pos == path.length()) {
+            var component = node.handlers[method.ordinal()];
+            if (component != null) {
+                return component;
+            }
+        }
+        for (var edge : node.edges) {
+            if (path.regionMatches(pos, edge.label, 0, edge.label.length())) {
+                var component = match(edge.child, path, pos + edge.label.length(), method, groups);
+                if (component != null) {
+                    return component;
+                }
+            }
+        }
+        for (var dynamic : node.dynamics) {
+            var end = path.length();
+            if (!dynamic.tail) {
+                var slash = path.indexOf('/', pos);
+                end = slash < 0 ? end : slash;
+            }
+            var matcher = dynamic.pattern.matcher(path).region(pos, end);
+            if (!matcher.matches()) {
+                continue;
+            }
+            for (var g = 1; g <= dynamic.groupCount; g++) {
+                var i = dynamic.groupOffset + g - 1;
+                groups[2 * i] = matcher.start(g);
+                groups[2 * i + 1] = matcher.end(g);
+            }
+            var component = match(dynamic.child, path, end, method, groups);
+            if (component != null) {
+                return component;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 在radix tree中插入字面量，必要时分裂已有的边，返回字面量结束处的节点
+     * @param node
+     * @param s
+     * @return
+     */
+    private static Node insertLiteral(Node node, String s) {
+        while (!s.isEmpty()) {
+            var edge = node.findEdge(s.charAt(0));
+            if (edge == null) {
+                var child = new Node();
+                node.edges.add(new Edge(s, child));
+                return child;
+            }
+            var common = commonPrefix(edge.label, s);
+            if (common < edge.label.length()) {
+                var mid = new Node();
+                mid.edges.add(new Edge(edge.label.substring(common), edge.child));
+                edge.label = edge.label.substring(0, common);
+                edge.child = mid;
+            }
+            node = edge.child;
+            s = s.substring(common);
+        }
+        return node;
+    }
+
+    private static int commonPrefix(String a, String b) {
+        var n = Math.min(a.length(), b.length());
+        var i = 0;
+        while (i < n && a.charAt(i) == b.charAt(i)) {
+            i++;
+        }
+        return i;
+    }
+
+    /**
+     * 按不在括号与转义中的'/'分段，首个'/'前的空段被保留为""
+     * @param path
+     * @return
+     */
+    static List<String> split(String path) {
+        var segments = new ArrayList<String>();
+        var depth = 0;
+        var start = 0;
+        for (var i = 0; i < path.length(); i++) {
+            var ch = path.charAt(i);
+            if (ch == '\\') {
+                i++;
+            } else if (ch == '(' || ch == '[' || ch == '{') {
+                depth++;
+            } else if (ch == ')' || ch == ']' || ch == '}') {
+                depth--;
+            } else if (ch == '/' && depth == 0) {
+                segments.add(path.substring(start, i));
+                start = i + 1;
+            }
+        }
+        segments.add(path.substring(start));
+        return segments;
+    }
+
+    private static boolean isRegex(String segment) {
+        for (var i = 0; i < segment.length(); i++) {
+            if (REGEX_META.indexOf(segment.charAt(i)) >= 0) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static class Node {
+        final List<Edge> edges = new ArrayList<>(2);
+        final List<Dynamic> dynamics = new ArrayList<>(1);
+        final ControllerComponent[] handlers = new ControllerComponent[MethodEnum.values().length];
+
+        Edge findEdge(char first) {
+            for (var edge : edges) {
+                if (edge.label.charAt(0) == first) {
+                    return edge;
+                }
+            }
+            return null;
+        }
+
+        Dynamic findDynamic(String regex, boolean tail) {
+            for (var dynamic : dynamics) {
+                if (dynamic.regex.equals(regex) && dynamic.tail == tail) {
+                    return dynamic;
+                }
+            }
+            return null;
+        }
+    }
+
+    private static class Edge {
+        String label;
+        Node child;
+
+        Edge(String label, Node child) {
+            this.label = label;
+            this.child = child;
+        }
+    }
+
+    private static class Dynamic {
+        final String regex;
+        final Pattern pattern;
+        final boolean tail;
+        final int groupCount;
+        // 在整个router path中第一个group的序号
+        final int groupOffset;
+        final Node child = new Node();
+
+        Dynamic(String regex, boolean tail, int groupOffset) {
+            this.regex = regex;
+            this.pattern = Pattern.compile(regex);
+            this.tail = tail;
+            this.groupCount = pattern.matcher("").groupCount();
+            this.groupOffset = groupOffset;
+        }
+    }
+}
@@ -0,0 +1,377 @@
+package xyz.navyd.mvc;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.FileRegion;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.StatusEnum;
+
+/**
+ * 目录下的静态文件，挂载在一个path前缀下，由controller方法调用{@link #serve(Request)}：
+ *
+ * <pre>
+ * &#64;Router(value = "/static/.+", methods = MethodEnum.GET)
+ * Response&lt;?&gt; assets(Request request) {
+ *     return resources.serve(request);
+ * }
+ * </pre>
+ *
+ * <p>不大于mappedThreshold的文件映射为{@link MappedByteBuffer}并缓存，
+ * 其它文件以{@link FileRegion}通过transferTo写出，文件内容都不经过java heap。
+ * 支持单个Range、ETag/If-None-Match与If-Modified-Since
+ */
+public class StaticResources {
+    private static final Logger log = LoggerFactory.getLogger(StaticResources.class);
+
+    private static final DateTimeFormatter HTTP_DATE = DateTimeFormatter.RFC_1123_DATE_TIME.withZone(ZoneOffset.UTC);
+    private static final long[] UNSATISFIABLE = new long[0];
+    private static final Map<String, String> CONTENT_TYPES = Map.ofEntries(
+        Map.entry("html", "text/html; charset=utf-8"),
+        Map.entry("htm", "text/html; charset=utf-8"),
+        Map.entry("css", "text/css; charset=utf-8"),
+        Map.entry("js", "application/javascript; charset=utf-8"),
+        Map.entry("json", "application/json; charset=utf-8"),
+        Map.entry("txt", "text/plain; charset=utf-8"),
+        Map.entry("xml", "application/xml; charset=utf-8"),
+        Map.entry("svg", "image/svg+xml"),
+        Map.entry("png", "image/png"),
+        Map.entry("jpg", "image/jpeg"),
+        Map.entry("jpeg", "image/jpeg"),
+        Map.entry("gif", "image/gif"),
+        Map.entry("ico", "image/x-icon"),
+        Map.entry("webp", "image/webp"),
+        Map.entry("woff", "font/woff"),
+        Map.entry("woff2", "font/woff2"),
+        Map.entry("pdf", "application/pdf"),
+        Map.entry("wasm", "application/wasm"),
+        Map.entry("mp4", "video/mp4"));
+
+    private final String prefix;
+    private final Path root;
+    private int mappedThreshold = 1024 * 64;
+    private long cacheCapacity = 1024 * 1024 * 32;
+    // 命中时不加锁，未命中时加锁映射并按总字节数淘汰最久未访问的文件
+    private final ConcurrentHashMap<Path, MappedFile> cache = new ConcurrentHashMap<>();
+    // 只在持有this锁时修改
+    private long cachedBytes;
+
+    /**
+     * @param prefix 挂载的path前缀，如/static
+     * @param root 文件所在目录
+     */
+    public StaticResources(String prefix, Path root) {
+        if (prefix == null || !prefix.startsWith("/"))
+            throw new IllegalArgumentException("illegal prefix: " + prefix);
+        this.prefix = prefix.endsWith("/") ? prefix.substring(0, prefix.length() - 1) : prefix;
+        try {
+            this.root = root.toRealPath();
+        } catch (IOException e) {
+            throw new IllegalArgumentException("illegal root: " + root, e);
+        }
+    }
+
+    /**
+     * 不大于该大小的文件使用mmap缓存
+     * @param mappedThreshold
+     * @return
+     */
+    public StaticResources mappedThreshold(int mappedThreshold) {
+        if (mappedThreshold < 0)
+            throw new IllegalArgumentException("illegal mappedThreshold: " + mappedThreshold);
+        this.mappedThreshold = mappedThreshold;
+        return this;
+    }
+
+    /**
+     * mmap缓存的最大总字节数
+     * @param cacheCapacity
+     * @return
+     */
+    public StaticResources cacheCapacity(long cacheCapacity) {
+        if (cacheCapacity < 0)
+            throw new IllegalArgumentException("illegal cacheCapacity: " + cacheCapacity);
+        this.cacheCapacity = cacheCapacity;
+        return this;
+    }
+
+    /**
+     * 返回request path对应的文件，不存在或不在root下时为404
+     * @param request
+     * @return
+     */
+    public Response<?> serve(Request request) {
+        var file = resolve(request.getPath());
+        if (file == null) {
+            return Response.withNotFound();
+        }
+        BasicFileAttributes attrs;
+        try {
+            attrs = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (IOException e) {
+            log.debug("reading attributes of {} error: {}", file, e.getMessage());
+            return Response.withNotFound();
+        }
+        if (!attrs.isRegularFile()) {
+            return Response.withNotFound();
+        }
+        var size = attrs.size();
+        var modified = attrs.lastModifiedTime().toInstant().getEpochSecond();
+        var etag = "\"" + Long.toHexString(size) + "-" + Long.toHexString(modified) + "\"";
+        var lastModified = HTTP_DATE.format(Instant.ofEpochSecond(modified));
+        if (isNotModified(request, etag, modified)) {
+            ByteBuffer representation = null;
+            if (size <= mappedThreshold) {
+                // 可能被压缩，带上body由ResponseWriter得到与200相同的ETag与Vary
+                try {
+                    representation = mapped(file, size, modified);
+                } catch (IOException e) {
+                    log.debug("mapping file {} error: {}", file, e.getMessage());
+                }
+            }
+            var response = Response.with(StatusEnum.NOT_MODIFIED_304, representation)
+                .addHeader("ETag", etag)
+                .addHeader("Last-Modified", lastModified);
+            if (representation != null) {
+                response.addHeader("Content-Type", contentType(file));
+            }
+            return response;
+        }
+
+        long[] range = null;
+        var rangeHeader = request.getHeader("Range");
+        var ifRange = request.getHeader("If-Range");
+        if (rangeHeader.isPresent() && (ifRange.isEmpty() || ifRange.get().equals(etag))) {
+            range = parseRange(rangeHeader.get(), size);
+        }
+        if (range == UNSATISFIABLE) {
+            return Response.with(StatusEnum.RANGE_NOT_SATISFIABLE_416)
+                .addHeader("Content-Range", "bytes */" + size);
+        }
+        var start = range != null ? range[0] : 0;
+        var count = range != null ? range[1] - range[0] + 1 : size;
+        Object body;
+        try {
+            body = size <= mappedThreshold ? mapped(file, size, modified).slice((int) start, (int) count)
+                : new FileRegion(FileChannel.open(file, StandardOpenOption.READ), start, count);
+        } catch (IOException e) {
+            log.warn("opening file {} error: {}", file, e.getMessage());
+            return Response.withNotFound();
+        }
+        var response = Response.with(range != null ? StatusEnum.PARTIAL_CONTENT_206 : StatusEnum.OK_200, body)
+            .addHeader("Content-Type", contentType(file))
+            .addHeader("ETag", etag)
+            .addHeader("Last-Modified", lastModified)
+            .addHeader("Accept-Ranges", "bytes");
+        if (range != null) {
+            response.addHeader("Content-Range", "bytes " + range[0] + "-" + range[1] + "/" + size);
+        }
+        return response;
+    }
+
+    /**
+     * 去掉前缀后解析为root下的文件
+     * @param path
+     * @return 不在root下时为null
+     */
+    private Path resolve(String path) {
+        if (!path.startsWith(prefix)) {
+            return null;
+        }
+        var relative = path.substring(prefix.length());
+        while (relative.startsWith("/")) {
+            relative = relative.substring(1);
+        }
+        if (relative.isEmpty() || relative.indexOf('\0') >= 0) {
+            return null;
+        }
+        var file = root.resolve(relative).normalize();
+        if (!file.startsWith(root)) {
+            log.warn("path escapes resource root: {}", path);
+            return null;
+        }
+        return file;
+    }
+
+    /**
+     * If-None-Match优先于If-Modified-Since
+     */
+    private static boolean isNotModified(Request request, String etag, long modified) {
+        var ifNoneMatch = request.getHeader("If-None-Match");
+        if (ifNoneMatch.isPresent()) {
+            return ResponseCache.matches(ifNoneMatch.get(), etag);
+        }
+        return request.getHeader("If-Modified-Since").map(since -> {
+            try {
+                return ZonedDateTime.parse(since, DateTimeFormatter.RFC_1123_DATE_TIME).toEpochSecond() >= modified;
+            } catch (DateTimeParseException e) {
+                log.debug("illegal If-Modified-Since: {}", since);
+                return false;
+            }
+        }).orElse(false);
+    }
+
+    /**
+     * 解析单个byte range，返回闭区间[start, end]。
+     * 多个range或格式错误时忽略Range返回null
+     * @param value
+     * @param size
+     * @return
+     */
+    static long[] parseRange(String value, long size) {
+        if (!value.startsWith("bytes=") || value.indexOf(',') >= 0) {
+            return null;
+        }
+        var spec = value.substring("bytes=".length()).trim();
+        var dash = spec.indexOf('-');
+        if (dash < 0) {
+            return null;
+        }
+        try {
+            var first = spec.substring(0, dash).trim();
+            var last = spec.substring(dash + 1).trim();
+            long start, end;
+            if (first.isEmpty()) {
+                // suffix range: 最后n个字节
+                var n = Long.parseLong(last);
+                if (n <= 0) {
+                    return UNSATISFIABLE;
+                }
+                start = Math.max(0, size - n);
+                end = size - 1;
+            } else {
+                start = Long.parseLong(first);
+                if (last.isEmpty()) {
+                    end = size - 1;
+                } else {
+                    end = Long.parseLong(last);
+                    if (end < start) {
+                        return null;
+                    }
+                    end = Math.min(end, size - 1);
+                }
+            }
+            if (start >= size || start < 0) {
+                return UNSATISFIABLE;
+            }
+            return new long[] { start, end };
+        } catch (NumberFormatException e) {
+            log.debug("illegal range: {}", value);
+            return null;
+        }
+    }
+
+    private ByteBuffer mapped(Path file, long size, long modified) throws IOException {
+        var cached = cache.get(file);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            cached.touch();
+            return cached.buf;
+        }
+        return map(file, size, modified);
+    }
+
+    /**
+     * 未缓存或文件已修改时映射文件并更新缓存
+     */
+    private synchronized ByteBuffer map(Path file, long size, long modified) throws IOException {
+        // 其它线程可能已映射
+        var cached = cache.get(file);
+        if (cached != null && cached.size == size && cached.modified == modified) {
+            cached.touch();
+            return cached.buf;
+        }
+        MappedByteBuffer buf;
+        try (var channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            buf = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+        }
+        if (cached != null) {
+            cache.remove(file);
+            cachedBytes -= cached.size;
+        }
+        if (size <= cacheCapacity) {
+            cache.put(file, new MappedFile(buf, size, modified));
+            cachedBytes += size;
+            evict();
+            log.trace("mapped file {}, cached bytes: {}", file, cachedBytes);
+        }
+        return buf;
+    }
+
+    /**
+     * 淘汰最久未访问的文件直到不超过cacheCapacity，只在未命中时遍历
+     */
+    private void evict() {
+        while (cachedBytes > cacheCapacity) {
+            Map.Entry<Path, MappedFile> oldest = null;
+            for (var entry : cache.entrySet()) {
+                if (oldest == null || entry.getValue().lastAccess - oldest.getValue().lastAccess < 0) {
+                    oldest = entry;
+                }
+            }
+            log.trace("evicted mapped file {}", oldest.getKey());
+            cache.remove(oldest.getKey());
+            cachedBytes -= oldest.getValue().size;
+        }
+    }
+
+    synchronized long cachedBytes() {
+        return cachedBytes;
+    }
+
+    boolean isCached(Path file) {
+        return cache.containsKey(file);
+    }
+
+    private static String contentType(Path file) {
+        var name = file.getFileName().toString();
+        var dot = name.lastIndexOf('.');
+        if (dot < 0) {
+            return "application/octet-stream";
+        }
+        return CONTENT_TYPES.getOrDefault(name.substring(dot + 1).toLowerCase(Locale.ROOT),
+                "application/octet-stream");
+    }
+
+    private static class MappedFile {
+        // 同一个文件的访问时间最多每毫秒更新一次，减少热点文件上的写
+        private static final long TOUCH_INTERVAL = TimeUnit.MILLISECONDS.toNanos(1);
+
+        final MappedByteBuffer buf;
+        final long size;
+        final long modified;
+        // System.nanoTime()，用于近似的LRU
+        volatile long lastAccess = System.nanoTime();
+
+        MappedFile(MappedByteBuffer buf, long size, long modified) {
+            this.buf = buf;
+            this.size = size;
+            this.modified = modified;
+        }
+
+        void touch() {
+            var now = System.nanoTime();
+            if (now - lastAccess > TOUCH_INTERVAL) {
+                lastAccess = now;
+            }
+        }
+    }
+}
@@ -0,0 +1,40 @@
+package xyz.navyd.mvc.annotations;
+
+import java.lang.annotation.Documented;
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 缓存GET router方法序列化后的response。
+ *
+ * <p>key由router、request path、指定的query参数与header组成，
+ * 命中时不调用controller方法，If-None-Match与ETag匹配时返回304。
+ * 只缓存200且没有Set-Cookie的response
+ */
+@Target(ElementType.METHOD)
+@Retention(RetentionPolicy.RUNTIME)
+@Documented
+public @interface Cacheable {
+    /**
+     * 缓存的有效时间
+     * @return
+     */
+    long ttl() default 60;
+
+    TimeUnit unit() default TimeUnit.SECONDS;
+
+    /**
+     * 参与key的query参数，其它参数不影响缓存
+     * @return
+     */
+    String[] queryParams() default {};
+
+    /**
+     * 参与key的header，如Accept-Language
+     * @return
+     */
+    String[] headers() default {};
+}
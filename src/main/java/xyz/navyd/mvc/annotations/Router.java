@@ -7,6 +7,7 @@ import java.lang.annotation.RetentionPolicy;
 import java.lang.annotation.Target;
 
 import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.enums.ExecutionEnum;
 
 @Target({ ElementType.TYPE, ElementType.METHOD })
 @Retention(RetentionPolicy.RUNTIME)
@@ -17,6 +18,9 @@ public @interface Router {
      * 支持正则表达式，
      * 支持类与方法级组合
      * 支持多个path同时匹配
+     * 
+     * <p>正则按'/'分段匹配，一个正则段只匹配一个path段，
+     * 最后一段的正则则匹配path剩余的全部部分
      * @return
      */
     String[] value();
@@ -30,4 +34,32 @@ public @interface Router {
      * @return
      */
     MethodEnum[] methods() default MethodEnum.GET;
-}
\ No newline at end of file
+
+    /**
+     * controller方法的执行方式，默认使用server的全局配置
+     * 
+     * <p>在class上定义的没有作用
+     * 
+     * @return
+     */
+    ExecutionEnum execution() default ExecutionEnum.DEFAULT;
+
+    /**
+     * 是否按Accept-Encoding压缩response，如已压缩的内容或需要立即发送的小response
+     * 
+     * <p>在class上定义的没有作用
+     * 
+     * @return
+     */
+    boolean compress() default true;
+
+    /**
+     * 返回{@link java.util.concurrent.CompletionStage}的controller方法等待完成的最长毫秒数，
+     * 超时后取消该future并返回504。0表示不限制
+     * 
+     * <p>在class上定义的没有作用，对返回Response的方法没有作用
+     * 
+     * @return
+     */
+    long timeout() default 0;
+}
@@ -0,0 +1,24 @@
+package xyz.navyd.mvc.enums;
+
+/**
+ * controller方法的执行方式
+ */
+public enum ExecutionEnum {
+    /**
+     * 使用server的全局默认方式
+     */
+    DEFAULT,
+    /**
+     * 直接在event loop线程中执行，只适用于不阻塞的简单方法
+     */
+    INLINE,
+    /**
+     * 在有界的worker线程池中执行
+     */
+    WORKER,
+    /**
+     * 每个request一个virtual thread
+     */
+    VIRTUAL,
+    ;
+}
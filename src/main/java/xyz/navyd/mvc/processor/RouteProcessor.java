@@ -0,0 +1,235 @@
+package xyz.navyd.mvc.processor;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.LinkedHashSet;
+import java.util.Set;
+import java.util.concurrent.CompletionStage;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.TypeKind;
+import javax.tools.Diagnostic;
+import javax.tools.StandardLocation;
+
+import xyz.navyd.http.Response;
+import xyz.navyd.mvc.RouteRegistry;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.Router;
+
+/**
+ * 为每个{@link Controller}类生成{@link RouteRegistry}实现，并将生成的类名合并到
+ * {@link RouteRegistry#INDEX}中。
+ *
+ * <p>只编译部分类时(如IDE的增量编译)保留索引中其它controller的registry，
+ * 去掉已不存在的registry。
+ *
+ * <p>生成的代码每个controller类只创建一个实例，router方法通过lambda直接调用。
+ * 返回类型等校验仍由{@link xyz.navyd.mvc.ControllerContext}在注册时进行，这里只给出warning
+ */
+@SupportedAnnotationTypes("xyz.navyd.mvc.annotations.Controller")
+public class RouteProcessor extends AbstractProcessor {
+    // 所有轮次生成的registry，在最后一轮合并到索引
+    private final Set<String> registries = new LinkedHashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            writeIndex();
+            return false;
+        }
+        for (var element : roundEnv.getElementsAnnotatedWith(Controller.class)) {
+            if (isValidController(element)) {
+                generate((TypeElement) element);
+            }
+        }
+        return false;
+    }
+
+    private boolean isValidController(Element element) {
+        if (element.getKind() != ElementKind.CLASS) {
+            error(element, "@Controller is only allowed on classes");
+            return false;
+        }
+        var type = (TypeElement) element;
+        if (type.getAnnotation(Router.class) == null) {
+            warning(element, "ignore controller without @Router on class");
+            return false;
+        }
+        var modifiers = type.getModifiers();
+        if (modifiers.contains(Modifier.ABSTRACT) || modifiers.contains(Modifier.PRIVATE)
+                || type.getNestingKind() == NestingKind.MEMBER && !modifiers.contains(Modifier.STATIC)
+                || type.getNestingKind().isNested() && type.getNestingKind() != NestingKind.MEMBER) {
+            error(element, "controller must be a non-abstract top level or static nested class");
+            return false;
+        }
+        var constructors = 0;
+        var accessible = false;
+        for (var e : type.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.CONSTRUCTOR) {
+                constructors++;
+                var c = (ExecutableElement) e;
+                accessible |= c.getParameters().isEmpty() && !c.getModifiers().contains(Modifier.PRIVATE);
+            }
+        }
+        if (constructors > 0 && !accessible) {
+            error(element, "not found non-private no arguments constructor on controller");
+            return false;
+        }
+        return true;
+    }
+
+    private void generate(TypeElement controller) {
+        var pkg = processingEnv.getElementUtils().getPackageOf(controller).getQualifiedName().toString();
+        // 嵌套的controller使用外部类名作为前缀
+        var className = controller.getSimpleName().toString();
+        for (var e = controller.getEnclosingElement(); e.getKind() != ElementKind.PACKAGE; e = e.getEnclosingElement()) {
+            className = e.getSimpleName() + "_" + className;
+        }
+        className += RouteRegistry.CLASS_SUFFIX;
+        var qualifiedName = pkg.isEmpty() ? className : pkg + "." + className;
+        var src = new StringBuilder();
+        if (!pkg.isEmpty()) {
+            src.append("package ").append(pkg).append(";\n\n");
+        }
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n")
+            .append("public final class ").append(className).append(" implements ")
+            .append(RouteRegistry.class.getName()).append(" {\n")
+            .append("    @Override\n")
+            .append("    @SuppressWarnings({ \"unchecked\", \"rawtypes\" })\n")
+            .append("    public void register(").append(RouteRegistry.class.getPackageName())
+            .append(".RouteRegistrar registrar) {\n");
+        var type = controller.getQualifiedName().toString();
+        src.append("        var c = registrar.controller(").append(type).append(".class, ").append(type)
+            .append("::new);\n");
+        for (var e : controller.getEnclosedElements()) {
+            if (e.getKind() == ElementKind.METHOD && e.getAnnotation(Router.class) != null) {
+                appendRoute(src, controller, "c", (ExecutableElement) e);
+            }
+        }
+        src.append("    }\n}\n");
+        try {
+            var file = processingEnv.getFiler().createSourceFile(qualifiedName, controller);
+            try (Writer w = file.openWriter()) {
+                w.write(src.toString());
+            }
+        } catch (IOException e) {
+            error(controller, "generating " + qualifiedName + " error: " + e.getMessage());
+            return;
+        }
+        registries.add(qualifiedName);
+    }
+
+    private void appendRoute(StringBuilder src, TypeElement controller, String var, ExecutableElement method) {
+        if (method.getModifiers().contains(Modifier.PRIVATE)) {
+            error(method, "router method must not be private");
+            return;
+        }
+        if (!isResponse(method)) {
+            warning(method, "return type of router method is not " + Response.class.getName() + " or "
+                + CompletionStage.class.getName());
+        }
+        var types = processingEnv.getTypeUtils();
+        var paramTypes = new StringBuilder();
+        var args = new StringBuilder();
+        var params = method.getParameters();
+        for (var i = 0; i < params.size(); i++) {
+            var erasure = types.erasure(params.get(i).asType()).toString();
+            if (i > 0) {
+                paramTypes.append(", ");
+                args.append(", ");
+            }
+            paramTypes.append(erasure).append(".class");
+            args.append('(').append(erasure).append(") args[").append(i).append(']');
+        }
+        var target = method.getModifiers().contains(Modifier.STATIC) ? controller.getQualifiedName().toString()
+            : var;
+        var call = target + "." + method.getSimpleName() + "(" + args + ")";
+        src.append("        registrar.route(").append(var).append(", \"").append(method.getSimpleName())
+            .append("\", new Class<?>[] {").append(paramTypes.length() > 0 ? " " + paramTypes + " " : "")
+            .append("},\n            args -> ");
+        if (method.getReturnType().getKind() == TypeKind.VOID) {
+            src.append("{ ").append(call).append("; return null; }");
+        } else {
+            src.append(call);
+        }
+        src.append(");\n");
+    }
+
+    private boolean isResponse(ExecutableElement method) {
+        var types = processingEnv.getTypeUtils();
+        var returnType = types.erasure(method.getReturnType());
+        if (returnType.toString().equals(Response.class.getName())) {
+            return true;
+        }
+        var stage = processingEnv.getElementUtils().getTypeElement(CompletionStage.class.getName());
+        return returnType.getKind() == TypeKind.DECLARED && types.isAssignable(returnType, types.erasure(stage.asType()));
+    }
+
+    private void writeIndex() {
+        if (registries.isEmpty()) {
+            return;
+        }
+        var names = readIndex();
+        // 保留之前编译的registry，其类已不存在时说明controller已删除
+        names.removeIf(name -> !registries.contains(name)
+            && processingEnv.getElementUtils().getTypeElement(name) == null);
+        names.addAll(registries);
+        try {
+            var file = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", RouteRegistry.INDEX);
+            try (Writer w = file.openWriter()) {
+                for (var registry : names) {
+                    w.write(registry);
+                    w.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                "writing " + RouteRegistry.INDEX + " error: " + e.getMessage());
+        }
+    }
+
+    /**
+     * 读取编译输出中已有的索引，不存在时为空
+     */
+    private Set<String> readIndex() {
+        var names = new LinkedHashSet<String>();
+        try {
+            var file = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", RouteRegistry.INDEX);
+            try (var reader = new BufferedReader(file.openReader(true))) {
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    line = line.trim();
+                    if (!line.isEmpty() && !line.startsWith("#")) {
+                        names.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // 第一次编译
+        }
+        return names;
+    }
+
+    private void error(Element element, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, msg, element);
+    }
+
+    private void warning(Element element, String msg) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, msg, element);
+    }
+}
@@ -0,0 +1,45 @@
+package xyz.navyd.server;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ServerSocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 阻塞accept连接，并轮询分配到event loop
+ */
+class Acceptor implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(Acceptor.class);
+
+    private final ServerSocketChannel serverChannel;
+    private final EventLoop[] loops;
+    private int next;
+
+    Acceptor(ServerSocketChannel serverChannel, EventLoop[] loops) {
+        this.serverChannel = serverChannel;
+        this.loops = loops;
+    }
+
+    @Override
+    public void run() {
+        log.debug("acceptor started");
+        while (serverChannel.isOpen()) {
+            try {
+                var channel = serverChannel.accept();
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+                var loop = loops[next];
+                next = (next + 1) % loops.length;
+                loop.register(channel);
+            } catch (ClosedChannelException e) {
+                break;
+            } catch (IOException e) {
+                log.error("accepting error: {}", e.getMessage());
+            }
+        }
+        log.debug("acceptor stopped");
+    }
+}
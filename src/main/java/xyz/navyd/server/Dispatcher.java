@@ -0,0 +1,233 @@
+package xyz.navyd.server;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Consumer;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.limit.AdaptiveLimiter;
+import xyz.navyd.metrics.MetricsRegistry;
+import xyz.navyd.metrics.RouteMetrics;
+import xyz.navyd.metrics.enums.PhaseEnum;
+import xyz.navyd.mvc.RouteMatch;
+
+/**
+ * http/1.x与http/2共用的request处理流程。
+ *
+ * <p>依次处理metrics endpoint、路由、并发限制与request deadline，
+ * 按Router.execution选择执行策略调用controller。response由连接通过{@link Target}写出
+ */
+class Dispatcher {
+    private static final Logger log = LoggerFactory.getLogger(Dispatcher.class);
+
+    // 过载时建议客户端重试的秒数
+    private static final String RETRY_AFTER = "1";
+
+    /**
+     * 连接中的一个request
+     */
+    interface Target {
+        /**
+         * 路由成功后在loop线程中调用
+         */
+        void routed(RouteMatch match);
+
+        /**
+         * 记录等待中的future，连接关闭时取消，超过route timeout时以TimeoutException完成。可在任意线程调用
+         */
+        void watch(CompletableFuture<?> future, long timeoutMillis);
+
+        /**
+         * 序列化并写出response，可在任意线程调用
+         * @param response
+         * @param routeMetrics 不为null时记录序列化耗时并结束
+         * @param inline 是否为loop线程中同步得到的response，此时由连接在之后写出
+         */
+        void respond(Response<?> response, RouteMetrics routeMetrics, boolean inline);
+    }
+
+    private Dispatcher() {
+    }
+
+    /**
+     * 在loop线程中处理已解析的request
+     * @param loop
+     * @param metrics 未开启metrics时为null
+     * @param request
+     * @param parseNanos request的解析耗时，为-1时不记录
+     * @param target
+     */
+    static void dispatch(EventLoop loop, MetricsRegistry metrics, Request request, long parseNanos, Target target) {
+        var server = loop.getServer();
+        if (metrics != null && request.getMethod() == MethodEnum.GET
+                && request.getPath().equals(server.getConfig().getMetricsPath())) {
+            request.release();
+            var response = Response.withOk(metrics.prometheus() + server.loopMetrics())
+                .addHeader("Content-Type", MetricsRegistry.CONTENT_TYPE);
+            target.respond(response, null, true);
+            return;
+        }
+        var routeStart = metrics != null ? System.nanoTime() : 0;
+        var match = server.getContext().route(request);
+        var routeNanos = metrics != null ? System.nanoTime() - routeStart : 0;
+        if (match.isEmpty()) {
+            log.debug("not found controller for request: {} {}", request.getMethod(), request.getPath());
+            request.release();
+            var unmatched = metrics != null ? metrics.getUnmatched() : null;
+            begin(unmatched, parseNanos, routeNanos);
+            target.respond(Response.withNotFound(), unmatched, true);
+            return;
+        }
+        var route = match.get();
+        target.routed(route);
+        var routeMetrics = metrics != null ? route.getMetrics() : null;
+        begin(routeMetrics, parseNanos, routeNanos);
+        var limiter = server.getLimiter();
+        var routeLimiter = limiter != null ? route.getLimiter() : null;
+        if (limiter != null && !acquire(limiter, routeLimiter)) {
+            log.debug("shed request over concurrency limit: {} {}, limit: {}, route limit: {}", request.getMethod(),
+                request.getPath(), limiter.getLimit(), routeLimiter.getLimit());
+            request.release();
+            target.respond(overloaded(), routeMetrics, true);
+            return;
+        }
+        var deadline = TimeUnit.MILLISECONDS.toNanos(server.getConfig().getRequestDeadline());
+        var enqueued = limiter != null || deadline > 0 ? System.nanoTime() : 0;
+        var async = route.isAsync();
+        Runnable task = () -> {
+            // 等待过久的request客户端可能已放弃，不再调用controller
+            var dropped = deadline > 0 && System.nanoTime() - enqueued > deadline;
+            Consumer<Response<?>> complete = response -> {
+                // controller返回后body不再使用
+                request.release();
+                if (limiter != null) {
+                    var rtt = System.nanoTime() - enqueued;
+                    limiter.release(rtt, dropped);
+                    routeLimiter.release(rtt, dropped);
+                }
+                // future可能在之后由loop中的timeout完成，此时需要重新flush
+                target.respond(response, routeMetrics, loop.inLoop() && !async);
+            };
+            if (dropped) {
+                log.debug("dropped request exceeded deadline: {} {}", request.getMethod(), request.getPath());
+                complete.accept(overloaded());
+            } else if (async) {
+                var future = dispatchAsync(server, route, request);
+                target.watch(future, route.getTimeout());
+                future.whenComplete((Object result, Throwable e) -> complete.accept(toResponse(route, result, e)));
+            } else {
+                complete.accept(dispatch(server, route, request));
+            }
+        };
+        try {
+            server.getStrategy(route.getExecution()).execute(task);
+        } catch (RejectedExecutionException e) {
+            log.warn("rejected request: {} {}, {}", request.getMethod(), request.getPath(), e.getMessage());
+            request.release();
+            if (limiter != null) {
+                // 队列已满同样说明过载
+                limiter.release(0, true);
+                routeLimiter.release(0, true);
+            }
+            target.respond(overloaded(), routeMetrics, true);
+        }
+    }
+
+    private static void begin(RouteMetrics routeMetrics, long parseNanos, long routeNanos) {
+        if (routeMetrics == null) {
+            return;
+        }
+        routeMetrics.begin();
+        if (parseNanos >= 0) {
+            routeMetrics.record(PhaseEnum.PARSE, parseNanos);
+        }
+        routeMetrics.record(PhaseEnum.ROUTE, routeNanos);
+    }
+
+    /**
+     * 同时占用全局与route的并发限制
+     */
+    static boolean acquire(AdaptiveLimiter limiter, AdaptiveLimiter routeLimiter) {
+        if (!limiter.tryAcquire()) {
+            return false;
+        }
+        if (!routeLimiter.tryAcquire()) {
+            limiter.cancel();
+            return false;
+        }
+        return true;
+    }
+
+    static Response<?> overloaded() {
+        return Response.with(StatusEnum.SERVICE_UNAVAILABLE_503).addHeader("Retry-After", RETRY_AFTER);
+    }
+
+    static void expire(CompletableFuture<?> future, long timeoutMillis) {
+        if (future.completeExceptionally(new TimeoutException("controller timed out after " + timeoutMillis + "ms"))) {
+            log.debug("controller future timed out after {}ms", timeoutMillis);
+        }
+    }
+
+    /**
+     * 调用controller，异常转换为对应的错误response，可在任意线程调用
+     */
+    static Response<?> dispatch(HttpServer server, RouteMatch match, Request request) {
+        try {
+            return toResponse(match, server.getContext().handle(match, request), null);
+        } catch (RuntimeException e) {
+            return toResponse(match, null, e);
+        }
+    }
+
+    /**
+     * 调用返回CompletionStage的controller，同步抛出的异常转换为已完成的错误response，可在任意线程调用
+     */
+    static CompletableFuture<Response<?>> dispatchAsync(HttpServer server, RouteMatch match, Request request) {
+        try {
+            return server.getContext().handleAsync(match, request);
+        } catch (RuntimeException e) {
+            return CompletableFuture.completedFuture(toResponse(match, null, e));
+        }
+    }
+
+    /**
+     * controller的结果或异常转换为response，超时为504
+     * @param match
+     * @param result controller返回或future完成的值
+     * @param e 为null时使用result
+     * @return
+     */
+    static Response<?> toResponse(RouteMatch match, Object result, Throwable e) {
+        if (e instanceof CompletionException && e.getCause() != null) {
+            e = e.getCause();
+        }
+        if (e == null) {
+            if (result instanceof Response) {
+                return (Response<?>) result;
+            }
+            log.error("controller returned {} instead of response: {}", result, match);
+            return Response.with(StatusEnum.INTERNAL_SERVER_ERROR_500);
+        } else if (e instanceof TimeoutException) {
+            log.debug("handling request timed out: {}", e.getMessage());
+            return Response.with(StatusEnum.GATEWAY_TIMEOUT_504);
+        } else if (e instanceof CancellationException) {
+            log.debug("handling request cancelled: {}", match);
+            return overloaded();
+        } else if (e instanceof IllegalArgumentException) {
+            log.debug("handling request error: {}", e.getMessage());
+            return Response.with(StatusEnum.BAD_REQUEST_400);
+        }
+        log.error("handling request error: {}", e);
+        return Response.with(StatusEnum.INTERNAL_SERVER_ERROR_500);
+    }
+}
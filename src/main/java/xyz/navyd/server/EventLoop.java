@@ -0,0 +1,243 @@
+package xyz.navyd.server;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * 单线程的selector循环，负责其上所有连接的读写。
+ *
+ * <p>其它线程通过{@link #execute(Runnable)}将任务提交到该线程中执行。
+ * 连接的timeout由loop持有的{@link TimingWheel}管理，select的超时为到下一个tick的时间。
+ * 开启reusePort时loop在自己的selector上accept连接，不经过acceptor线程
+ */
+class EventLoop implements Runnable {
+    private static final Logger log = LoggerFactory.getLogger(EventLoop.class);
+
+    private static final long TICK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final int WHEEL_SIZE = 512;
+
+    private final Selector selector;
+    private final Queue<Runnable> tasks = new ConcurrentLinkedQueue<>();
+    private final HttpServer server;
+    private final Thread thread;
+    private final TimingWheel timer = new TimingWheel(TICK_NANOS, WHEEL_SIZE, System.nanoTime());
+    private volatile boolean running = true;
+    // 只在loop线程中修改
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicInteger connections = new AtomicInteger();
+
+    EventLoop(HttpServer server, int index) throws IOException {
+        this.server = server;
+        this.selector = Selector.open();
+        this.thread = new Thread(this, "http-loop-" + index);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * 在loop线程中注册连接
+     * @param channel
+     */
+    void register(SocketChannel channel) {
+        execute(() -> add(channel));
+    }
+
+    /**
+     * 在该loop上accept serverChannel的连接，serverChannel由调用者关闭
+     * @param serverChannel 非阻塞的channel
+     */
+    void listen(ServerSocketChannel serverChannel) {
+        execute(() -> {
+            try {
+                serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+            } catch (IOException e) {
+                log.error("register server channel error: {}", e.getMessage());
+            }
+        });
+    }
+
+    /**
+     * 已分配到该loop的连接数
+     * @return
+     */
+    long getAccepted() {
+        return accepted.get();
+    }
+
+    /**
+     * 当前打开的连接数
+     * @return
+     */
+    int getConnections() {
+        return connections.get();
+    }
+
+    /**
+     * 连接关闭时在loop线程中调用
+     */
+    void onClosed() {
+        connections.decrementAndGet();
+    }
+
+    void execute(Runnable task) {
+        tasks.add(task);
+        if (Thread.currentThread() != thread) {
+            selector.wakeup();
+        }
+    }
+
+    boolean inLoop() {
+        return Thread.currentThread() == thread;
+    }
+
+    HttpServer getServer() {
+        return server;
+    }
+
+    /**
+     * 只能在loop线程中使用
+     * @return
+     */
+    TimingWheel getTimer() {
+        return timer;
+    }
+
+    @Override
+    public void run() {
+        log.debug("event loop started");
+        while (running) {
+            try {
+                selector.select(this::processKey, timer.nextDelayMillis(System.nanoTime()));
+                runTasks();
+                var expired = timer.advance(System.nanoTime());
+                if (expired > 0) {
+                    log.trace("expired {} timeouts, remaining: {}", expired, timer.size());
+                    // timeout完成的future会提交task，不能等到下一次select
+                    runTasks();
+                }
+            } catch (ClosedSelectorException e) {
+                break;
+            } catch (IOException e) {
+                log.error("selecting error: {}", e.getMessage());
+            }
+        }
+        closeAll();
+        log.debug("event loop stopped");
+    }
+
+    void shutdown() {
+        running = false;
+        selector.wakeup();
+    }
+
+    void awaitTermination() throws InterruptedException {
+        thread.join();
+    }
+
+    private void add(SocketChannel channel) {
+        accepted.incrementAndGet();
+        try {
+            var key = channel.register(selector, SelectionKey.OP_READ);
+            key.attach(new HttpConnection(this, channel, key));
+            connections.incrementAndGet();
+            log.debug("registered connection: {}", channel.getRemoteAddress());
+        } catch (IOException e) {
+            log.error("register channel error: {}", e.getMessage());
+            closeQuietly(channel);
+        }
+    }
+
+    /**
+     * 接收backlog中所有连接
+     */
+    private void accept(ServerSocketChannel serverChannel) {
+        while (true) {
+            SocketChannel channel;
+            try {
+                channel = serverChannel.accept();
+                if (channel == null) {
+                    return;
+                }
+                channel.configureBlocking(false);
+                channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            } catch (IOException e) {
+                log.error("accepting error: {}", e.getMessage());
+                return;
+            }
+            add(channel);
+        }
+    }
+
+    private void processKey(SelectionKey key) {
+        if (key.channel() instanceof ServerSocketChannel serverChannel) {
+            if (key.isValid() && key.isAcceptable()) {
+                accept(serverChannel);
+            }
+            return;
+        }
+        var conn = (HttpConnection) key.attachment();
+        try {
+            if (key.isReadable()) {
+                conn.onReadable();
+            }
+            if (key.isValid() && key.isWritable()) {
+                conn.onWritable();
+            }
+        } catch (IOException e) {
+            log.debug("connection io error: {}", e.getMessage());
+            conn.close();
+        } catch (RuntimeException e) {
+            log.error("connection unexpected error: {}", e);
+            conn.close();
+        }
+    }
+
+    private void runTasks() {
+        Runnable task;
+        while ((task = tasks.poll()) != null) {
+            try {
+                task.run();
+            } catch (RuntimeException e) {
+                log.error("task error: {}", e);
+            }
+        }
+    }
+
+    private void closeAll() {
+        runTasks();
+        for (var key : selector.keys()) {
+            var conn = (HttpConnection) key.attachment();
+            if (conn != null) {
+                conn.close();
+            }
+        }
+        try {
+            selector.close();
+        } catch (IOException e) {
+            log.error("closing selector error: {}", e.getMessage());
+        }
+    }
+
+    static void closeQuietly(SocketChannel channel) {
+        try {
+            channel.close();
+        } catch (IOException e) {
+            log.trace("closing channel error: {}", e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package xyz.navyd.server;
+
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * controller方法的执行策略。
+ *
+ * <p>{@link #execute(Runnable)}在无法接收任务时抛出{@link RejectedExecutionException}
+ */
+public interface ExecutionStrategy {
+    void execute(Runnable task);
+
+    default void shutdown() {
+    }
+
+    /**
+     * 在调用线程即event loop中直接执行
+     * @return
+     */
+    static ExecutionStrategy inline() {
+        return Runnable::run;
+    }
+
+    /**
+     * 固定线程数与有界队列的线程池，队列满时拒绝
+     * @param threads
+     * @param queueSize
+     * @return
+     */
+    static ExecutionStrategy workerPool(int threads, int queueSize) {
+        var counter = new AtomicInteger();
+        var executor = new ThreadPoolExecutor(threads, threads, 0, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(queueSize),
+            r -> {
+                var t = new Thread(r, "http-worker-" + counter.getAndIncrement());
+                t.setDaemon(true);
+                return t;
+            },
+            new ThreadPoolExecutor.AbortPolicy());
+        return of(executor);
+    }
+
+    /**
+     * 每个任务一个virtual thread
+     * @return
+     */
+    static ExecutionStrategy virtualThreads() {
+        var factory = Thread.ofVirtual().name("http-virtual-", 0).factory();
+        return of(Executors.newThreadPerTaskExecutor(factory));
+    }
+
+    private static ExecutionStrategy of(ExecutorService executor) {
+        return new ExecutionStrategy() {
+            @Override
+            public void execute(Runnable task) {
+                executor.execute(task);
+            }
+
+            @Override
+            public void shutdown() {
+                executor.shutdown();
+            }
+        };
+    }
+}
@@ -0,0 +1,1242 @@
+package xyz.navyd.server;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.buffer.PooledBuffer;
+import xyz.navyd.http.EncodedResponse;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.RequestBody;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.ResponseWriter;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+import xyz.navyd.http2.Frame;
+import xyz.navyd.http2.HpackDecoder;
+import xyz.navyd.http2.HpackEncoder;
+import xyz.navyd.http2.Http2Exception;
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+import xyz.navyd.http2.enums.FrameTypeEnum;
+import xyz.navyd.metrics.MetricsRegistry;
+import xyz.navyd.metrics.RouteMetrics;
+import xyz.navyd.mvc.RouteMatch;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+import xyz.navyd.server.enums.TimeoutEnum;
+
+/**
+ * 一个http/2 cleartext连接，只在所属的event loop线程中访问。
+ *
+ * <p>由{@link HttpConnection}在收到connection preface或Upgrade: h2c时创建。
+ * 每个stream在END_STREAM后与http/1.x相同地路由，按Router.execution调用controller，
+ * response的headers以HPACK编码，body按对端的flow control window分为DATA frame。
+ * 待写出的frame在pooled buffer中排队，排队的字节超过上限时暂停生成DATA frame。
+ * 流式body没有content-length，数据生成后才生成DATA frame，最后一个frame带END_STREAM。
+ * request body与http/1.x相同地使用{@link RequestBody}，超过bodySpillThreshold时写入临时文件，
+ * DATA追加到body后才归还flow control window。
+ * stream被RST_STREAM重置或连接关闭时取消等待中的controller future
+ */
+class Http2Connection {
+    private static final Logger log = LoggerFactory.getLogger(Http2Connection.class);
+
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+    private static final byte[] SWITCHING_PROTOCOLS = ("HTTP/1.1 101 Switching Protocols\r\n"
+        + "Connection: Upgrade\r\nUpgrade: h2c\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    private static final int DEFAULT_WINDOW = 65535;
+    private static final int HEADER_TABLE_SIZE = 4096;
+    private static final int MAX_HEADER_LIST_SIZE = 1024 * 64;
+    // 等待写出的最大字节数
+    private static final int MAX_QUEUED = 1024 * 256;
+    // 一次gathering write的最大frame数
+    private static final int MAX_GATHER = 64;
+
+    private static final int SETTINGS_HEADER_TABLE_SIZE = 0x1;
+    private static final int SETTINGS_ENABLE_PUSH = 0x2;
+    private static final int SETTINGS_MAX_CONCURRENT_STREAMS = 0x3;
+    private static final int SETTINGS_INITIAL_WINDOW_SIZE = 0x4;
+    private static final int SETTINGS_MAX_FRAME_SIZE = 0x5;
+    private static final int SETTINGS_MAX_HEADER_LIST_SIZE = 0x6;
+
+    // connection-specific header不能出现在http/2中
+    private static final Set<String> CONNECTION_HEADERS = Set.of("connection", "keep-alive", "proxy-connection",
+        "transfer-encoding", "upgrade", "http2-settings");
+
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final HttpServer server;
+    private final BufferPool pool;
+    private final PooledBuffer readBuf;
+    private final MetricsRegistry metrics;
+    private final int maxConcurrentStreams;
+    // 每个stream接收body的window
+    private final int initialWindow;
+    private final long maxBodySize;
+    private final int spillThreshold;
+    private final HpackDecoder decoder = new HpackDecoder(HEADER_TABLE_SIZE, MAX_HEADER_LIST_SIZE);
+    private final HpackEncoder encoder = new HpackEncoder(HEADER_TABLE_SIZE);
+    // 未关闭的stream
+    private final HashMap<Integer, Stream> streams = new HashMap<>();
+    // 有DATA待发送且window可用的stream，轮流发送
+    private final ArrayDeque<Stream> sending = new ArrayDeque<>();
+    private final ArrayDeque<PooledBuffer> output = new ArrayDeque<>();
+    private long queued;
+    // Upgrade: h2c的request，作为stream 1
+    private Request upgrade;
+    private boolean prefaceReceived;
+    private int lastStreamId;
+    // 正在接收CONTINUATION的stream，为0时没有
+    private int continuationStream;
+    private boolean continuationEndStream;
+    private byte[] headerBlock = new byte[1024];
+    private int headerBlockLength;
+    private long connSendWindow = DEFAULT_WINDOW;
+    private int connRecvWindow = DEFAULT_WINDOW;
+    private int peerInitialWindow = DEFAULT_WINDOW;
+    private int peerMaxFrameSize = Frame.DEFAULT_MAX_FRAME_SIZE;
+    // 已发送或收到GOAWAY，不再接受新的stream
+    private boolean goAway;
+    // 写完排队的frame后关闭
+    private boolean closeAfterFlush;
+    private boolean closed;
+    private final TimingWheel.Timeout timeout = new TimingWheel.Timeout(this::onTimeout);
+    private TimeoutEnum timeoutKind;
+    private boolean progress;
+
+    /**
+     * @param loop
+     * @param channel
+     * @param key
+     * @param input 已读取但未解析的字节，读模式
+     * @param upgrade Upgrade: h2c的request，prior knowledge时为null
+     */
+    Http2Connection(EventLoop loop, SocketChannel channel, SelectionKey key, ByteBuffer input, Request upgrade) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        this.server = loop.getServer();
+        this.pool = server.getBufferPool();
+        var config = server.getConfig();
+        this.maxConcurrentStreams = config.getHttp2MaxConcurrentStreams();
+        this.initialWindow = config.getHttp2InitialWindowSize();
+        this.maxBodySize = config.getMaxBodySize();
+        this.spillThreshold = config.getBodySpillThreshold();
+        this.readBuf = pool.acquire(Math.max(input.remaining(), (Frame.HEADER_SIZE + Frame.DEFAULT_MAX_FRAME_SIZE) * 2));
+        this.readBuf.buffer().put(input);
+        var metrics = server.getContext().getMetrics();
+        this.metrics = metrics.isEnabled() ? metrics : null;
+        this.upgrade = upgrade;
+    }
+
+    /**
+     * 检查buf是否以connection preface开始，不改变position
+     * @param buf 读模式
+     * @return preface完整时为preface长度，已有的字节是preface的前缀时为0，否则为-1
+     */
+    static int matchPreface(ByteBuffer buf) {
+        var n = Math.min(buf.remaining(), PREFACE.length);
+        for (var i = 0; i < n; i++) {
+            if (buf.get(buf.position() + i) != PREFACE[i]) {
+                return -1;
+            }
+        }
+        return n == PREFACE.length ? n : 0;
+    }
+
+    /**
+     * 是否为可以升级的h2c request：HTTP/1.1，Upgrade包含h2c，并带有一个有效的HTTP2-Settings
+     * @param request
+     * @return
+     */
+    static boolean isUpgrade(Request request) {
+        if (request.getVersion() != VersionEnum.HTTP1_1
+                || !request.getHeader("Upgrade").map(v -> containsToken(v, "h2c")).orElse(false)
+                || !request.getHeader("Connection").map(v -> containsToken(v, "upgrade")).orElse(false)) {
+            return false;
+        }
+        return request.getHeader("HTTP2-Settings").map(v -> decodeSettings(v) != null).orElse(false);
+    }
+
+    /**
+     * 发送server preface，处理已读取的字节
+     * @throws IOException
+     */
+    void start() throws IOException {
+        if (upgrade != null) {
+            queue(ByteBuffer.wrap(SWITCHING_PROTOCOLS));
+        }
+        var settings = ByteBuffer.allocate(6 * 4);
+        settings.putShort((short) SETTINGS_ENABLE_PUSH).putInt(0);
+        settings.putShort((short) SETTINGS_MAX_CONCURRENT_STREAMS).putInt(maxConcurrentStreams);
+        settings.putShort((short) SETTINGS_INITIAL_WINDOW_SIZE).putInt(initialWindow);
+        settings.putShort((short) SETTINGS_MAX_HEADER_LIST_SIZE).putInt(MAX_HEADER_LIST_SIZE);
+        queueFrame(FrameTypeEnum.SETTINGS, 0, 0, settings.flip());
+        if (upgrade != null) {
+            // HTTP2-Settings相当于对端的第一个SETTINGS，不需要ACK
+            applySettings(ByteBuffer.wrap(decodeSettings(upgrade.getHeader("HTTP2-Settings").get())));
+            var stream = new Stream(1, upgrade, initialWindow, peerInitialWindow);
+            stream.remoteClosed = true;
+            streams.put(1, stream);
+            lastStreamId = 1;
+            upgrade = null;
+            dispatch(stream);
+        }
+        processInput();
+        flush();
+    }
+
+    void onReadable() throws IOException {
+        var n = channel.read(readBuf.buffer());
+        if (n < 0) {
+            log.debug("http/2 connection closed by peer");
+            close();
+            return;
+        } else if (n == 0) {
+            return;
+        }
+        log.trace("read {} bytes from http/2 channel", n);
+        progress = true;
+        processInput();
+        flush();
+    }
+
+    void onWritable() throws IOException {
+        flush();
+    }
+
+    void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.onClosed();
+        timeout.cancel();
+        key.cancel();
+        EventLoop.closeQuietly(channel);
+        readBuf.release();
+        for (var buf : output) {
+            buf.release();
+        }
+        output.clear();
+        for (var stream : streams.values()) {
+            stream.cancel();
+        }
+        streams.clear();
+        sending.clear();
+    }
+
+    /**
+     * 处理readBuf中所有完整的frame
+     */
+    private void processInput() {
+        var buf = readBuf.buffer().flip();
+        try {
+            if (!prefaceReceived) {
+                var match = matchPreface(buf);
+                if (match == 0) {
+                    return;
+                } else if (match < 0) {
+                    throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "illegal connection preface");
+                }
+                buf.position(buf.position() + match);
+                prefaceReceived = true;
+            }
+            Frame frame;
+            while (!closeAfterFlush && (frame = Frame.read(buf, Frame.DEFAULT_MAX_FRAME_SIZE)) != null) {
+                log.trace("received frame: {}", frame);
+                try {
+                    onFrame(frame);
+                } catch (Http2Exception e) {
+                    if (e.isConnectionError()) {
+                        throw e;
+                    }
+                    log.debug("http/2 stream {} error: {}, {}", e.getStreamId(), e.getError(), e.getMessage());
+                    resetStream(e.getStreamId(), e.getError());
+                }
+            }
+        } catch (Http2Exception e) {
+            log.debug("http/2 connection error: {}, {}", e.getError(), e.getMessage());
+            goAway(e.getError());
+            buf.position(buf.limit());
+        } finally {
+            buf.compact();
+        }
+    }
+
+    private void onFrame(Frame frame) {
+        var type = frame.getType();
+        if (continuationStream != 0
+                && (type != FrameTypeEnum.CONTINUATION || frame.getStreamId() != continuationStream)) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "expected CONTINUATION of stream: "
+                    + continuationStream);
+        }
+        if (type == null) {
+            // 忽略未知类型的frame
+            return;
+        }
+        switch (type) {
+            case DATA:
+                onData(frame);
+                break;
+            case HEADERS:
+                onHeaders(frame);
+                break;
+            case PRIORITY:
+                checkStream(frame);
+                if (frame.getLength() != 5) {
+                    throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, frame.getStreamId(), "illegal PRIORITY");
+                }
+                break;
+            case RST_STREAM:
+                onReset(frame);
+                break;
+            case SETTINGS:
+                onSettings(frame);
+                break;
+            case PUSH_PROMISE:
+                throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "client cannot push");
+            case PING:
+                onPing(frame);
+                break;
+            case GOAWAY:
+                onGoAway(frame);
+                break;
+            case WINDOW_UPDATE:
+                onWindowUpdate(frame);
+                break;
+            case CONTINUATION:
+                if (continuationStream == 0) {
+                    throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "unexpected CONTINUATION");
+                }
+                appendHeaderBlock(frame.getPayload());
+                if (frame.hasFlag(Frame.FLAG_END_HEADERS)) {
+                    onHeaderBlock();
+                }
+                break;
+            default:
+                break;
+        }
+    }
+
+    private void onData(Frame frame) {
+        var id = checkStream(frame);
+        var length = frame.getLength();
+        connRecvWindow -= length;
+        if (connRecvWindow < 0) {
+            throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, "connection window exceeded");
+        }
+        try {
+            receiveData(id, frame);
+        } finally {
+            // 已追加到body或被丢弃的字节才归还connection window
+            if (connRecvWindow < DEFAULT_WINDOW / 2) {
+                queueWindowUpdate(0, DEFAULT_WINDOW - connRecvWindow);
+                connRecvWindow = DEFAULT_WINDOW;
+            }
+        }
+    }
+
+    private void receiveData(int id, Frame frame) {
+        var stream = streams.get(id);
+        if (stream != null && stream.discarding) {
+            // 已返回413，对端仍在发送的body直接丢弃，不重置stream
+            stream.discarding = !frame.hasFlag(Frame.FLAG_END_STREAM);
+            return;
+        }
+        if (stream == null || stream.remoteClosed) {
+            if (id > lastStreamId) {
+                throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "DATA on idle stream: " + id);
+            }
+            throw new Http2Exception(ErrorCodeEnum.STREAM_CLOSED, id, "DATA on closed stream");
+        }
+        stream.recvWindow -= frame.getLength();
+        if (stream.recvWindow < 0) {
+            throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, id, "stream window exceeded");
+        }
+        var data = unpad(frame);
+        var received = stream.body != null ? stream.body.length() : 0;
+        if (received + data.remaining() > maxBodySize) {
+            log.debug("http/2 request body too large, stream: {}", id);
+            stream.remoteClosed = true;
+            stream.discarding = !frame.hasFlag(Frame.FLAG_END_STREAM);
+            stream.releaseBody();
+            stream.request.release();
+            respond(stream, Response.with(StatusEnum.PAYLOAD_TOO_LARGE_413, "payload too large"));
+            return;
+        }
+        if (stream.body == null) {
+            stream.body = new RequestBody(pool, spillThreshold, -1);
+        }
+        try {
+            stream.body.append(data);
+        } catch (UncheckedIOException e) {
+            log.warn("receiving http/2 request body error: {}", e.getMessage());
+            throw new Http2Exception(ErrorCodeEnum.INTERNAL_ERROR, id, "receiving request body error");
+        }
+        if (frame.hasFlag(Frame.FLAG_END_STREAM)) {
+            endStream(stream);
+        } else if (stream.recvWindow < initialWindow / 2) {
+            queueWindowUpdate(id, initialWindow - stream.recvWindow);
+            stream.recvWindow = initialWindow;
+        }
+    }
+
+    private void onHeaders(Frame frame) {
+        var id = checkStream(frame);
+        var payload = unpad(frame);
+        if (frame.hasFlag(Frame.FLAG_PRIORITY)) {
+            if (payload.remaining() < 5) {
+                throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "illegal HEADERS priority");
+            }
+            payload = payload.slice(payload.position() + 5, payload.remaining() - 5);
+        }
+        headerBlockLength = 0;
+        continuationStream = id;
+        continuationEndStream = frame.hasFlag(Frame.FLAG_END_STREAM);
+        appendHeaderBlock(payload);
+        if (frame.hasFlag(Frame.FLAG_END_HEADERS)) {
+            onHeaderBlock();
+        }
+    }
+
+    /**
+     * 完整的header block，创建stream或作为trailers
+     */
+    private void onHeaderBlock() {
+        var id = continuationStream;
+        continuationStream = 0;
+        var stream = streams.get(id);
+        if (stream != null || id <= lastStreamId) {
+            // 解码以保持HPACK状态，trailers中的header被忽略
+            decoder.decode(headerBlock, 0, headerBlockLength, (name, value) -> {
+            });
+            if (stream != null && stream.discarding) {
+                stream.discarding = !continuationEndStream;
+                return;
+            }
+            if (stream == null || stream.remoteClosed) {
+                throw new Http2Exception(ErrorCodeEnum.STREAM_CLOSED, "HEADERS on closed stream: " + id);
+            }
+            if (!continuationEndStream) {
+                throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, id, "trailers without END_STREAM");
+            }
+            endStream(stream);
+            return;
+        }
+        if (id % 2 == 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "illegal client stream id: " + id);
+        }
+        lastStreamId = id;
+        var headers = new RequestHeaders(id);
+        decoder.decode(headerBlock, 0, headerBlockLength, headers::add);
+        if (goAway) {
+            log.debug("ignore stream {} after GOAWAY", id);
+            return;
+        }
+        if (streams.size() >= maxConcurrentStreams) {
+            throw new Http2Exception(ErrorCodeEnum.REFUSED_STREAM, id, "too many concurrent streams");
+        }
+        stream = new Stream(id, headers.toRequest(), initialWindow, peerInitialWindow);
+        streams.put(id, stream);
+        if (continuationEndStream) {
+            endStream(stream);
+        }
+    }
+
+    private void onReset(Frame frame) {
+        var id = checkStream(frame);
+        if (frame.getLength() != 4) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "illegal RST_STREAM");
+        }
+        if (id > lastStreamId) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "RST_STREAM on idle stream: " + id);
+        }
+        var stream = streams.remove(id);
+        if (stream != null) {
+            log.debug("stream {} reset by peer, error code: {}", id, frame.getPayload().getInt(0));
+            stream.cancel();
+            closeIfDone();
+        }
+    }
+
+    private void onSettings(Frame frame) {
+        if (frame.getStreamId() != 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "SETTINGS on stream");
+        }
+        if (frame.hasFlag(Frame.FLAG_ACK)) {
+            if (frame.getLength() != 0) {
+                throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "SETTINGS ack with payload");
+            }
+            return;
+        }
+        if (frame.getLength() % 6 != 0) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "illegal SETTINGS length");
+        }
+        applySettings(frame.getPayload());
+        queueFrame(FrameTypeEnum.SETTINGS, Frame.FLAG_ACK, 0, ByteBuffer.allocate(0));
+    }
+
+    private void applySettings(ByteBuffer payload) {
+        for (var i = payload.position(); i + 6 <= payload.limit(); i += 6) {
+            var id = payload.getShort(i) & 0xffff;
+            var value = payload.getInt(i + 2);
+            switch (id) {
+                case SETTINGS_HEADER_TABLE_SIZE:
+                    encoder.setMaxTableSize(value < 0 ? HEADER_TABLE_SIZE : Math.min(value, HEADER_TABLE_SIZE));
+                    break;
+                case SETTINGS_ENABLE_PUSH:
+                    if (value != 0 && value != 1) {
+                        throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "illegal ENABLE_PUSH: " + value);
+                    }
+                    break;
+                case SETTINGS_INITIAL_WINDOW_SIZE:
+                    if (value < 0) {
+                        throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, "illegal INITIAL_WINDOW_SIZE");
+                    }
+                    var delta = value - peerInitialWindow;
+                    for (var stream : streams.values()) {
+                        stream.sendWindow += delta;
+                        if (stream.sendWindow > Integer.MAX_VALUE) {
+                            throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, "stream window overflow");
+                        }
+                        if (delta > 0) {
+                            schedule(stream);
+                        }
+                    }
+                    peerInitialWindow = value;
+                    break;
+                case SETTINGS_MAX_FRAME_SIZE:
+                    if (value < Frame.DEFAULT_MAX_FRAME_SIZE || value > 0xffffff) {
+                        throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "illegal MAX_FRAME_SIZE: " + value);
+                    }
+                    peerMaxFrameSize = value;
+                    break;
+                default:
+                    // MAX_CONCURRENT_STREAMS等只限制server发起的stream，忽略
+                    break;
+            }
+        }
+    }
+
+    private void onPing(Frame frame) {
+        if (frame.getStreamId() != 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "PING on stream");
+        }
+        if (frame.getLength() != 8) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "illegal PING");
+        }
+        if (!frame.hasFlag(Frame.FLAG_ACK)) {
+            var payload = ByteBuffer.allocate(8).put(frame.getPayload().duplicate()).flip();
+            queueFrame(FrameTypeEnum.PING, Frame.FLAG_ACK, 0, payload);
+        }
+    }
+
+    private void onGoAway(Frame frame) {
+        if (frame.getStreamId() != 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "GOAWAY on stream");
+        }
+        if (frame.getLength() < 8) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "illegal GOAWAY");
+        }
+        log.debug("received GOAWAY, error code: {}", frame.getPayload().getInt(4));
+        goAway = true;
+        closeIfDone();
+    }
+
+    private void onWindowUpdate(Frame frame) {
+        if (frame.getLength() != 4) {
+            throw new Http2Exception(ErrorCodeEnum.FRAME_SIZE_ERROR, "illegal WINDOW_UPDATE");
+        }
+        var id = frame.getStreamId();
+        var increment = frame.getPayload().getInt(0) & 0x7fffffff;
+        if (increment == 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, id, "zero window increment");
+        }
+        if (id == 0) {
+            connSendWindow += increment;
+            if (connSendWindow > Integer.MAX_VALUE) {
+                throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, "connection window overflow");
+            }
+            return;
+        }
+        var stream = streams.get(id);
+        if (stream == null) {
+            return;
+        }
+        stream.sendWindow += increment;
+        if (stream.sendWindow > Integer.MAX_VALUE) {
+            throw new Http2Exception(ErrorCodeEnum.FLOW_CONTROL_ERROR, id, "stream window overflow");
+        }
+        schedule(stream);
+    }
+
+    private void endStream(Stream stream) {
+        stream.remoteClosed = true;
+        if (stream.body != null) {
+            stream.body.finish();
+            stream.request.setBody(stream.body);
+            stream.body = null;
+        }
+        dispatch(stream);
+    }
+
+    /**
+     * 与http/1.x相同地由{@link Dispatcher}路由并调用controller
+     * @param stream
+     */
+    private void dispatch(Stream stream) {
+        Dispatcher.dispatch(loop, metrics, stream.request, -1, new Dispatcher.Target() {
+            @Override
+            public void routed(RouteMatch match) {
+                stream.execution = match.getExecution();
+            }
+
+            @Override
+            public void watch(CompletableFuture<?> future, long timeoutMillis) {
+                Http2Connection.this.watch(stream, future, timeoutMillis);
+            }
+
+            @Override
+            public void respond(Response<?> response, RouteMetrics routeMetrics, boolean inline) {
+                Response<?> encoded = response;
+                EncodedResponse body;
+                try {
+                    body = server.getWriter().writeBody(response);
+                } catch (IllegalArgumentException e) {
+                    encoded = Response.with(StatusEnum.INTERNAL_SERVER_ERROR_500);
+                    body = server.getWriter().writeBody(encoded);
+                }
+                if (routeMetrics != null) {
+                    routeMetrics.end(encoded.getStatus());
+                }
+                if (loop.inLoop()) {
+                    onResponse(stream, encoded, body);
+                } else {
+                    var r = encoded;
+                    var b = body;
+                    loop.execute(() -> onResponse(stream, r, b));
+                }
+            }
+        });
+    }
+
+    /**
+     * 在loop线程中记录等待中的future，stream取消时取消，超过route timeout时以TimeoutException完成
+     */
+    private void watch(Stream stream, CompletableFuture<?> future, long timeoutMillis) {
+        if (!loop.inLoop()) {
+            loop.execute(() -> watch(stream, future, timeoutMillis));
+            return;
+        }
+        if (future.isDone()) {
+            return;
+        } else if (closed || stream.cancelled) {
+            future.cancel(true);
+            return;
+        }
+        stream.pending = future;
+        if (timeoutMillis > 0) {
+            stream.deadline = new TimingWheel.Timeout(() -> Dispatcher.expire(future, timeoutMillis));
+            loop.getTimer().schedule(stream.deadline, TimeUnit.MILLISECONDS.toNanos(timeoutMillis), System.nanoTime());
+        }
+    }
+
+    /**
+     * 在loop线程中直接返回response
+     */
+    private void respond(Stream stream, Response<?> response) {
+        onResponse(stream, response, server.getWriter().writeBody(response));
+    }
+
+    private void onResponse(Stream stream, Response<?> response, EncodedResponse body) {
+        if (closed || stream.cancelled) {
+            body.release();
+            return;
+        }
+        stream.settle();
+        stream.response = body;
+        var streaming = body.stream();
+        var length = streaming != null ? -1 : body.remaining();
+        writeHeaders(stream, response, length);
+        if (streaming != null) {
+            streaming.start(server.getStrategy(stream.execution)::execute,
+                () -> loop.execute(() -> onStreamReady(stream)));
+            schedule(stream);
+        } else if (length == 0) {
+            finishStream(stream);
+        } else {
+            schedule(stream);
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            log.debug("connection io error: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 流式body生成了新的数据、结束或失败
+     */
+    private void onStreamReady(Stream stream) {
+        if (closed || stream.cancelled) {
+            return;
+        }
+        schedule(stream);
+        try {
+            flush();
+        } catch (IOException e) {
+            log.debug("connection io error: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * HEADERS与CONTINUATION连续排队，不会与其它frame交错
+     * @param length 为-1时长度未知，不添加content-length
+     */
+    private void writeHeaders(Stream stream, Response<?> response, long length) {
+        var out = new ByteArrayOutputStream(256);
+        encoder.startBlock(out);
+        var status = response.getStatus();
+        encoder.encode(out, ":status", Integer.toString(status.getCode()));
+        for (var header : response.getHeaders().entrySet()) {
+            var name = header.getKey().toLowerCase(Locale.ROOT);
+            if (!CONNECTION_HEADERS.contains(name) && !name.equals("content-length")) {
+                encoder.encode(out, name, header.getValue());
+            }
+        }
+        if (ResponseWriter.hasBody(status) && length >= 0) {
+            encoder.encode(out, "content-length", Long.toString(length));
+        }
+        var block = out.toByteArray();
+        var endStream = length == 0 ? Frame.FLAG_END_STREAM : 0;
+        var offset = 0;
+        do {
+            var n = Math.min(block.length - offset, peerMaxFrameSize);
+            var flags = offset + n == block.length ? Frame.FLAG_END_HEADERS : 0;
+            var type = offset == 0 ? FrameTypeEnum.HEADERS : FrameTypeEnum.CONTINUATION;
+            queueFrame(type, offset == 0 ? flags | endStream : flags, stream.id, ByteBuffer.wrap(block, offset, n));
+            offset += n;
+        } while (offset < block.length);
+    }
+
+    /**
+     * 按window从response body生成DATA frame，直到排队的字节达到上限
+     */
+    private void pump() {
+        while (!sending.isEmpty() && connSendWindow > 0 && queued < MAX_QUEUED) {
+            var stream = sending.poll();
+            stream.scheduled = false;
+            if (stream.cancelled || stream.sendWindow <= 0) {
+                continue;
+            }
+            var streaming = stream.response.stream();
+            long remaining;
+            var finished = true;
+            if (streaming != null) {
+                if (streaming.isFailed()) {
+                    log.debug("streaming body of stream {} failed", stream.id);
+                    resetStream(stream.id, ErrorCodeEnum.INTERNAL_ERROR);
+                    continue;
+                }
+                // 先检查finished，之后的available包含所有剩余数据
+                finished = streaming.isFinished();
+                remaining = streaming.available();
+                if (remaining == 0 && !finished) {
+                    // 生成数据后由onStreamReady重新schedule
+                    continue;
+                }
+            } else {
+                remaining = stream.response.remaining();
+            }
+            var n = (int) Math.min(Math.min(connSendWindow, stream.sendWindow), Math.min(peerMaxFrameSize, remaining));
+            var last = n == remaining && finished;
+            var pooled = pool.acquire(Frame.HEADER_SIZE + n);
+            var buf = pooled.buffer();
+            Frame.writeHeader(buf, n, FrameTypeEnum.DATA, last ? Frame.FLAG_END_STREAM : 0, stream.id);
+            try {
+                copyBody(stream.response, buf);
+            } catch (IOException e) {
+                log.warn("reading response body of stream {} error: {}", stream.id, e.getMessage());
+                pooled.release();
+                resetStream(stream.id, ErrorCodeEnum.INTERNAL_ERROR);
+                continue;
+            }
+            output.add(pooled);
+            queued += buf.flip().remaining();
+            connSendWindow -= n;
+            stream.sendWindow -= n;
+            if (last) {
+                finishStream(stream);
+            } else {
+                schedule(stream);
+            }
+        }
+    }
+
+    /**
+     * 从body复制到buf写满为止
+     */
+    private static void copyBody(EncodedResponse body, ByteBuffer buf) throws IOException {
+        for (var src : body.buffers()) {
+            if (!buf.hasRemaining()) {
+                return;
+            }
+            var n = Math.min(src.remaining(), buf.remaining());
+            buf.put(buf.position(), src, src.position(), n);
+            buf.position(buf.position() + n);
+            src.position(src.position() + n);
+        }
+        var file = body.file();
+        while (buf.hasRemaining() && file != null && !file.isWritten()) {
+            file.read(buf);
+        }
+        var stream = body.stream();
+        ByteBuffer src;
+        while (buf.hasRemaining() && stream != null && (src = stream.peek()) != null) {
+            var n = Math.min(src.remaining(), buf.remaining());
+            buf.put(buf.position(), src, src.position(), n);
+            buf.position(buf.position() + n);
+            src.position(src.position() + n);
+            if (!src.hasRemaining()) {
+                stream.remove();
+            }
+        }
+    }
+
+    /**
+     * response已全部排队，stream关闭
+     */
+    private void finishStream(Stream stream) {
+        if (stream.discarding) {
+            // response已完整，通知对端不再发送剩余的request body
+            queueFrame(FrameTypeEnum.RST_STREAM, 0, stream.id,
+                ByteBuffer.allocate(4).putInt(ErrorCodeEnum.NO_ERROR.getCode()).flip());
+        }
+        streams.remove(stream.id);
+        stream.cancel();
+        closeIfDone();
+    }
+
+    private void schedule(Stream stream) {
+        if (!stream.scheduled && stream.response != null && !stream.cancelled && stream.sendWindow > 0) {
+            stream.scheduled = true;
+            sending.add(stream);
+        }
+    }
+
+    private void resetStream(int id, ErrorCodeEnum error) {
+        var payload = ByteBuffer.allocate(4).putInt(error.getCode()).flip();
+        queueFrame(FrameTypeEnum.RST_STREAM, 0, id, payload);
+        var stream = streams.remove(id);
+        if (stream != null) {
+            stream.cancel();
+            closeIfDone();
+        }
+    }
+
+    private void goAway(ErrorCodeEnum error) {
+        if (!goAway || error != ErrorCodeEnum.NO_ERROR) {
+            var payload = ByteBuffer.allocate(8).putInt(lastStreamId).putInt(error.getCode()).flip();
+            queueFrame(FrameTypeEnum.GOAWAY, 0, 0, payload);
+        }
+        goAway = true;
+        if (error != ErrorCodeEnum.NO_ERROR) {
+            closeAfterFlush = true;
+        }
+        closeIfDone();
+    }
+
+    /**
+     * GOAWAY后所有stream完成时关闭
+     */
+    private void closeIfDone() {
+        if (goAway && streams.isEmpty()) {
+            closeAfterFlush = true;
+        }
+    }
+
+    private void queueWindowUpdate(int id, int increment) {
+        queueFrame(FrameTypeEnum.WINDOW_UPDATE, 0, id, ByteBuffer.allocate(4).putInt(increment).flip());
+    }
+
+    private void queueFrame(FrameTypeEnum type, int flags, int id, ByteBuffer payload) {
+        var pooled = pool.acquire(Frame.HEADER_SIZE + payload.remaining());
+        var buf = pooled.buffer();
+        Frame.writeHeader(buf, payload.remaining(), type, flags, id);
+        buf.put(payload).flip();
+        output.add(pooled);
+        queued += buf.remaining();
+    }
+
+    private void queue(ByteBuffer bytes) {
+        var pooled = pool.acquire(bytes.remaining());
+        output.add(pooled);
+        queued += pooled.buffer().put(bytes).flip().remaining();
+    }
+
+    /**
+     * 写出排队的frame，socket可写时继续生成DATA frame
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        if (closed) {
+            return;
+        }
+        pump();
+        while (!output.isEmpty()) {
+            var bufs = new ByteBuffer[Math.min(output.size(), MAX_GATHER)];
+            var i = 0;
+            for (var pooled : output) {
+                if (i == bufs.length) {
+                    break;
+                }
+                bufs[i++] = pooled.buffer();
+            }
+            var n = channel.write(bufs);
+            progress |= n > 0;
+            while (!output.isEmpty() && !output.peekFirst().buffer().hasRemaining()) {
+                var pooled = output.pollFirst();
+                queued -= pooled.buffer().limit();
+                pooled.release();
+            }
+            if (bufs[bufs.length - 1].hasRemaining()) {
+                break;
+            }
+            pump();
+        }
+        if (output.isEmpty() && closeAfterFlush) {
+            log.trace("http/2 connection finished, closing");
+            close();
+            return;
+        }
+        var ops = closeAfterFlush ? 0 : SelectionKey.OP_READ;
+        if (!output.isEmpty()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        key.interestOps(ops);
+        updateTimeout();
+    }
+
+    /**
+     * 没有stream时为keep-alive，写出阻塞时为write timeout，
+     * 接收header block或request body时与http/1.x相同地使用header read与body read timeout
+     */
+    private void updateTimeout() {
+        TimeoutEnum kind = null;
+        if (!output.isEmpty()) {
+            kind = TimeoutEnum.WRITE;
+        } else if (continuationStream != 0) {
+            kind = TimeoutEnum.HEADER_READ;
+        } else if (isReceiving()) {
+            kind = TimeoutEnum.BODY_READ;
+        } else if (streams.isEmpty()) {
+            kind = TimeoutEnum.KEEP_ALIVE;
+        }
+        var millis = kind != null ? server.getConfig().getTimeout(kind) : 0;
+        if (millis == 0) {
+            timeout.cancel();
+            timeoutKind = null;
+        } else if (kind != timeoutKind || !timeout.isScheduled() || progress && kind.isIdle()) {
+            timeoutKind = kind;
+            loop.getTimer().schedule(timeout, TimeUnit.MILLISECONDS.toNanos(millis), System.nanoTime());
+        }
+        progress = false;
+    }
+
+    private void onTimeout() {
+        if (closed) {
+            return;
+        }
+        log.debug("http/2 connection timeout: {}", timeoutKind);
+        if (timeoutKind == TimeoutEnum.KEEP_ALIVE || timeoutKind == TimeoutEnum.BODY_READ) {
+            if (timeoutKind == TimeoutEnum.KEEP_ALIVE) {
+                goAway(ErrorCodeEnum.NO_ERROR);
+            } else {
+                // 只重置未发送完body的stream，其它stream继续
+                for (var stream : new ArrayList<>(streams.values())) {
+                    if (!stream.remoteClosed || stream.discarding) {
+                        resetStream(stream.id, ErrorCodeEnum.CANCEL);
+                    }
+                }
+            }
+            timeoutKind = null;
+            try {
+                flush();
+            } catch (IOException e) {
+                log.debug("connection io error: {}", e.getMessage());
+                close();
+            }
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * 是否有stream在等待对端发送request body
+     */
+    private boolean isReceiving() {
+        for (var stream : streams.values()) {
+            if (!stream.remoteClosed || stream.discarding) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void appendHeaderBlock(ByteBuffer fragment) {
+        var n = fragment.remaining();
+        if (headerBlockLength + n > MAX_HEADER_LIST_SIZE * 2) {
+            throw new Http2Exception(ErrorCodeEnum.ENHANCE_YOUR_CALM, "header block too large");
+        }
+        if (headerBlockLength + n > headerBlock.length) {
+            headerBlock = Arrays.copyOf(headerBlock, Math.max(headerBlock.length * 2, headerBlockLength + n));
+        }
+        fragment.get(fragment.position(), headerBlock, headerBlockLength, n);
+        headerBlockLength += n;
+    }
+
+    private static int checkStream(Frame frame) {
+        if (frame.getStreamId() == 0) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, frame.getType() + " on stream 0");
+        }
+        return frame.getStreamId();
+    }
+
+    /**
+     * 去掉padding后的payload
+     */
+    private static ByteBuffer unpad(Frame frame) {
+        var payload = frame.getPayload();
+        if (!frame.hasFlag(Frame.FLAG_PADDED)) {
+            return payload;
+        }
+        if (payload.remaining() < 1) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "missing pad length");
+        }
+        var pad = payload.get(payload.position()) & 0xff;
+        if (pad >= payload.remaining()) {
+            throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, "padding exceeds payload");
+        }
+        return payload.slice(payload.position() + 1, payload.remaining() - 1 - pad);
+    }
+
+    /**
+     * 解码base64url的SETTINGS payload
+     * @return 无效时为null
+     */
+    private static byte[] decodeSettings(String value) {
+        try {
+            var settings = Base64.getUrlDecoder().decode(value.trim());
+            return settings.length % 6 == 0 ? settings : null;
+        } catch (IllegalArgumentException e) {
+            log.debug("illegal HTTP2-Settings: {}", value);
+            return null;
+        }
+    }
+
+    private static boolean containsToken(String value, String token) {
+        for (var s : value.split(",")) {
+            if (s.trim().equalsIgnoreCase(token)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * 一个request/response的stream
+     */
+    private static class Stream {
+        final int id;
+        final Request request;
+        // 发送response body的window，可能因SETTINGS变为负数
+        long sendWindow;
+        // 接收request body的window
+        int recvWindow;
+        // 接收中的request body，END_STREAM后交给request
+        RequestBody body;
+        // 对端已发送END_STREAM
+        boolean remoteClosed;
+        // 已拒绝request body，丢弃对端之后发送的DATA
+        boolean discarding;
+        boolean cancelled;
+        // 已在sending队列中
+        boolean scheduled;
+        // route的执行策略，用于生成流式body
+        ExecutionEnum execution = ExecutionEnum.INLINE;
+        // 未发送完的response body
+        EncodedResponse response;
+        // 等待完成的controller future
+        CompletableFuture<?> pending;
+        // pending的route timeout
+        TimingWheel.Timeout deadline;
+
+        Stream(int id, Request request, int recvWindow, int sendWindow) {
+            this.id = id;
+            this.request = request;
+            this.recvWindow = recvWindow;
+            this.sendWindow = sendWindow;
+        }
+
+        void releaseBody() {
+            if (body != null) {
+                body.release();
+                body = null;
+            }
+        }
+
+        /**
+         * pending已完成，取消route timeout
+         */
+        void settle() {
+            pending = null;
+            if (deadline != null) {
+                deadline.cancel();
+                deadline = null;
+            }
+        }
+
+        /**
+         * 释放response body并取消等待中的controller，之后完成的controller结果被丢弃
+         */
+        void cancel() {
+            cancelled = true;
+            releaseBody();
+            if (pending != null) {
+                pending.cancel(true);
+            }
+            settle();
+            if (response != null) {
+                response.release();
+                response = null;
+            }
+        }
+    }
+
+    /**
+     * 从解码的headers创建request，格式错误时为stream error
+     */
+    private static class RequestHeaders {
+        final int streamId;
+        String method;
+        String path;
+        String scheme;
+        String authority;
+        final List<String> names = new ArrayList<>();
+        final List<String> values = new ArrayList<>();
+        StringBuilder cookie;
+        boolean regular;
+        String error;
+
+        RequestHeaders(int streamId) {
+            this.streamId = streamId;
+        }
+
+        void add(String name, String value) {
+            if (error != null) {
+                return;
+            }
+            for (var i = 0; i < name.length(); i++) {
+                var c = name.charAt(i);
+                if (c >= 'A' && c <= 'Z') {
+                    error = "uppercase header name: " + name;
+                    return;
+                }
+            }
+            if (name.startsWith(":")) {
+                if (regular) {
+                    error = "pseudo header after regular header: " + name;
+                    return;
+                }
+                switch (name) {
+                    case ":method":
+                        method = pseudo(method, name, value);
+                        break;
+                    case ":path":
+                        path = pseudo(path, name, value);
+                        break;
+                    case ":scheme":
+                        scheme = pseudo(scheme, name, value);
+                        break;
+                    case ":authority":
+                        authority = pseudo(authority, name, value);
+                        break;
+                    default:
+                        error = "unknown pseudo header: " + name;
+                        break;
+                }
+                return;
+            }
+            regular = true;
+            if (CONNECTION_HEADERS.contains(name) || name.equals("te") && !value.equals("trailers")) {
+                error = "connection-specific header: " + name;
+            } else if (name.equals("cookie")) {
+                // 多个cookie header合并为一个
+                if (cookie == null) {
+                    cookie = new StringBuilder(value);
+                } else {
+                    cookie.append("; ").append(value);
+                }
+            } else {
+                names.add(name);
+                values.add(value);
+            }
+        }
+
+        private String pseudo(String old, String name, String value) {
+            if (old != null) {
+                error = "duplicate pseudo header: " + name;
+            }
+            return value;
+        }
+
+        Request toRequest() {
+            if (error == null && (method == null || scheme == null || path == null || path.isEmpty())) {
+                error = "missing pseudo header";
+            }
+            var m = method != null ? MethodEnum.parse(method) : null;
+            if (error == null && m.isEmpty()) {
+                error = "unsupported method: " + method;
+            }
+            if (error != null) {
+                throw new Http2Exception(ErrorCodeEnum.PROTOCOL_ERROR, streamId, error);
+            }
+            var q = path.indexOf('?');
+            var request = new Request(m.get(), q < 0 ? path : path.substring(0, q), q < 0 ? null : path.substring(q + 1),
+                VersionEnum.HTTP2_0);
+            if (authority != null) {
+                request.setHeader("Host", authority);
+            }
+            for (var i = 0; i < names.size(); i++) {
+                if (authority == null || !names.get(i).equals("host")) {
+                    request.setHeader(names.get(i), values.get(i));
+                }
+            }
+            if (cookie != null) {
+                request.setHeader("Cookie", cookie.toString());
+            }
+            return request;
+        }
+    }
+}
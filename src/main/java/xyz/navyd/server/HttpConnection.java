@@ -0,0 +1,602 @@
+package xyz.navyd.server;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.PooledBuffer;
+import xyz.navyd.http.Compression;
+import xyz.navyd.http.EncodedResponse;
+import xyz.navyd.http.PayloadTooLargeException;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.RequestParser;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.ResponseWriter;
+import xyz.navyd.http.StreamingBody;
+import xyz.navyd.http.enums.EncodingEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+import xyz.navyd.metrics.MetricsRegistry;
+import xyz.navyd.metrics.RouteMetrics;
+import xyz.navyd.metrics.enums.PhaseEnum;
+import xyz.navyd.mvc.RouteMatch;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+import xyz.navyd.server.enums.TimeoutEnum;
+
+/**
+ * 一个客户端的http/1.x持久连接，只在所属的event loop线程中访问。
+ *
+ * <p>一次read中可以解析出多个pipelined request，response按request的顺序写回。
+ * 等待写回的request达到上限时暂停读取与解析。
+ * controller可能在其它线程执行，完成后通过{@link EventLoop#execute(Runnable)}回到该连接。
+ * 返回CompletionStage的controller在future完成时写回，连接关闭时取消该future。
+ * {@link StreamingBody}在socket可写时按生成的顺序写出，写出后才继续生成。
+ * 每次读写后按连接的状态在loop的{@link TimingWheel}中设置一个{@link TimeoutEnum}
+ */
+class HttpConnection {
+    private static final Logger log = LoggerFactory.getLogger(HttpConnection.class);
+
+    private static final int MAX_PIPELINED = 16;
+
+    private final EventLoop loop;
+    private final SocketChannel channel;
+    private final SelectionKey key;
+    private final PooledBuffer readBuf;
+    private final RequestParser parser;
+    // 按request顺序等待写回的response
+    private final ArrayDeque<Exchange> exchanges = new ArrayDeque<>();
+    // 不再接收后续request，写完已有的response后关闭
+    private boolean inputClosed;
+    // 因pipelined request过多暂停解析
+    private boolean paused;
+    // 对端已关闭输出，解析完已读取的request后不再读取
+    private boolean eof;
+    private boolean closed;
+    private final MetricsRegistry metrics;
+    // 当前request读到第一个字节的时间，未开启metrics或未开始时为0
+    private long parseStart;
+    private final TimingWheel.Timeout timeout = new TimingWheel.Timeout(this::onTimeout);
+    // 当前设置的timeout，未设置时为null
+    private TimeoutEnum timeoutKind;
+    // 上次设置timeout后是否读到或写出了数据
+    private boolean progress;
+    private long requests;
+    // 切换到http/2后由其处理所有读写
+    private Http2Connection http2;
+    // 收到Upgrade: h2c的request，在当前的解析结束后切换
+    private Request upgrade;
+    private boolean preface;
+
+    HttpConnection(EventLoop loop, SocketChannel channel, SelectionKey key) {
+        this.loop = loop;
+        this.channel = channel;
+        this.key = key;
+        var pool = loop.getServer().getBufferPool();
+        var config = loop.getServer().getConfig();
+        this.parser = new RequestParser(config.getReadBufferSize(), pool, config.getMaxBodySize(),
+            config.getBodySpillThreshold());
+        this.readBuf = pool.acquire(parser.getBufSize());
+        var metrics = loop.getServer().getContext().getMetrics();
+        this.metrics = metrics.isEnabled() ? metrics : null;
+        updateTimeout();
+    }
+
+    void onReadable() throws IOException {
+        if (http2 != null) {
+            http2.onReadable();
+            return;
+        }
+        if (inputClosed) {
+            // 不再解析之后的request，读取只用于发现对端关闭
+            readBuf.buffer().clear();
+        }
+        var n = channel.read(readBuf.buffer());
+        if (n < 0) {
+            log.debug("connection closed by peer");
+            eof = true;
+            if (isAwaiting()) {
+                // 等待controller的future时对端关闭，视为客户端放弃，关闭连接取消future
+                close();
+                return;
+            }
+            processInput();
+            return;
+        } else if (n == 0) {
+            return;
+        }
+        log.trace("read {} bytes from channel", n);
+        progress = true;
+        processInput();
+    }
+
+    void onWritable() throws IOException {
+        if (http2 != null) {
+            http2.onWritable();
+            return;
+        }
+        flush();
+    }
+
+    void close() {
+        if (http2 != null) {
+            http2.close();
+            return;
+        }
+        if (closed) {
+            return;
+        }
+        closed = true;
+        loop.onClosed();
+        timeout.cancel();
+        key.cancel();
+        EventLoop.closeQuietly(channel);
+        parser.reset();
+        readBuf.release();
+        for (var exchange : exchanges) {
+            exchange.release();
+        }
+        exchanges.clear();
+    }
+
+    /**
+     * 解析readBuf中所有完整的request
+     * @throws IOException
+     */
+    private void processInput() throws IOException {
+        var buf = readBuf.buffer().flip();
+        try {
+            while (!inputClosed && upgrade == null) {
+                if (requests == 0 && http2Enabled() && !parser.isStarted()) {
+                    var match = Http2Connection.matchPreface(buf);
+                    if (match == 0) {
+                        break;
+                    } else if (match > 0) {
+                        log.trace("received http/2 connection preface");
+                        preface = true;
+                        break;
+                    }
+                }
+                if (exchanges.size() >= MAX_PIPELINED) {
+                    log.trace("too many pipelined requests, pause parsing");
+                    paused = true;
+                    break;
+                }
+                if (metrics != null && parseStart == 0 && buf.hasRemaining()) {
+                    parseStart = System.nanoTime();
+                }
+                if (!parser.parse(buf)) {
+                    break;
+                }
+                var request = parser.getRequest();
+                parser.reset();
+                requests++;
+                var parseNanos = 0L;
+                if (metrics != null) {
+                    parseNanos = System.nanoTime() - parseStart;
+                    parseStart = 0;
+                }
+                handle(request, parseNanos);
+            }
+        } catch (PayloadTooLargeException e) {
+            log.debug("request body too large: {}", e.getMessage());
+            reject(Response.with(StatusEnum.PAYLOAD_TOO_LARGE_413, "payload too large"));
+        } catch (IllegalArgumentException e) {
+            log.debug("parsing request error: {}", e.getMessage());
+            reject(Response.with(StatusEnum.BAD_REQUEST_400, "bad request"));
+        } finally {
+            buf.compact();
+        }
+        if (preface || upgrade != null) {
+            switchToHttp2();
+            return;
+        }
+        if (eof && !paused) {
+            inputClosed = true;
+        }
+        flush();
+    }
+
+    /**
+     * 无法继续解析时返回错误并在写出后关闭连接
+     * @param response
+     */
+    private void reject(Response<?> response) {
+        inputClosed = true;
+        parser.reset();
+        var exchange = new Exchange(VersionEnum.HTTP1_1, false);
+        exchanges.add(exchange);
+        exchange.response = encode(exchange, response);
+        if (metrics != null) {
+            metrics.getUnmatched().begin();
+            metrics.getUnmatched().end(response.getStatus());
+        }
+    }
+
+    /**
+     * 由{@link Dispatcher}路由并调用controller，
+     * 非inline时完成后回到event loop写出
+     * @param request
+     * @param parseNanos 开启metrics时request的解析耗时
+     */
+    private void handle(Request request, long parseNanos) {
+        var keepAlive = request.isKeepAlive();
+        if (!keepAlive) {
+            log.trace("connection will be closed after request: {} {}", request.getMethod(), request.getPath());
+            inputClosed = true;
+        }
+        if (exchanges.isEmpty() && http2Enabled() && Http2Connection.isUpgrade(request)) {
+            log.trace("upgrading to h2c: {} {}", request.getMethod(), request.getPath());
+            upgrade = request;
+            return;
+        }
+        var exchange = new Exchange(request.getVersion(), keepAlive);
+        exchanges.add(exchange);
+        Dispatcher.dispatch(loop, metrics, request, parseNanos, new Dispatcher.Target() {
+            @Override
+            public void routed(RouteMatch match) {
+                exchange.execution = match.getExecution();
+                if (loop.getServer().getConfig().isCompression() && match.isCompress()) {
+                    exchange.accepted = Compression.negotiate(request.getHeader("Accept-Encoding").orElse(null));
+                    exchange.path = request.getPath();
+                }
+            }
+
+            @Override
+            public void watch(CompletableFuture<?> future, long timeoutMillis) {
+                HttpConnection.this.watch(exchange, future, timeoutMillis);
+            }
+
+            @Override
+            public void respond(Response<?> response, RouteMetrics routeMetrics, boolean inline) {
+                var encoded = encode(exchange, response, routeMetrics);
+                if (routeMetrics != null) {
+                    routeMetrics.end(response.getStatus());
+                }
+                if (inline) {
+                    exchange.response = encoded;
+                } else {
+                    loop.execute(() -> onCompleted(exchange, encoded));
+                }
+            }
+        });
+    }
+
+    /**
+     * 在loop线程中记录等待中的future，连接关闭时取消，超过route timeout时以TimeoutException完成
+     */
+    private void watch(Exchange exchange, CompletableFuture<?> future, long timeoutMillis) {
+        if (!loop.inLoop()) {
+            loop.execute(() -> watch(exchange, future, timeoutMillis));
+            return;
+        }
+        if (future.isDone()) {
+            return;
+        } else if (closed || eof) {
+            // 对端在controller返回future之前已关闭
+            future.cancel(true);
+            close();
+            return;
+        }
+        exchange.pending = future;
+        if (inputClosed) {
+            // flush时还没有future，重新关注OP_READ以发现对端关闭
+            key.interestOps(key.interestOps() | SelectionKey.OP_READ);
+        }
+        if (timeoutMillis > 0) {
+            exchange.deadline = new TimingWheel.Timeout(() -> Dispatcher.expire(future, timeoutMillis));
+            loop.getTimer().schedule(exchange.deadline, TimeUnit.MILLISECONDS.toNanos(timeoutMillis), System.nanoTime());
+        }
+    }
+
+    private void onCompleted(Exchange exchange, EncodedResponse encoded) {
+        if (closed) {
+            encoded.release();
+            return;
+        }
+        exchange.settle();
+        exchange.response = encoded;
+        try {
+            flush();
+        } catch (IOException e) {
+            log.debug("connection io error: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * routeMetrics不为null时记录序列化耗时
+     */
+    private EncodedResponse encode(Exchange exchange, Response<?> response, RouteMetrics routeMetrics) {
+        if (routeMetrics == null) {
+            return encode(exchange, response);
+        }
+        var start = System.nanoTime();
+        var encoded = encode(exchange, response);
+        routeMetrics.record(PhaseEnum.SERIALIZE, System.nanoTime() - start);
+        return encoded;
+    }
+
+    /**
+     * 添加Connection header并序列化，可在任意线程调用
+     * @param exchange
+     * @param response
+     * @return
+     */
+    private EncodedResponse encode(Exchange exchange, Response<?> response) {
+        // http/1.0不支持chunked，流式body写完后关闭连接表示结束
+        var closeAfter = exchange.version == VersionEnum.HTTP1_0
+            && StreamingBody.isStreaming(ResponseWriter.unwrap(response.getBody()));
+        exchange.closeAfter = closeAfter;
+        if (!exchange.keepAlive || closeAfter) {
+            response.addHeader("Connection", "close");
+        } else if (exchange.version == VersionEnum.HTTP1_0) {
+            response.addHeader("Connection", "keep-alive");
+        }
+        var writer = loop.getServer().getWriter();
+        try {
+            return writer.write(response, exchange.version, exchange.accepted, exchange.path);
+        } catch (IllegalArgumentException e) {
+            var error = Response.with(StatusEnum.INTERNAL_SERVER_ERROR_500);
+            return writer.write(error.addHeader("Connection", "close"), exchange.version);
+        }
+    }
+
+    /**
+     * 按顺序写出已完成的response，未写完则等待OP_WRITE。
+     * gathering write在第一个带文件或流式body的response处截止，其head写完后再transferTo文件或写出已生成的数据
+     * @throws IOException
+     */
+    private void flush() throws IOException {
+        var count = 0;
+        for (var exchange : exchanges) {
+            if (exchange.response == null) {
+                break;
+            }
+            count += exchange.response.buffers().length;
+            if (exchange.response.file() != null || exchange.response.stream() != null) {
+                break;
+            }
+        }
+        if (count > 0) {
+            var bufs = new ByteBuffer[count];
+            var i = 0;
+            Exchange last = null;
+            for (var exchange : exchanges) {
+                if (i == count) {
+                    break;
+                }
+                for (var buf : exchange.response.buffers()) {
+                    bufs[i++] = buf;
+                }
+                last = exchange;
+            }
+            var written = channel.write(bufs);
+            var file = last.response.file();
+            var stream = last.response.stream();
+            if (file != null && !bufs[count - 1].hasRemaining()) {
+                var n = file.transferTo(channel);
+                log.trace("transferred {} bytes of file, remaining: {}", n, file.remaining());
+                written += n;
+            } else if (stream != null && !bufs[count - 1].hasRemaining()) {
+                written += writeStream(last, stream);
+                if (stream.isFailed()) {
+                    // chunked body没有结尾，客户端可以知道response不完整
+                    log.debug("streaming body failed, closing connection");
+                    close();
+                    return;
+                }
+            }
+            progress |= written > 0;
+            while (!exchanges.isEmpty() && exchanges.peekFirst().isWritten()) {
+                var exchange = exchanges.pollFirst();
+                exchange.release();
+                if (exchange.closeAfter) {
+                    log.trace("close delimited response written, closing connection");
+                    close();
+                    return;
+                }
+            }
+        }
+        if (inputClosed && exchanges.isEmpty()) {
+            log.trace("all responses written, closing connection");
+            close();
+            return;
+        }
+        var head = exchanges.peekFirst();
+        var ops = 0;
+        // 等待流式body生成数据时不需要OP_WRITE，生成后由onStreamReady写出
+        if (head != null && head.response != null && !head.response.isWaiting()) {
+            ops |= SelectionKey.OP_WRITE;
+        }
+        if (!inputClosed && !eof && exchanges.size() < MAX_PIPELINED) {
+            ops |= SelectionKey.OP_READ;
+        } else if (!eof && isAwaiting() && (inputClosed || readBuf.buffer().hasRemaining())) {
+            // 等待controller时继续读取以发现对端关闭，如Connection: close的request
+            ops |= SelectionKey.OP_READ;
+        }
+        key.interestOps(ops);
+        // 继续解析暂停期间已读取的request
+        if (paused && exchanges.size() < MAX_PIPELINED) {
+            paused = false;
+            processInput();
+            return;
+        }
+        updateTimeout();
+    }
+
+    /**
+     * 开始生成流式body并写出已生成的数据，直到socket不可写
+     * @return 写出的字节数
+     */
+    private long writeStream(Exchange exchange, StreamingBody stream) throws IOException {
+        if (!stream.isStarted()) {
+            log.trace("start streaming body on {}", exchange.execution);
+            stream.start(loop.getServer().getStrategy(exchange.execution)::execute,
+                () -> loop.execute(this::onStreamReady));
+        }
+        var written = 0L;
+        ByteBuffer buf;
+        while ((buf = stream.peek()) != null) {
+            written += channel.write(buf);
+            if (buf.hasRemaining()) {
+                break;
+            }
+            stream.remove();
+        }
+        return written;
+    }
+
+    /**
+     * 流式body生成了新的数据、结束或失败
+     */
+    private void onStreamReady() {
+        if (closed) {
+            return;
+        }
+        try {
+            flush();
+        } catch (IOException e) {
+            log.debug("connection io error: {}", e.getMessage());
+            close();
+        }
+    }
+
+    /**
+     * 是否在等待controller的future或正在写出流式body
+     */
+    private boolean isAwaiting() {
+        for (var exchange : exchanges) {
+            if (exchange.pending != null || exchange.response != null && exchange.response.stream() != null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean http2Enabled() {
+        return loop.getServer().getConfig().isHttp2();
+    }
+
+    /**
+     * 将连接交给http/2处理，readBuf中未解析的字节属于http/2
+     */
+    private void switchToHttp2() throws IOException {
+        timeout.cancel();
+        parser.reset();
+        var buf = readBuf.buffer().flip();
+        var remaining = ByteBuffer.allocate(buf.remaining()).put(buf).flip();
+        readBuf.release();
+        closed = true;
+        http2 = new Http2Connection(loop, channel, key, remaining, upgrade);
+        upgrade = null;
+        http2.start();
+    }
+
+    /**
+     * 按连接当前的状态设置timeout，等待controller时不设置
+     */
+    private void updateTimeout() {
+        TimeoutEnum kind = null;
+        var head = exchanges.peekFirst();
+        if (head != null && head.response != null && !head.response.isWaiting()) {
+            kind = TimeoutEnum.WRITE;
+        } else if (!inputClosed && !eof && !paused) {
+            if (parser.isReadingBody()) {
+                kind = TimeoutEnum.BODY_READ;
+            } else if (parser.isStarted() || readBuf.buffer().position() > 0 || requests == 0) {
+                kind = TimeoutEnum.HEADER_READ;
+            } else if (exchanges.isEmpty()) {
+                kind = TimeoutEnum.KEEP_ALIVE;
+            }
+        }
+        var millis = kind != null ? loop.getServer().getConfig().getTimeout(kind) : 0;
+        if (millis == 0) {
+            timeout.cancel();
+            timeoutKind = null;
+        } else if (kind != timeoutKind || !timeout.isScheduled() || progress && kind.isIdle()) {
+            timeoutKind = kind;
+            loop.getTimer().schedule(timeout, TimeUnit.MILLISECONDS.toNanos(millis), System.nanoTime());
+        }
+        progress = false;
+    }
+
+    private void onTimeout() {
+        if (closed) {
+            return;
+        }
+        var kind = timeoutKind;
+        timeoutKind = null;
+        log.debug("connection timeout: {}, {} ms", kind, loop.getServer().getConfig().getTimeout(kind));
+        var started = parser.isStarted() || readBuf.buffer().position() > 0;
+        if (exchanges.isEmpty() && (kind == TimeoutEnum.BODY_READ || kind == TimeoutEnum.HEADER_READ && started)) {
+            reject(Response.with(StatusEnum.REQUEST_TIMEOUT_408, "request timeout"));
+            try {
+                flush();
+            } catch (IOException e) {
+                log.debug("connection io error: {}", e.getMessage());
+                close();
+            }
+        } else {
+            close();
+        }
+    }
+
+    /**
+     * 一个request与其response
+     */
+    private static class Exchange {
+        final VersionEnum version;
+        final boolean keepAlive;
+        // 协商的Content-Encoding，不压缩时为null
+        EncodingEnum accepted;
+        String path;
+        // route的执行策略，用于生成流式body
+        ExecutionEnum execution = ExecutionEnum.INLINE;
+        // http/1.0的流式body，写完后关闭连接
+        boolean closeAfter;
+        EncodedResponse response;
+        // 等待完成的controller future
+        CompletableFuture<?> pending;
+        // pending的route timeout
+        TimingWheel.Timeout deadline;
+
+        Exchange(VersionEnum version, boolean keepAlive) {
+            this.version = version;
+            this.keepAlive = keepAlive;
+        }
+
+        boolean isWritten() {
+            return response != null && response.isWritten();
+        }
+
+        /**
+         * pending已完成，取消route timeout
+         */
+        void settle() {
+            pending = null;
+            if (deadline != null) {
+                deadline.cancel();
+                deadline = null;
+            }
+        }
+
+        void release() {
+            if (pending != null) {
+                // 客户端已断开，通知controller放弃
+                pending.cancel(true);
+            }
+            settle();
+            if (response != null) {
+                response.release();
+                response = null;
+            }
+        }
+    }
+}
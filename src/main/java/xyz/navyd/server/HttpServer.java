@@ -0,0 +1,222 @@
+package xyz.navyd.server;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.channels.ServerSocketChannel;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.http.Compression;
+import xyz.navyd.http.ResponseWriter;
+import xyz.navyd.limit.AdaptiveLimiter;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 基于java.nio的多reactor http server。
+ *
+ * <p>一个acceptor线程接收连接，并分配给N个event loop线程处理读写。
+ * 开启{@link ServerConfig#reusePort(boolean)}时每个event loop以SO_REUSEPORT绑定同一个端口，
+ * 由内核在各个loop之间分配连接。
+ * 每个request解析后按Router.execution在event loop、worker线程池或virtual thread中
+ * 交给{@link ControllerContext}处理，再将response写回
+ */
+public class HttpServer implements Closeable {
+    private static final Logger log = LoggerFactory.getLogger(HttpServer.class);
+
+    private static final int INITIAL_LIMIT = 100;
+
+    private final ControllerContext context;
+    private final ServerConfig config;
+    private final BufferPool bufferPool;
+    private final ResponseWriter writer;
+    // 第一个为getPort使用的channel
+    private ServerSocketChannel[] serverChannels;
+    private EventLoop[] loops;
+    // 开启reusePort时为null
+    private Thread acceptorThread;
+    // 未开启adaptiveLimit时为null
+    private final AdaptiveLimiter limiter;
+    private final ExecutionStrategy[] strategies = new ExecutionStrategy[ExecutionEnum.values().length];
+
+    public HttpServer(ControllerContext context, ServerConfig config) {
+        this.context = context;
+        this.config = config;
+        this.bufferPool = new BufferPool(config.isLeakDetection());
+        var compression = config.isCompression() ? new Compression(config.getCompressionMinSize(),
+                config.getCompressionLevel(), config.getCompressibleTypes(), config.getCompressionCacheCapacity())
+                : null;
+        this.writer = new ResponseWriter(context.getObjectMapper(), bufferPool, compression);
+        this.limiter = config.isAdaptiveLimit() ? new AdaptiveLimiter(Math.min(INITIAL_LIMIT,
+                config.getMaxConcurrency()), 1, config.getMaxConcurrency()) : null;
+        if (config.getMetricsPath() != null) {
+            context.getMetrics().enable();
+        }
+    }
+
+    public synchronized void start() throws IOException {
+        if (serverChannels != null) {
+            throw new IllegalStateException("server already started");
+        }
+        log.debug("starting server with config: {}", config);
+        strategies[ExecutionEnum.INLINE.ordinal()] = ExecutionStrategy.inline();
+        strategies[ExecutionEnum.WORKER.ordinal()] = ExecutionStrategy.workerPool(config.getWorkerThreads(),
+                config.getWorkerQueueSize());
+        strategies[ExecutionEnum.VIRTUAL.ordinal()] = ExecutionStrategy.virtualThreads();
+        strategies[ExecutionEnum.DEFAULT.ordinal()] = strategies[config.getDefaultExecution().ordinal()];
+        loops = new EventLoop[config.getEventLoops()];
+        for (var i = 0; i < loops.length; i++) {
+            loops[i] = new EventLoop(this, i);
+            loops[i].start();
+        }
+        var first = ServerSocketChannel.open();
+        var reusePort = config.isReusePort();
+        if (reusePort && !first.supportedOptions().contains(StandardSocketOptions.SO_REUSEPORT)) {
+            log.warn("SO_REUSEPORT is not supported, fallback to single acceptor");
+            reusePort = false;
+        }
+        if (reusePort) {
+            serverChannels = new ServerSocketChannel[loops.length];
+            serverChannels[0] = first;
+            for (var i = 1; i < loops.length; i++) {
+                serverChannels[i] = ServerSocketChannel.open();
+            }
+            // 端口为0时其余channel绑定第一个channel分配的端口
+            var port = config.getPort();
+            for (var i = 0; i < serverChannels.length; i++) {
+                var channel = serverChannels[i];
+                channel.setOption(StandardSocketOptions.SO_REUSEPORT, true);
+                channel.bind(new InetSocketAddress(port), config.getBacklog());
+                channel.configureBlocking(false);
+                port = getPort();
+                loops[i].listen(channel);
+            }
+        } else {
+            serverChannels = new ServerSocketChannel[] { first };
+            first.bind(new InetSocketAddress(config.getPort()), config.getBacklog());
+            acceptorThread = new Thread(new Acceptor(first, loops), "http-acceptor");
+            acceptorThread.start();
+        }
+        log.info("server started on port: {}, event loops: {}, reuse port: {}", getPort(), loops.length,
+            reusePort);
+    }
+
+    /**
+     * 返回实际绑定的端口
+     * @return
+     */
+    public int getPort() {
+        try {
+            return ((InetSocketAddress) serverChannels[0].getLocalAddress()).getPort();
+        } catch (IOException e) {
+            throw new IllegalStateException("server not bound", e);
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (serverChannels == null) {
+            return;
+        }
+        log.debug("closing server");
+        for (var channel : serverChannels) {
+            channel.close();
+        }
+        for (var loop : loops) {
+            loop.shutdown();
+        }
+        try {
+            if (acceptorThread != null) {
+                acceptorThread.join();
+            }
+            for (var loop : loops) {
+                loop.awaitTermination();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (var strategy : strategies) {
+            strategy.shutdown();
+        }
+        log.info("server closed");
+    }
+
+    /**
+     * 连接读写使用的buffer pool，可用于查看命中统计
+     * @return
+     */
+    public BufferPool getBufferPool() {
+        return bufferPool;
+    }
+
+    /**
+     * 每个event loop已分配的连接数，用于查看连接是否均衡
+     * @return
+     */
+    public long[] getAcceptedCounts() {
+        var counts = new long[loops.length];
+        for (var i = 0; i < loops.length; i++) {
+            counts[i] = loops[i].getAccepted();
+        }
+        return counts;
+    }
+
+    /**
+     * 每个event loop当前打开的连接数
+     * @return
+     */
+    public int[] getConnectionCounts() {
+        var counts = new int[loops.length];
+        for (var i = 0; i < loops.length; i++) {
+            counts[i] = loops[i].getConnections();
+        }
+        return counts;
+    }
+
+    /**
+     * event loop的Prometheus text format统计，添加在metrics之后
+     * @return
+     */
+    String loopMetrics() {
+        var sb = new StringBuilder(256);
+        sb.append("# TYPE http_loop_accepted_total counter\n");
+        for (var i = 0; i < loops.length; i++) {
+            sb.append("http_loop_accepted_total{loop=\"").append(i).append("\"} ").append(loops[i].getAccepted())
+                .append('\n');
+        }
+        sb.append("# TYPE http_loop_connections gauge\n");
+        for (var i = 0; i < loops.length; i++) {
+            sb.append("http_loop_connections{loop=\"").append(i).append("\"} ").append(loops[i].getConnections())
+                .append('\n');
+        }
+        return sb.toString();
+    }
+
+    ControllerContext getContext() {
+        return context;
+    }
+
+    ServerConfig getConfig() {
+        return config;
+    }
+
+    ExecutionStrategy getStrategy(ExecutionEnum execution) {
+        return strategies[execution.ordinal()];
+    }
+
+    /**
+     * 全局并发限制
+     * @return 未开启时为null
+     */
+    AdaptiveLimiter getLimiter() {
+        return limiter;
+    }
+
+    ResponseWriter getWriter() {
+        return writer;
+    }
+}
@@ -0,0 +1,480 @@
+package xyz.navyd.server;
+
+import xyz.navyd.mvc.enums.ExecutionEnum;
+import xyz.navyd.server.enums.TimeoutEnum;
+
+/**
+ * HttpServer的配置，setter返回this以便链式调用
+ */
+public class ServerConfig {
+    private int port = 8080;
+    private int backlog = 1024;
+    private int eventLoops = Runtime.getRuntime().availableProcessors();
+    private int readBufferSize = 1024 * 10;
+    private boolean leakDetection = Boolean.getBoolean("xyz.navyd.buffer.leakDetection");
+    private ExecutionEnum defaultExecution = ExecutionEnum.WORKER;
+    private int workerThreads = Runtime.getRuntime().availableProcessors() * 2;
+    private int workerQueueSize = 1024;
+    private long maxBodySize = 1024 * 1024 * 16;
+    private int bodySpillThreshold = 1024 * 64;
+    private String metricsPath;
+    private boolean compression = true;
+    private int compressionMinSize = 1024;
+    private int compressionLevel = 6;
+    private String[] compressibleTypes = { "text/", "application/json", "application/javascript",
+        "application/xml", "image/svg+xml" };
+    private long compressionCacheCapacity = 1024 * 1024 * 16;
+    private boolean adaptiveLimit;
+    private int maxConcurrency = 1000;
+    private long requestDeadline;
+    private long headerReadTimeout = 30_000;
+    private long bodyReadTimeout = 30_000;
+    private long keepAliveTimeout = 60_000;
+    private long writeTimeout = 30_000;
+    private boolean reusePort;
+    private boolean http2;
+    private int http2MaxConcurrentStreams = 100;
+    private int http2InitialWindowSize = 65535;
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * 0表示由系统分配端口
+     * @param port
+     * @return
+     */
+    public ServerConfig port(int port) {
+        if (port < 0 || port > 0xffff)
+            throw new IllegalArgumentException("illegal port: " + port);
+        this.port = port;
+        return this;
+    }
+
+    public int getBacklog() {
+        return backlog;
+    }
+
+    public ServerConfig backlog(int backlog) {
+        if (backlog <= 0)
+            throw new IllegalArgumentException("illegal backlog: " + backlog);
+        this.backlog = backlog;
+        return this;
+    }
+
+    public int getEventLoops() {
+        return eventLoops;
+    }
+
+    /**
+     * event loop线程数，默认为cpu核数
+     * @param eventLoops
+     * @return
+     */
+    public ServerConfig eventLoops(int eventLoops) {
+        if (eventLoops <= 0)
+            throw new IllegalArgumentException("illegal eventLoops: " + eventLoops);
+        this.eventLoops = eventLoops;
+        return this;
+    }
+
+    public int getReadBufferSize() {
+        return readBufferSize;
+    }
+
+    /**
+     * 每个连接读取request的buf大小，即request line与headers的大小限制
+     * @param readBufferSize
+     * @return
+     */
+    public ServerConfig readBufferSize(int readBufferSize) {
+        if (readBufferSize <= 0)
+            throw new IllegalArgumentException("illegal readBufferSize: " + readBufferSize);
+        this.readBufferSize = readBufferSize;
+        return this;
+    }
+
+    public boolean isLeakDetection() {
+        return leakDetection;
+    }
+
+    /**
+     * 开启pooled buffer的泄漏检测，用于debug
+     * @param leakDetection
+     * @return
+     */
+    public ServerConfig leakDetection(boolean leakDetection) {
+        this.leakDetection = leakDetection;
+        return this;
+    }
+
+    public ExecutionEnum getDefaultExecution() {
+        return defaultExecution;
+    }
+
+    /**
+     * 未在Router上指定execution时的执行方式，默认为worker线程池
+     * @param defaultExecution
+     * @return
+     */
+    public ServerConfig defaultExecution(ExecutionEnum defaultExecution) {
+        if (defaultExecution == null || defaultExecution == ExecutionEnum.DEFAULT)
+            throw new IllegalArgumentException("illegal defaultExecution: " + defaultExecution);
+        this.defaultExecution = defaultExecution;
+        return this;
+    }
+
+    public int getWorkerThreads() {
+        return workerThreads;
+    }
+
+    public ServerConfig workerThreads(int workerThreads) {
+        if (workerThreads <= 0)
+            throw new IllegalArgumentException("illegal workerThreads: " + workerThreads);
+        this.workerThreads = workerThreads;
+        return this;
+    }
+
+    public int getWorkerQueueSize() {
+        return workerQueueSize;
+    }
+
+    /**
+     * worker线程池的队列大小，队列满时返回503
+     * @param workerQueueSize
+     * @return
+     */
+    public ServerConfig workerQueueSize(int workerQueueSize) {
+        if (workerQueueSize <= 0)
+            throw new IllegalArgumentException("illegal workerQueueSize: " + workerQueueSize);
+        this.workerQueueSize = workerQueueSize;
+        return this;
+    }
+
+    public long getMaxBodySize() {
+        return maxBodySize;
+    }
+
+    /**
+     * request body的大小限制，超过时返回413
+     * @param maxBodySize
+     * @return
+     */
+    public ServerConfig maxBodySize(long maxBodySize) {
+        if (maxBodySize < 0)
+            throw new IllegalArgumentException("illegal maxBodySize: " + maxBodySize);
+        this.maxBodySize = maxBodySize;
+        return this;
+    }
+
+    public int getBodySpillThreshold() {
+        return bodySpillThreshold;
+    }
+
+    /**
+     * request body超过该大小时写入临时文件而不是保存在内存中
+     * @param bodySpillThreshold
+     * @return
+     */
+    public ServerConfig bodySpillThreshold(int bodySpillThreshold) {
+        if (bodySpillThreshold <= 0)
+            throw new IllegalArgumentException("illegal bodySpillThreshold: " + bodySpillThreshold);
+        this.bodySpillThreshold = bodySpillThreshold;
+        return this;
+    }
+
+    public String getMetricsPath() {
+        return metricsPath;
+    }
+
+    /**
+     * 开启metrics并在该path上以Prometheus text format输出，默认为null不开启
+     * @param metricsPath
+     * @return
+     */
+    public ServerConfig metricsPath(String metricsPath) {
+        if (metricsPath != null && !metricsPath.startsWith("/"))
+            throw new IllegalArgumentException("illegal metricsPath: " + metricsPath);
+        this.metricsPath = metricsPath;
+        return this;
+    }
+
+    public boolean isCompression() {
+        return compression;
+    }
+
+    /**
+     * 按Accept-Encoding使用gzip或deflate压缩response，默认开启
+     * @param compression
+     * @return
+     */
+    public ServerConfig compression(boolean compression) {
+        this.compression = compression;
+        return this;
+    }
+
+    public int getCompressionMinSize() {
+        return compressionMinSize;
+    }
+
+    /**
+     * 小于该字节数的body不压缩
+     * @param compressionMinSize
+     * @return
+     */
+    public ServerConfig compressionMinSize(int compressionMinSize) {
+        if (compressionMinSize < 0)
+            throw new IllegalArgumentException("illegal compressionMinSize: " + compressionMinSize);
+        this.compressionMinSize = compressionMinSize;
+        return this;
+    }
+
+    public int getCompressionLevel() {
+        return compressionLevel;
+    }
+
+    public ServerConfig compressionLevel(int compressionLevel) {
+        if (compressionLevel < 0 || compressionLevel > 9)
+            throw new IllegalArgumentException("illegal compressionLevel: " + compressionLevel);
+        this.compressionLevel = compressionLevel;
+        return this;
+    }
+
+    public String[] getCompressibleTypes() {
+        return compressibleTypes;
+    }
+
+    /**
+     * 可压缩的Content-Type前缀，其它类型不压缩
+     * @param compressibleTypes
+     * @return
+     */
+    public ServerConfig compressibleTypes(String... compressibleTypes) {
+        if (compressibleTypes == null)
+            throw new IllegalArgumentException("illegal compressibleTypes: null");
+        this.compressibleTypes = compressibleTypes.clone();
+        return this;
+    }
+
+    public long getCompressionCacheCapacity() {
+        return compressionCacheCapacity;
+    }
+
+    /**
+     * 缓存带ETag的body压缩结果的最大总字节数
+     * @param compressionCacheCapacity
+     * @return
+     */
+    public ServerConfig compressionCacheCapacity(long compressionCacheCapacity) {
+        if (compressionCacheCapacity < 0)
+            throw new IllegalArgumentException("illegal compressionCacheCapacity: " + compressionCacheCapacity);
+        this.compressionCacheCapacity = compressionCacheCapacity;
+        return this;
+    }
+
+    public boolean isAdaptiveLimit() {
+        return adaptiveLimit;
+    }
+
+    /**
+     * 按耗时自动调整全局与每个route的并发限制，超过时直接返回503，默认不开启
+     * @param adaptiveLimit
+     * @return
+     */
+    public ServerConfig adaptiveLimit(boolean adaptiveLimit) {
+        this.adaptiveLimit = adaptiveLimit;
+        return this;
+    }
+
+    public int getMaxConcurrency() {
+        return maxConcurrency;
+    }
+
+    /**
+     * 开启adaptiveLimit时全局并发限制的上限
+     * @param maxConcurrency
+     * @return
+     */
+    public ServerConfig maxConcurrency(int maxConcurrency) {
+        if (maxConcurrency <= 0)
+            throw new IllegalArgumentException("illegal maxConcurrency: " + maxConcurrency);
+        this.maxConcurrency = maxConcurrency;
+        return this;
+    }
+
+    public long getRequestDeadline() {
+        return requestDeadline;
+    }
+
+    /**
+     * request在队列中等待超过该毫秒数时不再调用controller，直接返回503。默认为0不限制
+     * @param requestDeadline
+     * @return
+     */
+    public ServerConfig requestDeadline(long requestDeadline) {
+        if (requestDeadline < 0)
+            throw new IllegalArgumentException("illegal requestDeadline: " + requestDeadline);
+        this.requestDeadline = requestDeadline;
+        return this;
+    }
+
+    public long getHeaderReadTimeout() {
+        return headerReadTimeout;
+    }
+
+    /**
+     * 从连接建立或request开始到headers接收完成的毫秒数，超过时返回408并关闭连接。0表示不限制
+     * @param headerReadTimeout
+     * @return
+     */
+    public ServerConfig headerReadTimeout(long headerReadTimeout) {
+        if (headerReadTimeout < 0)
+            throw new IllegalArgumentException("illegal headerReadTimeout: " + headerReadTimeout);
+        this.headerReadTimeout = headerReadTimeout;
+        return this;
+    }
+
+    public long getBodyReadTimeout() {
+        return bodyReadTimeout;
+    }
+
+    /**
+     * 读取body时两次读到数据的最大毫秒数，超过时返回408并关闭连接。0表示不限制
+     * @param bodyReadTimeout
+     * @return
+     */
+    public ServerConfig bodyReadTimeout(long bodyReadTimeout) {
+        if (bodyReadTimeout < 0)
+            throw new IllegalArgumentException("illegal bodyReadTimeout: " + bodyReadTimeout);
+        this.bodyReadTimeout = bodyReadTimeout;
+        return this;
+    }
+
+    public long getKeepAliveTimeout() {
+        return keepAliveTimeout;
+    }
+
+    /**
+     * 持久连接空闲的最大毫秒数，超过时关闭。0表示不限制
+     * @param keepAliveTimeout
+     * @return
+     */
+    public ServerConfig keepAliveTimeout(long keepAliveTimeout) {
+        if (keepAliveTimeout < 0)
+            throw new IllegalArgumentException("illegal keepAliveTimeout: " + keepAliveTimeout);
+        this.keepAliveTimeout = keepAliveTimeout;
+        return this;
+    }
+
+    public long getWriteTimeout() {
+        return writeTimeout;
+    }
+
+    /**
+     * 写出response时两次写出数据的最大毫秒数，客户端不读取时关闭连接。0表示不限制
+     * @param writeTimeout
+     * @return
+     */
+    public ServerConfig writeTimeout(long writeTimeout) {
+        if (writeTimeout < 0)
+            throw new IllegalArgumentException("illegal writeTimeout: " + writeTimeout);
+        this.writeTimeout = writeTimeout;
+        return this;
+    }
+
+    public boolean isReusePort() {
+        return reusePort;
+    }
+
+    /**
+     * 每个event loop以SO_REUSEPORT绑定同一个端口并各自accept，由内核分配连接，默认不开启。
+     * 系统不支持时仍使用一个acceptor线程
+     * @param reusePort
+     * @return
+     */
+    public ServerConfig reusePort(boolean reusePort) {
+        this.reusePort = reusePort;
+        return this;
+    }
+
+    public boolean isHttp2() {
+        return http2;
+    }
+
+    /**
+     * 支持prior knowledge与Upgrade: h2c的http/2 cleartext连接，默认不开启
+     * @param http2
+     * @return
+     */
+    public ServerConfig http2(boolean http2) {
+        this.http2 = http2;
+        return this;
+    }
+
+    public int getHttp2MaxConcurrentStreams() {
+        return http2MaxConcurrentStreams;
+    }
+
+    /**
+     * 一个http/2连接上同时处理的最大stream数，超过时以REFUSED_STREAM拒绝
+     * @param http2MaxConcurrentStreams
+     * @return
+     */
+    public ServerConfig http2MaxConcurrentStreams(int http2MaxConcurrentStreams) {
+        if (http2MaxConcurrentStreams <= 0)
+            throw new IllegalArgumentException("illegal http2MaxConcurrentStreams: " + http2MaxConcurrentStreams);
+        this.http2MaxConcurrentStreams = http2MaxConcurrentStreams;
+        return this;
+    }
+
+    public int getHttp2InitialWindowSize() {
+        return http2InitialWindowSize;
+    }
+
+    /**
+     * 每个stream接收request body的flow control window
+     * @param http2InitialWindowSize
+     * @return
+     */
+    public ServerConfig http2InitialWindowSize(int http2InitialWindowSize) {
+        if (http2InitialWindowSize <= 0)
+            throw new IllegalArgumentException("illegal http2InitialWindowSize: " + http2InitialWindowSize);
+        this.http2InitialWindowSize = http2InitialWindowSize;
+        return this;
+    }
+
+    /**
+     * @param timeout
+     * @return timeout对应的毫秒数
+     */
+    long getTimeout(TimeoutEnum timeout) {
+        switch (timeout) {
+            case HEADER_READ:
+                return headerReadTimeout;
+            case BODY_READ:
+                return bodyReadTimeout;
+            case KEEP_ALIVE:
+                return keepAliveTimeout;
+            case WRITE:
+                return writeTimeout;
+            default:
+                throw new IllegalArgumentException("unknown timeout: " + timeout);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "ServerConfig [backlog=" + backlog + ", bodySpillThreshold=" + bodySpillThreshold
+                + ", defaultExecution=" + defaultExecution + ", eventLoops=" + eventLoops + ", leakDetection="
+                + leakDetection + ", compression=" + compression + ", compressionMinSize=" + compressionMinSize
+                + ", compressionLevel=" + compressionLevel + ", adaptiveLimit=" + adaptiveLimit
+                + ", maxConcurrency=" + maxConcurrency + ", requestDeadline=" + requestDeadline
+                + ", headerReadTimeout=" + headerReadTimeout + ", bodyReadTimeout=" + bodyReadTimeout
+                + ", keepAliveTimeout=" + keepAliveTimeout + ", writeTimeout=" + writeTimeout + ", reusePort=" + reusePort
+                + ", http2=" + http2 + ", http2MaxConcurrentStreams=" + http2MaxConcurrentStreams
+                + ", http2InitialWindowSize=" + http2InitialWindowSize + ", maxBodySize=" + maxBodySize + ", metricsPath=" + metricsPath
+                + ", port=" + port + ", readBufferSize="
+                + readBufferSize + ", workerQueueSize=" + workerQueueSize + ", workerThreads=" + workerThreads + "]";
+    }
+}
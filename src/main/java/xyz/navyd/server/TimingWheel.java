@@ -0,0 +1,154 @@
+package xyz.navyd.server;
+
+import java.util.ArrayDeque;
+
+/**
+ * 单线程的hashed timing wheel，由event loop持有，只在loop线程中访问。
+ *
+ * <p>每个slot是一个{@link Timeout}的双向链表，schedule与cancel都是O(1)，
+ * 超过一圈的timeout记录剩余的圈数。timeout在到期后的一个tick内执行。
+ * 每个连接只持有一个Timeout，重新schedule时不分配对象
+ */
+class TimingWheel {
+    private final long tickNanos;
+    private final Timeout[] slots;
+    private final int mask;
+    private final long startTime;
+    // 下一个要处理的tick
+    private long tick;
+    private int size;
+    private final ArrayDeque<Timeout> expired = new ArrayDeque<>();
+
+    /**
+     * @param tickNanos
+     * @param wheelSize 向上取整为2的幂
+     * @param now
+     */
+    TimingWheel(long tickNanos, int wheelSize, long now) {
+        if (tickNanos <= 0 || wheelSize <= 0)
+            throw new IllegalArgumentException("illegal tick: " + tickNanos + ", wheel size: " + wheelSize);
+        var n = Integer.highestOneBit(wheelSize);
+        if (n < wheelSize) {
+            n <<= 1;
+        }
+        this.tickNanos = tickNanos;
+        this.slots = new Timeout[n];
+        this.mask = n - 1;
+        this.startTime = now;
+    }
+
+    /**
+     * 在delayNanos后执行timeout，已schedule的timeout先取消
+     * @param timeout
+     * @param delayNanos
+     * @param now
+     */
+    void schedule(Timeout timeout, long delayNanos, long now) {
+        timeout.cancel();
+        var deadline = now - startTime + delayNanos;
+        var ticks = Math.max(tick, (deadline + tickNanos - 1) / tickNanos);
+        timeout.rounds = (ticks - tick) / slots.length;
+        var slot = (int) (ticks & mask);
+        var head = slots[slot];
+        timeout.next = head;
+        if (head != null) {
+            head.prev = timeout;
+        }
+        slots[slot] = timeout;
+        timeout.slot = slot;
+        timeout.wheel = this;
+        size++;
+    }
+
+    /**
+     * 执行到now为止所有到期的timeout
+     * @param now
+     * @return 执行的timeout数量
+     */
+    int advance(long now) {
+        var target = (now - startTime) / tickNanos;
+        if (size == 0) {
+            // 空闲时不需要逐个tick处理
+            tick = Math.max(tick, target + 1);
+            return 0;
+        }
+        for (; tick <= target && size > 0; tick++) {
+            var timeout = slots[(int) (tick & mask)];
+            while (timeout != null) {
+                var next = timeout.next;
+                if (timeout.rounds > 0) {
+                    timeout.rounds--;
+                } else {
+                    remove(timeout);
+                    expired.add(timeout);
+                }
+                timeout = next;
+            }
+        }
+        tick = Math.max(tick, target + 1);
+        var n = expired.size();
+        Timeout timeout;
+        while ((timeout = expired.poll()) != null) {
+            timeout.task.run();
+        }
+        return n;
+    }
+
+    /**
+     * 到下一个tick的毫秒数，用于selector的超时
+     * @param now
+     * @return 没有timeout时为0，表示不需要超时
+     */
+    long nextDelayMillis(long now) {
+        if (size == 0) {
+            return 0;
+        }
+        var delay = startTime + tick * tickNanos - now;
+        return Math.max(1, (delay + 999_999) / 1_000_000);
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void remove(Timeout timeout) {
+        if (timeout.prev != null) {
+            timeout.prev.next = timeout.next;
+        } else {
+            slots[timeout.slot] = timeout.next;
+        }
+        if (timeout.next != null) {
+            timeout.next.prev = timeout.prev;
+        }
+        timeout.prev = null;
+        timeout.next = null;
+        timeout.wheel = null;
+        size--;
+    }
+
+    /**
+     * wheel中的一个节点，可以反复schedule
+     */
+    static final class Timeout {
+        private final Runnable task;
+        private TimingWheel wheel;
+        private Timeout prev;
+        private Timeout next;
+        private int slot;
+        private long rounds;
+
+        Timeout(Runnable task) {
+            this.task = task;
+        }
+
+        boolean isScheduled() {
+            return wheel != null;
+        }
+
+        void cancel() {
+            if (wheel != null) {
+                wheel.remove(this);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+package xyz.navyd.server.enums;
+
+/**
+ * 连接在不同状态下的timeout
+ */
+public enum TimeoutEnum {
+    /**
+     * 从连接建立或读到request的第一个字节起，到headers解析完成的期限，读到数据时不重新计时
+     */
+    HEADER_READ(false),
+    /**
+     * 读取body时两次读到数据的最大间隔
+     */
+    BODY_READ(true),
+    /**
+     * 写完所有response后等待下一个request的最长时间
+     */
+    KEEP_ALIVE(false),
+    /**
+     * 写出response时两次写出数据的最大间隔
+     */
+    WRITE(true),
+    ;
+
+    private final boolean idle;
+
+    TimeoutEnum(boolean idle) {
+        this.idle = idle;
+    }
+
+    /**
+     * 有读写进展时是否重新计时
+     * @return
+     */
+    public boolean isIdle() {
+        return idle;
+    }
+}
@@ -0,0 +1,82 @@
+package xyz.navyd.buffer;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class BufferPoolTest {
+
+    @Test
+    void acquireWithSizeClass() {
+        var pool = new BufferPool(false);
+        var buf = pool.acquire(10 * 1024);
+        assertThat(buf.buffer().isDirect()).isTrue();
+        assertThat(buf.buffer().position()).isEqualTo(0);
+        assertThat(buf.buffer().limit()).isEqualTo(10 * 1024);
+        assertThat(buf.buffer().capacity()).isEqualTo(16 * 1024);
+        buf.release();
+        assertThat(buf.isReleased()).isTrue();
+    }
+
+    @Test
+    void reuseReleasedBuffer() {
+        var pool = new BufferPool(false);
+        var first = pool.acquire(100);
+        var underlying = first.buffer();
+        first.release();
+        var second = pool.acquire(200);
+        assertThat(second.buffer()).isSameAs(underlying);
+        assertThat(second.buffer().limit()).isEqualTo(200);
+        second.release();
+
+        var stats = pool.getStats();
+        assertThat(stats.getAcquires()).isEqualTo(2);
+        assertThat(stats.getMisses()).isEqualTo(1);
+        assertThat(stats.getLocalHits()).isEqualTo(1);
+        assertThat(stats.getReleases()).isEqualTo(2);
+        assertThat(stats.getHitRate()).isEqualTo(0.5);
+    }
+
+    @Test
+    void sharedSlabAcrossThreads() throws InterruptedException {
+        var pool = new BufferPool(true);
+        pool.acquire(4096).release();
+        var t = new Thread(() -> pool.acquire(4096).release());
+        t.start();
+        t.join();
+        // 第一次分配的slab中其余的buffer在共享队列中
+        assertThat(pool.getStats().getSharedHits()).isEqualTo(1);
+        assertThat(pool.getStats().getMisses()).isEqualTo(1);
+    }
+
+    @Test
+    void virtualThreadReleasesToSharedQueue() throws InterruptedException {
+        var pool = new BufferPool(false);
+        // 一个slab有256个4K buffer，release到virtual thread的本地缓存时会被耗尽
+        for (var i = 0; i < 1000; i++) {
+            Thread.ofVirtual().start(() -> pool.acquire(4096).release()).join();
+        }
+        assertThat(pool.getStats().getMisses()).isEqualTo(1);
+        assertThat(pool.getStats().getLocalHits()).isZero();
+        assertThat(pool.getStats().getSharedHits()).isEqualTo(999);
+    }
+
+    @Test
+    void unpooledLargeBuffer() {
+        var pool = new BufferPool(false);
+        var buf = pool.acquire(BufferPool.maxPooledSize() + 1);
+        assertThat(buf.buffer().capacity()).isEqualTo(BufferPool.maxPooledSize() + 1);
+        buf.release();
+        assertThat(pool.getStats().getUnpooled()).isEqualTo(1);
+    }
+
+    @Test
+    void releaseTwiceError() {
+        var pool = new BufferPool(true);
+        var buf = pool.acquire(1);
+        buf.release();
+        assertThrows(IllegalStateException.class, buf::release);
+        assertThrows(IllegalStateException.class, buf::buffer);
+    }
+}
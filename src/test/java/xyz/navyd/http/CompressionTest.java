@@ -0,0 +1,152 @@
+package xyz.navyd.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.InflaterInputStream;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.http.enums.EncodingEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+
+public class CompressionTest {
+    static final String[] TYPES = { "text/", "application/json" };
+
+    BufferPool pool = new BufferPool(true);
+    Compression compression = new Compression(16, 6, TYPES, 1024 * 1024);
+    ResponseWriter writer = new ResponseWriter(new ObjectMapper(), pool, compression);
+
+    @Test
+    void negotiate() {
+        assertThat(Compression.negotiate(null)).isEqualTo(EncodingEnum.IDENTITY);
+        assertThat(Compression.negotiate("gzip, deflate, br")).isEqualTo(EncodingEnum.GZIP);
+        assertThat(Compression.negotiate("gzip;q=0.5, deflate")).isEqualTo(EncodingEnum.DEFLATE);
+        assertThat(Compression.negotiate("gzip;q=0, *")).isEqualTo(EncodingEnum.DEFLATE);
+        assertThat(Compression.negotiate("br, identity")).isEqualTo(EncodingEnum.IDENTITY);
+        assertThat(Compression.negotiate("*;q=0")).isEqualTo(EncodingEnum.IDENTITY);
+    }
+
+    @Test
+    void gzipAndDeflateRoundTrip() throws Exception {
+        var text = "hello compression ".repeat(1000).getBytes(StandardCharsets.UTF_8);
+        var half = text.length / 2;
+        var inputs = new ByteBuffer[] { ByteBuffer.wrap(text, 0, half), ByteBuffer.wrap(text, half, text.length - half) };
+
+        var gzip = new ByteArrayOutputStream();
+        compression.compress(inputs, EncodingEnum.GZIP, gzip);
+        assertThat(gzip.size()).isLessThan(text.length / 10);
+        assertThat(new GZIPInputStream(new ByteArrayInputStream(gzip.toByteArray())).readAllBytes()).isEqualTo(text);
+
+        var deflate = new ByteArrayOutputStream();
+        compression.compress(inputs, EncodingEnum.DEFLATE, deflate);
+        assertThat(new InflaterInputStream(new ByteArrayInputStream(deflate.toByteArray())).readAllBytes())
+            .isEqualTo(text);
+        // 不改变输入
+        assertThat(inputs[0].remaining()).isEqualTo(half);
+    }
+
+    @Test
+    void variantCompressedOnce() {
+        var body = ByteBuffer.wrap("x".repeat(4096).getBytes(StandardCharsets.UTF_8));
+        var first = compression.variant("/a \"1\"", body, EncodingEnum.GZIP);
+        var cached = compression.cachedBytes();
+        var second = compression.variant("/a \"1\"", body, EncodingEnum.GZIP);
+        assertThat(second).isEqualTo(first);
+        assertThat(compression.cachedBytes()).isEqualTo(cached).isEqualTo(first.remaining());
+        compression.variant("/a \"1\"", body, EncodingEnum.DEFLATE);
+        assertThat(compression.cachedBytes()).isGreaterThan(cached);
+    }
+
+    @Test
+    void writeCompressedJson() throws Exception {
+        var list = new ArrayList<String>();
+        for (var i = 0; i < 10000; i++) {
+            list.add("item_" + i);
+        }
+        var expected = new ObjectMapper().writeValueAsBytes(list);
+        var encoded = writer.write(Response.withOk(list), VersionEnum.HTTP1_1, EncodingEnum.GZIP, "/items");
+        var bytes = toBytes(encoded);
+        encoded.release();
+        var s = new String(bytes, StandardCharsets.ISO_8859_1);
+        var headEnd = s.indexOf("\r\n\r\n") + 4;
+        assertThat(s.substring(0, headEnd))
+            .contains("Content-Encoding: gzip\r\n")
+            .contains("Vary: Accept-Encoding\r\n")
+            .contains("Content-Length: " + (bytes.length - headEnd) + "\r\n");
+        var body = new GZIPInputStream(new ByteArrayInputStream(bytes, headEnd, bytes.length - headEnd)).readAllBytes();
+        assertThat(body).isEqualTo(expected);
+        assertThat(pool.getStats().getReleases()).isEqualTo(pool.getStats().getAcquires());
+    }
+
+    @Test
+    void varyWithoutCompression() throws Exception {
+        var text = "y".repeat(100);
+        var encoded = writer.write(Response.withOk(text), VersionEnum.HTTP1_1, EncodingEnum.IDENTITY, "/");
+        var s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).contains("Vary: Accept-Encoding\r\n").doesNotContain("Content-Encoding").endsWith(text);
+
+        // 太小或不可压缩的类型不添加Vary
+        encoded = writer.write(Response.withOk("small"), VersionEnum.HTTP1_1, EncodingEnum.GZIP, "/");
+        s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).doesNotContain("Vary").endsWith("small");
+        encoded = writer.write(Response.withOk(new byte[100]), VersionEnum.HTTP1_1, EncodingEnum.GZIP, "/");
+        s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).doesNotContain("Vary").doesNotContain("Content-Encoding");
+    }
+
+    @Test
+    void etagBodyUsesWeakEtag() throws Exception {
+        var body = ByteBuffer.wrap("z".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        var response = Response.withOk(body).addHeader("Content-Type", "text/plain").addHeader("ETag", "\"abc\"")
+            .addHeader("Accept-Ranges", "bytes");
+        var encoded = writer.write(response, VersionEnum.HTTP1_1, EncodingEnum.DEFLATE, "/z.txt");
+        var s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).contains("ETag: W/\"abc\"\r\n").contains("Content-Encoding: deflate\r\n")
+            .doesNotContain("Accept-Ranges");
+        assertThat(compression.cachedBytes()).isGreaterThan(0);
+    }
+
+    @Test
+    void notModifiedRepeatsEtagAndVary() throws Exception {
+        var body = ByteBuffer.wrap("z".repeat(1000).getBytes(StandardCharsets.UTF_8));
+        var response = Response.with(StatusEnum.NOT_MODIFIED_304, body).addHeader("Content-Type", "text/plain")
+            .addHeader("ETag", "\"abc\"");
+        var encoded = writer.write(response, VersionEnum.HTTP1_1, EncodingEnum.GZIP, "/z.txt");
+        var s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).startsWith("HTTP/1.1 304 NOT MODIFIED\r\n").contains("ETag: W/\"abc\"\r\n")
+            .contains("Vary: Accept-Encoding\r\n").doesNotContain("Content-Type").doesNotContain("Content-Encoding")
+            .doesNotContain("Content-Length").endsWith("\r\n\r\n");
+
+        response = Response.with(StatusEnum.NOT_MODIFIED_304, body).addHeader("Content-Type", "text/plain")
+            .addHeader("ETag", "\"abc\"");
+        encoded = writer.write(response, VersionEnum.HTTP1_1, EncodingEnum.IDENTITY, "/z.txt");
+        s = new String(toBytes(encoded), StandardCharsets.ISO_8859_1);
+        encoded.release();
+        assertThat(s).contains("ETag: \"abc\"\r\n").contains("Vary: Accept-Encoding\r\n");
+    }
+
+    private static byte[] toBytes(EncodedResponse encoded) {
+        var out = new ByteArrayOutputStream();
+        for (var buf : encoded.buffers()) {
+            var b = new byte[buf.remaining()];
+            buf.duplicate().get(b);
+            out.writeBytes(b);
+        }
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package xyz.navyd.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+public class HttpHeadersTest {
+    HttpHeaders headers = new HttpHeaders();
+
+    @Test
+    void lookupCaseInsensitive() {
+        add("content-length:  12 ");
+        add("X-Request-Id:abc");
+        add("HOST: example.com");
+        assertThat(headers.size()).isEqualTo(3);
+        assertThat(headers.get("Content-Length")).isEqualTo("12");
+        assertThat(headers.get(HttpHeaders.CONTENT_LENGTH)).isEqualTo("12");
+        assertThat(headers.get("x-request-id")).isEqualTo("abc");
+        assertThat(headers.get(HttpHeaders.HOST)).isEqualTo("example.com");
+        assertThat(headers.get("Connection")).isNull();
+        assertThat(headers.get("X-Missing")).isNull();
+        assertThat(headers.toMap()).containsEntry("Host", "example.com").hasSize(3);
+    }
+
+    @Test
+    void firstDuplicateWins() {
+        add("Cookie: a=1");
+        add("cookie: b=2");
+        assertThat(headers.get(HttpHeaders.COOKIE)).isEqualTo("a=1");
+        assertThat(headers.get("COOKIE")).isEqualTo("a=1");
+        assertThat(headers.count(HttpHeaders.COOKIE)).isEqualTo(2);
+        assertThat(headers.getAll(HttpHeaders.COOKIE)).containsExactly("a=1", "b=2");
+        assertThat(headers.getAll(HttpHeaders.HOST)).isEmpty();
+    }
+
+    @Test
+    void growBeyondInitialCapacity() {
+        var value = "v".repeat(1000);
+        for (var i = 0; i < 40; i++) {
+            add("X-Header-" + i + ": " + value + i);
+        }
+        headers.add("Connection", "close");
+        assertThat(headers.size()).isEqualTo(41);
+        assertThat(headers.get("x-header-39")).isEqualTo(value + 39);
+        assertThat(headers.get(HttpHeaders.CONNECTION)).isEqualTo("close");
+    }
+
+    @Test
+    void illegalHeader() {
+        assertThrows(IllegalArgumentException.class, () -> add("no colon"));
+        assertThrows(IllegalArgumentException.class, () -> add(": empty name"));
+        assertThrows(IllegalArgumentException.class, () -> add("Host : space before colon"));
+    }
+
+    private void add(String line) {
+        var buf = ByteBuffer.wrap(line.getBytes(StandardCharsets.ISO_8859_1));
+        headers.add(buf, buf.remaining());
+        assertThat(buf.position()).isZero();
+    }
+}
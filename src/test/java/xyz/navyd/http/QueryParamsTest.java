@@ -0,0 +1,38 @@
+package xyz.navyd.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import org.junit.jupiter.api.Test;
+
+public class QueryParamsTest {
+    @Test
+    void multiValuedAndValueless() {
+        var params = new QueryParams("q=test&tag=a&flag&tag=b&&empty=&=ignored");
+        assertThat(params.size()).isEqualTo(5);
+        assertThat(params.get("q")).contains("test");
+        assertThat(params.get("tag")).contains("a");
+        assertThat(params.getAll("tag")).containsExactly("a", "b");
+        assertThat(params.get("flag")).contains("");
+        assertThat(params.contains("flag")).isTrue();
+        assertThat(params.get("empty")).contains("");
+        assertThat(params.get("missing")).isEmpty();
+        assertThat(params.getAll("missing")).isEmpty();
+        assertThat(params.names()).containsExactly("q", "tag", "flag", "empty");
+    }
+
+    @Test
+    void percentDecoding() {
+        var params = new QueryParams("city=S%C3%A3o+Paulo&a%20b=x%3Dy&raw=1%2B1");
+        assertThat(params.get("city")).contains("São Paulo");
+        assertThat(params.get("a b")).contains("x=y");
+        assertThat(params.get("raw")).contains("1+1");
+    }
+
+    @Test
+    void illegalPercentEncoding() {
+        var params = new QueryParams("a=%zz&b=%4");
+        assertThrows(IllegalArgumentException.class, () -> params.get("a"));
+        assertThrows(IllegalArgumentException.class, () -> params.get("b"));
+    }
+}
@@ -1,14 +1,21 @@
 package xyz.navyd.http;
 
 import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
 
 import java.io.IOException;
+import java.net.HttpCookie;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
 
 import org.junit.jupiter.api.Test;
 
+import xyz.navyd.buffer.BufferPool;
 import xyz.navyd.http.enums.MethodEnum;
 import xyz.navyd.http.enums.VersionEnum;
 
@@ -43,4 +50,216 @@ public class RequestParserTest {
                 && r.getHeader("Connection").get().equals("keep-alive")
             );
     }
-}
\ No newline at end of file
+
+    @Test
+    void parseSplitAcrossReads() throws IOException {
+        var bytes = Files.readAllBytes(Path.of(getClass().getResource("/get_request.txt").getPath()));
+        var parser = new RequestParser();
+        var buf = ByteBuffer.allocate(parser.getBufSize());
+        var done = false;
+        // 每次只到达7个字节
+        for (var i = 0; i < bytes.length; i += 7) {
+            assertThat(done).isFalse();
+            buf.put(bytes, i, Math.min(7, bytes.length - i)).flip();
+            done = parser.parse(buf);
+            buf.compact();
+        }
+        assertThat(done).isTrue();
+        var r = parser.getRequest();
+        assertThat(r.getPath()).isEqualTo("/search");
+        assertThat(r.getHeaders()).hasSize(12);
+        assertThat(r.getHeader("Connection")).contains("keep-alive");
+    }
+
+    @Test
+    void parseBodyWithContentLength() {
+        var parser = new RequestParser();
+        var buf = ByteBuffer.wrap("POST /users HTTP/1.1\r\nContent-Length: 10\r\n\r\n{\"uid\"".getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(parser.parse(buf)).isFalse();
+        assertThat(parser.getRequest()).isNull();
+        buf = ByteBuffer.wrap(":10}GET / HTTP/1.1\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertThat(parser.parse(buf)).isTrue();
+        var body = parser.getRequest().getBody();
+        assertThat(StandardCharsets.UTF_8.decode(body).toString()).isEqualTo("{\"uid\":10}");
+        // 剩余的字节属于下一个request
+        assertThat(buf.remaining()).isEqualTo("GET / HTTP/1.1\r\n".length());
+    }
+
+    @Test
+    void parseHeadTooLarge() {
+        var parser = new RequestParser(16);
+        var buf = ByteBuffer.wrap("GET /a_very_long_path HTTP/1.1".getBytes(StandardCharsets.ISO_8859_1));
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(buf));
+    }
+
+    @Test
+    void parseChunkedBodySplitAcrossReads() throws IOException {
+        var bytes = ("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n"
+            + "5\r\nhello\r\n7;ext=1\r\n, world\r\n0\r\nX-Trailer: 1\r\n\r\n"
+            + "GET / HTTP/1.1\r\n").getBytes(StandardCharsets.ISO_8859_1);
+        var parser = new RequestParser();
+        var buf = ByteBuffer.allocate(parser.getBufSize());
+        var done = false;
+        var i = 0;
+        // 每次只到达3个字节
+        for (; i < bytes.length && !done; i += 3) {
+            buf.put(bytes, i, Math.min(3, bytes.length - i)).flip();
+            done = parser.parse(buf);
+            buf.compact();
+        }
+        assertThat(done).isTrue();
+        var r = parser.getRequest();
+        assertThat(r.getBodyLength()).isEqualTo(12);
+        assertThat(new String(r.getBodyStream().readAllBytes(), StandardCharsets.UTF_8)).isEqualTo("hello, world");
+        r.release();
+    }
+
+    @Test
+    void parseSignedChunkSize() {
+        var parser = new RequestParser();
+        for (var size : new String[] { "-1", "+5", "-0", "+A" }) {
+            parser.reset();
+            var bytes = ("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n" + size + "\r\nhello\r\n0\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1);
+            assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(bytes)), size);
+        }
+        parser.reset();
+        var bytes = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n5\r\nhello\r\na\r\n0123456789\r\n0\r\n\r\n"
+            .getBytes(StandardCharsets.ISO_8859_1);
+        assertThat(parser.parse(ByteBuffer.wrap(bytes))).isTrue();
+        assertThat(parser.getRequest().getBodyLength()).isEqualTo(15);
+        parser.getRequest().release();
+    }
+
+    @Test
+    void parseManySmallChunks() throws IOException {
+        var pool = new BufferPool(true);
+        var parser = new RequestParser(1024 * 10, pool, 1024 * 1024 * 16, 1024 * 64);
+        var buf = ByteBuffer.allocate(parser.getBufSize());
+        buf.put("POST /upload HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        var chunk = new byte[1024];
+        Arrays.fill(chunk, (byte) 'a');
+        var done = false;
+        // chunk size行与CRLF不计入head的大小限制
+        for (var i = 0; i < 5000; i++) {
+            buf.put("400\r\n".getBytes(StandardCharsets.ISO_8859_1)).put(chunk).put((byte) '\r').put((byte) '\n').flip();
+            done = parser.parse(buf);
+            buf.compact();
+        }
+        assertThat(done).isFalse();
+        buf.put("0\r\nX-Trailer: 1\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1)).flip();
+        assertThat(parser.parse(buf)).isTrue();
+        var r = parser.getRequest();
+        assertThat(r.getBodyLength()).isEqualTo(1024 * 5000);
+        r.release();
+
+        // trailer有单独的限制
+        parser.reset();
+        var trailers = "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n0\r\n"
+            + ("X-Trailer: " + "b".repeat(100) + "\r\n").repeat(110);
+        assertThrows(IllegalArgumentException.class,
+            () -> parser.parse(ByteBuffer.wrap(trailers.getBytes(StandardCharsets.ISO_8859_1))));
+        parser.reset();
+        assertThat(pool.getStats().getReleases()).isEqualTo(pool.getStats().getAcquires());
+    }
+
+    @Test
+    void parseLargeBodySpilledToFile() throws IOException {
+        var pool = new BufferPool(true);
+        var parser = new RequestParser(1024, pool, 1024 * 1024, 1024);
+        var body = new byte[1024 * 300];
+        for (var i = 0; i < body.length; i++) {
+            body[i] = (byte) i;
+        }
+        var head = "POST /upload HTTP/1.1\r\nContent-Length: " + body.length + "\r\n\r\n";
+        assertThat(parser.parse(ByteBuffer.wrap(head.getBytes(StandardCharsets.ISO_8859_1)))).isFalse();
+        var done = false;
+        for (var i = 0; i < body.length; i += 8192) {
+            done = parser.parse(ByteBuffer.wrap(body, i, Math.min(8192, body.length - i)));
+        }
+        assertThat(done).isTrue();
+        var r = parser.getRequest();
+        assertThat(r.getBodyLength()).isEqualTo(body.length);
+        assertThrows(IllegalStateException.class, r::getBody);
+        assertThat(r.getBodyStream().readAllBytes()).isEqualTo(body);
+        r.release();
+        assertThat(pool.getStats().getReleases()).isEqualTo(pool.getStats().getAcquires());
+    }
+
+    @Test
+    void parseBodyTooLarge() {
+        var parser = new RequestParser(1024, BufferPool.getDefault(), 100, 64);
+        var buf = ByteBuffer.wrap("POST / HTTP/1.1\r\nContent-Length: 101\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        assertThrows(PayloadTooLargeException.class, () -> parser.parse(buf));
+        parser.reset();
+        var chunked = ByteBuffer.wrap("POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n40\r\n".getBytes(StandardCharsets.ISO_8859_1));
+        var data = ByteBuffer.wrap(new byte[0x40 + 2]);
+        data.put(0x40, (byte) '\r').put(0x41, (byte) '\n');
+        assertThat(parser.parse(chunked)).isFalse();
+        assertThat(parser.parse(data)).isFalse();
+        assertThrows(PayloadTooLargeException.class,
+            () -> parser.parse(ByteBuffer.wrap("40\r\n".getBytes(StandardCharsets.ISO_8859_1))));
+    }
+
+    @Test
+    void parseIllegalTransferEncoding() {
+        var parser = new RequestParser();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\nContent-Length: 3\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1))));
+        parser.reset();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\nzz\r\n".getBytes(StandardCharsets.ISO_8859_1))));
+    }
+
+    @Test
+    void parseDuplicateContentLength() {
+        var parser = new RequestParser();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nContent-Length: 3\r\nContent-Length: 30\r\n\r\nabc".getBytes(StandardCharsets.ISO_8859_1))));
+        parser.reset();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nContent-Length: 3, 4\r\n\r\nabc".getBytes(StandardCharsets.ISO_8859_1))));
+        parser.reset();
+        assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nTransfer-Encoding: chunked\r\ntransfer-encoding: chunked\r\n\r\n0\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1))));
+        // 不接受带符号的值
+        for (var value : new String[] { "+5", "-0", "-1" }) {
+            parser.reset();
+            assertThrows(IllegalArgumentException.class, () -> parser.parse(ByteBuffer.wrap(
+                ("POST / HTTP/1.1\r\nContent-Length: " + value + "\r\n\r\nhello").getBytes(StandardCharsets.ISO_8859_1))));
+        }
+        // 相同的值可以接受
+        parser.reset();
+        assertThat(parser.parse(ByteBuffer.wrap(
+            "POST / HTTP/1.1\r\nContent-Length: 3\r\ncontent-length: 3, 3\r\n\r\nabc".getBytes(StandardCharsets.ISO_8859_1))))
+            .isTrue();
+        assertThat(parser.getRequest().getBodyLength()).isEqualTo(3);
+        parser.getRequest().release();
+    }
+
+    @Test
+    void parseCookiesLazily() throws IOException {
+        var fc = FileChannel.open(Path.of(getClass().getResource("/get_request.txt").getPath()), StandardOpenOption.READ);
+        var r = parser.parse(fc);
+        assertThat(r.getCookie("dotcom_user")).contains("NavyD");
+        assertThat(r.getCookie("logged_in")).contains("yes");
+        assertThat(r.getCookie("missing")).isEmpty();
+        // 同名cookie返回第一个
+        assertThat(r.getCookie("tz")).contains("Asia%2FShanghai");
+        assertThat(r.getCookies()).hasSize(15);
+    }
+
+    @Test
+    void parseCookieValueContainingEquals() {
+        var request = new Request(MethodEnum.GET, "/", null, VersionEnum.HTTP1_1);
+        request.setHeader("Cookie", "token=a=b==; empty=;flag; quoted=\"v\" ;  spaced = x ");
+        assertThat(request.getCookie("token")).contains("a=b==");
+        assertThat(request.getCookie("empty")).contains("");
+        assertThat(request.getCookie("flag")).isEmpty();
+        assertThat(request.getCookie("quoted")).contains("v");
+        assertThat(request.getCookie("spaced")).contains("x");
+        assertThat(request.getCookies()).extracting(HttpCookie::getName)
+            .containsExactly("token", "empty", "quoted", "spaced");
+    }
+}
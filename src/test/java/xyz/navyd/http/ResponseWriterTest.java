@@ -0,0 +1,67 @@
+package xyz.navyd.http;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.channels.Channels;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Map;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.buffer.BufferPool;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+
+public class ResponseWriterTest {
+    BufferPool pool = new BufferPool(true);
+    ResponseWriter writer = new ResponseWriter(new ObjectMapper(), pool);
+
+    @Test
+    void writeJsonBody() throws Exception {
+        var encoded = writer.write(Response.withOk(Map.of("uid", 1)), VersionEnum.HTTP1_1);
+        assertThat(toString(encoded)).isEqualTo("HTTP/1.1 200 OK\r\n"
+            + "Content-Type: application/json; charset=utf-8\r\n"
+            + "Content-Length: 9\r\n\r\n"
+            + "{\"uid\":1}");
+        encoded.release();
+    }
+
+    @Test
+    void writeEmptyBodyWithHeaders() throws Exception {
+        var response = Response.with(StatusEnum.NOT_FOUND_404).addHeader("Connection", "close");
+        var encoded = writer.write(response, VersionEnum.HTTP1_0);
+        assertThat(toString(encoded)).isEqualTo("HTTP/1.0 404 NOT FOUND\r\n"
+            + "Connection: close\r\n"
+            + "Content-Length: 0\r\n\r\n");
+        encoded.release();
+    }
+
+    @Test
+    void writeLargeBodyAcrossBuffers() throws Exception {
+        var list = new ArrayList<String>();
+        for (var i = 0; i < 10000; i++) {
+            list.add("item_" + i);
+        }
+        var expected = new ObjectMapper().writeValueAsString(list);
+        var encoded = writer.write(Response.withOk(list), VersionEnum.HTTP1_1);
+        assertThat(encoded.buffers().length).isGreaterThan(2);
+        var s = toString(encoded);
+        assertThat(s).contains("Content-Length: " + expected.length() + "\r\n");
+        assertThat(s).endsWith("\r\n\r\n" + expected);
+        encoded.release();
+        assertThat(pool.getStats().getReleases()).isEqualTo(pool.getStats().getAcquires());
+    }
+
+    private static String toString(EncodedResponse encoded) throws Exception {
+        var out = new ByteArrayOutputStream();
+        var channel = Channels.newChannel(out);
+        for (var buf : encoded.buffers()) {
+            channel.write(buf.duplicate());
+        }
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,112 @@
+package xyz.navyd.http2;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.List;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+
+public class HpackTest {
+    @Test
+    void huffmanRoundTrip() {
+        var out = new ByteArrayOutputStream();
+        Huffman.encode("www.example.com", out);
+        // RFC 7541 C.4.1
+        assertThat(HexFormat.of().formatHex(out.toByteArray())).isEqualTo("f1e3c2e5f23a6ba0ab90f4ff");
+        assertThat(Huffman.encodedLength("www.example.com")).isEqualTo(12);
+
+        var s = new StringBuilder();
+        for (var c = 0; c < 256; c++) {
+            s.append((char) c);
+        }
+        out.reset();
+        Huffman.encode(s, out);
+        var bytes = out.toByteArray();
+        assertThat(Huffman.decode(bytes, 0, bytes.length)).isEqualTo(s.toString());
+    }
+
+    @Test
+    void decodeRfcRequests() {
+        // RFC 7541 C.4，三个request共享dynamic table
+        var decoder = new HpackDecoder(4096, 1024 * 64);
+        assertThat(decode(decoder, "828684418cf1e3c2e5f23a6ba0ab90f4ff")).containsExactly(
+            ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com");
+        assertThat(decode(decoder, "828684be5886a8eb10649cbf")).containsExactly(
+            ":method: GET", ":scheme: http", ":path: /", ":authority: www.example.com", "cache-control: no-cache");
+        assertThat(decode(decoder, "828785bf408825a849e95ba97d7f8925a849e95bb8e8b4bf")).containsExactly(
+            ":method: GET", ":scheme: https", ":path: /index.html", ":authority: www.example.com",
+            "custom-key: custom-value");
+        assertThat(decoder.getTableSize()).isEqualTo(164);
+    }
+
+    @Test
+    void encoderDecoderRoundTrip() {
+        var encoder = new HpackEncoder(4096);
+        var decoder = new HpackDecoder(4096, 1024 * 64);
+        for (var i = 0; i < 3; i++) {
+            var out = new ByteArrayOutputStream();
+            encoder.startBlock(out);
+            encoder.encode(out, ":status", "200");
+            encoder.encode(out, "content-type", "application/json; charset=utf-8");
+            encoder.encode(out, "x-request-id", "id-" + i);
+            encoder.encode(out, "set-cookie", "token=secret");
+            var block = out.toByteArray();
+            assertThat(decode(decoder, block)).containsExactly(":status: 200",
+                "content-type: application/json; charset=utf-8", "x-request-id: id-" + i, "set-cookie: token=secret");
+            if (i > 0) {
+                // 重复的header来自dynamic table
+                assertThat(block.length).isLessThan(20);
+            }
+        }
+        assertThat(encoder.getTableSize()).isEqualTo(decoder.getTableSize());
+
+        // 缩小table后两端同步evict
+        encoder.setMaxTableSize(0);
+        encoder.setMaxTableSize(128);
+        var out = new ByteArrayOutputStream();
+        encoder.startBlock(out);
+        encoder.encode(out, "content-type", "text/plain");
+        assertThat(decode(decoder, out.toByteArray())).containsExactly("content-type: text/plain");
+        assertThat(encoder.getTableSize()).isEqualTo(decoder.getTableSize());
+    }
+
+    @Test
+    void rejectMalformedBlock() {
+        var decoder = new HpackDecoder(4096, 1024 * 64);
+        // index 0
+        assertThatThrownBy(() -> decode(decoder, "80")).isInstanceOf(Http2Exception.class)
+            .extracting(e -> ((Http2Exception) e).getError()).isEqualTo(ErrorCodeEnum.COMPRESSION_ERROR);
+        // 超过dynamic table的index
+        assertThatThrownBy(() -> decode(decoder, "ff00")).isInstanceOf(Http2Exception.class);
+        // 截断的string
+        assertThatThrownBy(() -> decode(decoder, "400a6b6579")).isInstanceOf(Http2Exception.class);
+        // table size update超过上限
+        assertThatThrownBy(() -> decode(decoder, "3fe21f")).isInstanceOf(Http2Exception.class);
+    }
+
+    @Test
+    void rejectHeaderListTooLarge() {
+        var encoder = new HpackEncoder(4096);
+        var out = new ByteArrayOutputStream();
+        encoder.encode(out, "x-large", "a".repeat(200));
+        var decoder = new HpackDecoder(4096, 100);
+        assertThatThrownBy(() -> decode(decoder, out.toByteArray())).isInstanceOf(Http2Exception.class)
+            .extracting(e -> ((Http2Exception) e).getError()).isEqualTo(ErrorCodeEnum.PROTOCOL_ERROR);
+    }
+
+    private static List<String> decode(HpackDecoder decoder, String hex) {
+        return decode(decoder, HexFormat.of().parseHex(hex));
+    }
+
+    private static List<String> decode(HpackDecoder decoder, byte[] block) {
+        var headers = new ArrayList<String>();
+        decoder.decode(block, 0, block.length, (name, value) -> headers.add(name + ": " + value));
+        return headers;
+    }
+}
@@ -0,0 +1,87 @@
+package xyz.navyd.limit;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+
+public class AdaptiveLimiterTest extends BaseTest {
+    private static final long MILLIS = 1_000_000;
+
+    @Test
+    void rejectAtLimit() {
+        var limiter = new AdaptiveLimiter(2, 1, 10);
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isTrue();
+        assertThat(limiter.tryAcquire()).isFalse();
+        assertThat(limiter.getInFlight()).isEqualTo(2);
+        limiter.cancel();
+        assertThat(limiter.tryAcquire()).isTrue();
+    }
+
+    @Test
+    void growWithStableLatency() {
+        var limiter = new AdaptiveLimiter(10, 1, 100);
+        for (var i = 0; i < 20; i++) {
+            saturate(limiter, MILLIS);
+        }
+        assertThat(limiter.getLimit()).isGreaterThan(10).isLessThanOrEqualTo(100);
+    }
+
+    @Test
+    void notGrowWhenIdle() {
+        var limiter = new AdaptiveLimiter(10, 1, 100);
+        for (var i = 0; i < 100; i++) {
+            assertThat(limiter.tryAcquire()).isTrue();
+            limiter.release(MILLIS, false);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(10);
+    }
+
+    @Test
+    void shrinkWhenLatencyRises() {
+        var limiter = new AdaptiveLimiter(50, 1, 100);
+        for (var i = 0; i < 5; i++) {
+            saturate(limiter, MILLIS);
+        }
+        var before = limiter.getLimit();
+        for (var i = 0; i < 5; i++) {
+            saturate(limiter, 20 * MILLIS);
+        }
+        assertThat(limiter.getLimit()).isLessThan(before);
+    }
+
+    @Test
+    void backoffOnDrop() {
+        var limiter = new AdaptiveLimiter(100, 1, 100);
+        assertThat(limiter.tryAcquire()).isTrue();
+        limiter.release(0, true);
+        assertThat(limiter.getLimit()).isEqualTo(90);
+        for (var i = 0; i < 100; i++) {
+            limiter.tryAcquire();
+            limiter.release(0, true);
+        }
+        assertThat(limiter.getLimit()).isEqualTo(1);
+    }
+
+    @Test
+    void illegalRange() {
+        assertThatThrownBy(() -> new AdaptiveLimiter(1, 0, 10)).isInstanceOf(IllegalArgumentException.class);
+        assertThatThrownBy(() -> new AdaptiveLimiter(1, 5, 4)).isInstanceOf(IllegalArgumentException.class);
+    }
+
+    /**
+     * 占满limit后以相同耗时全部释放
+     */
+    private static void saturate(AdaptiveLimiter limiter, long rtt) {
+        var n = 0;
+        while (limiter.tryAcquire()) {
+            n++;
+        }
+        for (var i = 0; i < n; i++) {
+            limiter.release(rtt, false);
+        }
+    }
+}
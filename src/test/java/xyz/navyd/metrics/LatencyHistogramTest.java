@@ -0,0 +1,38 @@
+package xyz.navyd.metrics;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+
+public class LatencyHistogramTest extends BaseTest {
+
+    @Test
+    void bucketUpperBoundInclusive() {
+        assertThat(LatencyHistogram.bucket(0)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucket(1024)).isEqualTo(0);
+        assertThat(LatencyHistogram.bucket(1025)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucket(2048)).isEqualTo(1);
+        assertThat(LatencyHistogram.bucket(2049)).isEqualTo(2);
+        for (var i = 0; i < LatencyHistogram.BUCKETS; i++) {
+            var upper = LatencyHistogram.upperBound(i);
+            assertThat(LatencyHistogram.bucket(upper)).isEqualTo(i);
+            assertThat(LatencyHistogram.bucket(upper + 1)).isEqualTo(i + 1);
+        }
+        assertThat(LatencyHistogram.bucket(Long.MAX_VALUE)).isEqualTo(LatencyHistogram.BUCKETS);
+    }
+
+    @Test
+    void recordCountAndSum() {
+        var histogram = new LatencyHistogram();
+        histogram.record(500);
+        histogram.record(1500);
+        histogram.record(-1);
+        var counts = histogram.snapshot();
+        assertThat(counts[0]).isEqualTo(2);
+        assertThat(counts[1]).isEqualTo(1);
+        assertThat(histogram.count()).isEqualTo(3);
+        assertThat(histogram.sum()).isEqualTo(2000);
+    }
+}
@@ -1,8 +1,14 @@
 package xyz.navyd.mvc;
 
+import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+
 import com.fasterxml.jackson.core.JsonProcessingException;
 import com.fasterxml.jackson.databind.JsonMappingException;
 import com.fasterxml.jackson.databind.ObjectMapper;
@@ -13,10 +19,13 @@ import xyz.navyd.BaseTest;
 import xyz.navyd.http.Request;
 import xyz.navyd.http.Response;
 import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
 import xyz.navyd.http.enums.VersionEnum;
 import xyz.navyd.mvc.test_pkg.router.a.EmptyRouterMethodOnControllerMethod;
+import xyz.navyd.mvc.test_pkg.router.async.AsyncController;
 import xyz.navyd.mvc.test_pkg.router.b.NoResponseOnRouterMethod;
 import xyz.navyd.mvc.test_pkg.router.basic.UserController;
+import xyz.navyd.mvc.test_pkg.router.basic.UserController.User;
 
 public class ControllerContextTest extends BaseTest {
 
@@ -39,6 +48,39 @@ public class ControllerContextTest extends BaseTest {
         assertTrue(component.get().controller instanceof UserController);
     }
 
+    @Test
+    void routeCapturesPathGroup() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var request = new Request(MethodEnum.GET, "/home/users/42", null, VersionEnum.HTTP1_1);
+        var match = context.route(request);
+        assertTrue(match.isPresent());
+        assertEquals("getUser", match.get().component.method.getName());
+        assertEquals("42", match.get().group(1));
+    }
+
+    @Test
+    void routeByHttpMethod() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var put = new Request(MethodEnum.PUT, "/host/users/3", null, VersionEnum.HTTP1_1);
+        assertEquals("modifyUser", context.getControllerComponent(put).get().method.getName());
+        var post = new Request(MethodEnum.POST, "/host/users", null, VersionEnum.HTTP1_1);
+        assertEquals("addUser", context.getControllerComponent(post).get().method.getName());
+        var head = new Request(MethodEnum.HEAD, "/host/users", null, VersionEnum.HTTP1_1);
+        assertTrue(context.getControllerComponent(head).isEmpty());
+    }
+
+    @Test
+    void routeRegexNotMatchedAcrossSegments() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var request = new Request(MethodEnum.GET, "/host/users/1/x", null, VersionEnum.HTTP1_1);
+        assertTrue(context.getControllerComponent(request).isEmpty());
+        request = new Request(MethodEnum.GET, "/host/users/abc", null, VersionEnum.HTTP1_1);
+        assertTrue(context.getControllerComponent(request).isEmpty());
+    }
+
     @Test
     void routerMethodsEmptyAsDefaultGetMethod() {
         var context = ControllerContext.newInstance();
@@ -57,6 +99,109 @@ public class ControllerContextTest extends BaseTest {
         assertTrue(e.getMessage().contains(Response.class.getName()));
     }
 
+    @Test
+    void asyncReturnType() throws Exception {
+        assertTrue(ControllerContext.isAsync(AsyncMethods.class.getDeclaredMethod("future")));
+        assertTrue(!ControllerContext.isAsync(AsyncMethods.class.getDeclaredMethod("sync")));
+        var e = assertThrows(IllegalArgumentException.class,
+            () -> ControllerContext.isAsync(AsyncMethods.class.getDeclaredMethod("string")));
+        assertTrue(e.getMessage().contains(Response.class.getName()));
+
+        var context = ControllerContext.newInstance();
+        context.scanPackage(AsyncController.class.getPackageName());
+        var request = new Request(MethodEnum.GET, "/async/done", null, VersionEnum.HTTP1_1);
+        var match = context.route(request).get();
+        assertTrue(match.isAsync());
+        assertEquals("done", context.handleAsync(match, request).join().getBody().get());
+        assertThrows(IllegalArgumentException.class, () -> context.handle(match, request));
+        assertEquals(100, context.route(new Request(MethodEnum.GET, "/async/slow", null, VersionEnum.HTTP1_1))
+            .get().getTimeout());
+    }
+
+    static class AsyncMethods {
+        CompletableFuture<Response<String>> future() {
+            return null;
+        }
+
+        Response<String> sync() {
+            return null;
+        }
+
+        CompletionStage<String> string() {
+            return null;
+        }
+    }
+
+    @Test
+    void singleControllerInstancePerClass() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var list = context.getControllerComponent(new Request(MethodEnum.GET, "/host/users", null, VersionEnum.HTTP1_1));
+        var get = context.getControllerComponent(new Request(MethodEnum.GET, "/host/users/1", null, VersionEnum.HTTP1_1));
+        assertTrue(list.get().controller == get.get().controller);
+    }
+
+    @Test
+    void cacheableResponseWithEtag() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var controller = (UserController) context.getControllerComponent(
+            new Request(MethodEnum.GET, "/host/users", null, VersionEnum.HTTP1_1)).get().controller;
+
+        var first = context.handle(new Request(MethodEnum.GET, "/host/users", "page=1", VersionEnum.HTTP1_1)).get();
+        var second = context.handle(new Request(MethodEnum.GET, "/host/users", "page=1&other=x", VersionEnum.HTTP1_1)).get();
+        assertEquals(1, controller.getUsersCalls);
+        var etag = first.getHeaders().get("ETag");
+        assertTrue(etag != null && etag.equals(second.getHeaders().get("ETag")));
+        assertEquals(first.getBody().get(), second.getBody().get());
+        assertTrue(first.getHeaders().get("Content-Type").startsWith("application/json"));
+
+        // 参与key的query参数不同
+        context.handle(new Request(MethodEnum.GET, "/host/users", "page=2", VersionEnum.HTTP1_1));
+        // 不同的router path
+        context.handle(new Request(MethodEnum.GET, "/home/users", "page=1", VersionEnum.HTTP1_1));
+        assertEquals(3, controller.getUsersCalls);
+
+        var revalidate = new Request(MethodEnum.GET, "/host/users", "page=1", VersionEnum.HTTP1_1);
+        revalidate.setHeader("If-None-Match", etag);
+        var notModified = context.handle(revalidate).get();
+        assertEquals(StatusEnum.NOT_MODIFIED_304, notModified.getStatus());
+        assertEquals(etag, notModified.getHeaders().get("ETag"));
+        assertEquals(3, controller.getUsersCalls);
+    }
+
+    @Test
+    void handleWithPathParam() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var request = new Request(MethodEnum.GET, "/host/users/7", null, VersionEnum.HTTP1_1);
+        var response = context.<Optional<User>>handle(request);
+        assertTrue(response.isPresent());
+        assertEquals(StatusEnum.OK_200, response.get().getStatus());
+        assertEquals(7, response.get().getBody().get().get().getUid());
+    }
+
+    @Test
+    void handleWithMultiValuedQueryParam() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var request = new Request(MethodEnum.GET, "/host/users/search", "uid=3&uid=%35&other=x&uid=500", VersionEnum.HTTP1_1);
+        var response = context.<List<User>>handle(request);
+        assertTrue(response.isPresent());
+        var users = response.get().getBody().get();
+        assertEquals(2, users.size());
+        assertEquals(3, users.get(0).getUid());
+        assertEquals(5, users.get(1).getUid());
+    }
+
+    @Test
+    void handleUnannotatedParamError() {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        var request = new Request(MethodEnum.DELETE, "/host/users/7", null, VersionEnum.HTTP1_1);
+        assertThrows(IllegalArgumentException.class, () -> context.handle(request));
+    }
+
     void handleRequestBasics() {
         var context = ControllerContext.newInstance();
         context.scanPackage(UserController.class.getPackageName());
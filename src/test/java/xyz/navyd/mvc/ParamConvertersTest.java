@@ -0,0 +1,59 @@
+package xyz.navyd.mvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.UUID;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.http.enums.MethodEnum;
+
+public class ParamConvertersTest {
+    ParamConverters converters = new ParamConverters(new ObjectMapper());
+
+    @Test
+    void convertIntegersFromSlice() {
+        var path = "/users/42/-7";
+        assertThat(converters.get(int.class).convert(path, 7, 9)).isEqualTo(42);
+        assertThat(converters.get(Integer.class).convert(path, 10, 12)).isEqualTo(-7);
+        assertThat(converters.get(long.class).convert("9223372036854775807", 0, 19)).isEqualTo(Long.MAX_VALUE);
+        assertThat(converters.get(Long.class).convert("-9223372036854775808", 0, 20)).isEqualTo(Long.MIN_VALUE);
+        assertThrows(IllegalArgumentException.class, () -> converters.get(long.class).convert("9223372036854775808", 0, 19));
+        assertThrows(IllegalArgumentException.class, () -> converters.get(int.class).convert("2147483648", 0, 10));
+        assertThrows(IllegalArgumentException.class, () -> converters.get(int.class).convert("12a", 0, 3));
+        assertThrows(IllegalArgumentException.class, () -> converters.get(int.class).convert("-", 0, 1));
+    }
+
+    @Test
+    void convertScalars() {
+        assertThat(converters.get(double.class).convert("x=1.5e3", 2, 7)).isEqualTo(1500.0);
+        assertThat(converters.get(Double.class).convert("-12", 0, 3)).isEqualTo(-12.0);
+        assertThat(converters.get(boolean.class).convert("TRUE", 0, 4)).isEqualTo(true);
+        assertThat(converters.get(Boolean.class).convert("false", 0, 5)).isEqualTo(false);
+        assertThrows(IllegalArgumentException.class, () -> converters.get(boolean.class).convert("yes", 0, 3));
+        assertThat(converters.get(String.class).convert("/a/b", 3, 4)).isEqualTo("b");
+        var uuid = UUID.randomUUID();
+        var s = "/" + uuid;
+        assertThat(converters.get(UUID.class).convert(s, 1, s.length())).isEqualTo(uuid);
+        assertThrows(IllegalArgumentException.class, () -> converters.get(UUID.class).convert("not-a-uuid", 0, 10));
+    }
+
+    @Test
+    void convertEnumByName() {
+        assertThat(converters.get(MethodEnum.class).convert("m=POST", 2, 6)).isEqualTo(MethodEnum.POST);
+        assertThrows(IllegalArgumentException.class, () -> converters.get(MethodEnum.class).convert("post", 0, 4));
+    }
+
+    @Test
+    void customConverterAndJacksonFallback() {
+        converters.register(LocalDate.class, (s, start, end) -> LocalDate.parse(s.subSequence(start, end)));
+        assertThat(converters.get(LocalDate.class).convert("2020-07-01", 0, 10)).isEqualTo(LocalDate.of(2020, 7, 1));
+        assertThat(converters.get(List.class).convert("[1,2]", 0, 5)).isEqualTo(List.of(1, 2));
+        assertThrows(IllegalArgumentException.class, () -> converters.get(List.class).convert("[1,", 0, 3));
+    }
+}
@@ -0,0 +1,98 @@
+package xyz.navyd.mvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.http.enums.VersionEnum;
+
+public class ResponseCacheTest extends BaseTest {
+    static final ResponseCache.Policy POLICY = new ResponseCache.Policy(TimeUnit.MINUTES.toNanos(1), new String[0],
+        new String[0]);
+
+    final Request request = new Request(MethodEnum.GET, "/", null, VersionEnum.HTTP1_1);
+
+    @Test
+    void serializedBodyCached() {
+        var cache = new ResponseCache(new ObjectMapper(), 1024);
+        var response = cache.put("k", POLICY, Response.withOk("hello"), request);
+        assertThat(response.getBody().get()).isInstanceOf(ByteBuffer.class);
+        assertThat(response.getHeaders()).containsEntry("Content-Type", "text/plain; charset=utf-8");
+        var cached = cache.get("k", request);
+        assertThat(cached.getHeaders().get("ETag")).isEqualTo(response.getHeaders().get("ETag"));
+        assertThat(cached.getBody().get()).isEqualTo(ByteBuffer.wrap("hello".getBytes()));
+        assertThat(cache.size()).isEqualTo(5);
+    }
+
+    @Test
+    void notCachedWithoutOkOrWithCookie() {
+        var cache = new ResponseCache(new ObjectMapper(), 1024);
+        cache.put("a", POLICY, Response.withNotFound("x"), request);
+        cache.put("b", POLICY, Response.withOk("x").addHeader("Set-Cookie", "id=1"), request);
+        assertThat(cache.count()).isZero();
+    }
+
+    @Test
+    void expired() {
+        var cache = new ResponseCache(new ObjectMapper(), 1024);
+        cache.put("k", new ResponseCache.Policy(0, new String[0], new String[0]), Response.withOk("x"), request);
+        assertThat(cache.get("k", request)).isNull();
+        assertThat(cache.size()).isZero();
+    }
+
+    @Test
+    void frequentEntriesNotEvictedByOneHitEntries() {
+        var cache = new ResponseCache(new ObjectMapper(), 100);
+        var body = "x".repeat(40);
+        cache.put("hot1", POLICY, Response.withOk(body), request);
+        cache.put("hot2", POLICY, Response.withOk(body), request);
+        for (var i = 0; i < 5; i++) {
+            cache.get("hot1", request);
+            cache.get("hot2", request);
+        }
+        for (var i = 0; i < 20; i++) {
+            var key = "cold" + i;
+            assertThat(cache.get(key, request)).isNull();
+            cache.put(key, POLICY, Response.withOk(body), request);
+        }
+        assertThat(cache.get("hot1", request)).isNotNull();
+        assertThat(cache.get("hot2", request)).isNotNull();
+        assertThat(cache.size()).isLessThanOrEqualTo(100);
+
+        // 访问次数超过已缓存的key后替换
+        for (var i = 0; i < 10; i++) {
+            cache.get("warm", request);
+        }
+        cache.put("warm", POLICY, Response.withOk(body), request);
+        assertThat(cache.get("warm", request)).isNotNull();
+        assertThat(cache.count()).isEqualTo(2);
+    }
+
+    @Test
+    void ifNoneMatch() {
+        assertThat(ResponseCache.matches("\"a\", W/\"b\"", "\"b\"")).isTrue();
+        assertThat(ResponseCache.matches("*", "\"b\"")).isTrue();
+        assertThat(ResponseCache.matches("\"a\"", "\"b\"")).isFalse();
+        var cache = new ResponseCache(new ObjectMapper(), 1024);
+        var etag = cache.put("k", POLICY, Response.withOk("x"), request).getHeaders().get("ETag");
+        var revalidate = new Request(MethodEnum.GET, "/", null, VersionEnum.HTTP1_1);
+        revalidate.setHeader("If-None-Match", etag);
+        assertThat(cache.get("k", revalidate).getStatus()).isEqualTo(StatusEnum.NOT_MODIFIED_304);
+        // 压缩后的weak ETag也匹配，304带上表示的headers与body由ResponseWriter协商ETag与Vary
+        revalidate.setHeader("If-None-Match", "W/" + etag);
+        var notModified = cache.get("k", revalidate);
+        assertThat(notModified.getStatus()).isEqualTo(StatusEnum.NOT_MODIFIED_304);
+        assertThat(notModified.getHeaders()).containsEntry("ETag", etag).containsKey("Content-Type");
+        assertThat(notModified.getBody()).containsInstanceOf(ByteBuffer.class);
+    }
+}
@@ -0,0 +1,165 @@
+package xyz.navyd.mvc;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.http.Request;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.http.enums.VersionEnum;
+import xyz.navyd.mvc.test_pkg.router.resources.AssetController;
+import xyz.navyd.server.HttpServer;
+import xyz.navyd.server.ServerConfig;
+
+public class StaticResourcesTest extends BaseTest {
+    HttpServer server;
+    byte[] data;
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(AssetController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1));
+        server.start();
+        data = Files.readAllBytes(AssetController.root().resolve("data.bin"));
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "mapped", "files" })
+    void serveWholeFile(String mount) throws IOException {
+        var resp = get("/assets/" + mount + "/data.bin", "");
+        assertThat(resp.head).startsWith("HTTP/1.1 200 OK\r\n")
+            .contains("Content-Type: application/octet-stream")
+            .contains("Content-Length: " + data.length)
+            .contains("Accept-Ranges: bytes");
+        assertThat(resp.body).isEqualTo(data);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = { "mapped", "files" })
+    void serveRange(String mount) throws IOException {
+        var resp = get("/assets/" + mount + "/data.bin", "Range: bytes=1000-1999\r\n");
+        assertThat(resp.head).startsWith("HTTP/1.1 206 PARTIAL CONTENT\r\n")
+            .contains("Content-Range: bytes 1000-1999/" + data.length);
+        assertThat(resp.body).isEqualTo(Arrays.copyOfRange(data, 1000, 2000));
+
+        resp = get("/assets/" + mount + "/data.bin", "Range: bytes=-10\r\n");
+        assertThat(resp.body).isEqualTo(Arrays.copyOfRange(data, data.length - 10, data.length));
+
+        resp = get("/assets/" + mount + "/data.bin", "Range: bytes=" + data.length + "-\r\n");
+        assertThat(resp.head).startsWith("HTTP/1.1 416 RANGE NOT SATISFIABLE\r\n")
+            .contains("Content-Range: bytes */" + data.length);
+    }
+
+    @Test
+    void notModified() throws IOException {
+        var resp = get("/assets/mapped/hello.txt", "");
+        assertThat(resp.head).contains("Content-Type: text/plain; charset=utf-8");
+        assertThat(new String(resp.body, StandardCharsets.UTF_8)).isEqualTo("hello static resources\n");
+        var etag = header(resp.head, "ETag");
+        var lastModified = header(resp.head, "Last-Modified");
+
+        assertThat(get("/assets/mapped/hello.txt", "If-None-Match: " + etag + "\r\n").head)
+            .startsWith("HTTP/1.1 304 NOT MODIFIED\r\n").doesNotContain("Content-Length");
+        assertThat(get("/assets/mapped/hello.txt", "If-Modified-Since: " + lastModified + "\r\n").head)
+            .startsWith("HTTP/1.1 304 NOT MODIFIED\r\n");
+        assertThat(get("/assets/mapped/hello.txt", "If-None-Match: \"other\"\r\n").head)
+            .startsWith("HTTP/1.1 200 OK\r\n");
+    }
+
+    @Test
+    void notFoundOutsideRoot() throws IOException {
+        assertThat(get("/assets/files/../../pom.xml", "").head).startsWith("HTTP/1.1 404 NOT FOUND\r\n");
+        assertThat(get("/assets/files/missing.txt", "").head).startsWith("HTTP/1.1 404 NOT FOUND\r\n");
+    }
+
+    @Test
+    void parseRange() {
+        assertThat(StaticResources.parseRange("bytes=0-9", 100)).containsExactly(0, 9);
+        assertThat(StaticResources.parseRange("bytes=90-200", 100)).containsExactly(90, 99);
+        assertThat(StaticResources.parseRange("bytes=-200", 100)).containsExactly(0, 99);
+        assertThat(StaticResources.parseRange("bytes=0-1,5-6", 100)).isNull();
+        assertThat(StaticResources.parseRange("bytes=9-1", 100)).isNull();
+        assertThat(StaticResources.parseRange("items=0-1", 100)).isNull();
+        assertThat(StaticResources.parseRange("bytes=100-", 100)).isEmpty();
+    }
+
+    @Test
+    void evictLeastRecentlyUsed(@TempDir Path dir) throws Exception {
+        for (var name : new String[] { "a", "b", "c" }) {
+            Files.write(dir.resolve(name + ".txt"), new byte[10]);
+        }
+        var resources = new StaticResources("/s", dir).cacheCapacity(25);
+        resources.serve(new Request(MethodEnum.GET, "/s/a.txt", null, VersionEnum.HTTP1_1));
+        resources.serve(new Request(MethodEnum.GET, "/s/b.txt", null, VersionEnum.HTTP1_1));
+        Thread.sleep(5);
+        // 命中后a比b更近访问
+        resources.serve(new Request(MethodEnum.GET, "/s/a.txt", null, VersionEnum.HTTP1_1));
+        resources.serve(new Request(MethodEnum.GET, "/s/c.txt", null, VersionEnum.HTTP1_1));
+        var root = dir.toRealPath();
+        assertThat(resources.cachedBytes()).isEqualTo(20);
+        assertThat(resources.isCached(root.resolve("a.txt"))).isTrue();
+        assertThat(resources.isCached(root.resolve("b.txt"))).isFalse();
+        assertThat(resources.isCached(root.resolve("c.txt"))).isTrue();
+    }
+
+    private Resp get(String path, String headers) throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var request = "GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            return read(socket.getInputStream());
+        }
+    }
+
+    private static String header(String head, String name) {
+        for (var line : head.split("\r\n")) {
+            if (line.startsWith(name + ": ")) {
+                return line.substring(name.length() + 2);
+            }
+        }
+        return null;
+    }
+
+    private static Resp read(InputStream in) throws IOException {
+        var head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            var b = in.read();
+            if (b < 0) {
+                throw new IOException("unexpected end of stream: " + head);
+            }
+            head.append((char) b);
+        }
+        // 304没有Content-Length
+        var len = header(head.toString(), "Content-Length");
+        return new Resp(head.toString(), in.readNBytes(len == null ? 0 : Integer.parseInt(len)));
+    }
+
+    static class Resp {
+        final String head;
+        final byte[] body;
+
+        Resp(String head, byte[] body) {
+            this.head = head;
+            this.body = body;
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package xyz.navyd.mvc.processor;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+
+import javax.tools.ToolProvider;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import xyz.navyd.mvc.RouteRegistry;
+
+public class RouteProcessorTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void mergeIndexOnPartialCompile() throws IOException {
+        var a = source("AController", "/a");
+        var b = source("BController", "/b");
+        compile(a, b);
+        assertThat(index()).containsExactly("demo.AController_GeneratedRoutes", "demo.BController_GeneratedRoutes");
+
+        // 只重新编译a时保留b的registry
+        compile(a);
+        assertThat(index()).containsExactly("demo.AController_GeneratedRoutes", "demo.BController_GeneratedRoutes");
+        assertThat(dir.resolve("classes/demo/BController_GeneratedRoutes.class")).exists();
+
+        // b已删除
+        Files.delete(dir.resolve("classes/demo/BController_GeneratedRoutes.class"));
+        Files.delete(dir.resolve("classes/demo/BController.class"));
+        compile(a);
+        assertThat(index()).containsExactly("demo.AController_GeneratedRoutes");
+    }
+
+    private Path source(String name, String path) throws IOException {
+        var file = dir.resolve("src/demo/" + name + ".java");
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, "package demo;\n\n"
+            + "import xyz.navyd.http.Response;\n"
+            + "import xyz.navyd.mvc.annotations.Controller;\n"
+            + "import xyz.navyd.mvc.annotations.Router;\n\n"
+            + "@Controller\n"
+            + "@Router(\"" + path + "\")\n"
+            + "public class " + name + " {\n"
+            + "    @Router(\"/get\")\n"
+            + "    Response<String> get() {\n"
+            + "        return Response.withOk(\"" + name + "\");\n"
+            + "    }\n"
+            + "}\n");
+        return file;
+    }
+
+    private void compile(Path... sources) throws IOException {
+        var classes = dir.resolve("classes");
+        var generated = dir.resolve("generated");
+        Files.createDirectories(classes);
+        Files.createDirectories(generated);
+        var args = new ArrayList<>(List.of("-proc:full", "-processor", RouteProcessor.class.getName(),
+            "-d", classes.toString(), "-s", generated.toString(),
+            "-cp", System.getProperty("java.class.path") + File.pathSeparator + classes));
+        for (var source : sources) {
+            args.add(source.toString());
+        }
+        var compiler = ToolProvider.getSystemJavaCompiler();
+        assertThat(compiler.run(null, null, null, args.toArray(new String[0]))).isZero();
+    }
+
+    private List<String> index() throws IOException {
+        return Files.readAllLines(dir.resolve("classes").resolve(RouteRegistry.INDEX));
+    }
+}
@@ -0,0 +1,48 @@
+package xyz.navyd.mvc.test_pkg.router.async;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.TimeUnit;
+
+import xyz.navyd.http.Response;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.QueryParam;
+import xyz.navyd.mvc.annotations.Router;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 返回CompletionStage的controller，未完成的future记录在pending中供测试检查
+ */
+@Controller
+@Router("/async")
+public class AsyncController {
+    public static volatile CompletableFuture<Response<?>> pending;
+
+    @Router(value = "/delay", execution = ExecutionEnum.INLINE)
+    CompletionStage<Response<String>> delay(@QueryParam("ms") Integer ms) {
+        var executor = CompletableFuture.delayedExecutor(ms, TimeUnit.MILLISECONDS);
+        return CompletableFuture.supplyAsync(() -> Response.withOk("delayed " + ms), executor);
+    }
+
+    @Router(value = "/done", execution = ExecutionEnum.INLINE)
+    CompletableFuture<Response<String>> done() {
+        return CompletableFuture.completedFuture(Response.withOk("done"));
+    }
+
+    @Router(value = "/failed", execution = ExecutionEnum.WORKER)
+    CompletableFuture<Response<String>> failed() {
+        return CompletableFuture.failedFuture(new IllegalArgumentException("bad argument"));
+    }
+
+    @Router(value = "/slow", execution = ExecutionEnum.INLINE, timeout = 100)
+    CompletableFuture<Response<?>> slow() {
+        pending = new CompletableFuture<>();
+        return pending;
+    }
+
+    @Router(value = "/hang", execution = ExecutionEnum.WORKER)
+    CompletableFuture<Response<?>> hang() {
+        pending = new CompletableFuture<>();
+        return pending;
+    }
+}
@@ -1,7 +1,9 @@
 package xyz.navyd.mvc.test_pkg.router.basic;
 
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.Optional;
 import java.util.Random;
@@ -9,8 +11,10 @@ import java.util.Random;
 import xyz.navyd.http.Response;
 import xyz.navyd.http.enums.MethodEnum;
 import xyz.navyd.http.enums.StatusEnum;
+import xyz.navyd.mvc.annotations.Cacheable;
 import xyz.navyd.mvc.annotations.Controller;
 import xyz.navyd.mvc.annotations.PathParam;
+import xyz.navyd.mvc.annotations.QueryParam;
 import xyz.navyd.mvc.annotations.Router;
 
 @Controller
@@ -22,13 +26,16 @@ public class UserController {
     }
 
     Map<Integer, User> users = new HashMap<>();
+    public int getUsersCalls;
 
     public UserController() {
         setup();
     }
 
+    @Cacheable(queryParams = "page")
     @Router(value = { "/users", "/userhome" }, methods = MethodEnum.GET)
     Response<Collection<User>> getUsers() {
+        getUsersCalls++;
         return new Response<>(StatusEnum.OK_200, users.values());
     }
 
@@ -37,6 +44,17 @@ public class UserController {
         return new Response<>(StatusEnum.OK_200, Optional.ofNullable(users.get(uid)));
     }
 
+    @Router(value = "/users/search", methods = MethodEnum.GET)
+    Response<List<User>> searchUsers(@QueryParam("uid") Integer[] uids) {
+        var found = new ArrayList<User>();
+        for (var uid : uids) {
+            if (users.containsKey(uid)) {
+                found.add(users.get(uid));
+            }
+        }
+        return Response.withOk(found);
+    }
+
     @Router(value = "/users", methods = MethodEnum.POST)
     Response<String> addUser(User user) {
         return new Response<String>(StatusEnum.OK_200, "successfuly. uid=" + user.getUid());
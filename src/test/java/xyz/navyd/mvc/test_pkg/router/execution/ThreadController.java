@@ -0,0 +1,50 @@
+package xyz.navyd.mvc.test_pkg.router.execution;
+
+import java.util.concurrent.CountDownLatch;
+
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.Router;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 返回执行controller方法的线程
+ */
+@Controller
+@Router("/thread")
+public class ThreadController {
+    // blocking方法等待该latch，由测试控制
+    public static volatile CountDownLatch gate = new CountDownLatch(0);
+
+    @Router(value = "/inline", methods = MethodEnum.GET, execution = ExecutionEnum.INLINE)
+    Response<String> inline() {
+        return Response.withOk(describe());
+    }
+
+    @Router(value = "/worker", methods = MethodEnum.GET, execution = ExecutionEnum.WORKER)
+    Response<String> worker() {
+        return Response.withOk(describe());
+    }
+
+    @Router(value = "/virtual", methods = MethodEnum.GET, execution = ExecutionEnum.VIRTUAL)
+    Response<String> virtual() {
+        return Response.withOk(describe());
+    }
+
+    @Router(value = "/default", methods = MethodEnum.GET)
+    Response<String> defaultExecution() {
+        return Response.withOk(describe());
+    }
+
+    @Router(value = "/blocking", methods = MethodEnum.GET, execution = ExecutionEnum.WORKER)
+    Response<String> blocking() throws InterruptedException {
+        gate.await();
+        return Response.withOk(describe());
+    }
+
+    private static String describe() {
+        var t = Thread.currentThread();
+        return t.getName() + ",virtual=" + t.isVirtual();
+    }
+}
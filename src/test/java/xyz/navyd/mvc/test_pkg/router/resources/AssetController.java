@@ -0,0 +1,38 @@
+package xyz.navyd.mvc.test_pkg.router.resources;
+
+import java.net.URISyntaxException;
+import java.nio.file.Path;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.StaticResources;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.Router;
+
+@Controller
+@Router("/assets")
+public class AssetController {
+    public static Path root() {
+        try {
+            return Path.of(AssetController.class.getResource("/static").toURI());
+        } catch (URISyntaxException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    // 全部mmap
+    StaticResources mapped = new StaticResources("/assets/mapped", root()).mappedThreshold(Integer.MAX_VALUE);
+    // 全部transferTo
+    StaticResources files = new StaticResources("/assets/files", root()).mappedThreshold(0);
+
+    @Router(value = "/mapped/.+", methods = MethodEnum.GET)
+    Response<?> mapped(Request request) {
+        return mapped.serve(request);
+    }
+
+    @Router(value = "/files/.+", methods = MethodEnum.GET)
+    Response<?> files(Request request) {
+        return files.serve(request);
+    }
+}
@@ -0,0 +1,100 @@
+package xyz.navyd.mvc.test_pkg.router.stream;
+
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+import java.util.concurrent.SubmissionPublisher;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import xyz.navyd.http.Response;
+import xyz.navyd.http.StreamingBody;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.QueryParam;
+import xyz.navyd.mvc.annotations.Router;
+import xyz.navyd.mvc.enums.ExecutionEnum;
+
+/**
+ * 返回流式body的controller，生成的进度记录在静态字段中供测试检查
+ */
+@Controller
+@Router("/stream")
+public class StreamController {
+    // /items已生成的元素数
+    public static final AtomicInteger produced = new AtomicInteger();
+    // /numbers的Stream是否已关闭
+    public static final AtomicBoolean closed = new AtomicBoolean();
+    // /events使用的publisher
+    public static volatile SubmissionPublisher<Object> publisher;
+
+    @Router(value = "/numbers", execution = ExecutionEnum.INLINE)
+    Response<Stream<Integer>> numbers(@QueryParam("n") Integer n) {
+        return Response.withOk(IntStream.range(0, n).boxed().onClose(() -> closed.set(true)));
+    }
+
+    @Router(value = "/items", execution = ExecutionEnum.WORKER)
+    Response<Iterator<Item>> items(@QueryParam("n") Integer n) {
+        return Response.withOk(new Iterator<>() {
+            int i;
+
+            @Override
+            public boolean hasNext() {
+                return i < n;
+            }
+
+            @Override
+            public Item next() {
+                if (i >= n) {
+                    throw new NoSuchElementException();
+                }
+                produced.incrementAndGet();
+                var id = i++;
+                return new Item(id, "item_" + id);
+            }
+        });
+    }
+
+    @Router(value = "/failed", execution = ExecutionEnum.WORKER)
+    Response<Iterator<Integer>> failed() {
+        return Response.withOk(new Iterator<>() {
+            int i;
+
+            @Override
+            public boolean hasNext() {
+                return true;
+            }
+
+            @Override
+            public Integer next() {
+                if (i == 3) {
+                    throw new IllegalStateException("database gone");
+                }
+                return i++;
+            }
+        });
+    }
+
+    @Router(value = "/events", execution = ExecutionEnum.INLINE)
+    Response<StreamingBody> events() {
+        return Response.withOk(StreamingBody.events(publisher));
+    }
+
+    public static class Item {
+        private final int id;
+        private final String name;
+
+        public Item(int id, String name) {
+            this.id = id;
+            this.name = name;
+        }
+
+        public int getId() {
+            return id;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
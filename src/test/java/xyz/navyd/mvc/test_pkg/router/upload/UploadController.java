@@ -0,0 +1,33 @@
+package xyz.navyd.mvc.test_pkg.router.upload;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.zip.CRC32;
+
+import xyz.navyd.http.Request;
+import xyz.navyd.http.Response;
+import xyz.navyd.http.enums.MethodEnum;
+import xyz.navyd.mvc.annotations.Controller;
+import xyz.navyd.mvc.annotations.Router;
+
+/**
+ * 返回上传body的长度与crc32
+ */
+@Controller
+@Router("/upload")
+public class UploadController {
+    @Router(value = "/file", methods = MethodEnum.POST)
+    Response<String> upload(Request request) {
+        var crc = new CRC32();
+        try (var in = request.getBodyStream()) {
+            var buf = new byte[8192];
+            int n;
+            while ((n = in.read(buf)) > 0) {
+                crc.update(buf, 0, n);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return Response.withOk(request.getBodyLength() + ":" + Long.toHexString(crc.getValue()));
+    }
+}
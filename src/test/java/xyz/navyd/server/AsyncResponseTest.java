@@ -0,0 +1,119 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static xyz.navyd.server.HttpServerTest.readResponse;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeoutException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.async.AsyncController;
+
+public class AsyncResponseTest extends BaseTest {
+    HttpServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(AsyncController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).workerThreads(1));
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+        AsyncController.pending = null;
+    }
+
+    @Test
+    void completeLater() throws IOException {
+        assertThat(get("/async/delay?ms=50")).startsWith("HTTP/1.1 200 OK\r\n").endsWith("delayed 50");
+        assertThat(get("/async/done")).startsWith("HTTP/1.1 200 OK\r\n").endsWith("done");
+        assertThat(get("/async/failed")).startsWith("HTTP/1.1 400 BAD REQUEST\r\n");
+    }
+
+    @Test
+    void pipelinedInOrder() throws IOException {
+        var paths = new String[] { "/async/delay?ms=200", "/async/done", "/async/delay?ms=10" };
+        var sb = new StringBuilder();
+        for (var path : paths) {
+            sb.append("GET ").append(path).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+            var in = socket.getInputStream();
+            assertThat(readResponse(in)).endsWith("delayed 200");
+            assertThat(readResponse(in)).endsWith("done");
+            assertThat(readResponse(in)).endsWith("delayed 10");
+        }
+    }
+
+    @Test
+    void timeoutRoute() throws IOException {
+        var start = System.nanoTime();
+        assertThat(get("/async/slow")).startsWith("HTTP/1.1 504 GATEWAY TIMEOUT\r\n");
+        assertThat(System.nanoTime() - start).isGreaterThanOrEqualTo(100_000_000L);
+        assertThat(AsyncController.pending).isCompletedExceptionally();
+        assertThat(AsyncController.pending.exceptionNow()).isInstanceOf(TimeoutException.class);
+    }
+
+    @Test
+    void cancelOnDisconnect() throws Exception {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(request("/async/hang"));
+            var deadline = System.currentTimeMillis() + 5000;
+            while (AsyncController.pending == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+        }
+        var future = AsyncController.pending;
+        assertThat(future).isNotNull();
+        var deadline = System.currentTimeMillis() + 5000;
+        while (!future.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(future).isCancelled();
+        // worker与loop没有被占用
+        assertThat(get("/async/done")).endsWith("done");
+    }
+
+    @Test
+    void cancelOnDisconnectWithConnectionClose() throws Exception {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(("GET /async/hang HTTP/1.1\r\nHost: localhost\r\nConnection: close\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+            var deadline = System.currentTimeMillis() + 5000;
+            while (AsyncController.pending == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            // 等待loop记录future
+            Thread.sleep(100);
+        }
+        var future = AsyncController.pending;
+        assertThat(future).isNotNull();
+        var deadline = System.currentTimeMillis() + 5000;
+        while (!future.isDone() && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(future).isCancelled();
+    }
+
+    private String get(String path) throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(request(path));
+            return readResponse(socket.getInputStream());
+        }
+    }
+
+    private static byte[] request(String path) {
+        return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+}
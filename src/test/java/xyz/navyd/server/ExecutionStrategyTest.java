@@ -0,0 +1,154 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static xyz.navyd.server.HttpServerTest.readResponse;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.execution.ThreadController;
+
+public class ExecutionStrategyTest extends BaseTest {
+    HttpServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(ThreadController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).workerThreads(2));
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void executeInline() throws IOException {
+        assertThat(get("/thread/inline")).contains("http-loop").contains("virtual=false");
+    }
+
+    @Test
+    void executeOnWorker() throws IOException {
+        assertThat(get("/thread/worker")).contains("http-worker-").contains("virtual=false");
+        assertThat(get("/thread/default")).contains("http-worker-");
+    }
+
+    @Test
+    void executeOnVirtualThread() throws IOException {
+        assertThat(get("/thread/virtual")).contains("http-virtual-").contains("virtual=true");
+    }
+
+    @Test
+    void pipelinedAcrossStrategiesInOrder() throws IOException {
+        var paths = new String[] { "/thread/virtual", "/thread/inline", "/thread/worker", "/thread/inline" };
+        var sb = new StringBuilder();
+        for (var path : paths) {
+            sb.append("GET ").append(path).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+            var in = socket.getInputStream();
+            assertThat(readResponse(in)).contains("http-virtual-");
+            assertThat(readResponse(in)).contains("http-loop");
+            assertThat(readResponse(in)).contains("http-worker-");
+            assertThat(readResponse(in)).contains("http-loop");
+        }
+    }
+
+    @Test
+    void workerPoolRejectsWhenFull() throws InterruptedException {
+        var strategy = ExecutionStrategy.workerPool(1, 1);
+        var latch = new CountDownLatch(1);
+        Runnable blocking = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        };
+        try {
+            strategy.execute(blocking);
+            strategy.execute(blocking);
+            assertThatThrownBy(() -> strategy.execute(blocking)).isInstanceOf(RejectedExecutionException.class);
+        } finally {
+            latch.countDown();
+            strategy.shutdown();
+        }
+    }
+
+    @Test
+    void shedOverConcurrencyLimit() throws Exception {
+        ThreadController.gate = new CountDownLatch(1);
+        var limited = newServer(new ServerConfig().port(0).eventLoops(1).adaptiveLimit(true).maxConcurrency(1));
+        try (var blocked = new Socket("localhost", limited.getPort())) {
+            blocked.getOutputStream().write(request("/thread/blocking"));
+            while (limited.getLimiter().getInFlight() == 0) {
+                Thread.sleep(5);
+            }
+            assertThat(get(limited, "/thread/worker"))
+                .startsWith("HTTP/1.1 503 SERVICE UNAVAILABLE\r\n")
+                .contains("Retry-After: 1");
+            ThreadController.gate.countDown();
+            assertThat(readResponse(blocked.getInputStream())).startsWith("HTTP/1.1 200 OK\r\n");
+        } finally {
+            ThreadController.gate.countDown();
+            limited.close();
+        }
+        assertThat(limited.getLimiter().getInFlight()).isZero();
+    }
+
+    @Test
+    void dropRequestOverDeadline() throws Exception {
+        ThreadController.gate = new CountDownLatch(1);
+        var limited = newServer(new ServerConfig().port(0).eventLoops(1).workerThreads(1).requestDeadline(50));
+        try (var blocked = new Socket("localhost", limited.getPort());
+                var queued = new Socket("localhost", limited.getPort())) {
+            blocked.getOutputStream().write(request("/thread/blocking"));
+            queued.getOutputStream().write(request("/thread/worker"));
+            Thread.sleep(200);
+            ThreadController.gate.countDown();
+            assertThat(readResponse(blocked.getInputStream())).startsWith("HTTP/1.1 200 OK\r\n");
+            assertThat(readResponse(queued.getInputStream()))
+                .startsWith("HTTP/1.1 503 SERVICE UNAVAILABLE\r\n")
+                .contains("Retry-After: 1");
+        } finally {
+            ThreadController.gate.countDown();
+            limited.close();
+        }
+    }
+
+    private String get(String path) throws IOException {
+        return get(server, path);
+    }
+
+    private static String get(HttpServer server, String path) throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(request(path));
+            return readResponse(socket.getInputStream());
+        }
+    }
+
+    private static byte[] request(String path) {
+        return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static HttpServer newServer(ServerConfig config) throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(ThreadController.class.getPackageName());
+        var server = new HttpServer(context, config);
+        server.start();
+        return server;
+    }
+}
@@ -0,0 +1,465 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.http2.Frame;
+import xyz.navyd.http2.HpackDecoder;
+import xyz.navyd.http2.HpackEncoder;
+import xyz.navyd.http2.enums.ErrorCodeEnum;
+import xyz.navyd.http2.enums.FrameTypeEnum;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.async.AsyncController;
+import xyz.navyd.mvc.test_pkg.router.basic.UserController;
+import xyz.navyd.mvc.test_pkg.router.stream.StreamController;
+import xyz.navyd.mvc.test_pkg.router.upload.UploadController;
+
+public class Http2Test extends BaseTest {
+    private static final byte[] PREFACE = "PRI * HTTP/2.0\r\n\r\nSM\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1);
+
+    HttpServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        context.scanPackage(UploadController.class.getPackageName());
+        context.scanPackage(AsyncController.class.getPackageName());
+        context.scanPackage(StreamController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).http2(true)
+            .http2MaxConcurrentStreams(2));
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void priorKnowledge() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            var settings = client.read();
+            assertThat(settings.type).isEqualTo(FrameTypeEnum.SETTINGS);
+            assertThat(settings.flags & Frame.FLAG_ACK).isZero();
+
+            client.headers(1, "GET", "/host/users/1", true);
+            client.headers(3, "GET", "/host/users/2", true);
+            var responses = client.readResponses(2);
+            assertThat(responses.get(1)).startsWith("200 ").contains("\"name\":\"user_name_1\"");
+            assertThat(responses.get(3)).startsWith("200 ").contains("\"name\":\"user_name_2\"");
+
+            client.headers(5, "GET", "/host/missing", true);
+            assertThat(client.readResponses(1).get(5)).startsWith("404 ");
+        }
+    }
+
+    @Test
+    void requestBody() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "POST", "/upload/file", false);
+            var body = "hello http/2".getBytes(StandardCharsets.UTF_8);
+            client.frame(FrameTypeEnum.DATA, 0, 1, Arrays.copyOf(body, 5));
+            client.frame(FrameTypeEnum.DATA, Frame.FLAG_END_STREAM, 1, Arrays.copyOfRange(body, 5, body.length));
+            var crc = new CRC32();
+            crc.update(body);
+            assertThat(client.readResponses(1).get(1)).isEqualTo("200 12:" + Long.toHexString(crc.getValue()));
+        }
+    }
+
+    @Test
+    void largeRequestBodyWithFlowControl() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "POST", "/upload/file", false);
+            var body = new byte[1024 * 1024];
+            for (var i = 0; i < body.length; i++) {
+                body[i] = (byte) (i * 31);
+            }
+            // 超过bodySpillThreshold，只能在server归还window后继续发送
+            var connWindow = 65535L;
+            var streamWindow = 65535L;
+            var sent = 0;
+            while (sent < body.length) {
+                var n = (int) Math.min(Math.min(connWindow, streamWindow), Math.min(16384, body.length - sent));
+                if (n == 0) {
+                    var frame = client.read();
+                    if (frame.type == FrameTypeEnum.WINDOW_UPDATE) {
+                        var increment = ByteBuffer.wrap(frame.payload).getInt();
+                        if (frame.streamId == 0) {
+                            connWindow += increment;
+                        } else {
+                            streamWindow += increment;
+                        }
+                        // 不会归还未收到的字节
+                        assertThat(connWindow).isLessThanOrEqualTo(65535);
+                        assertThat(streamWindow).isLessThanOrEqualTo(65535);
+                    }
+                    continue;
+                }
+                var flags = sent + n == body.length ? Frame.FLAG_END_STREAM : 0;
+                client.frame(FrameTypeEnum.DATA, flags, 1, Arrays.copyOfRange(body, sent, sent + n));
+                sent += n;
+                connWindow -= n;
+                streamWindow -= n;
+            }
+            var crc = new CRC32();
+            crc.update(body);
+            assertThat(client.readResponses(1).get(1))
+                .isEqualTo("200 " + body.length + ":" + Long.toHexString(crc.getValue()));
+        }
+    }
+
+    @Test
+    void discardBodyAfterPayloadTooLarge() throws IOException {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UploadController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).http2(true).maxBodySize(1024));
+        server.start();
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            // window为0，413的body在对端继续发送DATA时仍在排队
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, ByteBuffer.allocate(6).putShort((short) 4).putInt(0).array());
+            client.headers(1, "POST", "/upload/file", false);
+            client.frame(FrameTypeEnum.DATA, 0, 1, new byte[2000]);
+            client.frame(FrameTypeEnum.DATA, 0, 1, new byte[100]);
+            client.frame(FrameTypeEnum.DATA, Frame.FLAG_END_STREAM, 1, new byte[100]);
+            client.frame(FrameTypeEnum.WINDOW_UPDATE, 0, 1, ByteBuffer.allocate(4).putInt(1024).array());
+            var response = new StringBuilder();
+            while (true) {
+                var frame = client.read();
+                assertThat(frame.type).isNotEqualTo(FrameTypeEnum.RST_STREAM);
+                if (frame.type == FrameTypeEnum.HEADERS) {
+                    client.decoder.decode(frame.payload, 0, frame.payload.length, (name, value) -> {
+                        if (name.equals(":status")) {
+                            response.append(value).append(' ');
+                        }
+                    });
+                } else if (frame.type == FrameTypeEnum.DATA) {
+                    response.append(new String(frame.payload, StandardCharsets.UTF_8));
+                    if ((frame.flags & Frame.FLAG_END_STREAM) != 0) {
+                        break;
+                    }
+                }
+            }
+            assertThat(response.toString()).isEqualTo("413 payload too large");
+        }
+    }
+
+    @Test
+    void resetStalledRequestBody() throws IOException {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UploadController.class.getPackageName());
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).http2(true).bodyReadTimeout(200));
+        server.start();
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "POST", "/upload/file", false);
+            client.frame(FrameTypeEnum.DATA, 0, 1, new byte[10]);
+            while (true) {
+                var frame = client.read();
+                if (frame.type == FrameTypeEnum.RST_STREAM) {
+                    assertThat(frame.streamId).isEqualTo(1);
+                    assertThat(ByteBuffer.wrap(frame.payload).getInt()).isEqualTo(ErrorCodeEnum.CANCEL.getCode());
+                    break;
+                }
+            }
+            // 连接仍可用
+            client.headers(3, "GET", "/host/users/1", true);
+            assertThat(client.readResponses(1).get(3)).startsWith("200 ");
+        }
+    }
+
+    @Test
+    void pingAndFlowControl() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            // 对端的stream window为10，DATA需要等待WINDOW_UPDATE
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, ByteBuffer.allocate(6).putShort((short) 4).putInt(10).array());
+            client.frame(FrameTypeEnum.PING, 0, 0, "12345678".getBytes(StandardCharsets.ISO_8859_1));
+            client.headers(1, "GET", "/host/users/1", true);
+            var data = new ByteArrayOutputStream();
+            var ended = false;
+            var updated = false;
+            var pinged = false;
+            while (!ended) {
+                var frame = client.read();
+                if (frame.type == FrameTypeEnum.PING) {
+                    assertThat(frame.flags & Frame.FLAG_ACK).isNotZero();
+                    assertThat(new String(frame.payload, StandardCharsets.ISO_8859_1)).isEqualTo("12345678");
+                    pinged = true;
+                } else if (frame.type == FrameTypeEnum.DATA) {
+                    if (!updated) {
+                        assertThat(frame.payload.length).isLessThanOrEqualTo(10);
+                    }
+                    data.write(frame.payload);
+                    ended = (frame.flags & Frame.FLAG_END_STREAM) != 0;
+                    if (!ended && !updated) {
+                        client.frame(FrameTypeEnum.WINDOW_UPDATE, 0, 1,
+                            ByteBuffer.allocate(4).putInt(1024 * 1024).array());
+                        updated = true;
+                    }
+                }
+            }
+            assertThat(pinged).isTrue();
+            assertThat(updated).isTrue();
+            assertThat(data.toString(StandardCharsets.UTF_8)).contains("\"name\":\"user_name_1\"");
+        }
+    }
+
+    @Test
+    void refuseStreamsOverLimit() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            // 不发送END_STREAM，stream保持打开
+            client.headers(1, "POST", "/host/users", false);
+            client.headers(3, "POST", "/host/users", false);
+            client.headers(5, "POST", "/host/users", false);
+            while (true) {
+                var frame = client.read();
+                if (frame.type == FrameTypeEnum.RST_STREAM) {
+                    assertThat(frame.streamId).isEqualTo(5);
+                    assertThat(ByteBuffer.wrap(frame.payload).getInt()).isEqualTo(ErrorCodeEnum.REFUSED_STREAM.getCode());
+                    break;
+                }
+            }
+        }
+    }
+
+    @Test
+    void cancelAsyncOnReset() throws Exception {
+        AsyncController.pending = null;
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "GET", "/async/hang", true);
+            var deadline = System.currentTimeMillis() + 5000;
+            while (AsyncController.pending == null && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            var future = AsyncController.pending;
+            assertThat(future).isNotNull();
+            client.frame(FrameTypeEnum.RST_STREAM, 0, 1,
+                ByteBuffer.allocate(4).putInt(ErrorCodeEnum.CANCEL.getCode()).array());
+            while (!future.isDone() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(future).isCancelled();
+
+            client.headers(3, "GET", "/async/slow", true);
+            client.headers(5, "GET", "/async/done", true);
+            var responses = client.readResponses(2);
+            assertThat(responses.get(3)).startsWith("504 ");
+            assertThat(responses.get(5)).isEqualTo("200 done");
+        } finally {
+            AsyncController.pending = null;
+        }
+    }
+
+    @Test
+    void streamingBody() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "GET", "/stream/numbers?n=2000", true);
+            client.headers(3, "GET", "/stream/numbers?n=0", true);
+            var responses = client.readResponses(2);
+            var expected = new StringBuilder("200 [");
+            for (var i = 0; i < 2000; i++) {
+                expected.append(i > 0 ? "," : "").append(i);
+            }
+            assertThat(responses.get(1)).isEqualTo(expected.append(']').toString());
+            assertThat(responses.get(3)).isEqualTo("200 []");
+        }
+    }
+
+    @Test
+    void metricsEndpoint() throws IOException {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).http2(true).metricsPath("/metrics"));
+        server.start();
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            client.headers(1, "GET", "/host/users/1", true);
+            assertThat(client.readResponses(1).get(1)).startsWith("200 ");
+            client.headers(3, "GET", "/metrics", true);
+            // 与http/1.x相同地由metrics endpoint返回，不计入unmatched
+            assertThat(client.readResponses(1).get(3)).startsWith("200 ")
+                .contains("http_requests_total{route=\"/host/users/(\\\\d+)\",method=\"GET\"} 1\n")
+                .doesNotContain("route=\"unmatched\",method=\"\",status=\"404\"");
+        }
+    }
+
+    @Test
+    void goAwayOnProtocolError() throws IOException {
+        try (var client = new Client(server.getPort())) {
+            client.out.write(PREFACE);
+            client.frame(FrameTypeEnum.SETTINGS, 0, 0, new byte[0]);
+            // 偶数stream id
+            client.headers(2, "GET", "/host/users/1", true);
+            while (true) {
+                var frame = client.read();
+                if (frame.type == FrameTypeEnum.GOAWAY) {
+                    assertThat(ByteBuffer.wrap(frame.payload).getInt(4)).isEqualTo(ErrorCodeEnum.PROTOCOL_ERROR.getCode());
+                    break;
+                }
+            }
+            assertThat(client.in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void upgradeFromHttp1() throws Exception {
+        var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        var uri = URI.create("http://localhost:" + server.getPort() + "/host/users/1");
+        var response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+        assertThat(response.statusCode()).isEqualTo(200);
+        assertThat(response.body()).contains("\"name\":\"user_name_1\"");
+        // 之后的request复用http/2连接
+        response = client.send(HttpRequest.newBuilder(URI.create("http://localhost:" + server.getPort()
+            + "/host/users/2")).build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_2);
+        assertThat(response.body()).contains("\"name\":\"user_name_2\"");
+    }
+
+    @Test
+    void disabledByDefault() throws Exception {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1));
+        server.start();
+        var client = HttpClient.newBuilder().version(HttpClient.Version.HTTP_2).build();
+        var uri = URI.create("http://localhost:" + server.getPort() + "/host/users/1");
+        var response = client.send(HttpRequest.newBuilder(uri).build(), HttpResponse.BodyHandlers.ofString());
+        assertThat(response.version()).isEqualTo(HttpClient.Version.HTTP_1_1);
+        assertThat(response.statusCode()).isEqualTo(200);
+    }
+
+    private static class RawFrame {
+        FrameTypeEnum type;
+        int flags;
+        int streamId;
+        byte[] payload;
+    }
+
+    /**
+     * 一个最简单的prior knowledge客户端
+     */
+    private static class Client implements AutoCloseable {
+        final Socket socket;
+        final OutputStream out;
+        final DataInputStream in;
+        final HpackEncoder encoder = new HpackEncoder(4096);
+        final HpackDecoder decoder = new HpackDecoder(4096, 1024 * 64);
+
+        Client(int port) throws IOException {
+            socket = new Socket("localhost", port);
+            socket.setSoTimeout(5000);
+            out = socket.getOutputStream();
+            in = new DataInputStream(socket.getInputStream());
+        }
+
+        void frame(FrameTypeEnum type, int flags, int streamId, byte[] payload) throws IOException {
+            var buf = ByteBuffer.allocate(Frame.HEADER_SIZE + payload.length);
+            Frame.writeHeader(buf, payload.length, type, flags, streamId);
+            out.write(buf.put(payload).array());
+        }
+
+        void headers(int streamId, String method, String path, boolean endStream) throws IOException {
+            var block = new ByteArrayOutputStream();
+            encoder.encode(block, ":method", method);
+            encoder.encode(block, ":scheme", "http");
+            encoder.encode(block, ":path", path);
+            encoder.encode(block, ":authority", "localhost");
+            if (!endStream) {
+                encoder.encode(block, "content-type", "application/json");
+            }
+            var flags = Frame.FLAG_END_HEADERS | (endStream ? Frame.FLAG_END_STREAM : 0);
+            frame(FrameTypeEnum.HEADERS, flags, streamId, block.toByteArray());
+        }
+
+        RawFrame read() throws IOException {
+            var header = new byte[Frame.HEADER_SIZE];
+            in.readFully(header);
+            var frame = new RawFrame();
+            var length = (header[0] & 0xff) << 16 | (header[1] & 0xff) << 8 | header[2] & 0xff;
+            frame.type = FrameTypeEnum.of(header[3] & 0xff);
+            frame.flags = header[4] & 0xff;
+            frame.streamId = ByteBuffer.wrap(header, 5, 4).getInt() & 0x7fffffff;
+            frame.payload = new byte[length];
+            in.readFully(frame.payload);
+            if (frame.type == FrameTypeEnum.SETTINGS && (frame.flags & Frame.FLAG_ACK) == 0) {
+                frame(FrameTypeEnum.SETTINGS, Frame.FLAG_ACK, 0, new byte[0]);
+            }
+            return frame;
+        }
+
+        /**
+         * 读取n个完整的response，返回stream id到"status body"
+         */
+        Map<Integer, String> readResponses(int n) throws IOException {
+            var responses = new LinkedHashMap<Integer, String>();
+            var bodies = new LinkedHashMap<Integer, StringBuilder>();
+            while (responses.size() < n) {
+                var frame = read();
+                if (frame.type == FrameTypeEnum.HEADERS) {
+                    var sb = new StringBuilder();
+                    decoder.decode(frame.payload, 0, frame.payload.length, (name, value) -> {
+                        if (name.equals(":status")) {
+                            sb.append(value).append(' ');
+                        }
+                    });
+                    bodies.put(frame.streamId, sb);
+                } else if (frame.type == FrameTypeEnum.DATA) {
+                    bodies.get(frame.streamId).append(new String(frame.payload, StandardCharsets.UTF_8));
+                } else {
+                    continue;
+                }
+                if ((frame.flags & Frame.FLAG_END_STREAM) != 0) {
+                    responses.put(frame.streamId, bodies.get(frame.streamId).toString());
+                }
+            }
+            return responses;
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
@@ -0,0 +1,269 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.basic.UserController;
+
+public class HttpServerTest extends BaseTest {
+    HttpServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(2));
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void getUsers() throws IOException {
+        var resp = send("GET /host/users HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(resp)
+            .startsWith("HTTP/1.1 200 OK\r\n")
+            .contains("Content-Type: application/json")
+            .contains("user_name_1");
+    }
+
+    @Test
+    void getUserWithPathParam() throws IOException {
+        var resp = send("GET /home/users/7 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(resp)
+            .startsWith("HTTP/1.1 200 OK\r\n")
+            .contains("\"name\":\"user_name_7\"");
+    }
+
+    @Test
+    void notFound() throws IOException {
+        var resp = send("GET /not_found HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(resp).startsWith("HTTP/1.1 404 NOT FOUND\r\n");
+    }
+
+    @Test
+    void badRequest() throws IOException {
+        var resp = send("NONE\r\n\r\n");
+        assertThat(resp).startsWith("HTTP/1.1 400 BAD REQUEST\r\n");
+    }
+
+    @Test
+    void keepAliveSequentialRequests() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var out = socket.getOutputStream();
+            var in = socket.getInputStream();
+            out.write("GET /host/users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(in)).startsWith("HTTP/1.1 200 OK\r\n").contains("user_name_1");
+            out.write("GET /host/users/2 HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(in)).startsWith("HTTP/1.1 200 OK\r\n").contains("user_name_2");
+        }
+    }
+
+    @Test
+    void pipelinedRequestsInOrder() throws IOException {
+        var sb = new StringBuilder();
+        for (var i = 0; i < 40; i++) {
+            sb.append("GET /host/users/").append(i).append(" HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        }
+        sb.append("GET /host/users/99 HTTP/1.1\r\nConnection: close\r\n\r\n");
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(sb.toString().getBytes(StandardCharsets.ISO_8859_1));
+            var in = socket.getInputStream();
+            for (var i = 0; i < 40; i++) {
+                assertThat(readResponse(in)).contains("\"name\":\"user_name_" + i + "\"");
+            }
+            assertThat(readResponse(in)).contains("Connection: close").contains("user_name_99");
+            // 服务端关闭连接
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void http10ClosedByDefault() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET /host/users/1 HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            var resp = readAll(socket.getInputStream());
+            assertThat(resp).startsWith("HTTP/1.0 200 OK\r\n").contains("Connection: close");
+        }
+    }
+
+    @Test
+    void http10KeepAlive() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var out = socket.getOutputStream();
+            var in = socket.getInputStream();
+            out.write("GET /host/users/1 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(in)).contains("Connection: keep-alive");
+            out.write("GET /host/users/2 HTTP/1.0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readAll(in)).contains("user_name_2");
+        }
+    }
+
+    @Test
+    void gzipNegotiated() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET /host/users HTTP/1.1\r\nAccept-Encoding: gzip, deflate\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            var in = socket.getInputStream();
+            var head = new StringBuilder();
+            while (!head.toString().endsWith("\r\n\r\n")) {
+                head.append((char) in.read());
+            }
+            assertThat(head).contains("Content-Encoding: gzip\r\n").contains("Vary: Accept-Encoding\r\n");
+            var len = Integer.parseInt(head.toString().replaceAll("(?s).*Content-Length: (\\d+).*", "$1"));
+            var body = new GZIPInputStream(new ByteArrayInputStream(in.readNBytes(len))).readAllBytes();
+            assertThat(new String(body, StandardCharsets.UTF_8)).contains("user_name_1");
+        }
+    }
+
+    @Test
+    void metricsEndpoint() throws IOException {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(2).metricsPath("/metrics"));
+        server.start();
+        send("GET /host/users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        send("GET /not_found HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        var resp = send("GET /metrics HTTP/1.1\r\nHost: localhost\r\n\r\n");
+        assertThat(resp)
+            .startsWith("HTTP/1.1 200 OK\r\n")
+            .contains("Content-Type: text/plain; version=0.0.4")
+            .contains("http_requests_total{route=\"/host/users/(\\\\d+)\",method=\"GET\"} 1\n")
+            .contains("http_requests_in_flight{route=\"/host/users/(\\\\d+)\",method=\"GET\"} 0\n")
+            .contains("http_errors_total{route=\"unmatched\",method=\"\",status=\"404\"} 1\n")
+            .contains("http_phase_duration_seconds_count{route=\"/host/users/(\\\\d+)\",method=\"GET\",phase=\"invoke\"} 1\n")
+            .contains("phase=\"serialize\",le=\"+Inf\"} 1\n")
+            .contains("http_loop_accepted_total{loop=\"0\"}")
+            .contains("http_loop_connections{loop=\"1\"}");
+    }
+
+    @Test
+    void headerReadTimeout() throws IOException {
+        restart(new ServerConfig().port(0).eventLoops(1).headerReadTimeout(200));
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            var out = socket.getOutputStream();
+            out.write("GET /host/users HTTP/1.1\r\nHo".getBytes(StandardCharsets.ISO_8859_1));
+            var start = System.nanoTime();
+            // 持续写入但不完成headers也会超时
+            for (var i = 0; i < 3; i++) {
+                sleep(100);
+                out.write('o');
+            }
+            var in = socket.getInputStream();
+            assertThat(readResponse(in)).startsWith("HTTP/1.1 408 REQUEST TIMEOUT\r\n");
+            assertThat(in.read()).isEqualTo(-1);
+            assertThat(System.nanoTime() - start).isLessThan(5_000_000_000L);
+        }
+    }
+
+    @Test
+    void keepAliveTimeout() throws IOException {
+        restart(new ServerConfig().port(0).eventLoops(1).keepAliveTimeout(200));
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            var in = socket.getInputStream();
+            socket.getOutputStream().write("GET /host/users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(in)).startsWith("HTTP/1.1 200 OK\r\n");
+            assertThat(in.read()).isEqualTo(-1);
+        }
+    }
+
+    @Test
+    void reusePortAcrossLoops() throws IOException {
+        restart(new ServerConfig().port(0).eventLoops(4).reusePort(true));
+        var n = 64;
+        for (var i = 0; i < n; i++) {
+            assertThat(send("GET /host/users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n")).startsWith("HTTP/1.1 200 OK\r\n");
+        }
+        var accepted = server.getAcceptedCounts();
+        assertThat(accepted).hasSize(4);
+        assertThat(Arrays.stream(accepted).sum()).isEqualTo(n);
+        // 由内核按连接的4元组分配
+        assertThat(Arrays.stream(accepted).filter(c -> c > 0).count()).isGreaterThan(1);
+    }
+
+    @Test
+    void connectionCounts() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET /host/users/1 HTTP/1.1\r\nHost: localhost\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            readResponse(socket.getInputStream());
+            assertThat(Arrays.stream(server.getConnectionCounts()).sum()).isEqualTo(1);
+        }
+        for (var i = 0; i < 100 && Arrays.stream(server.getConnectionCounts()).sum() > 0; i++) {
+            sleep(10);
+        }
+        assertThat(server.getConnectionCounts()).containsOnly(0);
+        assertThat(Arrays.stream(server.getAcceptedCounts()).sum()).isEqualTo(1);
+    }
+
+    private void restart(ServerConfig config) throws IOException {
+        server.close();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UserController.class.getPackageName());
+        server = new HttpServer(context, config);
+        server.start();
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private String send(String request) throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            return readResponse(socket.getInputStream());
+        }
+    }
+
+    static String readAll(InputStream in) throws IOException {
+        return new String(in.readAllBytes(), StandardCharsets.UTF_8);
+    }
+
+    /**
+     * 按Content-Length读取一个response
+     * @param in
+     * @return
+     * @throws IOException
+     */
+    static String readResponse(InputStream in) throws IOException {
+        var head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            var b = in.read();
+            if (b < 0) {
+                throw new IOException("unexpected end of stream: " + head);
+            }
+            head.append((char) b);
+        }
+        var len = 0;
+        for (var line : head.toString().split("\r\n")) {
+            if (line.toLowerCase().startsWith("content-length:")) {
+                len = Integer.parseInt(line.substring(line.indexOf(':') + 1).trim());
+            }
+        }
+        return head + new String(in.readNBytes(len), StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,198 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Map;
+import java.util.concurrent.SubmissionPublisher;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.stream.StreamController;
+
+public class StreamingResponseTest extends BaseTest {
+    HttpServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        StreamController.produced.set(0);
+        StreamController.closed.set(false);
+        StreamController.publisher = new SubmissionPublisher<>();
+        var context = ControllerContext.newInstance();
+        context.scanPackage(StreamController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).workerThreads(1)
+            .compression(true));
+        server.start();
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+        StreamController.publisher.close();
+    }
+
+    @Test
+    void chunkedJsonArray() throws Exception {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var out = socket.getOutputStream();
+            var in = socket.getInputStream();
+            out.write(request("/stream/numbers?n=5", "Accept-Encoding: gzip\r\n"));
+            var head = readHead(in);
+            assertThat(head).startsWith("HTTP/1.1 200 OK\r\n")
+                .contains("Transfer-Encoding: chunked\r\n")
+                .contains("Content-Type: application/json; charset=utf-8\r\n")
+                .doesNotContain("Content-Length")
+                .doesNotContain("Content-Encoding");
+            assertThat(readChunked(in)).isEqualTo("[0,1,2,3,4]");
+            // 写出最后的chunk后才释放body
+            var deadline = System.currentTimeMillis() + 5000;
+            while (!StreamController.closed.get() && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            assertThat(StreamController.closed).isTrue();
+
+            // 空的结果与之后的request复用连接
+            out.write(request("/stream/numbers?n=0", ""));
+            readHead(in);
+            assertThat(readChunked(in)).isEqualTo("[]");
+        }
+    }
+
+    @Test
+    void backpressure() throws Exception {
+        var n = 500_000;
+        try (var socket = new Socket()) {
+            socket.setReceiveBufferSize(1024 * 16);
+            socket.connect(new InetSocketAddress("localhost", server.getPort()));
+            socket.getOutputStream().write(request("/stream/items?n=" + n, ""));
+            var in = socket.getInputStream();
+            readHead(in);
+            // 客户端不读取时只生成socket buffer与队列能容纳的数据，等待kernel buffer填满后停止增长
+            var produced = -1;
+            var deadline = System.currentTimeMillis() + 5000;
+            while (produced != StreamController.produced.get() && System.currentTimeMillis() < deadline) {
+                produced = StreamController.produced.get();
+                Thread.sleep(300);
+            }
+            assertThat(produced).isGreaterThan(0).isLessThan(n);
+            assertThat(StreamController.produced.get()).isEqualTo(produced);
+
+            var items = new ObjectMapper().readTree(readChunked(in));
+            assertThat(items.size()).isEqualTo(n);
+            assertThat(items.get(n - 1).get("name").asText()).isEqualTo("item_" + (n - 1));
+            assertThat(StreamController.produced.get()).isEqualTo(n);
+        }
+    }
+
+    @Test
+    void serverSentEvents() throws Exception {
+        var publisher = StreamController.publisher;
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.setSoTimeout(5000);
+            socket.getOutputStream().write(request("/stream/events", ""));
+            var in = socket.getInputStream();
+            var head = readHead(in);
+            assertThat(head).contains("Content-Type: text/event-stream; charset=utf-8\r\n")
+                .contains("Cache-Control: no-cache\r\n")
+                .contains("Transfer-Encoding: chunked\r\n");
+            var deadline = System.currentTimeMillis() + 5000;
+            while (publisher.getNumberOfSubscribers() == 0 && System.currentTimeMillis() < deadline) {
+                Thread.sleep(10);
+            }
+            publisher.submit("hello\nworld");
+            assertThat(readChunk(in)).isEqualTo("data: hello\ndata: world\n\n");
+            publisher.submit(Map.of("id", 1));
+            assertThat(readChunk(in)).isEqualTo("data: {\"id\":1}\n\n");
+        }
+        // 客户端断开后取消subscription
+        var deadline = System.currentTimeMillis() + 5000;
+        while (publisher.getNumberOfSubscribers() > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+        assertThat(publisher.getNumberOfSubscribers()).isZero();
+    }
+
+    @Test
+    void closeDelimitedHttp10() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write("GET /stream/numbers?n=3 HTTP/1.0\r\nConnection: keep-alive\r\n\r\n"
+                .getBytes(StandardCharsets.ISO_8859_1));
+            var resp = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            assertThat(resp).startsWith("HTTP/1.0 200 OK\r\n")
+                .contains("Connection: close\r\n")
+                .doesNotContain("Transfer-Encoding")
+                .doesNotContain("Content-Length")
+                .endsWith("\r\n\r\n[0,1,2]");
+        }
+    }
+
+    @Test
+    void abortOnFailure() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            socket.getOutputStream().write(request("/stream/failed", ""));
+            var resp = new String(socket.getInputStream().readAllBytes(), StandardCharsets.UTF_8);
+            // 没有last chunk，客户端可以知道response不完整
+            assertThat(resp).startsWith("HTTP/1.1 200 OK\r\n").doesNotEndWith("0\r\n\r\n");
+        }
+    }
+
+    private static byte[] request(String path, String headers) {
+        return ("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n" + headers + "\r\n")
+            .getBytes(StandardCharsets.ISO_8859_1);
+    }
+
+    private static String readHead(InputStream in) throws IOException {
+        var head = new StringBuilder();
+        while (!head.toString().endsWith("\r\n\r\n")) {
+            var b = in.read();
+            if (b < 0) {
+                throw new IOException("unexpected end of stream: " + head);
+            }
+            head.append((char) b);
+        }
+        return head.toString();
+    }
+
+    /**
+     * 解码chunked body直到last chunk
+     */
+    private static String readChunked(InputStream in) throws IOException {
+        var body = new ByteArrayOutputStream();
+        String chunk;
+        while (!(chunk = readChunk(in)).isEmpty()) {
+            body.writeBytes(chunk.getBytes(StandardCharsets.UTF_8));
+        }
+        return body.toString(StandardCharsets.UTF_8);
+    }
+
+    private static String readChunk(InputStream in) throws IOException {
+        var line = readLine(in);
+        var size = Integer.parseInt(line, 16);
+        var data = in.readNBytes(size);
+        assertThat(readLine(in)).isEmpty();
+        return new String(data, StandardCharsets.UTF_8);
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        var sb = new StringBuilder();
+        int b;
+        while ((b = in.read()) != '\n') {
+            if (b < 0) {
+                throw new IOException("unexpected end of stream");
+            }
+            sb.append((char) b);
+        }
+        return sb.toString().strip();
+    }
+}
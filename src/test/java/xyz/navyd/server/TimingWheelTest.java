@@ -0,0 +1,92 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+import java.util.ArrayList;
+
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+
+public class TimingWheelTest extends BaseTest {
+    private static final long TICK = 100;
+
+    @Test
+    void expireAfterDelay() {
+        var wheel = new TimingWheel(TICK, 8, 0);
+        var fired = new ArrayList<String>();
+        var a = new TimingWheel.Timeout(() -> fired.add("a"));
+        var b = new TimingWheel.Timeout(() -> fired.add("b"));
+        wheel.schedule(a, 250, 0);
+        wheel.schedule(b, 100, 0);
+        assertThat(wheel.size()).isEqualTo(2);
+        assertThat(wheel.advance(99)).isZero();
+        assertThat(wheel.advance(100)).isEqualTo(1);
+        assertThat(fired).containsExactly("b");
+        assertThat(wheel.advance(299)).isZero();
+        assertThat(wheel.advance(300)).isEqualTo(1);
+        assertThat(fired).containsExactly("b", "a");
+        assertThat(wheel.size()).isZero();
+        assertThat(a.isScheduled()).isFalse();
+    }
+
+    @Test
+    void expireAfterRounds() {
+        var wheel = new TimingWheel(TICK, 4, 0);
+        var fired = new int[1];
+        var timeout = new TimingWheel.Timeout(() -> fired[0]++);
+        // 超过一圈
+        wheel.schedule(timeout, 1000, 0);
+        for (var now = 0; now < 1000; now += TICK) {
+            wheel.advance(now);
+        }
+        assertThat(fired[0]).isZero();
+        wheel.advance(1000);
+        assertThat(fired[0]).isEqualTo(1);
+    }
+
+    @Test
+    void cancelAndReschedule() {
+        var wheel = new TimingWheel(TICK, 8, 0);
+        var fired = new int[1];
+        var timeout = new TimingWheel.Timeout(() -> fired[0]++);
+        wheel.schedule(timeout, 100, 0);
+        timeout.cancel();
+        assertThat(wheel.size()).isZero();
+        assertThat(wheel.advance(500)).isZero();
+
+        wheel.schedule(timeout, 100, 500);
+        // 重新schedule替换原来的deadline
+        wheel.schedule(timeout, 300, 550);
+        assertThat(wheel.size()).isEqualTo(1);
+        assertThat(wheel.advance(700)).isZero();
+        assertThat(wheel.advance(900)).isEqualTo(1);
+        assertThat(fired[0]).isEqualTo(1);
+    }
+
+    @Test
+    void rescheduleInTask() {
+        var wheel = new TimingWheel(TICK, 8, 0);
+        var fired = new int[1];
+        var holder = new TimingWheel.Timeout[1];
+        holder[0] = new TimingWheel.Timeout(() -> {
+            if (++fired[0] < 3) {
+                wheel.schedule(holder[0], TICK, fired[0] * TICK);
+            }
+        });
+        wheel.schedule(holder[0], TICK, 0);
+        for (var now = TICK; now <= 10 * TICK; now += TICK) {
+            wheel.advance(now);
+        }
+        assertThat(fired[0]).isEqualTo(3);
+    }
+
+    @Test
+    void nextDelay() {
+        var wheel = new TimingWheel(1_000_000, 8, 0);
+        assertThat(wheel.nextDelayMillis(0)).isZero();
+        wheel.schedule(new TimingWheel.Timeout(() -> {}), 5_000_000, 0);
+        wheel.advance(500_000);
+        assertThat(wheel.nextDelayMillis(500_000)).isEqualTo(1);
+    }
+}
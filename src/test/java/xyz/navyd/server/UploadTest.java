@@ -0,0 +1,82 @@
+package xyz.navyd.server;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static xyz.navyd.server.HttpServerTest.readResponse;
+
+import java.io.IOException;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.zip.CRC32;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import xyz.navyd.BaseTest;
+import xyz.navyd.mvc.ControllerContext;
+import xyz.navyd.mvc.test_pkg.router.upload.UploadController;
+
+public class UploadTest extends BaseTest {
+    HttpServer server;
+    byte[] data = new byte[1024 * 1024 * 3];
+
+    @BeforeEach
+    void setup() throws IOException {
+        var context = ControllerContext.newInstance();
+        context.scanPackage(UploadController.class.getPackageName());
+        server = new HttpServer(context, new ServerConfig().port(0).eventLoops(1).maxBodySize(1024 * 1024 * 4));
+        server.start();
+        for (var i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 31);
+        }
+    }
+
+    @AfterEach
+    void teardown() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void uploadWithContentLength() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var out = socket.getOutputStream();
+            out.write(("POST /upload/file HTTP/1.1\r\nContent-Length: " + data.length + "\r\n\r\n")
+                .getBytes(StandardCharsets.ISO_8859_1));
+            out.write(data);
+            assertThat(readResponse(socket.getInputStream())).endsWith("\r\n\r\n" + expected(data.length));
+        }
+    }
+
+    @Test
+    void uploadChunked() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var out = socket.getOutputStream();
+            out.write("POST /upload/file HTTP/1.1\r\nTransfer-Encoding: chunked\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            for (var i = 0; i < data.length; i += 100000) {
+                var n = Math.min(100000, data.length - i);
+                out.write((Integer.toHexString(n) + "\r\n").getBytes(StandardCharsets.ISO_8859_1));
+                out.write(data, i, n);
+                out.write("\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            }
+            out.write("0\r\n\r\n".getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(socket.getInputStream())).endsWith("\r\n\r\n" + expected(data.length));
+        }
+    }
+
+    @Test
+    void uploadTooLarge() throws IOException {
+        try (var socket = new Socket("localhost", server.getPort())) {
+            var request = "POST /upload/file HTTP/1.1\r\nContent-Length: " + (1024 * 1024 * 5) + "\r\n\r\n";
+            socket.getOutputStream().write(request.getBytes(StandardCharsets.ISO_8859_1));
+            assertThat(readResponse(socket.getInputStream()))
+                .startsWith("HTTP/1.1 413 PAYLOAD TOO LARGE\r\n")
+                .contains("Connection: close");
+        }
+    }
+
+    private String expected(int length) {
+        var crc = new CRC32();
+        crc.update(data, 0, length);
+        return length + ":" + Long.toHexString(crc.getValue());
+    }
+}